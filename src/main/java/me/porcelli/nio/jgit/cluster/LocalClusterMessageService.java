@@ -0,0 +1,461 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ClusterMessageService} for several providers in one JVM or on one box, without an
+ * external broker: every node listens on a TCP port and sends each message straight to the
+ * ports of its peers. Messages are Java serialized once and framed with their channel name.
+ * <p>
+ * Meant for development and load testing, it binds to the loopback address by default and only
+ * deserializes the classes consumers were registered for, and frames of a bounded size.
+ * PubSub messages go to every peer and LoadBalancer ones to a single peer in turn; a node doesn't
+ * get its own messages back. Messages are queued per peer and written by a pool thread, so
+ * broadcasting never waits for a slow or unreachable peer.
+ */
+public class LocalClusterMessageService implements ClusterMessageService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalClusterMessageService.class);
+
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private static final int MAX_CLASS_DESCRIPTORS = 64;
+    private static final int MAX_PENDING_FRAMES = 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int SOCKET_TIMEOUT_MILLIS = 10000;
+
+    private final String host;
+    private final int port;
+    private final List<InetSocketAddress> peers = new CopyOnWriteArrayList<>();
+
+    private final Map<String, List<Consumer<Object>>> consumers = new ConcurrentHashMap<>();
+    private final Set<String> allowedClasses = ConcurrentHashMap.newKeySet();
+    private final Map<InetSocketAddress, PeerConnection> connections = new ConcurrentHashMap<>();
+    private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextPeer = new AtomicInteger();
+
+    private volatile ExecutorService executor;
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    public LocalClusterMessageService(final String host,
+                                      final int port,
+                                      final List<InetSocketAddress> peers) {
+        this.host = host;
+        this.port = port;
+        this.peers.addAll(peers);
+    }
+
+    /**
+     * Parses a comma separated list of host:port peers.
+     */
+    public static List<InetSocketAddress> parsePeers(final String peers) {
+        final List<InetSocketAddress> result = new ArrayList<>();
+        if (peers == null) {
+            return result;
+        }
+        for (final String peer : peers.split(",")) {
+            final String trimmed = peer.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int separator = trimmed.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Cluster peer [" + trimmed + "] must be host:port");
+            }
+            result.add(new InetSocketAddress(trimmed.substring(0,
+                                                               separator),
+                                             Integer.parseInt(trimmed.substring(separator + 1))));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void connect() {
+        if (serverSocket != null) {
+            return;
+        }
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName(host),
+                                                    port));
+        } catch (final IOException e) {
+            throw new IllegalStateException("Can't listen for cluster messages on " + host + ":" + port,
+                                            e);
+        }
+        executor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r,
+                                             "local-cluster-" + getPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final ServerSocket listening = serverSocket;
+        executor.execute(() -> accept(listening));
+    }
+
+    /**
+     * @return the port this node listens on, the actual one when configured with port 0
+     */
+    public int getPort() {
+        final ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : port;
+    }
+
+    public void addPeer(final InetSocketAddress peer) {
+        peers.add(peer);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void createConsumer(final DestinationType type,
+                                   final String channel,
+                                   final Class<T> clazz,
+                                   final Consumer<T> listener) {
+        allowedClasses.add(clazz.getName());
+        consumers.computeIfAbsent(channel,
+                                  c -> new CopyOnWriteArrayList<>()).add(message -> {
+            if (clazz.isInstance(message)) {
+                listener.accept((T) message);
+            }
+        });
+    }
+
+    @Override
+    public void broadcast(final DestinationType type,
+                          final String channel,
+                          final Serializable object) {
+        if (closed || peers.isEmpty()) {
+            return;
+        }
+        final byte[] payload;
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(object);
+            }
+            payload = bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Can't serialize cluster message " + object,
+                                               e);
+        }
+        if (type == DestinationType.LoadBalancer) {
+            send(peers.get(Math.floorMod(nextPeer.getAndIncrement(),
+                                         peers.size())),
+                 channel,
+                 payload);
+        } else {
+            peers.forEach(peer -> send(peer,
+                                       channel,
+                                       payload));
+        }
+    }
+
+    private void send(final InetSocketAddress peer,
+                      final String channel,
+                      final byte[] payload) {
+        connections.computeIfAbsent(peer,
+                                    PeerConnection::new).send(channel,
+                                                              payload);
+    }
+
+    private void accept(final ServerSocket listening) {
+        while (!closed) {
+            try {
+                final Socket socket = listening.accept();
+                accepted.add(socket);
+                if (closed) {
+                    closeQuietly(socket);
+                    return;
+                }
+                executor.execute(() -> receive(socket));
+            } catch (final IOException | RejectedExecutionException e) {
+                if (!closed) {
+                    LOGGER.error("Error accepting cluster connection",
+                                 e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void receive(final Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(s.getInputStream())) {
+            while (!closed) {
+                final String channel = in.readUTF();
+                final int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid cluster message length " + length + " on channel [" + channel + "]");
+                }
+                final byte[] payload = new byte[length];
+                in.readFully(payload);
+                dispatch(channel,
+                         payload);
+            }
+        } catch (final IOException e) {
+            //peer went away, or sent a frame that can't be trusted
+            LOGGER.debug("Cluster connection closed",
+                         e);
+        } finally {
+            accepted.remove(socket);
+        }
+    }
+
+    private void dispatch(final String channel,
+                          final byte[] payload) {
+        final List<Consumer<Object>> channelConsumers = consumers.get(channel);
+        if (channelConsumers == null) {
+            return;
+        }
+        final Object message;
+        try (ObjectInputStream in = new AllowedClassesInputStream(new ByteArrayInputStream(payload))) {
+            message = in.readObject();
+        } catch (final IOException | ClassNotFoundException e) {
+            LOGGER.error("Can't read cluster message on channel [" + channel + "]",
+                         e);
+            return;
+        }
+        for (final Consumer<Object> consumer : channelConsumers) {
+            try {
+                consumer.accept(message);
+            } catch (final Exception e) {
+                LOGGER.error("Error consuming cluster message on channel [" + channel + "]",
+                             e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isSystemClustered() {
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        connections.values().forEach(PeerConnection::close);
+        connections.clear();
+        accepted.forEach(LocalClusterMessageService::closeQuietly);
+        accepted.clear();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Error closing cluster socket",
+                             e);
+            }
+            serverSocket = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Frames waiting for a peer, written in order by one pool task at a time.
+     */
+    private class PeerConnection {
+
+        private final InetSocketAddress peer;
+        private final Queue<Frame> pending = new ArrayDeque<>();
+
+        //only used by the draining task, closed from any thread
+        private volatile Socket socket;
+        private DataOutputStream out;
+
+        PeerConnection(final InetSocketAddress peer) {
+            this.peer = peer;
+        }
+
+        void send(final String channel,
+                  final byte[] payload) {
+            final ExecutorService current = executor;
+            if (current == null) {
+                return;
+            }
+            final boolean idle;
+            synchronized (pending) {
+                if (pending.size() >= MAX_PENDING_FRAMES) {
+                    LOGGER.warn("Too many cluster messages pending for " + peer + ", dropping one on channel [" + channel + "]");
+                    return;
+                }
+                idle = pending.isEmpty();
+                pending.add(new Frame(channel,
+                                      payload));
+            }
+            if (idle) {
+                try {
+                    current.execute(this::drain);
+                } catch (final RejectedExecutionException e) {
+                    //closing
+                    synchronized (pending) {
+                        pending.clear();
+                    }
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                final Frame next;
+                synchronized (pending) {
+                    next = pending.peek();
+                }
+                final boolean written = write(next);
+                synchronized (pending) {
+                    if (!written) {
+                        //the peer is unreachable, the frames queued meanwhile would wait for the same timeouts
+                        if (pending.size() > 1) {
+                            LOGGER.warn("Dropped " + (pending.size() - 1) + " more cluster messages for " + peer);
+                        }
+                        pending.clear();
+                        return;
+                    }
+                    pending.remove();
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private boolean write(final Frame frame) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (socket == null) {
+                    final Socket connecting = new Socket();
+                    socket = connecting;
+                    connecting.setTcpNoDelay(true);
+                    connecting.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+                    connecting.connect(peer,
+                                       CONNECT_TIMEOUT_MILLIS);
+                    out = new DataOutputStream(connecting.getOutputStream());
+                }
+                out.writeUTF(frame.channel);
+                out.writeInt(frame.payload.length);
+                out.write(frame.payload);
+                out.flush();
+                return true;
+            } catch (final IOException e) {
+                //dropped, so the next message reconnects
+                close();
+                if (!closed) {
+                    LOGGER.warn("Can't send cluster message to " + peer + ": " + e.getMessage());
+                }
+                return false;
+            }
+        }
+
+        void close() {
+            final Socket current = socket;
+            if (current != null) {
+                closeQuietly(current);
+                socket = null;
+            }
+        }
+    }
+
+    private static class Frame {
+
+        private final String channel;
+        private final byte[] payload;
+
+        private Frame(final String channel,
+                      final byte[] payload) {
+            this.channel = channel;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Resolves only the classes consumers were registered for and byte arrays, and a bounded
+     * number of class descriptors per message.
+     */
+    private class AllowedClassesInputStream extends ObjectInputStream {
+
+        private int descriptors;
+
+        AllowedClassesInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final String name = desc.getName();
+            if (++descriptors > MAX_CLASS_DESCRIPTORS) {
+                throw new InvalidClassException(name,
+                                                "too many classes in cluster message");
+            }
+            if (!allowedClasses.contains(name) && !"[B".equals(name)) {
+                throw new InvalidClassException(name,
+                                                "not expected in cluster messages");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+            throw new InvalidClassException(String.join(",",
+                                                        interfaces),
+                                            "proxies are not expected in cluster messages");
+        }
+    }
+}
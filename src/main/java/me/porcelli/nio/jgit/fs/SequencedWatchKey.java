@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.fs;
+
+import java.nio.file.WatchKey;
+
+/**
+ * Watch key of a file system whose events are journaled. Sequences grow with every publish, so a
+ * consumer that remembers the last one it handled can resume from it after a restart.
+ */
+public interface SequencedWatchKey extends WatchKey {
+
+    /**
+     * @return the journal sequence of the events of this key, or 0 when they were not journaled
+     */
+    long sequence();
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.fs;
+
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Restricts the events delivered to a watch service to the ones of a branch, under a path
+ * prefix and of the given kinds. A null branch or path prefix and no kinds match everything.
+ * Path prefixes match whole path segments, so "/src" matches "/src/Main.java" but not "/srcs".
+ */
+public class WatchFilter {
+
+    public static final WatchFilter ALL = new WatchFilter(null,
+                                                          null);
+
+    private final String branch;
+    private final String pathPrefix;
+    private final Set<WatchEvent.Kind<?>> kinds;
+
+    public WatchFilter(final String branch,
+                       final String pathPrefix,
+                       final WatchEvent.Kind<?>... kinds) {
+        this.branch = branch;
+        this.pathPrefix = pathPrefix;
+        this.kinds = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(kinds)));
+    }
+
+    /**
+     * @return the branch to watch, or null for all of them
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return the folder or file to watch, or null for the whole tree
+     */
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * @return the event kinds to deliver, empty for all of them
+     */
+    public Set<WatchEvent.Kind<?>> getKinds() {
+        return kinds;
+    }
+
+    public boolean matchesKind(final WatchEvent.Kind<?> kind) {
+        return kinds.isEmpty() || kinds.contains(kind);
+    }
+
+    @Override
+    public String toString() {
+        return "WatchFilter{" +
+                "branch=" + branch +
+                ", pathPrefix=" + pathPrefix +
+                ", kinds=" + kinds +
+                '}';
+    }
+}
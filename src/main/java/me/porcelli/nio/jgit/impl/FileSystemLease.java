@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the repository of a file system open, see {@link JGitFileSystem#lease()}.
+ */
+public interface FileSystemLease extends AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * @return a lease running the release once, however many times it's closed
+     */
+    static FileSystemLease once(final Runnable release) {
+        final AtomicBoolean closed = new AtomicBoolean();
+        return () -> {
+            if (closed.compareAndSet(false,
+                                     true)) {
+                release.run();
+            }
+        };
+    }
+}
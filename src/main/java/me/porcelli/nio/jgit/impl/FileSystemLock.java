@@ -20,7 +20,6 @@ package me.porcelli.nio.jgit.impl;
 import java.io.File;
 import java.io.RandomAccessFile;
 import java.net.URI;
-import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.FileAlreadyExistsException;
@@ -35,10 +34,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * File system Lock. To instantiate a new Lock use {@link FileSystemLockManager}
+ * <p>
+ * The lock file channel is opened on first use and kept open until {@link #close()},
+ * so each outermost lock only costs the OS lock itself. When the provider is the
+ * single process owning the repositories the OS lock is skipped altogether.
  */
 public class FileSystemLock {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemLock.class);
+    private static final long PHYSICAL_LOCK_RETRY_MILLIS = 10;
 
     ReentrantLock lock = new ReentrantLock(true);
     private FileLock physicalLock;
@@ -47,15 +51,38 @@ public class FileSystemLock {
     private long lastAccessMilliseconds;
     private long lastAccessThresholdMilliseconds;
     private final URI repoURI;
+    private final boolean singleProcess;
     private String lockName;
 
+    private final LockTimeHistogram waitTimes = new LockTimeHistogram();
+    private final LockTimeHistogram holdTimes = new LockTimeHistogram();
+    private volatile Thread holder;
+    private volatile String holderOperation;
+    private volatile long acquiredAtNanos;
+    private volatile long slowHolderThresholdMillis = -1;
+
     protected FileSystemLock(File directory,
                              String lockName,
                              TimeUnit lastAccessTimeUnit,
                              long lastAccessThreshold) {
+        this(directory,
+             lockName,
+             lastAccessTimeUnit,
+             lastAccessThreshold,
+             false);
+    }
+
+    protected FileSystemLock(File directory,
+                             String lockName,
+                             TimeUnit lastAccessTimeUnit,
+                             long lastAccessThreshold,
+                             boolean singleProcess) {
         this.lockName = lockName;
+        this.singleProcess = singleProcess;
         repoURI = directory.toURI();
-        this.lockFile = createLockInfra(repoURI);
+        if (!singleProcess) {
+            this.lockFile = createLockInfra(repoURI);
+        }
         this.lastAccessThresholdMilliseconds = lastAccessTimeUnit.toMillis(lastAccessThreshold);
     }
 
@@ -64,17 +91,86 @@ public class FileSystemLock {
     }
 
     public void lock() {
+        lock(null);
+    }
+
+    /**
+     * @param operation name of the operation that needs the lock, reported by {@link #getMetrics()}
+     * and by the slow holder log
+     */
+    public void lock(String operation) {
         registerAccess();
+        final long start = System.nanoTime();
         lock.lock();
 
         if (needToCreatePhysicalLock()) {
-            physicalLockOnFS();
+            try {
+                physicalLockOnFS();
+            } catch (RuntimeException e) {
+                lock.unlock();
+                throw e;
+            }
+        }
+
+        if (lock.getHoldCount() == 1) {
+            acquired(operation,
+                     start);
+        }
+    }
+
+    /**
+     * Like {@link #lock(String)}, but gives up once the timeout elapses, both while waiting
+     * for other threads and for other processes holding the lock file.
+     * @return true if the lock was acquired
+     * @throws FileSystemLockInterruptedException if the thread is interrupted while waiting,
+     * its interrupt status is kept
+     */
+    public boolean tryLock(String operation,
+                           long timeout,
+                           TimeUnit unit) {
+        registerAccess();
+        final long start = System.nanoTime();
+        final long deadline = start + unit.toNanos(timeout);
+        try {
+            if (!lock.tryLock(timeout,
+                              unit)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileSystemLockInterruptedException(repoURI + " -- " + getLockName(),
+                                                         operation);
+        }
+
+        boolean physicalLocked = false;
+        try {
+            physicalLocked = !needToCreatePhysicalLock() || physicalTryLockOnFS(deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileSystemLockInterruptedException(repoURI + " -- " + getLockName(),
+                                                         operation);
+        } finally {
+            if (!physicalLocked) {
+                lock.unlock();
+            }
+        }
+        if (!physicalLocked) {
+            return false;
+        }
+
+        if (lock.getHoldCount() == 1) {
+            acquired(operation,
+                     start);
         }
+        return true;
     }
 
     public void unlock() {
         registerAccess();
-        if (lock.isLocked()) {
+        if (lock.isHeldByCurrentThread()) {
+            if (lock.getHoldCount() == 1) {
+                released();
+            }
             if (releasePhysicalLock()) {
                 physicalUnLockOnFS();
             }
@@ -82,6 +178,48 @@ public class FileSystemLock {
         }
     }
 
+    private void acquired(String operation,
+                          long waitStartNanos) {
+        acquiredAtNanos = System.nanoTime();
+        waitTimes.record(acquiredAtNanos - waitStartNanos);
+        holderOperation = operation;
+        holder = Thread.currentThread();
+    }
+
+    private void released() {
+        final long heldNanos = System.nanoTime() - acquiredAtNanos;
+        holdTimes.record(heldNanos);
+        final long heldMillis = TimeUnit.NANOSECONDS.toMillis(heldNanos);
+        if (slowHolderThresholdMillis >= 0 && heldMillis > slowHolderThresholdMillis) {
+            LOGGER.warn("Slow lock holder on [{} -- {}]: thread {} held the lock for {} ms running {}, {} thread(s) waiting",
+                        repoURI,
+                        getLockName(),
+                        Thread.currentThread().getName(),
+                        heldMillis,
+                        holderOperation,
+                        lock.getQueueLength());
+        }
+        holder = null;
+        holderOperation = null;
+    }
+
+    /**
+     * Holding the lock longer than the threshold logs a warning. A negative value disables it.
+     */
+    public void setSlowHolderThresholdMillis(long slowHolderThresholdMillis) {
+        this.slowHolderThresholdMillis = slowHolderThresholdMillis;
+    }
+
+    public FileSystemLockMetrics getMetrics() {
+        final Thread currentHolder = holder;
+        return new FileSystemLockMetrics(currentHolder == null ? null : currentHolder.getName(),
+                                         currentHolder == null ? null : holderOperation,
+                                         currentHolder == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquiredAtNanos),
+                                         lock.getQueueLength(),
+                                         waitTimes.copy(),
+                                         holdTimes.copy());
+    }
+
     public boolean hasBeenInUse() {
         if (recentlyAccessed()) {
             return true;
@@ -93,7 +231,47 @@ public class FileSystemLock {
         return (System.currentTimeMillis() - lastAccessMilliseconds) < lastAccessThresholdMilliseconds;
     }
 
+    /**
+     * Releases the OS lock, if any, and closes the lock file channel. The lock can still be
+     * used afterwards, in which case the channel is opened again.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (physicalLock != null && physicalLock.isValid()) {
+                physicalLock.release();
+            }
+            physicalLock = null;
+            if (fileChannel != null) {
+                fileChannel.close();
+                fileChannel = null;
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error during close of FS lock [" + repoURI.toString() + " -- " + this.getLockName() + "]",
+                         e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #close()}, but does nothing instead of waiting when the lock is held.
+     */
+    public void closeIfIdle() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private boolean needToCreatePhysicalLock() {
+        if (singleProcess) {
+            return false;
+        }
         return ((physicalLock == null || !physicalLock.isValid()) && lock.getHoldCount() == 1);
     }
 
@@ -103,13 +281,40 @@ public class FileSystemLock {
 
     void physicalLockOnFS() {
         try {
-            File file = lockFile.toFile();
-            RandomAccessFile raf = new RandomAccessFile(file,
-                                                        "rw");
-            fileChannel = raf.getChannel();
+            if (fileChannel == null || !fileChannel.isOpen()) {
+                File file = lockFile.toFile();
+                RandomAccessFile raf = new RandomAccessFile(file,
+                                                            "rw");
+                fileChannel = raf.getChannel();
+            }
             physicalLock = fileChannel.lock();
-            fileChannel.position(0);
-            fileChannel.write(ByteBuffer.wrap("locked".getBytes()));
+        } catch (Exception e) {
+            LOGGER.error("Error during lock of FS [" + repoURI.toString() + " -- " + this.getLockName() + "]",
+                         e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    boolean physicalTryLockOnFS(long deadlineNanos) throws InterruptedException {
+        try {
+            if (fileChannel == null || !fileChannel.isOpen()) {
+                File file = lockFile.toFile();
+                RandomAccessFile raf = new RandomAccessFile(file,
+                                                            "rw");
+                fileChannel = raf.getChannel();
+            }
+            while (true) {
+                physicalLock = fileChannel.tryLock();
+                if (physicalLock != null) {
+                    return true;
+                }
+                if (System.nanoTime() >= deadlineNanos) {
+                    return false;
+                }
+                Thread.sleep(PHYSICAL_LOCK_RETRY_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.error("Error during lock of FS [" + repoURI.toString() + " -- " + this.getLockName() + "]",
                          e);
@@ -120,8 +325,6 @@ public class FileSystemLock {
     void physicalUnLockOnFS() {
         try {
             physicalLock.release();
-            fileChannel.close();
-            fileChannel = null;
             physicalLock = null;
         } catch (Exception e) {
             LOGGER.error("Error during unlock of FS [" + repoURI.toString() + " -- " + this.getLockName() + "]",
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+/**
+ * Thrown when a thread is interrupted while waiting for a file system lock. The thread's
+ * interrupt status is set again before it is thrown.
+ */
+public class FileSystemLockInterruptedException extends FileSystemLockException {
+
+    private final String operation;
+
+    public FileSystemLockInterruptedException(String lock,
+                                              String operation) {
+        super("Interrupted while waiting to lock [" + lock + "] for " + operation);
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+}
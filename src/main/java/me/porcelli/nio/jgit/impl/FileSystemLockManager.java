@@ -39,11 +39,24 @@ public class FileSystemLockManager {
                                             String lockName,
                                             TimeUnit lastAccessTimeUnit,
                                             long lastAccessThreshold) {
+        return getFileSystemLock(directory,
+                                 lockName,
+                                 lastAccessTimeUnit,
+                                 lastAccessThreshold,
+                                 false);
+    }
+
+    public FileSystemLock getFileSystemLock(File directory,
+                                            String lockName,
+                                            TimeUnit lastAccessTimeUnit,
+                                            long lastAccessThreshold,
+                                            boolean singleProcess) {
 
         return fileSystemsLocks.computeIfAbsent(directory.getAbsolutePath(),
                                                 key -> new FileSystemLock(directory,
                                                                           lockName,
                                                                           lastAccessTimeUnit,
-                                                                          lastAccessThreshold));
+                                                                          lastAccessThreshold,
+                                                                          singleProcess));
     }
 }
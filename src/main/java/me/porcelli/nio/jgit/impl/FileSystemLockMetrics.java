@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+/**
+ * Point in time view of a {@link FileSystemLock}: who holds it, since when and how
+ * many threads are queued, plus copies of the wait and hold time histograms collected
+ * so far, which later lock operations don't update.
+ */
+public class FileSystemLockMetrics {
+
+    private final String holderThread;
+    private final String holderOperation;
+    private final long heldForMillis;
+    private final int queueLength;
+    private final LockTimeHistogram waitTimes;
+    private final LockTimeHistogram holdTimes;
+
+    public FileSystemLockMetrics(final String holderThread,
+                                 final String holderOperation,
+                                 final long heldForMillis,
+                                 final int queueLength,
+                                 final LockTimeHistogram waitTimes,
+                                 final LockTimeHistogram holdTimes) {
+        this.holderThread = holderThread;
+        this.holderOperation = holderOperation;
+        this.heldForMillis = heldForMillis;
+        this.queueLength = queueLength;
+        this.waitTimes = waitTimes;
+        this.holdTimes = holdTimes;
+    }
+
+    /**
+     * @return name of the thread holding the lock, or null if it is free
+     */
+    public String getHolderThread() {
+        return holderThread;
+    }
+
+    public String getHolderOperation() {
+        return holderOperation;
+    }
+
+    public long getHeldForMillis() {
+        return heldForMillis;
+    }
+
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    public LockTimeHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    public LockTimeHistogram getHoldTimes() {
+        return holdTimes;
+    }
+}
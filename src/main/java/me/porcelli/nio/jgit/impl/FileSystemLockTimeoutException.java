@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+/**
+ * Thrown when a write operation could not get the file system lock within its deadline.
+ */
+public class FileSystemLockTimeoutException extends FileSystemLockException {
+
+    private final String operation;
+    private final long timeoutMillis;
+
+    public FileSystemLockTimeoutException(String fileSystem,
+                                          String operation,
+                                          long timeoutMillis) {
+        super("Couldn't lock file system [" + fileSystem + "] for " + operation + " within " + timeoutMillis + " ms");
+        this.operation = operation;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
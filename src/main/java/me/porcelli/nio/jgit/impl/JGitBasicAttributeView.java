@@ -41,9 +41,12 @@ public class JGitBasicAttributeView extends AbstractBasicFileAttributeView<JGitP
     @Override
     public BasicFileAttributes readAttributes() throws IOException {
         if (attrs == null) {
-            attrs = buildAttrs((JGitFileSystem) path.getFileSystem(),
-                               path.getRefTree(),
-                               path.getPath());
+            final JGitFileSystem fs = (JGitFileSystem) path.getFileSystem();
+            try (final FileSystemLease lease = fs.lease()) {
+                attrs = buildAttrs(fs,
+                                   path.getRefTree(),
+                                   path.getPath());
+            }
         }
         return attrs;
     }
@@ -73,7 +76,7 @@ public class JGitBasicAttributeView extends AbstractBasicFileAttributeView<JGitP
             @Override
             public FileTime lastModifiedTime() {
                 if (lastModifiedDate == null) {
-                    try {
+                    try (final FileSystemLease lease = fs.lease()) {
                         lastModifiedDate = FileTime.fromMillis(fs.getGit().getLastCommit(ref).getCommitterIdent().getWhen().getTime());
                     } catch (final Exception e) {
                         lastModifiedDate = FileTime.fromMillis(0);
@@ -90,7 +93,7 @@ public class JGitBasicAttributeView extends AbstractBasicFileAttributeView<JGitP
             @Override
             public FileTime creationTime() {
                 if (creationDate == null) {
-                    try {
+                    try (final FileSystemLease lease = fs.lease()) {
                         creationDate = FileTime.fromMillis(fs.getGit().getFirstCommit(ref).getCommitterIdent().getWhen().getTime());
                     } catch (final Exception e) {
                         creationDate = FileTime.fromMillis(0);
@@ -42,8 +42,10 @@ public class JGitDiffAttributeViewImpl extends DiffAttributeViewImpl<JGitPathImp
     @Override
     public DiffAttributes readAttributes() throws IOException {
         if (attrs == null) {
-            attrs = buildAttrs(path.getFileSystem(),
-                               params);
+            try (final FileSystemLease lease = path.getFileSystem().lease()) {
+                attrs = buildAttrs(path.getFileSystem(),
+                                   params);
+            }
         }
         return attrs;
     }
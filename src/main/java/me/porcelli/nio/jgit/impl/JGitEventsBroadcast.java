@@ -17,26 +17,65 @@
 
 package me.porcelli.nio.jgit.impl;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import me.porcelli.nio.jgit.cluster.ClusterMessageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Sends the local watch events to the other nodes of the cluster and publishes theirs locally.
+ * Events are sent as {@link WatchEventsBatch}es: the events broadcast to a channel within the
+ * batch window go out together in one message, in the compact encoding of {@link WatchEventsCodec}.
+ */
 public class JGitEventsBroadcast {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(JGitEventsBroadcast.class);
+
     public static final String DEFAULT_TOPIC = "default-niogit-topic";
 
     private String nodeId = UUID.randomUUID().toString();
     private Consumer<WatchEventsWrapper> eventsPublisher;
     private final ClusterMessageService clusterMessageService;
+    private final long batchWindowMillis;
+    private final boolean compress;
+
+    private final Set<String> subscribedChannels = ConcurrentHashMap.newKeySet();
+
+    //events waiting for the batch window of their channel to end
+    private final Map<String, List<WatchEventsWrapper>> pending = new HashMap<>();
+    private ScheduledExecutorService scheduler;
 
     public JGitEventsBroadcast(ClusterMessageService clusterMessageService,
                                Consumer<WatchEventsWrapper> eventsPublisher) {
+        this(clusterMessageService,
+             eventsPublisher,
+             0,
+             false);
+    }
+
+    public JGitEventsBroadcast(ClusterMessageService clusterMessageService,
+                               Consumer<WatchEventsWrapper> eventsPublisher,
+                               long batchWindowMillis,
+                               boolean compress) {
         this.clusterMessageService = clusterMessageService;
         this.eventsPublisher = eventsPublisher;
+        this.batchWindowMillis = batchWindowMillis;
+        this.compress = compress;
         setupJMSConnection();
     }
 
@@ -45,26 +84,108 @@ public class JGitEventsBroadcast {
     }
 
     public void createWatchService(String topicName) {
+        //one consumer per channel, more would deliver each message several times
+        if (!subscribedChannels.add(getChannelName(topicName))) {
+            return;
+        }
         clusterMessageService.createConsumer(
                 ClusterMessageService.DestinationType.PubSub,
                 getChannelName(topicName),
-                WatchEventsWrapper.class,
-                (we) -> {
-                    if (!we.getNodeId().equals(nodeId)) {
-                        eventsPublisher.accept(we);
+                WatchEventsBatch.class,
+                (batch) -> {
+                    if (!batch.getNodeId().equals(nodeId)) {
+                        receive(batch);
                     }
                 });
     }
 
-    public synchronized void broadcast(String fsName,
-                                       Path watchable,
-                                       List<WatchEvent<?>> events) {
-        clusterMessageService.broadcast(ClusterMessageService.DestinationType.PubSub,
-                                        getChannelName(fsName),
-                                        new WatchEventsWrapper(nodeId,
-                                                               fsName,
-                                                               watchable,
-                                                               events));
+    private void receive(WatchEventsBatch batch) {
+        final List<WatchEventsWrapper> wrappers;
+        try {
+            wrappers = WatchEventsCodec.decode(batch);
+        } catch (final IOException e) {
+            LOGGER.error("Can't decode watch events from node [" + batch.getNodeId() + "]",
+                         e);
+            return;
+        }
+        wrappers.forEach(eventsPublisher);
+    }
+
+    public void broadcast(String fsName,
+                          Path watchable,
+                          List<WatchEvent<?>> events) {
+        broadcast(fsName,
+                  watchable,
+                  events,
+                  0);
+    }
+
+    void broadcast(String fsName,
+                   Path watchable,
+                   List<WatchEvent<?>> events,
+                   long sequence) {
+        final String channel = getChannelName(fsName);
+        final WatchEventsWrapper wrapper = new WatchEventsWrapper(nodeId,
+                                                                  fsName,
+                                                                  watchable,
+                                                                  events,
+                                                                  sequence);
+        if (batchWindowMillis <= 0) {
+            send(channel,
+                 Collections.singletonList(wrapper));
+            return;
+        }
+        synchronized (pending) {
+            final List<WatchEventsWrapper> channelPending = pending.get(channel);
+            if (channelPending != null) {
+                channelPending.add(wrapper);
+                return;
+            }
+            final List<WatchEventsWrapper> batch = new ArrayList<>();
+            batch.add(wrapper);
+            pending.put(channel,
+                        batch);
+        }
+        getScheduler().schedule(() -> flush(channel),
+                                batchWindowMillis,
+                                TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r,
+                                                 "jgit-events-broadcast");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    void flush(String channel) {
+        final List<WatchEventsWrapper> batch;
+        synchronized (pending) {
+            batch = pending.remove(channel);
+        }
+        if (batch != null) {
+            send(channel,
+                 batch);
+        }
+    }
+
+    private void send(String channel,
+                      List<WatchEventsWrapper> wrappers) {
+        try {
+            clusterMessageService.broadcast(ClusterMessageService.DestinationType.PubSub,
+                                            channel,
+                                            WatchEventsCodec.encode(nodeId,
+                                                                    wrappers,
+                                                                    compress));
+        } catch (final Exception e) {
+            LOGGER.error("Can't broadcast watch events on channel [" + channel + "]",
+                         e);
+        }
     }
 
     private String getChannelName(String fsName) {
@@ -76,7 +197,22 @@ public class JGitEventsBroadcast {
         return channelName;
     }
 
+    String getNodeId() {
+        return nodeId;
+    }
+
     public void close() {
+        final List<String> channels;
+        synchronized (pending) {
+            channels = new ArrayList<>(pending.keySet());
+        }
+        channels.forEach(this::flush);
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
         clusterMessageService.close();
     }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers the events of each file system for a fixed window, merging successive events for the
+ * same path (e.g. ADD+MODIFY+MODIFY becomes ADD, ADD+DELETE disappears), so high frequency
+ * writers produce at most one event per path per window. A window opens with the first event of
+ * a file system and is published once it ends, so no event is delayed longer than the window.
+ */
+class JGitEventsCoalescer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JGitEventsCoalescer.class);
+
+    interface Publisher {
+
+        void publish(String fsName,
+                     Path watchable,
+                     List<WatchEvent<?>> events);
+    }
+
+    private final long windowMillis;
+    private final Publisher publisher;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    JGitEventsCoalescer(final long windowMillis,
+                        final Publisher publisher) {
+        this.windowMillis = windowMillis;
+        this.publisher = publisher;
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r,
+                                                 "jgit-events-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    void add(final String fsName,
+             final Path watchable,
+             final List<WatchEvent<?>> events) {
+        windows.compute(fsName,
+                        (name, window) -> {
+                            if (window == null) {
+                                window = new Window();
+                                getScheduler().schedule(() -> flush(name),
+                                                   windowMillis,
+                                                   TimeUnit.MILLISECONDS);
+                            }
+                            window.add(watchable,
+                                       events);
+                            return window;
+                        });
+    }
+
+    /**
+     * Publishes the pending events of the given file system right away.
+     */
+    void flush(final String fsName) {
+        final Window window = windows.remove(fsName);
+        if (window == null) {
+            return;
+        }
+        window.events.forEach((watchable, pathEvents) -> {
+            final List<WatchEvent<?>> events = pathEvents.toList();
+            if (!events.isEmpty()) {
+                try {
+                    publisher.publish(fsName,
+                                      watchable,
+                                      events);
+                } catch (final Exception e) {
+                    LOGGER.error("Error publishing coalesced events of [" + fsName + "]",
+                                 e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Publishes every pending window and stops the scheduler thread until the next event.
+     */
+    void shutdown() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        new ArrayList<>(windows.keySet()).forEach(this::flush);
+    }
+
+    private static class Window {
+
+        //insertion ordered, so events of different branches keep their relative order
+        private final Map<Path, PathEvents> events = new LinkedHashMap<>();
+
+        void add(final Path watchable,
+                 final List<WatchEvent<?>> newEvents) {
+            final PathEvents pathEvents = events.computeIfAbsent(watchable,
+                                                                 w -> new PathEvents());
+            newEvents.forEach(pathEvents::add);
+        }
+    }
+
+    private static class PathEvents {
+
+        private final List<WatchEvent<?>> events = new ArrayList<>();
+        //position in events of the latest event of each path, events cancelled out are nulled
+        private final Map<URI, Integer> latestByPath = new HashMap<>();
+
+        void add(final WatchEvent<?> event) {
+            if (!(event instanceof JGitWatchEvent)) {
+                events.add(event);
+                return;
+            }
+            final JGitWatchEvent later = (JGitWatchEvent) event;
+            final URI path = later.getPathUri();
+            final Integer position = latestByPath.get(path);
+            if (position != null) {
+                final JGitWatchEvent earlier = (JGitWatchEvent) events.get(position);
+                if (cancels(earlier.getChangeType(),
+                            later.getChangeType())) {
+                    events.set(position,
+                               null);
+                    latestByPath.remove(path);
+                    return;
+                }
+                final ChangeType merged = merge(earlier.getChangeType(),
+                                                later.getChangeType());
+                if (merged != null) {
+                    //merged in place, so the path keeps the position of its first event
+                    final JGitWatchEvent coalesced = earlier.coalesce(later,
+                                                                      merged);
+                    events.set(position,
+                               coalesced);
+                    latestByPath.remove(path);
+                    latestByPath.put(coalesced.getPathUri(),
+                                     position);
+                    return;
+                }
+            }
+            append(path,
+                   later);
+        }
+
+        private void append(final URI path,
+                            final JGitWatchEvent event) {
+            if (event.getChangeType() == ChangeType.RENAME) {
+                //the old path is gone, later events for it must not merge with the rename
+                latestByPath.remove(event.getOldPathUri());
+            }
+            latestByPath.put(path,
+                             events.size());
+            events.add(event);
+        }
+
+        List<WatchEvent<?>> toList() {
+            final List<WatchEvent<?>> result = new ArrayList<>(events.size());
+            for (final WatchEvent<?> event : events) {
+                if (event != null) {
+                    result.add(event);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return true if the later event undoes the earlier one, e.g. a file added and then deleted
+     */
+    static boolean cancels(final ChangeType earlier,
+                           final ChangeType later) {
+        return later == ChangeType.DELETE && (earlier == ChangeType.ADD || earlier == ChangeType.COPY);
+    }
+
+    /**
+     * @return the change type of the two events merged, or null if both have to be kept
+     */
+    static ChangeType merge(final ChangeType earlier,
+                            final ChangeType later) {
+        switch (later) {
+            case MODIFY:
+                return earlier == ChangeType.DELETE ? null : earlier;
+            case DELETE:
+                return earlier == ChangeType.MODIFY || earlier == ChangeType.RENAME ? ChangeType.DELETE : null;
+            case ADD:
+                return earlier == ChangeType.DELETE ? ChangeType.MODIFY : null;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands watch events off the committing thread: publishers put dispatch tasks in a bounded ring
+ * buffer and a single worker thread drains it in batches, so tasks run in submission order.
+ * A full buffer holds the publisher back while the worker catches up, a worker that stopped is
+ * replaced. The worker is started on first use and can be started again after
+ * {@link #shutdown()}; tasks dispatched while shutting down are run by the shutdown or, once it's
+ * done, by their publisher.
+ */
+class JGitEventsDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JGitEventsDispatcher.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    //how often a publisher waiting on a full buffer checks the worker is still alive
+    private static final long OFFER_RETRY_MILLIS = 100;
+
+    private static final Runnable STOP = () -> {
+    };
+
+    private final BlockingQueue<Runnable> ringBuffer;
+    private final int batchSize;
+    private volatile Thread worker;
+
+    JGitEventsDispatcher(final int bufferSize,
+                         final int batchSize) {
+        this.ringBuffer = new ArrayBlockingQueue<>(bufferSize);
+        this.batchSize = Math.max(1,
+                                  batchSize);
+    }
+
+    void dispatch(final Runnable task) {
+        Thread thread = ensureStarted();
+        try {
+            while (!ringBuffer.offer(task,
+                                     OFFER_RETRY_MILLIS,
+                                     TimeUnit.MILLISECONDS)) {
+                if (!thread.isAlive()) {
+                    //nothing drains the buffer anymore, a new worker takes over what's queued
+                    thread = ensureStarted();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run(task);
+            return;
+        }
+        if (worker != thread) {
+            //shut down meanwhile, the worker may have stopped before taking the task
+            runStranded();
+        }
+    }
+
+    private synchronized void runStranded() {
+        if (worker == null) {
+            runPending();
+        }
+    }
+
+    private void runPending() {
+        final List<Runnable> pending = new ArrayList<>();
+        ringBuffer.drainTo(pending);
+        for (final Runnable task : pending) {
+            if (task != STOP) {
+                run(task);
+            }
+        }
+    }
+
+    /**
+     * Waits until every task dispatched so far has run.
+     */
+    boolean awaitDispatched(final long timeout,
+                            final TimeUnit unit) throws InterruptedException {
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        dispatch(dispatched::countDown);
+        return dispatched.await(timeout,
+                                unit);
+    }
+
+    private Thread ensureStarted() {
+        Thread thread = worker;
+        if (thread == null) {
+            synchronized (this) {
+                thread = worker;
+                if (thread == null) {
+                    thread = new Thread(this::drain,
+                                        "jgit-events-dispatcher");
+                    thread.setDaemon(true);
+                    thread.start();
+                    worker = thread;
+                }
+            }
+        }
+        return thread;
+    }
+
+    private void drain() {
+        final List<Runnable> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(ringBuffer.take());
+                ringBuffer.drainTo(batch,
+                                   batchSize - 1);
+                boolean stop = false;
+                for (final Runnable task : batch) {
+                    if (task == STOP) {
+                        stop = true;
+                    } else {
+                        run(task);
+                    }
+                }
+                batch.clear();
+                if (stop) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Events dispatcher interrupted",
+                         e);
+        } finally {
+            //an interrupted worker is replaced on the next dispatch, which drains what it left
+            if (worker == Thread.currentThread()) {
+                worker = null;
+            }
+        }
+    }
+
+    private void run(final Runnable task) {
+        try {
+            task.run();
+        } catch (final Exception e) {
+            LOGGER.error("Error dispatching watch events",
+                         e);
+        }
+    }
+
+    /**
+     * Runs the pending tasks and stops the worker thread. Tasks queued behind the stop are run
+     * here once the worker is done.
+     */
+    synchronized void shutdown() {
+        final Thread thread = worker;
+        if (thread == null) {
+            return;
+        }
+        worker = null;
+        try {
+            while (!ringBuffer.offer(STOP,
+                                     OFFER_RETRY_MILLIS,
+                                     TimeUnit.MILLISECONDS)) {
+                if (!thread.isAlive()) {
+                    break;
+                }
+            }
+            thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!thread.isAlive()) {
+            runPending();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only journal of the events published on a file system. Every publish is one record
+ * holding a sequence number, one more than the previous record's, and its events encoded with
+ * {@link WatchEventsCodec}. Records are framed as sequence, payload length, compressed flag,
+ * payload and a CRC32 of the payload.
+ * <p>
+ * The journal rolls over once it grows past its maximum size, keeping the previous segment.
+ * The last sequence is kept in a side file, which is also locked while appending, so providers
+ * sharing the repositories directory share one sequence. File locks are held by the JVM, so
+ * appends to the same journal from one JVM are serialized before taking it.
+ */
+class JGitEventsJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JGitEventsJournal.class);
+
+    static final String JOURNAL_FILE_NAME = "nio-events.journal";
+
+    //sequence, payload length and compressed flag
+    private static final int HEADER_SIZE = 8 + 4 + 1;
+    private static final int CHECKSUM_SIZE = 4;
+
+    //one per journal appended to by this JVM, whichever provider the appending instance belongs to;
+    //weakly held, so the entry of a journal goes away with the last instance appending to it
+    static final Map<Path, WeakReference<Object>> APPEND_LOCKS = new HashMap<>();
+
+    private final String fsName;
+    private final Path journal;
+    private final Path previous;
+    private final Path sequenceFile;
+    private final long maxBytes;
+    private final boolean sync;
+    private final Object appendLock;
+
+    private boolean recovered = false;
+
+    JGitEventsJournal(final String fsName,
+                      final File dir,
+                      final long maxBytes,
+                      final boolean sync) {
+        this.fsName = fsName;
+        this.journal = new File(dir,
+                                JOURNAL_FILE_NAME).toPath();
+        this.previous = new File(dir,
+                                 JOURNAL_FILE_NAME + ".1").toPath();
+        this.sequenceFile = new File(dir,
+                                     JOURNAL_FILE_NAME + ".seq").toPath();
+        this.maxBytes = maxBytes;
+        this.sync = sync;
+        this.appendLock = appendLockOf(sequenceFile.toAbsolutePath().normalize());
+    }
+
+    private static Object appendLockOf(final Path sequenceFile) {
+        synchronized (APPEND_LOCKS) {
+            APPEND_LOCKS.values().removeIf(reference -> reference.get() == null);
+            final WeakReference<Object> reference = APPEND_LOCKS.get(sequenceFile);
+            Object appendLock = reference == null ? null : reference.get();
+            if (appendLock == null) {
+                appendLock = new Object();
+                APPEND_LOCKS.put(sequenceFile,
+                                 new WeakReference<>(appendLock));
+            }
+            return appendLock;
+        }
+    }
+
+    /**
+     * @return the sequence given to the events
+     */
+    long append(final Path watchable,
+                final List<WatchEvent<?>> events) throws IOException {
+        final WatchEventsBatch batch = WatchEventsCodec.encode(null,
+                                                               Collections.singletonList(new WatchEventsWrapper(null,
+                                                                                                                fsName,
+                                                                                                                watchable,
+                                                                                                                events)),
+                                                               true);
+        Files.createDirectories(journal.getParent());
+        synchronized (appendLock) {
+            return append(batch);
+        }
+    }
+
+    private long append(final WatchEventsBatch batch) throws IOException {
+        try (FileChannel sequenceChannel = FileChannel.open(sequenceFile,
+                                                            StandardOpenOption.CREATE,
+                                                            StandardOpenOption.READ,
+                                                            StandardOpenOption.WRITE);
+             FileLock lock = sequenceChannel.lock()) {
+            if (!recovered) {
+                recover();
+                recovered = true;
+            }
+            //the sequence is stored before the record, a failed append leaves a gap instead of a duplicate
+            final long sequence = readSequence(sequenceChannel) + 1;
+            final ByteBuffer sequenceBuffer = ByteBuffer.allocate(8).putLong(0,
+                                                                             sequence);
+            sequenceChannel.write(sequenceBuffer,
+                                  0);
+            if (sync) {
+                sequenceChannel.force(false);
+            }
+
+            final long size;
+            try (FileChannel journalChannel = FileChannel.open(journal,
+                                                               StandardOpenOption.CREATE,
+                                                               StandardOpenOption.WRITE,
+                                                               StandardOpenOption.APPEND)) {
+                final ByteBuffer record = toRecord(sequence,
+                                                   batch);
+                while (record.hasRemaining()) {
+                    journalChannel.write(record);
+                }
+                if (sync) {
+                    journalChannel.force(false);
+                }
+                size = journalChannel.size();
+            }
+            if (size >= maxBytes) {
+                Files.move(journal,
+                           previous,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * @return a cursor over the journaled events with a sequence greater than the given one
+     */
+    Cursor openCursor(final long afterSequence) {
+        return new Cursor(afterSequence);
+    }
+
+    private static ByteBuffer toRecord(final long sequence,
+                                       final WatchEventsBatch batch) {
+        final byte[] payload = batch.getPayload();
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length + CHECKSUM_SIZE);
+        record.putLong(sequence)
+                .putInt(payload.length)
+                .put((byte) (batch.isCompressed() ? 1 : 0))
+                .put(payload)
+                .putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private long readSequence(final FileChannel sequenceChannel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        while (buffer.hasRemaining()) {
+            if (sequenceChannel.read(buffer,
+                                     buffer.position()) < 0) {
+                //no sequence stored yet, continue from what the journal holds
+                return lastJournaledSequence();
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    private long lastJournaledSequence() throws IOException {
+        long last = 0;
+        for (final Path segment : new Path[]{previous, journal}) {
+            try (FileChannel channel = FileChannel.open(segment,
+                                                        StandardOpenOption.READ)) {
+                Record record;
+                while ((record = Record.read(channel)) != null) {
+                    last = Math.max(last,
+                                    record.sequence);
+                }
+            } catch (final NoSuchFileException ignored) {
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Drops the partial record a crash while appending may have left at the end of the journal.
+     */
+    private void recover() throws IOException {
+        try (FileChannel channel = FileChannel.open(journal,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            while (Record.read(channel) != null) {
+                //skip to the end of the last complete record
+            }
+            if (channel.position() < channel.size()) {
+                LOGGER.warn("Dropping " + (channel.size() - channel.position()) + " bytes of incomplete record from the events journal of [" + fsName + "]");
+                channel.truncate(channel.position());
+            }
+        } catch (final NoSuchFileException ignored) {
+        }
+    }
+
+    private static Object identityOf(final Path segment) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(segment,
+                                                                        BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    private static class Record {
+
+        private final long sequence;
+        private final WatchEventsBatch batch;
+
+        private Record(final long sequence,
+                       final WatchEventsBatch batch) {
+            this.sequence = sequence;
+            this.batch = batch;
+        }
+
+        /**
+         * @return the record at the channel position, which moves past it, or null when there
+         * is no complete record there
+         */
+        static Record read(final FileChannel channel) throws IOException {
+            final long start = channel.position();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (!readFully(channel,
+                           header)) {
+                channel.position(start);
+                return null;
+            }
+            final long sequence = header.getLong(0);
+            final int length = header.getInt(8);
+            final boolean compressed = header.get(12) == 1;
+            if (length < 0 || start + HEADER_SIZE + length + CHECKSUM_SIZE > channel.size()) {
+                channel.position(start);
+                return null;
+            }
+            final ByteBuffer body = ByteBuffer.allocate(length + CHECKSUM_SIZE);
+            if (!readFully(channel,
+                           body)) {
+                channel.position(start);
+                return null;
+            }
+            final byte[] payload = new byte[length];
+            body.get(payload);
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != body.getInt()) {
+                channel.position(start);
+                return null;
+            }
+            return new Record(sequence,
+                              new WatchEventsBatch(null,
+                                                   compressed,
+                                                   payload));
+        }
+
+        private static boolean readFully(final FileChannel channel,
+                                         final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+
+    /**
+     * Reads the journal from a sequence on, following it as it grows and rolls over. When the
+     * records after the sequence are gone, the first key returned holds an
+     * {@link java.nio.file.StandardWatchEventKinds#OVERFLOW} event counting the missed records.
+     */
+    class Cursor implements Closeable {
+
+        private long lastSequence;
+        //the key following an overflow key
+        private WatchKey pending;
+        private FileChannel channel;
+        private Path segment;
+        private Object segmentIdentity;
+
+        private Cursor(final long afterSequence) {
+            this.lastSequence = afterSequence;
+        }
+
+        /**
+         * @return the next journaled key, or null once the cursor reached the end of the journal
+         */
+        WatchKey next() throws IOException {
+            if (pending != null) {
+                final WatchKey key = pending;
+                pending = null;
+                return key;
+            }
+            while (true) {
+                if (channel == null && !open(Files.exists(previous) ? previous : journal)) {
+                    return null;
+                }
+                final Record record = Record.read(channel);
+                if (record == null) {
+                    if (!advance()) {
+                        return null;
+                    }
+                    continue;
+                }
+                if (record.sequence <= lastSequence) {
+                    continue;
+                }
+                final long missed = record.sequence - lastSequence - 1;
+                lastSequence = record.sequence;
+                final WatchEventsWrapper wrapper = WatchEventsCodec.decode(record.batch).get(0);
+                final WatchKey key = new JGitWatchService.JGitWatchKey(wrapper.getWatchable(),
+                                                                       Collections.unmodifiableList(wrapper.getEvents()),
+                                                                       record.sequence);
+                if (missed > 0) {
+                    pending = key;
+                    return new JGitWatchService.JGitWatchKey(key.watchable(),
+                                                             Collections.singletonList(new JGitWatchService.OverflowEvent((int) Math.min(missed,
+                                                                                                                                         Integer.MAX_VALUE))));
+                }
+                return key;
+            }
+        }
+
+        /**
+         * Moves on at the end of a segment: to the journal after the previous segment, or back
+         * to the start of a segment that was replaced while it was read.
+         */
+        private boolean advance() throws IOException {
+            final boolean replaced = !Objects.equals(segmentIdentity,
+                                                     identityOf(segment));
+            if (segment.equals(previous)) {
+                return open(replaced ? previous : journal);
+            }
+            //the journal rolled over, everything it had was read before the move
+            return replaced && open(journal);
+        }
+
+        private boolean open(final Path next) throws IOException {
+            close();
+            try {
+                channel = FileChannel.open(next,
+                                           StandardOpenOption.READ);
+            } catch (final NoSuchFileException e) {
+                return false;
+            }
+            segment = next;
+            segmentIdentity = identityOf(next);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
@@ -17,11 +17,14 @@
 
 package me.porcelli.nio.jgit.impl;
 
+import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
+import java.nio.file.WatchService;
 import java.util.List;
 
+import me.porcelli.nio.jgit.fs.WatchFilter;
 import me.porcelli.nio.jgit.fs.options.CommentedOption;
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
@@ -48,6 +51,13 @@ public abstract class JGitFileSystem extends FileSystem implements FileSystemSta
 
     abstract void setState(String state);
 
+    /**
+     * Starts a commit that doesn't hold the file system lock, unless the file system is on
+     * batch. Entering the batch state waits for the started ones to end.
+     * @return ends the commit, null when on batch
+     */
+    abstract Runnable beginUnlockedWrite();
+
     abstract CommitInfo buildCommitInfo(String defaultMessage,
                                         CommentedOption op);
 
@@ -81,6 +91,53 @@ public abstract class JGitFileSystem extends FileSystem implements FileSystemSta
 
     abstract public boolean hasBeenInUse();
 
+    /**
+     * Keeps the repository open until the returned lease is closed, even if the file system is
+     * evicted meanwhile. Holding the lock holds a lease too, operations that read the repository
+     * without the lock take one around their accesses.
+     */
+    abstract public FileSystemLease lease();
+
+    /**
+     * Like {@link #lease()}, but the lease isn't tied to the calling thread: it can be closed from
+     * any thread, for resources outliving the operation such as streams and asynchronous runs.
+     * Taken while holding a {@link #lease()}, it's a lease on the same repository.
+     */
+    abstract public FileSystemLease retain();
+
+    /**
+     * @return false if the repository was already closed because the file system was evicted
+     */
+    abstract boolean tryAcquireLease();
+
+    /**
+     * Like {@link #tryAcquireLease()}, but reopens the repository if it was closed.
+     */
+    abstract void acquireLease();
+
+    abstract void releaseLease();
+
+    /**
+     * Called when this instance is dropped from the file systems cache: releases the repository
+     * and lock resources as soon as no operation holds the file system lock. The file system is
+     * not closed, a new instance is created on next access.
+     */
+    abstract public void evict();
+
+    /**
+     * Creates a watch service that only receives the events matching the given filter, the
+     * matching is done when events are published instead of by each consumer.
+     */
+    abstract public WatchService newWatchService(WatchFilter filter) throws IOException;
+
+    /**
+     * Creates a watch service that first receives the journaled events published after the given
+     * sequence, then the new ones. Its keys are {@link me.porcelli.nio.jgit.fs.SequencedWatchKey}s,
+     * so a consumer can store the last sequence it handled and resume from it.
+     * @throws UnsupportedOperationException when the events journal is not enabled
+     */
+    abstract public WatchService newWatchService(long afterSequence) throws IOException;
+
     abstract void notifyExternalUpdate();
 
     abstract void notifyPostCommit(int exitCode);
@@ -37,10 +37,15 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.PatternSyntaxException;
 
 import me.porcelli.nio.jgit.fs.FileSystemState;
+import me.porcelli.nio.jgit.fs.WatchFilter;
 import me.porcelli.nio.jgit.fs.options.CommentedOption;
 import me.porcelli.nio.jgit.impl.hook.FileSystemHookExecutionContext;
 import me.porcelli.nio.jgit.impl.hook.FileSystemHooks;
@@ -77,12 +82,20 @@ public class JGitFileSystemImpl extends JGitFileSystem {
     private final CredentialsProvider credential;
     private final Map<FileSystemHooks, ?> fsHooks;
     private final AtomicInteger numberOfCommitsSinceLastGC = new AtomicInteger(0);
-    private FileSystemState state = FileSystemState.NORMAL;
+    private volatile FileSystemState state = FileSystemState.NORMAL;
+    //held for read by unlocked commits, for write by state changes
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
     private CommitInfo batchCommitInfo = null;
     private Map<Path, Boolean> hadCommitOnBatchState = new ConcurrentHashMap<>();
     private JGitFileSystemLock lock;
     private JGitFileSystemsEventsManager fsEventsManager;
 
+    //operations using the repository, resources of an evicted instance are released when it drops to zero
+    private static final int RELEASED = -1;
+    private static final int RELEASING = -2;
+    private final AtomicInteger leases = new AtomicInteger();
+    private volatile boolean evicted = false;
+
     private List<WatchEvent<?>> postponedWatchEvents = Collections.synchronizedList(new ArrayList<>());
 
     public JGitFileSystemImpl(final JGitFileSystemProvider provider,
@@ -301,6 +314,22 @@ public class JGitFileSystemImpl extends JGitFileSystem {
         return fsEventsManager.newWatchService(name);
     }
 
+    @Override
+    public WatchService newWatchService(final WatchFilter filter)
+            throws UnsupportedOperationException, IOException {
+        checkClosed();
+        return fsEventsManager.newWatchService(name,
+                                               filter);
+    }
+
+    @Override
+    public WatchService newWatchService(final long afterSequence)
+            throws UnsupportedOperationException, IOException {
+        checkClosed();
+        return fsEventsManager.newWatchService(name,
+                                               afterSequence);
+    }
+
     @Override
     public void close() throws IOException {
         if (isClosed) {
@@ -381,11 +410,25 @@ public class JGitFileSystemImpl extends JGitFileSystem {
 
     @Override
     public void setState(String state) {
+        stateLock.writeLock().lock();
         try {
             this.state = FileSystemState.valueOf(state);
         } catch (final Exception ex) {
             this.state = FileSystemState.NORMAL;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Runnable beginUnlockedWrite() {
+        final Lock readLock = stateLock.readLock();
+        readLock.lock();
+        if (isOnBatch()) {
+            readLock.unlock();
+            return null;
         }
+        return readLock::unlock;
     }
 
     @Override
@@ -479,12 +522,120 @@ public class JGitFileSystemImpl extends JGitFileSystem {
 
     @Override
     public void lock() {
-        lock.lock();
+        lock(null);
+    }
+
+    @Override
+    public void lock(String operation) {
+        acquireLease();
+        try {
+            lock.lock(operation);
+        } catch (RuntimeException e) {
+            releaseLease();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean tryLock(String operation,
+                           long timeout,
+                           TimeUnit unit) {
+        acquireLease();
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(operation,
+                                  timeout,
+                                  unit);
+        } finally {
+            if (!locked) {
+                releaseLease();
+            }
+        }
+        return locked;
     }
 
     @Override
     public void unlock() {
         lock.unlock();
+        releaseLease();
+    }
+
+    @Override
+    public FileSystemLease lease() {
+        acquireLease();
+        return FileSystemLease.once(this::releaseLease);
+    }
+
+    @Override
+    public FileSystemLease retain() {
+        return lease();
+    }
+
+    @Override
+    public boolean tryAcquireLease() {
+        while (true) {
+            final int count = leases.get();
+            if (count < 0) {
+                return false;
+            }
+            if (leases.compareAndSet(count,
+                                     count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unlike {@link #tryAcquireLease()}, also leases an instance whose repository was released,
+     * for callers still holding it directly: the repository reopens its files on access and is
+     * released again with the last lease.
+     */
+    @Override
+    public void acquireLease() {
+        while (!tryAcquireLease()) {
+            if (leases.get() == RELEASING) {
+                //the repository is being closed, it's reused once done
+                Thread.yield();
+            } else if (leases.compareAndSet(RELEASED,
+                                            1)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void releaseLease() {
+        if (leases.updateAndGet(count -> count > 0 ? count - 1 : count) == 0 && evicted) {
+            releaseResources();
+        }
+    }
+
+    @Override
+    public void evict() {
+        evicted = true;
+        releaseResources();
+    }
+
+    boolean hasReleasedResources() {
+        return leases.get() == RELEASED;
+    }
+
+    /**
+     * Closes the repository if no lease is held. Leases taken meanwhile wait for the close to
+     * complete, so no operation uses the repository while it's being closed.
+     */
+    private void releaseResources() {
+        if (isClosed || !leases.compareAndSet(0,
+                                              RELEASING)) {
+            return;
+        }
+        try {
+            git.getRepository().close();
+            //shared with the instance replacing this one, which may be holding it
+            lock.closeIfIdle();
+        } finally {
+            leases.set(RELEASED);
+        }
     }
 
     public JGitFileSystemLock getLock() {
@@ -513,7 +664,8 @@ public class JGitFileSystemImpl extends JGitFileSystem {
 
     @Override
     public boolean hasBeenInUse() {
-        return lock.hasBeenInUse();
+        //evicting would drop the batch state, the proxies would resume on a fresh instance
+        return isOnBatch() || lock.hasBeenInUse();
     }
 
     @Override
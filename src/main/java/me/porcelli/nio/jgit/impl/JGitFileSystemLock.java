@@ -27,10 +27,21 @@ public class JGitFileSystemLock extends FileSystemLock {
     public JGitFileSystemLock(Git git,
                               TimeUnit t,
                               long duration) {
+        this(git,
+             t,
+             duration,
+             false);
+    }
+
+    public JGitFileSystemLock(Git git,
+                              TimeUnit t,
+                              long duration,
+                              boolean singleProcess) {
 
         super(git.getRepository().getDirectory(),
               "af.lock",
               t,
-              duration);
+              duration,
+              singleProcess);
     }
 }
@@ -20,6 +20,7 @@ package me.porcelli.nio.jgit.impl;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -61,19 +62,27 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -94,7 +103,13 @@ import me.porcelli.nio.jgit.impl.config.ConfigProperties;
 import me.porcelli.nio.jgit.impl.daemon.git.Daemon;
 import me.porcelli.nio.jgit.impl.daemon.ssh.BaseGitCommand;
 import me.porcelli.nio.jgit.impl.daemon.ssh.GitSSHService;
+import me.porcelli.nio.jgit.impl.hook.CommitEvent;
+import me.porcelli.nio.jgit.impl.hook.CommitListener;
 import me.porcelli.nio.jgit.impl.hook.FileSystemHooks;
+import me.porcelli.nio.jgit.impl.hook.PostCommitHookRunner;
+import me.porcelli.nio.jgit.impl.hook.PreReceiveListener;
+import me.porcelli.nio.jgit.impl.hook.ReceiveEvent;
+import me.porcelli.nio.jgit.impl.manager.FileSystemsDiscovery;
 import me.porcelli.nio.jgit.impl.manager.JGitFileSystemsManager;
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.commands.Clone;
@@ -109,6 +124,7 @@ import me.porcelli.nio.jgit.impl.op.model.PathType;
 import me.porcelli.nio.jgit.impl.op.model.RevertCommitContent;
 import me.porcelli.nio.jgit.impl.util.DescriptiveThreadFactory;
 import me.porcelli.nio.jgit.impl.util.EncodingUtil;
+import me.porcelli.nio.jgit.impl.util.WindowCacheUtil;
 import me.porcelli.nio.jgit.security.AuthenticationService;
 import me.porcelli.nio.jgit.security.FileSystemAuthorization;
 import me.porcelli.nio.jgit.security.PublicKeyAuthenticator;
@@ -117,12 +133,14 @@ import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.internal.ketch.KetchLeaderCache;
 import org.eclipse.jgit.internal.ketch.KetchSystem;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.jgit.transport.ReceivePack;
@@ -135,7 +153,6 @@ import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
 import org.eclipse.jgit.transport.resolver.UploadPackFactory;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FileUtils;
-import org.eclipse.jgit.util.ProcessResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -174,8 +191,31 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
     private GitSSHService gitSSHService = null;
 
+    //guards the start and stop of the daemon and SSH services
+    private final Object servicesLock = new Object();
+
+    private volatile CompletableFuture<Void> servicesStartup = CompletableFuture.completedFuture(null);
+
+    private final Map<String, CompletableFuture<Void>> pushNotifications = new ConcurrentHashMap<>();
+
+    private AuthenticationService sshUserPassAuthenticator;
+
+    private PublicKeyAuthenticator sshPublicKeyAuthenticator;
+
     private FS detectedFS = FS.DETECTED;
 
+    private PostCommitHookRunner postCommitHooks;
+
+    //null when garbage collection is triggered by the commit counter
+    private JGitMaintenanceScheduler maintenance;
+
+    private final List<CommitListener> commitListeners = new CopyOnWriteArrayList<>();
+
+    private final List<PreReceiveListener> preReceiveListeners = new CopyOnWriteArrayList<>();
+
+    //per file system and branch, the commits of the current batch, notified once it ends
+    private final Map<String, Map<String, CommitEvent>> batchedCommits = new ConcurrentHashMap<>();
+
     private ExecutorService executorService;
 
     final KetchSystem system = new KetchSystem();
@@ -223,6 +263,12 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         setupConfigs(gitPrefs);
 
+        setupWindowCache();
+
+        setupPostCommitHooks();
+
+        setupMaintenance();
+
         setupFileSystemsManager();
 
         setupFSEvents();
@@ -233,13 +279,140 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         setupFullHostNames();
 
-        setupDaemon();
+        setupServices();
 
-        setupGitSSH();
+        setupDiscovery();
+    }
+
+    private void setupServices() {
+        if (config.isServicesAsyncStartup() && (config.isDaemonEnabled() || config.isSshEnabled())) {
+            servicesStartup = CompletableFuture.runAsync(this::startServices,
+                                                         executorService);
+            servicesStartup.whenComplete((result, error) -> {
+                if (error != null) {
+                    LOG.error("Failed to start git daemon and SSH services",
+                              error);
+                }
+            });
+        } else {
+            startServices();
+        }
+    }
+
+    private void startServices() {
+        synchronized (servicesLock) {
+            setupDaemon();
+
+            setupGitSSH();
+        }
+    }
+
+    /**
+     * @return completes once the git daemon and SSH services, if enabled, are started
+     */
+    public CompletableFuture<Void> servicesStarted() {
+        return servicesStartup;
+    }
+
+    private void awaitServicesStartup() {
+        try {
+            servicesStartup.join();
+        } catch (final Exception e) {
+            LOG.debug("Services startup failed",
+                      e);
+        }
+    }
+
+    private void setupDiscovery() {
+        if (!config.isDiscoveryEnabled()) {
+            return;
+        }
+        final List<String> discovered = discoverFileSystems();
+        final int warmUp = Math.min(config.getDiscoveryWarmUp(),
+                                    config.getJgitFileSystemsInstancesCache());
+        if (warmUp > 0 && !discovered.isEmpty()) {
+            warmUpFileSystems(discovered.subList(0,
+                                                 Math.min(warmUp,
+                                                          discovered.size())));
+        }
+    }
+
+    private void setupWindowCache() {
+        //JVM wide, left to the application unless configured here
+        if (!config.isWindowCacheConfigured()) {
+            return;
+        }
+        final WindowCacheConfig windowCacheConfig = new WindowCacheConfig();
+        windowCacheConfig.setPackedGitLimit(config.getPackedGitLimit());
+        windowCacheConfig.setPackedGitWindowSize(config.getPackedGitWindowSize());
+        windowCacheConfig.setPackedGitMMAP(config.isPackedGitMMAP());
+        windowCacheConfig.setPackedGitOpenFiles(config.getPackedGitOpenFiles());
+        windowCacheConfig.setDeltaBaseCacheLimit(config.getDeltaBaseCacheLimit());
+        WindowCacheUtil.install(windowCacheConfig);
+    }
+
+    private void setupPostCommitHooks() {
+        postCommitHooks = new PostCommitHookRunner(() -> detectedFS,
+                                                   config.isHooksAsync() ? config.getHooksThreads() : 0,
+                                                   config.getHooksMaxPending());
+        ServiceLoader.load(CommitListener.class).forEach(commitListeners::add);
+        ServiceLoader.load(PreReceiveListener.class).forEach(preReceiveListeners::add);
+    }
+
+    /**
+     * Registers a listener called for every commit made through the file systems of this provider.
+     */
+    public void addCommitListener(final CommitListener listener) {
+        commitListeners.add(checkNotNull("listener",
+                                         listener));
+    }
+
+    public void removeCommitListener(final CommitListener listener) {
+        commitListeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener called for every ref update pushed to the file systems of this provider.
+     */
+    public void addPreReceiveListener(final PreReceiveListener listener) {
+        preReceiveListeners.add(checkNotNull("listener",
+                                             listener));
+    }
+
+    public void removePreReceiveListener(final PreReceiveListener listener) {
+        preReceiveListeners.remove(listener);
+    }
+
+    private void setupMaintenance() {
+        if (config.isMaintenanceEnabled()) {
+            maintenance = new JGitMaintenanceScheduler(config,
+                                                       fsName -> fsManager.containsKey(fsName) ? fsManager.get(fsName) : null);
+        }
+    }
+
+    /**
+     * Records a commit for the maintenance scheduler, if enabled.
+     * @return false if garbage collection is left to the commit counter
+     */
+    private boolean scheduleMaintenance(final JGitFileSystem fileSystem) {
+        if (maintenance == null) {
+            return false;
+        }
+        maintenance.recordCommit(fileSystem);
+        return true;
+    }
+
+    /**
+     * Runs a maintenance round right away, for the repositories committed to since the last one.
+     */
+    void runMaintenance() {
+        if (maintenance != null) {
+            maintenance.runRound();
+        }
     }
 
     private void setupFSEvents() {
-        fsEventsManager = new JGitFileSystemsEventsManager();
+        fsEventsManager = new JGitFileSystemsEventsManager(config);
     }
 
     protected void setupFileSystemsManager() {
@@ -323,8 +496,33 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         this.fsEventsManager.shutdown();
     }
 
+    /**
+     * @return lock wait/hold statistics and current holder for each known file system
+     */
+    public Map<String, FileSystemLockMetrics> getLockMetrics() {
+        return fsManager.getLockMetrics();
+    }
+
+    /**
+     * @return configured limits and current usage of the pack window cache shared by all repositories
+     */
+    public PackCacheMetrics getPackCacheMetrics() {
+        final WindowCacheConfig windowCacheConfig = WindowCacheUtil.getInstalled();
+        return new PackCacheMetrics(windowCacheConfig.getPackedGitLimit(),
+                                    windowCacheConfig.getPackedGitWindowSize(),
+                                    windowCacheConfig.isPackedGitMMAP(),
+                                    windowCacheConfig.getPackedGitOpenFiles(),
+                                    windowCacheConfig.getDeltaBaseCacheLimit(),
+                                    WindowCacheStats.getOpenFiles(),
+                                    WindowCacheStats.getOpenBytes());
+    }
+
     public void onDisposeFileSystem(final JGitFileSystem fileSystem) {
         onCloseFileSystem(fileSystem);
+        if (maintenance != null) {
+            maintenance.forget(fileSystem.getName());
+        }
+        postCommitHooks.forget(fileSystem.getGit().getRepository());
         fsManager.remove(fileSystem.id());
     }
 
@@ -335,8 +533,11 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
     @Override
     public void setJAASAuthenticator(AuthenticationService authenticator) {
-        if (gitSSHService != null) {
-            gitSSHService.setUserPassAuthenticator(authenticator);
+        synchronized (servicesLock) {
+            this.sshUserPassAuthenticator = authenticator;
+            if (gitSSHService != null) {
+                gitSSHService.setUserPassAuthenticator(authenticator);
+            }
         }
     }
 
@@ -350,8 +551,11 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         checkNotNull("authenticator",
                      authenticator);
 
-        if (gitSSHService != null) {
-            gitSSHService.setPublicKeyAuthenticator(authenticator);
+        synchronized (servicesLock) {
+            this.sshPublicKeyAuthenticator = authenticator;
+            if (gitSSHService != null) {
+                gitSSHService.setPublicKeyAuthenticator(authenticator);
+            }
         }
     }
 
@@ -413,6 +617,8 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         }};
 
         gitSSHService = new GitSSHService();
+        gitSSHService.setUserPassAuthenticator(sshUserPassAuthenticator);
+        gitSSHService.setPublicKeyAuthenticator(sshPublicKeyAuthenticator);
 
         gitSSHService.setup(config.getSshFileCertDir(),
                             InetSocketAddress.createUnresolved(config.getSshHostAddr(),
@@ -431,30 +637,65 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
     public <T> ReceivePack getReceivePack(final String protocol, final T req, final Repository db) {
         return new ReceivePack(db) {
-            {
 
-                final JGitFileSystem fs = fsManager.get(db);
+            private final JGitFileSystem fs = fsManager.get(db);
+
+            //the file system is locked from the pre-receive hook to the post-receive one
+            private final AtomicBoolean locked = new AtomicBoolean();
+
+            {
                 final Map<String, RevCommit> oldTreeRefs = new HashMap<>();
 
                 setPreReceiveHook((rp, commands2) -> {
-                    fs.lock();
-                    final User user = extractUser(req);
-                    for (final ReceiveCommand command : commands2) {
-                        fs.checkBranchAccess(command,
-                                             user);
-                        final RevCommit lastCommit = fs.getGit().getLastCommit(command.getRefName());
-                        oldTreeRefs.put(command.getRefName(),
-                                        lastCommit);
+                    fs.lock("receive-pack");
+                    locked.set(true);
+                    try {
+                        final User user = extractUser(req);
+                        for (final ReceiveCommand command : commands2) {
+                            fs.checkBranchAccess(command,
+                                                 user);
+                            notifyPreReceive(fs,
+                                             command,
+                                             user.getIdentifier());
+                            if (command.getResult() == ReceiveCommand.Result.NOT_ATTEMPTED) {
+                                final RevCommit lastCommit = fs.getGit().getLastCommit(command.getRefName());
+                                oldTreeRefs.put(command.getRefName(),
+                                                lastCommit);
+                            }
+                        }
+                    } catch (final RuntimeException e) {
+                        LOG.error("Pre-receive of [" + fs.getName() + "] failed, rejecting the push.",
+                                  e);
+                        for (final ReceiveCommand command : commands2) {
+                            if (command.getResult() == ReceiveCommand.Result.NOT_ATTEMPTED) {
+                                command.setResult(ReceiveCommand.Result.REJECTED_OTHER_REASON,
+                                                  "pre-receive failed");
+                            }
+                        }
+                    }
+                    //nothing left to update, no need to hold the lock until the post-receive hook
+                    if (commands2.stream().noneMatch(command -> command.getResult() == ReceiveCommand.Result.NOT_ATTEMPTED)) {
+                        unlock();
                     }
                 });
 
                 setPostReceiveHook((rp, commands) -> {
-                    fs.unlock();
+                    unlock();
                     fs.notifyExternalUpdate();
                     final User user = extractUser(req);
+                    if (config.isPushNotifyAggregate()) {
+                        notifyPushedRefs(fs,
+                                         "<" + protocol + ">",
+                                         user.getIdentifier(),
+                                         commands);
+                        return;
+                    }
                     for (Map.Entry<String, RevCommit> oldTreeRef : oldTreeRefs.entrySet()) {
-                        final List<RevCommit> commits = fs.getGit().listCommits(oldTreeRef.getValue(),
-                                                                                fs.getGit().getLastCommit(oldTreeRef.getKey()));
+                        final List<RevCommit> commits;
+                        try (final FileSystemLease lease = fs.lease()) {
+                            commits = fs.getGit().listCommits(oldTreeRef.getValue(),
+                                                              fs.getGit().getLastCommit(oldTreeRef.getKey()));
+                        }
                         for (final RevCommit revCommit : commits) {
                             final RevTree parent = revCommit.getParentCount() > 0 ? revCommit.getParent(0).getTree() : null;
                             notifyDiffs(fs,
@@ -468,14 +709,98 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                     }
                 });
             }
+
+            @Override
+            public void receive(final InputStream input,
+                                final OutputStream output,
+                                final OutputStream messages) throws IOException {
+                try {
+                    super.receive(input,
+                                  output,
+                                  messages);
+                } finally {
+                    //the post-receive hook is skipped when the push fails in between
+                    unlock();
+                }
+            }
+
+            private void unlock() {
+                if (locked.compareAndSet(true,
+                                         false)) {
+                    fs.unlock();
+                }
+            }
         };
     }
 
+    /**
+     * Publishes a single old tip to new tip diff per pushed ref. The tips are the ones the commands
+     * updated the refs with, the diffs are computed on the executor once the push is done, in push
+     * order per file system.
+     */
+    void notifyPushedRefs(final JGitFileSystem fs,
+                          final String sessionId,
+                          final String userName,
+                          final Collection<ReceiveCommand> commands) {
+        final List<ReceiveCommand> updates = new ArrayList<>(commands);
+        final Runnable notification = () -> {
+            for (final ReceiveCommand update : updates) {
+                if (update.getNewId().equals(ObjectId.zeroId()) || update.getNewId().equals(update.getOldId())) {
+                    continue;
+                }
+                try (final FileSystemLease lease = fs.lease()) {
+                    final RevCommit oldTip = update.getOldId().equals(ObjectId.zeroId()) ? null : fs.getGit().resolveRevCommit(update.getOldId());
+                    final RevCommit newTip = fs.getGit().resolveRevCommit(update.getNewId());
+                    notifyDiffs(fs,
+                                update.getRefName(),
+                                sessionId,
+                                userName,
+                                newTip.getFullMessage(),
+                                oldTip != null ? oldTip.getTree() : null,
+                                newTip.getTree());
+                } catch (final Exception e) {
+                    LOG.error("Failed to notify the push of [" + update.getRefName() + "] on [" + fs.getName() + "].",
+                              e);
+                }
+            }
+        };
+        final CompletableFuture<Void> pending = pushNotifications.compute(fs.getName(),
+                                                                          (name, previous) -> {
+                                                                              final CompletableFuture<Void> after = previous != null ? previous : CompletableFuture.completedFuture(null);
+                                                                              //a failed notification doesn't hold back the next ones
+                                                                              return after.handle((result, error) -> null)
+                                                                                      .thenRunAsync(notification,
+                                                                                                    executorService);
+                                                                          });
+        pending.whenComplete((result, error) -> {
+            pushNotifications.remove(fs.getName(),
+                                     pending);
+            if (error != null) {
+                LOG.error("Failed to notify a push on [" + fs.getName() + "].",
+                          error);
+            }
+        });
+    }
+
+    /**
+     * @return completes once the push notifications queued so far for the given file system are published
+     */
+    CompletableFuture<Void> pushNotified(final String fsName) {
+        return pushNotifications.getOrDefault(fsName,
+                                              CompletableFuture.completedFuture(null));
+    }
+
     public <T> RepositoryResolverImpl<T> getRepositoryResolver() {
         return new RepositoryResolverImpl<>();
     }
 
     void buildAndStartDaemon() {
+        synchronized (servicesLock) {
+            doBuildAndStartDaemon();
+        }
+    }
+
+    private void doBuildAndStartDaemon() {
         if (daemonService == null || !daemonService.isRunning()) {
             daemonService = new Daemon(new InetSocketAddress(config.getDaemonHostAddr(),
                                                              config.getDaemonPort()),
@@ -508,6 +833,21 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
      * provider can be reactivated by attempting to open a new filesystem or by creating a new filesystem.
      */
     public void shutdown() {
+        awaitServicesStartup();
+
+        try {
+            if (!postCommitHooks.awaitIdle(30,
+                                           TimeUnit.SECONDS)) {
+                LOG.warn("Post-commit hooks still running after 30 seconds, shutting down anyway");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (final CompletableFuture<Void> pending : pushNotifications.values()) {
+            //failures are logged when they happen
+            pending.handle((result, error) -> null).join();
+        }
 
         for (JGitFileSystem jGitFileSystem : fsManager.getOpenFileSystems()) {
             try {
@@ -518,6 +858,9 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         }
         shutdownSSH();
         forceStopDaemon();
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
         fsManager.clear();
     }
 
@@ -603,13 +946,82 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                              fsName).enableKetch();
         }
 
-        if (config.isDaemonEnabled() && daemonService != null && !daemonService.isRunning()) {
+        if (config.isDaemonEnabled() && servicesStartup.isDone() && daemonService != null && !daemonService.isRunning()) {
             buildAndStartDaemon();
         }
 
         return fs;
     }
 
+    /**
+     * Registers a file system for each repository under the repositories container dir that is not
+     * registered yet. Repositories are not opened, each file system is created on first access.
+     * @return the names of the registered file systems, most recently used first
+     */
+    public List<String> discoverFileSystems() {
+        final List<FileSystemsDiscovery.DiscoveredFileSystem> discovered;
+        try {
+            discovered = new FileSystemsDiscovery(getGitRepoContainerDir()).scan();
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final List<String> registered = new ArrayList<>();
+        for (final FileSystemsDiscovery.DiscoveredFileSystem discoveredFS : discovered) {
+            final String fsName = discoveredFS.getName();
+            try {
+                validateFSName(fsName,
+                               fsName);
+            } catch (final FileSystemAlreadyExistsException | AmbiguousFileSystemNameException e) {
+                LOG.debug("Skipping discovered repository " + fsName + ": " + e.getMessage());
+                continue;
+            }
+            fsManager.newFileSystem(() -> fullHostNames,
+                                    () -> createNewGitRepo(Collections.emptyMap(),
+                                                           fsName),
+                                    () -> fsName,
+                                    () -> buildCredential(null,
+                                                          null),
+                                    () -> fsEventsManager,
+                                    Collections::emptyMap,
+                                    false);
+            registered.add(fsName);
+        }
+        LOG.info("Discovered " + registered.size() + " repositories in " + getGitRepoContainerDir());
+        return registered;
+    }
+
+    /**
+     * Creates the given file systems and loads their refs in background, on at most
+     * nio.git.discovery.warmup.threads threads.
+     */
+    public CompletableFuture<Void> warmUpFileSystems(final List<String> fsNames) {
+        if (fsNames.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final ExecutorService warmUpExecutor = Executors.newFixedThreadPool(Math.min(config.getDiscoveryWarmUpThreads(),
+                                                                                     fsNames.size()),
+                                                                            new DescriptiveThreadFactory());
+        final CompletableFuture<?>[] warmUps = fsNames.stream()
+                .map(fsName -> CompletableFuture.runAsync(() -> warmUpFileSystem(fsName),
+                                                          warmUpExecutor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(warmUps).whenComplete((result, error) -> warmUpExecutor.shutdown());
+    }
+
+    private void warmUpFileSystem(final String fsName) {
+        try {
+            final JGitFileSystem fs = fsManager.get(fsName);
+            if (fs != null) {
+                try (final FileSystemLease lease = fs.lease()) {
+                    fs.getGit().getRepository().getRefDatabase().getRefsByPrefix(Constants.R_HEADS);
+                }
+            }
+        } catch (final Exception e) {
+            LOG.warn("Warm up of file system " + fsName + " failed",
+                     e);
+        }
+    }
+
     static Map<FileSystemHooks, ?> extractFSHooks(Map<String, ?> env) {
 
         return Arrays.stream(FileSystemHooks.values())
@@ -620,6 +1032,12 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
     private void validateFSName(URI uri,
                                 String fsName) {
+        validateFSName(uri.toString(),
+                       fsName);
+    }
+
+    private void validateFSName(String uri,
+                                String fsName) {
         if (fsManager.containsKey(fsName)) {
             throw new FileSystemAlreadyExistsException("There is already a FS for " + uri + ".");
         }
@@ -745,7 +1163,8 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         return FileSystemLockManager.getInstance().getFileSystemLock(directory,
                                                                      lockName + ".lock",
                                                                      LOCK_LAST_ACCESS_TIME_UNIT,
-                                                                     LOCK_LAST_ACCESS_THRESHOLD);
+                                                                     LOCK_LAST_ACCESS_THRESHOLD,
+                                                                     config.isLockSingleProcess());
     }
 
     private File getRepoDest(Map<String, ?> env,
@@ -804,12 +1223,12 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         JGitFileSystem fileSystem = deepLookupFSFrom(uri);
 
         if (hasSyncFlag(uri)) {
-            try {
+            try (final FileSystemLease lease = fileSystem.lease()) {
                 final String treeRef = "master";
                 final ObjectId oldHead = fileSystem.getGit().getTreeFromRef(treeRef);
                 final Map<String, String> params = getQueryParams(uri);
                 try {
-                    fileSystem.lock();
+                    fileSystem.lock("sync");
                     final Map.Entry<String, String> remote = new AbstractMap.SimpleEntry<>("upstream",
                                                                                            params.get("sync"));
                     fileSystem.getGit().fetch(fileSystem.getCredential(),
@@ -832,7 +1251,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
             }
         }
         if (hasPushFlag(uri)) {
-            try {
+            try (final FileSystemLease lease = fileSystem.lease()) {
                 final Map<String, String> params = getQueryParams(uri);
                 fileSystem.getGit().push(fileSystem.getCredential(),
                                          new AbstractMap.SimpleEntry<>("upstream",
@@ -967,9 +1386,28 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                      path);
 
         final JGitPathImpl gPath = toPathImpl(path);
+        final JGitFileSystem fileSystem = cast(gPath.getFileSystem());
 
-        return cast(gPath.getFileSystem()).getGit().blobAsInputStream(gPath.getRefTree(),
-                                                                      gPath.getPath());
+        //the repository stays open until the stream is closed
+        try (final FileSystemLease lease = fileSystem.lease()) {
+            final FileSystemLease streamLease = fileSystem.retain();
+            try {
+                return new FilterInputStream(fileSystem.getGit().blobAsInputStream(gPath.getRefTree(),
+                                                                                   gPath.getPath())) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            streamLease.close();
+                        }
+                    }
+                };
+            } catch (final RuntimeException e) {
+                streamLease.close();
+                throw e;
+            }
+        }
     }
 
     @Override
@@ -980,8 +1418,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                      path);
 
         final JGitPathImpl gPath = toPathImpl(path);
-        final PathInfo result = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                 gPath.getPath());
+        final PathInfo result = pathInfo(gPath);
 
         if (result.getPathType().equals(PathType.DIRECTORY)) {
             throw new NotDirectoryException(path.toString());
@@ -1014,6 +1451,29 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         return (JGitFileSystem) fileSystem;
     }
 
+    private PathInfo pathInfo(final JGitPathImpl path) {
+        final JGitFileSystem fileSystem = cast(path.getFileSystem());
+        try (final FileSystemLease lease = fileSystem.lease()) {
+            return fileSystem.getGit().getPathInfo(path.getRefTree(),
+                                                   path.getPath());
+        }
+    }
+
+    private List<PathInfo> listPathContent(final JGitPathImpl path) {
+        final JGitFileSystem fileSystem = cast(path.getFileSystem());
+        try (final FileSystemLease lease = fileSystem.lease()) {
+            return fileSystem.getGit().listPathContent(path.getRefTree(),
+                                                       path.getPath());
+        }
+    }
+
+    private Ref getRef(final JGitPathImpl path) {
+        final JGitFileSystem fileSystem = cast(path.getFileSystem());
+        try (final FileSystemLease lease = fileSystem.lease()) {
+            return fileSystem.getGit().getRef(path.getRefTree());
+        }
+    }
+
     private CommitInfo buildCommitInfo(final String defaultMessage,
                                        final Collection<?> options) {
         String sessionId = null;
@@ -1084,8 +1544,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
             }
         }
 
-        final PathInfo result = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                 gPath.getPath());
+        final PathInfo result = pathInfo(gPath);
 
         if (result.getPathType().equals(PathType.DIRECTORY)) {
             throw new NotDirectoryException(path.toString());
@@ -1164,15 +1623,13 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         final JGitPathImpl gPath = toPathImpl(path);
 
-        final PathInfo result = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                 gPath.getPath());
+        final PathInfo result = pathInfo(gPath);
 
         if (!result.getPathType().equals(PathType.DIRECTORY)) {
             throw new NotDirectoryException(path.toString());
         }
 
-        final List<PathInfo> pathContent = cast(gPath.getFileSystem()).getGit().listPathContent(gPath.getRefTree(),
-                                                                                                gPath.getPath());
+        final List<PathInfo> pathContent = listPathContent(gPath);
 
         return new DirectoryStream<Path>() {
             boolean isClosed = false;
@@ -1268,8 +1725,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         final JGitPathImpl gPath = toPathImpl(path);
 
-        final PathInfo result = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                 gPath.getPath());
+        final PathInfo result = pathInfo(gPath);
 
         if (!result.getPathType().equals(NOT_FOUND)) {
             throw new FileAlreadyExistsException(path.toString());
@@ -1334,7 +1790,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
             fileSystem.dispose();
             if (System.getProperty("os.name").toLowerCase().contains("windows")) {
                 //this operation forces a cache clean freeing any lock -> windows only issue!
-                new WindowCacheConfig().install();
+                WindowCacheUtil.flush();
             }
 
             fsManager.remove(fileSystem.getName());
@@ -1349,6 +1805,10 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                                   e);
         } finally {
             physicalLock.unlock();
+            //other threads may be queued on the lock, so it stays registered and only its channel is released
+            if (!parentDir.exists()) {
+                physicalLock.closeIfIdle();
+            }
         }
     }
 
@@ -1365,16 +1825,14 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     }
 
     public void deleteAsset(final JGitPathImpl path) throws IOException {
-        final PathInfo result = cast(path.getFileSystem()).getGit().getPathInfo(path.getRefTree(),
-                                                                                path.getPath());
+        final PathInfo result = pathInfo(path);
 
         if (result.getPathType().equals(PathType.DIRECTORY)) {
             if (deleteNonEmptyDirectory()) {
                 deleteResource(path);
                 return;
             }
-            final List<PathInfo> content = cast(path.getFileSystem()).getGit().listPathContent(path.getRefTree(),
-                                                                                               path.getPath());
+            final List<PathInfo> content = listPathContent(path);
             if (content.size() == 1 && content.get(0).getPath().equals(path.getPath().substring(1) + "/.gitkeep")) {
                 delete(path.resolve(".gitkeep"));
                 deleteResource(path);
@@ -1399,14 +1857,15 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     }
 
     public void deleteBranch(final JGitPathImpl path) throws IOException {
-        final Ref branch = cast(path.getFileSystem()).getGit().getRef(path.getRefTree());
+        final Ref branch = getRef(path);
 
         if (branch == null) {
             throw new NoSuchFileException(path.toString());
         }
 
+        lockForWrite(cast(path.getFileSystem()),
+                     "delete-branch");
         try {
-            cast(path.getFileSystem()).lock();
             cast(path.getFileSystem()).getGit().deleteRef(branch);
         } finally {
             cast(path.getFileSystem()).unlock();
@@ -1442,16 +1901,14 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     }
 
     public boolean deleteAssetIfExists(final JGitPathImpl path) throws IOException {
-        final PathInfo result = cast(path.getFileSystem()).getGit().getPathInfo(path.getRefTree(),
-                                                                                path.getPath());
+        final PathInfo result = pathInfo(path);
 
         if (result.getPathType().equals(PathType.DIRECTORY)) {
             if (deleteNonEmptyDirectory()) {
                 deleteResource(path);
                 return true;
             }
-            final List<PathInfo> content = cast(path.getFileSystem()).getGit().listPathContent(path.getRefTree(),
-                                                                                               path.getPath());
+            final List<PathInfo> content = listPathContent(path);
             if (content.size() == 1 && content.get(0).getPath().equals(path.getPath().substring(1) + "/.gitkeep")) {
                 delete(path.resolve(".gitkeep"));
                 return true;
@@ -1521,8 +1978,9 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void merge(final JGitPathImpl source,
                        final JGitPathImpl target) throws IOException {
 
+        lockForWrite(cast(target.getFileSystem()),
+                     "merge");
         try {
-            cast(target.getFileSystem()).lock();
             cast(source.getFileSystem()).getGit().merge(source.getRefTree(),
                                                         target.getRefTree());
         } finally {
@@ -1533,8 +1991,9 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void cherryPick(final JGitPathImpl source,
                             final JGitPathImpl target,
                             final String... commits) throws IOException {
+        lockForWrite(cast(target.getFileSystem()),
+                     "cherry-pick");
         try {
-            cast(target.getFileSystem()).lock();
             cast(source.getFileSystem()).getGit().cherryPick(target, commits);
         } finally {
             cast(target.getFileSystem()).unlock();
@@ -1559,10 +2018,8 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void copyAsset(final JGitPathImpl source,
                            final JGitPathImpl target,
                            final CopyOption... options) throws IOException {
-        final PathInfo sourceResult = cast(source.getFileSystem()).getGit().getPathInfo(source.getRefTree(),
-                                                                                        source.getPath());
-        final PathInfo targetResult = cast(target.getFileSystem()).getGit().getPathInfo(target.getRefTree(),
-                                                                                        target.getPath());
+        final PathInfo sourceResult = pathInfo(source);
+        final PathInfo targetResult = pathInfo(target);
 
         if (!isRoot(target) && targetResult.getPathType() != NOT_FOUND) {
             if (!contains(options,
@@ -1604,10 +2061,8 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void copyAssetContent(final JGitPathImpl source,
                                   final JGitPathImpl target,
                                   final CopyOption... options) throws IOException {
-        final PathInfo sourceResult = cast(source.getFileSystem()).getGit().getPathInfo(source.getRefTree(),
-                                                                                        source.getPath());
-        final PathInfo targetResult = cast(target.getFileSystem()).getGit().getPathInfo(target.getRefTree(),
-                                                                                        target.getPath());
+        final PathInfo sourceResult = pathInfo(source);
+        final PathInfo targetResult = pathInfo(target);
 
         if (!isRoot(target) && targetResult.getPathType() != NOT_FOUND) {
             if (!contains(options,
@@ -1649,8 +2104,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         for (final Path path : newDirectoryStream(source,
                                                   null)) {
             final JGitPathImpl gPath = toPathImpl(path);
-            final PathInfo pathResult = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                         gPath.getPath());
+            final PathInfo pathResult = pathInfo(gPath);
             if (pathResult.getPathType() == DIRECTORY) {
                 directories.add(gPath);
                 continue;
@@ -1745,8 +2199,9 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
     private void createBranch(final JGitPathImpl source,
                               final JGitPathImpl target) {
+        lockForWrite(cast(target.getFileSystem()),
+                     "create-branch");
         try {
-            cast(target.getFileSystem()).lock();
             cast(source.getFileSystem()).getGit().createRef(source.getRefTree(),
                                                             target.getRefTree());
         } finally {
@@ -1755,7 +2210,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     }
 
     private boolean existsBranch(final JGitPathImpl path) {
-        return cast(path.getFileSystem()).getGit().getRef(path.getRefTree()) != null;
+        return getRef(path) != null;
     }
 
     private boolean isBranch(final JGitPathImpl path) {
@@ -1830,10 +2285,8 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void moveAsset(final JGitPathImpl source,
                            final JGitPathImpl target,
                            final CopyOption... options) throws IOException {
-        final PathInfo sourceResult = cast(source.getFileSystem()).getGit().getPathInfo(source.getRefTree(),
-                                                                                        source.getPath());
-        final PathInfo targetResult = cast(target.getFileSystem()).getGit().getPathInfo(target.getRefTree(),
-                                                                                        target.getPath());
+        final PathInfo sourceResult = pathInfo(source);
+        final PathInfo targetResult = pathInfo(target);
 
         if (!isRoot(target) && targetResult.getPathType() != NOT_FOUND) {
             if (!contains(options,
@@ -1876,8 +2329,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         for (final Path path : newDirectoryStream(source,
                                                   null)) {
             final JGitPathImpl gPath = toPathImpl(path);
-            final PathInfo pathResult = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                         gPath.getPath());
+            final PathInfo pathResult = pathInfo(gPath);
             if (pathResult.getPathType() == DIRECTORY) {
                 fromTo.putAll(mapDirectoryContent(gPath,
                                                   composePath(target,
@@ -1935,10 +2387,8 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         final JGitPathImpl gPathA = toPathImpl(pathA);
         final JGitPathImpl gPathB = toPathImpl(pathB);
 
-        final PathInfo resultA = cast(gPathA.getFileSystem()).getGit().getPathInfo(gPathA.getRefTree(),
-                                                                                   gPathA.getPath());
-        final PathInfo resultB = cast(gPathB.getFileSystem()).getGit().getPathInfo(gPathB.getRefTree(),
-                                                                                   gPathB.getPath());
+        final PathInfo resultA = pathInfo(gPathA);
+        final PathInfo resultB = pathInfo(gPathB);
 
         if (resultA.getPathType() == PathType.FILE && resultA.getObjectId().equals(resultB.getObjectId())) {
             return true;
@@ -1981,8 +2431,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         final JGitPathImpl gPath = toPathImpl(path);
 
-        final PathInfo result = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                 gPath.getPath());
+        final PathInfo result = pathInfo(gPath);
 
         if (result.getPathType().equals(NOT_FOUND)) {
             throw new NoSuchFileException(path.toString());
@@ -2000,8 +2449,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         final JGitPathImpl gPath = toPathImpl(path);
 
-        final PathInfo pathResult = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                     gPath.getPath());
+        final PathInfo pathResult = pathInfo(gPath);
         if (pathResult.getPathType().equals(NOT_FOUND)) {
             throw new RuntimeException(path.toString());
         }
@@ -2071,8 +2519,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         final JGitPathImpl gPath = toPathImpl(path);
 
-        final PathInfo pathResult = cast(gPath.getFileSystem()).getGit().getPathInfo(gPath.getRefTree(),
-                                                                                     gPath.getPath());
+        final PathInfo pathResult = pathInfo(gPath);
         if (pathResult.getPathType().equals(NOT_FOUND)) {
             throw new NoSuchFileException(path.toString());
         }
@@ -2157,8 +2604,10 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         if (attribute.equals(FileSystemState.FILE_SYSTEM_STATE_ATTR)) {
             JGitFileSystem fileSystem = (JGitFileSystem) path.getFileSystem();
+            boolean batchEnded = false;
+            List<CommitEvent> batchCommitEvents = Collections.emptyList();
             try {
-                fileSystem.lock();
+                fileSystem.lock("batch-state");
 
                 if (value instanceof CommentedOption) {
                     fileSystem.setBatchCommitInfo("Batch mode",
@@ -2172,15 +2621,23 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                 fileSystem.setState(value.toString());
                 FileSystemState.valueOf(value.toString());
 
+                if (!isOriginalStateBatch && fileSystem.isOnBatch()) {
+                    batchedCommits.remove(fileSystem.getName());
+                }
                 if (isOriginalStateBatch && !fileSystem.isOnBatch()) {
                     fileSystem.setBatchCommitInfo(null);
                     firePostponedBatchEvents(fileSystem);
-                    postCommitHook(fileSystem);
+                    batchCommitEvents = endBatchedCommits(fileSystem);
+                    batchEnded = true;
                 }
                 fileSystem.setHadCommitOnBatchState(false);
             } finally {
                 fileSystem.unlock();
             }
+            if (batchEnded) {
+                postCommitHook(fileSystem);
+            }
+            batchCommitEvents.forEach(this::notifyCommitListeners);
             return;
         }
 
@@ -2203,8 +2660,9 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void lockAndSquash(final Path path,
                                final SquashOption value) {
         final JGitFileSystem fileSystem = (JGitFileSystem) path.getFileSystem();
+        lockForWrite(fileSystem,
+                     "squash");
         try {
-            fileSystem.lock();
             final JGitPathImpl gSource = toPathImpl(path);
             String commitMessage = checkNotEmpty("commitMessage",
                                                  value.getMessage());
@@ -2346,16 +2804,43 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     private void commit(final JGitPathImpl path,
                         final CommitInfo commitInfo,
                         final CommitContent commitContent) {
+        //leased for the unlocked parts: optimistic commits, events and listeners
+        try (final FileSystemLease lease = cast(path.getFileSystem()).lease()) {
+            leasedCommit(path,
+                         commitInfo,
+                         commitContent);
+        }
+    }
 
+    private void leasedCommit(final JGitPathImpl path,
+                              final CommitInfo commitInfo,
+                              final CommitContent commitContent) {
         final JGitFileSystem fileSystem = (JGitFileSystem) path.getFileSystem();
-        try {
-            fileSystem.lock();
+        final String operation = commitContent instanceof CopyCommitContent ? "copy" :
+                commitContent instanceof MoveCommitContent ? "move" : "commit";
+        if (config.isOptimisticCommit()) {
+            final Runnable endUnlockedWrite = fileSystem.beginUnlockedWrite();
+            if (endUnlockedWrite != null) {
+                optimisticCommit(path,
+                                 commitInfo,
+                                 commitContent,
+                                 endUnlockedWrite);
+                return;
+            }
+        }
 
+        boolean committed = false;
+        CommitEvent commitEvent = null;
+        lockForWrite(fileSystem,
+                     operation);
+        try {
             final Git git = fileSystem.getGit();
             final String branchName = path.getRefTree();
             final boolean batchState = fileSystem.isOnBatch();
             final boolean amend = batchState && fileSystem.isHadCommitOnBatchState(path.getRoot());
             final ObjectId oldHead = cast(path.getFileSystem()).getGit().getTreeFromRef(branchName);
+            final RevCommit oldCommit = commitListeners.isEmpty() ? null : git.getLastCommit(branchName);
+            final List<WatchEvent<?>> watchEvents;
 
             final boolean hasCommit;
             if (batchState && fileSystem.getBatchCommitInfo() != null) {
@@ -2373,7 +2858,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
             }
 
             if (!batchState) {
-                if (hasCommit) {
+                if (hasCommit && !scheduleMaintenance(fileSystem)) {
                     int value = fileSystem.incrementAndGetCommitCount();
                     if (value >= config.getCommitLimit()) {
                         git.gc();
@@ -2383,15 +2868,15 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
                 final ObjectId newHead = cast(path.getFileSystem()).getGit().getTreeFromRef(branchName);
 
-                postCommitHook(fileSystem);
+                committed = true;
 
-                notifyDiffs((JGitFileSystem) path.getFileSystem(),
-                            branchName,
-                            commitInfo.getSessionId(),
-                            commitInfo.getName(),
-                            commitInfo.getMessage(),
-                            oldHead,
-                            newHead);
+                watchEvents = notifyDiffs((JGitFileSystem) path.getFileSystem(),
+                                          branchName,
+                                          commitInfo.getSessionId(),
+                                          commitInfo.getName(),
+                                          commitInfo.getMessage(),
+                                          oldHead,
+                                          newHead);
             } else {
                 synchronized (postponedEventsLock) {
 
@@ -2418,6 +2903,43 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
                                                                             newHead);
 
                     fileSystem.addPostponedWatchEvents(postponedWatchEvents);
+                    watchEvents = postponedWatchEvents;
+                }
+            }
+
+            if (hasCommit && !commitListeners.isEmpty()) {
+                if (batchState) {
+                    final CommitInfo batchInfo = fileSystem.getBatchCommitInfo() != null ? fileSystem.getBatchCommitInfo() : commitInfo;
+                    //amends and further writes of the batch are notified as one commit when it ends
+                    batchedCommits.computeIfAbsent(fileSystem.getName(),
+                                                   name -> new ConcurrentHashMap<>())
+                            .merge(branchName,
+                                   new CommitEvent(fileSystem.getName(),
+                                                   branchName,
+                                                   oldCommit,
+                                                   null,
+                                                   null,
+                                                   batchInfo.getSessionId(),
+                                                   batchInfo.getName(),
+                                                   batchInfo.getMessage()),
+                                   (first, latest) -> new CommitEvent(first.getFsName(),
+                                                                      first.getBranch(),
+                                                                      first.getOldCommitId(),
+                                                                      null,
+                                                                      null,
+                                                                      latest.getSessionId(),
+                                                                      latest.getUserName(),
+                                                                      latest.getMessage()));
+                } else {
+                    commitEvent = new CommitEvent(fileSystem.getName(),
+                                                  branchName,
+                                                  oldCommit,
+                                                  git.getLastCommit(branchName),
+                                                  changedPaths(fileSystem,
+                                                               watchEvents),
+                                                  commitInfo.getSessionId(),
+                                                  commitInfo.getName(),
+                                                  commitInfo.getMessage());
                 }
             }
 
@@ -2428,17 +2950,252 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
         } finally {
             fileSystem.unlock();
         }
+
+        if (committed) {
+            postCommitHook(fileSystem);
+        }
+        if (commitEvent != null) {
+            notifyCommitListeners(commitEvent);
+        }
     }
 
+    /**
+     * Commits without holding the file system lock: the commit is published with a
+     * compare-and-swap ref update and replayed on top of concurrent non overlapping
+     * changes. Events are computed from the published commit and its parent, so they
+     * don't include changes made by other writers in the meantime.
+     * @param endUnlockedWrite ends the unlocked write started by the caller, so the file
+     * system can enter the batch state
+     */
+    private void optimisticCommit(final JGitPathImpl path,
+                                  final CommitInfo commitInfo,
+                                  final CommitContent commitContent,
+                                  final Runnable endUnlockedWrite) {
+        final JGitFileSystem fileSystem = (JGitFileSystem) path.getFileSystem();
+        final Git git = fileSystem.getGit();
+        final String branchName = path.getRefTree();
+
+        final Optional<RevCommit> commit;
+        try {
+            commit = git.commitAndGet(branchName,
+                                      commitInfo,
+                                      false,
+                                      null,
+                                      commitContent);
+        } finally {
+            endUnlockedWrite.run();
+        }
+
+        if (commit.isPresent() && !scheduleMaintenance(fileSystem)) {
+            int value = fileSystem.incrementAndGetCommitCount();
+            if (value >= config.getCommitLimit()) {
+                try {
+                    fileSystem.lock("gc");
+                    git.gc();
+                    fileSystem.resetCommitCount();
+                } finally {
+                    fileSystem.unlock();
+                }
+            }
+        }
+
+        postCommitHook(fileSystem);
+
+        if (commit.isPresent()) {
+            final RevCommit newCommit = commit.get();
+            final ObjectId oldHead = newCommit.getParentCount() > 0 ?
+                    git.getCommit(newCommit.getParent(0).getName()).getTree() : null;
+            final List<WatchEvent<?>> watchEvents = notifyDiffs(fileSystem,
+                                                                branchName,
+                                                                commitInfo.getSessionId(),
+                                                                commitInfo.getName(),
+                                                                commitInfo.getMessage(),
+                                                                oldHead,
+                                                                newCommit.getTree());
+            if (!commitListeners.isEmpty()) {
+                notifyCommitListeners(new CommitEvent(fileSystem.getName(),
+                                                      branchName,
+                                                      newCommit.getParentCount() > 0 ? newCommit.getParent(0).copy() : null,
+                                                      newCommit.copy(),
+                                                      changedPaths(fileSystem,
+                                                                   watchEvents),
+                                                      commitInfo.getSessionId(),
+                                                      commitInfo.getName(),
+                                                      commitInfo.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Locks the file system for a write operation, failing with a {@link FileSystemLockTimeoutException}
+     * if the lock is not acquired within the operation's configured timeout, or with a
+     * {@link FileSystemLockInterruptedException} if the thread is interrupted meanwhile.
+     */
+    private void lockForWrite(final JGitFileSystem fileSystem,
+                              final String operation) {
+        final long timeout = config.getLockTimeoutMillis(operation);
+        if (timeout < 0) {
+            fileSystem.lock(operation);
+        } else if (!fileSystem.tryLock(operation,
+                                       timeout,
+                                       TimeUnit.MILLISECONDS)) {
+            throw new FileSystemLockTimeoutException(fileSystem.getName(),
+                                                     operation,
+                                                     timeout);
+        }
+    }
+
+    /**
+     * Runs the post-commit hook, asynchronously unless configured otherwise. Callers must not hold
+     * the file system lock, as they may wait for a hook thread.
+     */
     private void postCommitHook(final JGitFileSystem fileSystem) {
+        try (final FileSystemLease lease = fileSystem.lease()) {
+            //the repository stays open until the run is done, which may be on a hook thread
+            final FileSystemLease runLease = fileSystem.retain();
+            try {
+                postCommitHooks.run(fileSystem.getName(),
+                                    fileSystem.getGit().getRepository(),
+                                    fileSystem::notifyPostCommit,
+                                    runLease::close);
+            } catch (final RuntimeException e) {
+                runLease.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Calls the synchronous listeners on this thread and queues the asynchronous ones behind the
+     * post-commit hooks of the file system. Callers must not hold the file system lock.
+     */
+    private void notifyCommitListeners(final CommitEvent event) {
+        for (final CommitListener listener : commitListeners) {
+            if (listener.isAsync()) {
+                postCommitHooks.submit(event.getFsName(),
+                                       () -> onCommit(listener,
+                                                      event));
+            } else {
+                onCommit(listener,
+                         event);
+            }
+        }
+    }
+
+    private static void onCommit(final CommitListener listener,
+                                 final CommitEvent event) {
+        try {
+            listener.onCommit(event);
+        } catch (final Exception e) {
+            LOG.error("Commit listener [" + listener + "] failed on " + event,
+                      e);
+        }
+    }
+
+    private void notifyPreReceive(final JGitFileSystem fs,
+                                  final ReceiveCommand command,
+                                  final String userName) {
+        if (preReceiveListeners.isEmpty()) {
+            return;
+        }
+        final ReceiveEvent event = new ReceiveEvent(fs.getName(),
+                                                    command,
+                                                    userName,
+                                                    () -> changedPaths(fs,
+                                                                       command.getOldId(),
+                                                                       command.getNewId()));
+        for (final PreReceiveListener listener : preReceiveListeners) {
+            if (event.isRejected()) {
+                return;
+            }
+            try {
+                listener.onPreReceive(event);
+            } catch (final Exception e) {
+                LOG.error("Pre-receive listener [" + listener + "] failed on [" + command.getRefName() + "] of [" + fs.getName() + "], rejecting it.",
+                          e);
+                event.reject("pre-receive listener failed");
+            }
+        }
+    }
 
-        ProcessResult result = detectedFS.runHookIfPresent(fileSystem.getGit().getRepository(),
-                                                           "post-commit",
-                                                           new String[0]);
+    /**
+     * Ends the batch of commits of the file system, which must be locked.
+     * @return one event per branch the batch committed to, from the commit before the batch to
+     * the last one
+     */
+    private List<CommitEvent> endBatchedCommits(final JGitFileSystem fs) {
+        final Map<String, CommitEvent> batched = batchedCommits.remove(fs.getName());
+        if (batched == null) {
+            return Collections.emptyList();
+        }
+        final List<CommitEvent> events = new ArrayList<>();
+        for (final CommitEvent batch : batched.values()) {
+            final RevCommit newCommit = fs.getGit().getLastCommit(batch.getBranch());
+            if (newCommit == null || newCommit.equals(batch.getOldCommitId())) {
+                continue;
+            }
+            events.add(new CommitEvent(batch.getFsName(),
+                                       batch.getBranch(),
+                                       batch.getOldCommitId(),
+                                       newCommit,
+                                       changedPaths(fs,
+                                                    batch.getOldCommitId(),
+                                                    newCommit),
+                                       batch.getSessionId(),
+                                       batch.getUserName(),
+                                       batch.getMessage()));
+        }
+        return events;
+    }
+
+    /**
+     * @param oldCommit null or the zero id when there is none, as for new branches
+     * @param newCommit null or the zero id when there is none, as for deleted branches
+     */
+    private static List<String> changedPaths(final JGitFileSystem fs,
+                                             final ObjectId oldCommit,
+                                             final ObjectId newCommit) {
+        final ObjectId oldTree = oldCommit == null || oldCommit.equals(ObjectId.zeroId()) ? null :
+                fs.getGit().getCommit(oldCommit.name()).getTree();
+        final ObjectId newTree = newCommit == null || newCommit.equals(ObjectId.zeroId()) ? null :
+                fs.getGit().getCommit(newCommit.name()).getTree();
+        final Set<String> paths = new LinkedHashSet<>();
+        for (final DiffEntry diffEntry : fs.getGit().listDiffs(oldTree,
+                                                               newTree)) {
+            if (!diffEntry.getOldPath().equals(DiffEntry.DEV_NULL)) {
+                paths.add("/" + diffEntry.getOldPath());
+            }
+            if (!diffEntry.getNewPath().equals(DiffEntry.DEV_NULL)) {
+                paths.add("/" + diffEntry.getNewPath());
+            }
+        }
+        return new ArrayList<>(paths);
+    }
 
-        if (result.getStatus().equals(ProcessResult.Status.OK)) {
-            fileSystem.notifyPostCommit(result.getExitCode());
+    private static List<String> changedPaths(final JGitFileSystem fs,
+                                             final List<WatchEvent<?>> watchEvents) {
+        final Set<String> paths = new LinkedHashSet<>();
+        for (final WatchEvent<?> watchEvent : watchEvents) {
+            final JGitWatchEvent event = (JGitWatchEvent) watchEvent;
+            if (event.getOldPathUri() != null) {
+                paths.add(JGitWatchEvent.pathInFileSystem(event.getOldPathUri(),
+                                                          fs.getName()));
+            }
+            if (event.getNewPathUri() != null) {
+                paths.add(JGitWatchEvent.pathInFileSystem(event.getNewPathUri(),
+                                                          fs.getName()));
+            }
         }
+        return new ArrayList<>(paths);
+    }
+
+    /**
+     * @return true if the post-commit hooks of the commits done so far have run within the timeout
+     */
+    boolean awaitPostCommitHooks(final long timeout,
+                                 final TimeUnit unit) throws InterruptedException {
+        return postCommitHooks.awaitIdle(timeout,
+                                         unit);
     }
 
     private void firePostponedBatchEvents(JGitFileSystem fileSystem) {
@@ -2451,10 +3208,12 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
             fileSystem.clearPostponedWatchEvents();
 
-            int value = fileSystem.incrementAndGetCommitCount();
-            if (value >= config.getCommitLimit()) {
-                fileSystem.getGit().gc();
-                fileSystem.resetCommitCount();
+            if (!scheduleMaintenance(fileSystem)) {
+                int value = fileSystem.incrementAndGetCommitCount();
+                if (value >= config.getCommitLimit()) {
+                    fileSystem.getGit().gc();
+                    fileSystem.resetCommitCount();
+                }
             }
         }
     }
@@ -2512,8 +3271,11 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
         final String host = tree + "@" + fs.getName();
 
-        final List<DiffEntry> diff = fs.getGit().listDiffs(oldHead,
-                                                           newHead);
+        final List<DiffEntry> diff;
+        try (final FileSystemLease lease = fs.lease()) {
+            diff = fs.getGit().listDiffs(oldHead,
+                                         newHead);
+        }
         final List<WatchEvent<?>> events = new ArrayList<>(diff.size());
 
         for (final DiffEntry diffEntry : diff) {
@@ -2530,8 +3292,11 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
 
             final Path newPath;
             if (!diffEntry.getNewPath().equals(DiffEntry.DEV_NULL)) {
-                final PathInfo pathInfo = fs.getGit().getPathInfo(tree,
-                                                                  diffEntry.getNewPath());
+                final PathInfo pathInfo;
+                try (final FileSystemLease lease = fs.lease()) {
+                    pathInfo = fs.getGit().getPathInfo(tree,
+                                                       diffEntry.getNewPath());
+                }
                 newPath = JGitPathImpl.create(fs,
                                               "/" + pathInfo.getPath(),
                                               host,
@@ -2554,6 +3319,7 @@ public class JGitFileSystemProvider extends SecuredFileSystemProvider implements
     }
 
     GitSSHService getGitSSHService() {
+        awaitServicesStartup();
         return gitSSHService;
     }
 
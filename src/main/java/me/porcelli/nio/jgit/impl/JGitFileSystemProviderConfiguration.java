@@ -19,6 +19,8 @@
 package me.porcelli.nio.jgit.impl;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
@@ -79,9 +81,51 @@ public class JGitFileSystemProviderConfiguration {
     public static final String USER_DIR = "user.dir";
     public static final String JGIT_CACHE_INSTANCES = "nio.jgit.cache.instances";
     public static final String JGIT_CACHE_OVERFLOW_CLEANUP_SIZE = "nio.jgit.cache.overflow.cleanup.size";
+    public static final String JGIT_CACHE_HEAP_BUDGET = "nio.jgit.cache.heap.budget";
+    public static final String JGIT_CACHE_FILE_DESCRIPTORS_BUDGET = "nio.jgit.cache.file.descriptors.budget";
     public static final String JGIT_REMOVE_ELDEST_ENTRY_ITERATIONS = "nio.jgit.remove.eldest.iterations";
     public static final String JGIT_CACHE_EVICT_THRESHOLD_DURATION = "nio.jgit.cache.evict.threshold.duration";
     public static final String JGIT_CACHE_EVICT_THRESHOLD_TIME_UNIT = "nio.jgit.cache.evict.threshold.time.unit";
+    public static final String GIT_LOCK_SINGLE_PROCESS = "nio.git.lock.single.process";
+    public static final String GIT_COMMIT_OPTIMISTIC = "nio.git.commit.optimistic";
+    public static final String GIT_LOCK_SLOW_HOLDER_THRESHOLD = "nio.git.lock.slow.holder.threshold";
+    public static final String GIT_LOCK_TIMEOUT = "nio.git.lock.timeout";
+    public static final String[] GIT_LOCK_TIMEOUT_OPERATIONS = {"commit", "copy", "move", "merge", "cherry-pick", "squash", "create-branch", "delete-branch"};
+    public static final String GIT_DISCOVERY_ENABLED = "nio.git.discovery.enabled";
+    public static final String GIT_DISCOVERY_WARMUP = "nio.git.discovery.warmup";
+    public static final String GIT_DISCOVERY_WARMUP_THREADS = "nio.git.discovery.warmup.threads";
+    public static final String GIT_SERVICES_ASYNC_STARTUP = "nio.git.services.async.startup";
+    public static final String JGIT_PACKED_GIT_LIMIT = "nio.jgit.packedgit.limit";
+    public static final String JGIT_PACKED_GIT_WINDOW_SIZE = "nio.jgit.packedgit.windowsize";
+    public static final String JGIT_PACKED_GIT_MMAP = "nio.jgit.packedgit.mmap";
+    public static final String JGIT_PACKED_GIT_OPEN_FILES = "nio.jgit.packedgit.openfiles";
+    public static final String JGIT_DELTA_BASE_CACHE_LIMIT = "nio.jgit.deltabasecache.limit";
+    public static final String GIT_WATCH_QUEUE_CAPACITY = "nio.git.watch.queue.capacity";
+    public static final String GIT_EVENTS_ASYNC_DISPATCH = "nio.git.events.async.dispatch";
+    public static final String GIT_EVENTS_DISPATCH_BUFFER_SIZE = "nio.git.events.dispatch.buffer.size";
+    public static final String GIT_EVENTS_DISPATCH_BATCH_SIZE = "nio.git.events.dispatch.batch.size";
+    public static final String GIT_EVENTS_COALESCE_WINDOW = "nio.git.events.coalesce.window";
+    public static final String GIT_CLUSTER_BATCH_WINDOW = "nio.git.cluster.batch.window";
+    public static final String GIT_CLUSTER_COMPRESSION = "nio.git.cluster.compression";
+    public static final String GIT_CLUSTER_LOCAL_ENABLED = "nio.git.cluster.local.enabled";
+    public static final String GIT_CLUSTER_LOCAL_HOST = "nio.git.cluster.local.host";
+    public static final String GIT_CLUSTER_LOCAL_PORT = "nio.git.cluster.local.port";
+    public static final String GIT_CLUSTER_LOCAL_PEERS = "nio.git.cluster.local.peers";
+    public static final String GIT_PUSH_NOTIFY_AGGREGATE = "nio.git.push.notify.aggregate";
+    public static final String GIT_EVENTS_JOURNAL_ENABLED = "nio.git.events.journal.enabled";
+    public static final String GIT_EVENTS_JOURNAL_MAX_SIZE = "nio.git.events.journal.max.size";
+    public static final String GIT_EVENTS_JOURNAL_SYNC = "nio.git.events.journal.sync";
+    public static final String GIT_HOOKS_ASYNC = "nio.git.hooks.async";
+    public static final String GIT_HOOKS_THREADS = "nio.git.hooks.threads";
+    public static final String GIT_HOOKS_MAX_PENDING = "nio.git.hooks.max.pending";
+    public static final String GIT_MAINTENANCE_ENABLED = "nio.git.maintenance.enabled";
+    public static final String GIT_MAINTENANCE_INTERVAL = "nio.git.maintenance.interval";
+    public static final String GIT_MAINTENANCE_LOOSE_OBJECTS = "nio.git.maintenance.loose.objects";
+    public static final String GIT_MAINTENANCE_LOOSE_REFS = "nio.git.maintenance.loose.refs";
+    public static final String GIT_MAINTENANCE_PACKS = "nio.git.maintenance.packs";
+    public static final String GIT_MAINTENANCE_GC_INTERVAL = "nio.git.maintenance.gc.interval";
+    public static final String GIT_MAINTENANCE_MAX_BYTES_PER_SECOND = "nio.git.maintenance.max.bytes.per.second";
+    public static final String GIT_MAINTENANCE_PRUNE_GRACE = "nio.git.maintenance.prune.grace";
 
     public static final String GIT_ENV_KEY_DEST_PATH = "out-dir";
     public static final String GIT_ENV_KEY_USER_NAME = "username";
@@ -116,8 +160,50 @@ public class JGitFileSystemProviderConfiguration {
     public static final String DEFAULT_JGIT_FILE_SYSTEM_INSTANCES_CACHE = "10000";
     public static final String DEFAULT_JGIT_REMOVE_ELDEST_ENTRY_ITERATIONS = "10";
     public static final String DEFAULT_JGIT_CACHE_OVERFLOW_CLEANUP_SIZE = "10";
+    //a quarter of the max heap
+    public static final String DEFAULT_JGIT_CACHE_HEAP_BUDGET = String.valueOf(Runtime.getRuntime().maxMemory() / 4);
+    public static final String DEFAULT_JGIT_CACHE_FILE_DESCRIPTORS_BUDGET = "4096";
     public static final String DEFAULT_JGIT_CACHE_EVICT_THRESHOLD_DURATION = "5";
     public static final TimeUnit DEFAULT_JGIT_CACHE_EVICT_THRESHOLD_TIME_UNIT = TimeUnit.MINUTES;
+    public static final String DEFAULT_GIT_LOCK_SINGLE_PROCESS = "false";
+    public static final String DEFAULT_GIT_COMMIT_OPTIMISTIC = "false";
+    public static final String DEFAULT_GIT_LOCK_SLOW_HOLDER_THRESHOLD = "5000";
+    public static final String DEFAULT_GIT_LOCK_TIMEOUT = "-1";
+    public static final String DEFAULT_GIT_DISCOVERY_ENABLED = "false";
+    public static final String DEFAULT_GIT_DISCOVERY_WARMUP = "0";
+    public static final String DEFAULT_GIT_DISCOVERY_WARMUP_THREADS = "4";
+    public static final String DEFAULT_GIT_SERVICES_ASYNC_STARTUP = "true";
+    public static final String DEFAULT_JGIT_PACKED_GIT_LIMIT = "10485760";
+    public static final String DEFAULT_JGIT_PACKED_GIT_WINDOW_SIZE = "8192";
+    public static final String DEFAULT_JGIT_PACKED_GIT_MMAP = "false";
+    public static final String DEFAULT_JGIT_PACKED_GIT_OPEN_FILES = "128";
+    public static final String DEFAULT_JGIT_DELTA_BASE_CACHE_LIMIT = "10485760";
+    public static final String DEFAULT_GIT_WATCH_QUEUE_CAPACITY = "1024";
+    public static final String DEFAULT_GIT_EVENTS_ASYNC_DISPATCH = "true";
+    public static final String DEFAULT_GIT_EVENTS_DISPATCH_BUFFER_SIZE = "1024";
+    public static final String DEFAULT_GIT_EVENTS_DISPATCH_BATCH_SIZE = "64";
+    public static final String DEFAULT_GIT_EVENTS_COALESCE_WINDOW = "0";
+    public static final String DEFAULT_GIT_CLUSTER_BATCH_WINDOW = "20";
+    public static final String DEFAULT_GIT_CLUSTER_COMPRESSION = "true";
+    public static final String DEFAULT_GIT_CLUSTER_LOCAL_ENABLED = "false";
+    public static final String DEFAULT_GIT_CLUSTER_LOCAL_HOST = "127.0.0.1";
+    public static final String DEFAULT_GIT_CLUSTER_LOCAL_PORT = "9420";
+    public static final String DEFAULT_GIT_CLUSTER_LOCAL_PEERS = "";
+    public static final String DEFAULT_GIT_PUSH_NOTIFY_AGGREGATE = "false";
+    public static final String DEFAULT_GIT_EVENTS_JOURNAL_ENABLED = "false";
+    public static final String DEFAULT_GIT_EVENTS_JOURNAL_MAX_SIZE = "16777216";
+    public static final String DEFAULT_GIT_EVENTS_JOURNAL_SYNC = "false";
+    public static final String DEFAULT_GIT_HOOKS_ASYNC = "true";
+    public static final String DEFAULT_GIT_HOOKS_THREADS = "2";
+    public static final String DEFAULT_GIT_HOOKS_MAX_PENDING = "1024";
+    public static final String DEFAULT_GIT_MAINTENANCE_ENABLED = "false";
+    public static final String DEFAULT_GIT_MAINTENANCE_INTERVAL = "60";
+    public static final String DEFAULT_GIT_MAINTENANCE_LOOSE_OBJECTS = "256";
+    public static final String DEFAULT_GIT_MAINTENANCE_LOOSE_REFS = "64";
+    public static final String DEFAULT_GIT_MAINTENANCE_PACKS = "8";
+    public static final String DEFAULT_GIT_MAINTENANCE_GC_INTERVAL = "168";
+    public static final String DEFAULT_GIT_MAINTENANCE_MAX_BYTES_PER_SECOND = "16777216";
+    public static final String DEFAULT_GIT_MAINTENANCE_PRUNE_GRACE = "24";
 
     private int commitLimit;
     private boolean sslVerify;
@@ -166,12 +252,97 @@ public class JGitFileSystemProviderConfiguration {
     private int jgitFileSystemsInstancesCache;
     //Number of instances that was removed by iteration in case of cache overflow
     private int jgitCacheOverflowCleanupSize;
+    //Estimated heap bytes of the cached FS instances, zero or negative for no limit
+    private long jgitCacheHeapBudget;
+    //Estimated open file descriptors of the cached FS instances, zero or negative for no limit
+    private int jgitCacheFileDescriptorsBudget;
     //Number of attempts to remove FS instances on cache
     private int jgitRemoveEldestEntryIterations;
     //Duration of Threshold of jgit file system instances evict
     private long jgitCacheEvictThresholdDuration;
     //TimeUnit of Threshold of jgit file system instances evict
     private TimeUnit jgitCacheEvictThresholdTimeUnit;
+    //Only this process accesses the repositories, so no OS level file locks are needed
+    private boolean lockSingleProcess;
+    //Plain commits don't take the file system lock and rely on compare-and-swap ref updates instead
+    private boolean optimisticCommit;
+    //Milliseconds a file system lock can be held before a warning is logged, negative to disable it
+    private long lockSlowHolderThresholdMillis;
+    //Milliseconds a write operation waits for the file system lock, negative to wait forever.
+    //Can be set per operation with nio.git.lock.timeout.<operation>
+    private long lockTimeoutMillis;
+    private final Map<String, Long> lockTimeoutMillisByOperation = new HashMap<>();
+    //Replaces the commit counter garbage collection with the adaptive maintenance scheduler
+    private boolean maintenanceEnabled;
+    //Seconds between two maintenance rounds
+    private int maintenanceInterval;
+    //Number of loose objects above which they are packed
+    private int maintenanceLooseObjects;
+    //Number of loose refs above which they are packed
+    private int maintenanceLooseRefs;
+    //Number of packs above which small packs are merged
+    private int maintenancePacks;
+    //Hours between two full garbage collections of an active repository
+    private int maintenanceGcInterval;
+    //Write rate limit of maintenance packs, 0 for none
+    private long maintenanceMaxBytesPerSecond;
+    //Hours an unreachable loose object of a RefTree repository is kept before being pruned
+    private int maintenancePruneGrace;
+    //Runs post-commit git hooks on a separate pool instead of the committing thread
+    private boolean hooksAsync;
+    //Number of threads running post-commit git hooks
+    private int hooksThreads;
+    //Number of post-commit git hook runs that can wait for a thread before committers wait too
+    private int hooksMaxPending;
+    //Appends the events published on each file system to a journal in its repository, so watchers can resume from a sequence
+    private boolean eventsJournalEnabled;
+    //Size in bytes after which an events journal rolls over, the previous segment is kept
+    private long eventsJournalMaxSize;
+    //Forces every events journal append to disk
+    private boolean eventsJournalSync;
+    //Notifies a push with one diff per updated ref, computed after the push completes, instead of one per pushed commit
+    private boolean pushNotifyAggregate;
+    //Shares watch events with the providers listed as local cluster peers, over TCP and without a broker
+    private boolean clusterLocalEnabled;
+    //Address the local cluster node listens on
+    private String clusterLocalHost;
+    //Port the local cluster node listens on
+    private int clusterLocalPort;
+    //Comma separated host:port of the other local cluster nodes
+    private String clusterLocalPeers;
+    //Milliseconds the events broadcast to the cluster are held to send several commits in one message, zero to send each commit right away
+    private long clusterBatchWindowMillis;
+    //Deflates the larger event messages broadcast to the cluster
+    private boolean clusterCompression;
+    //Milliseconds the events of a file system are held to merge the ones on the same path, zero or negative to publish them right away
+    private long eventsCoalesceWindowMillis;
+    //Publishes watch events from a dispatcher thread instead of the committing thread
+    private boolean eventsAsyncDispatch;
+    //Pending event batches the dispatcher holds before committing threads have to wait
+    private int eventsDispatchBufferSize;
+    //Max event batches the dispatcher drains from its buffer at once
+    private int eventsDispatchBatchSize;
+    //Max keys queued per watch service, a slow consumer gets an OVERFLOW key instead of unbounded growth
+    private int watchQueueCapacity;
+    //Max bytes of pack data held by the shared window cache
+    private long packedGitLimit;
+    //Size of each window read from a pack file, must be a power of 2
+    private int packedGitWindowSize;
+    //Memory map pack windows instead of copying them to the heap
+    private boolean packedGitMMAP;
+    //Max pack files kept open by the shared window cache
+    private int packedGitOpenFiles;
+    //Max bytes of inflated delta bases cached per reader
+    private int deltaBaseCacheLimit;
+    private boolean windowCacheConfigured;
+    //Starts the git daemon and the SSH service in background instead of in the provider constructor
+    private boolean servicesAsyncStartup;
+    //Registers all the repositories found under the repositories container dir at startup
+    private boolean discoveryEnabled;
+    //Number of most recently used discovered repositories opened in background at startup
+    private int discoveryWarmUp;
+    //Threads used to open the discovered repositories on warm up
+    private int discoveryWarmUpThreads;
 
     public void load(ConfigProperties systemConfig) {
         LOG.debug("Configuring from properties:");
@@ -258,6 +429,12 @@ public class JGitFileSystemProviderConfiguration {
         final ConfigProperties.ConfigProperty jgitFileSystemsCacheOverflowSizePropCacheProp = systemConfig.get(JGIT_CACHE_OVERFLOW_CLEANUP_SIZE,
                                                                                                                DEFAULT_JGIT_CACHE_OVERFLOW_CLEANUP_SIZE);
 
+        final ConfigProperties.ConfigProperty jgitCacheHeapBudgetProp = systemConfig.get(JGIT_CACHE_HEAP_BUDGET,
+                                                                                         DEFAULT_JGIT_CACHE_HEAP_BUDGET);
+
+        final ConfigProperties.ConfigProperty jgitCacheFileDescriptorsBudgetProp = systemConfig.get(JGIT_CACHE_FILE_DESCRIPTORS_BUDGET,
+                                                                                                    DEFAULT_JGIT_CACHE_FILE_DESCRIPTORS_BUDGET);
+
         final ConfigProperties.ConfigProperty jgitRemoveEldestEntryIterationsProp = systemConfig.get(JGIT_REMOVE_ELDEST_ENTRY_ITERATIONS,
                                                                                                      DEFAULT_JGIT_REMOVE_ELDEST_ENTRY_ITERATIONS);
 
@@ -267,6 +444,123 @@ public class JGitFileSystemProviderConfiguration {
         final ConfigProperties.ConfigProperty jgitCacheEvictThresoldTimeUnitProp = systemConfig.get(JGIT_CACHE_EVICT_THRESHOLD_TIME_UNIT,
                                                                                                     DEFAULT_JGIT_CACHE_EVICT_THRESHOLD_TIME_UNIT.name());
 
+        final ConfigProperties.ConfigProperty lockSingleProcessProp = systemConfig.get(GIT_LOCK_SINGLE_PROCESS,
+                                                                                       DEFAULT_GIT_LOCK_SINGLE_PROCESS);
+
+        final ConfigProperties.ConfigProperty optimisticCommitProp = systemConfig.get(GIT_COMMIT_OPTIMISTIC,
+                                                                                      DEFAULT_GIT_COMMIT_OPTIMISTIC);
+
+        final ConfigProperties.ConfigProperty lockSlowHolderThresholdProp = systemConfig.get(GIT_LOCK_SLOW_HOLDER_THRESHOLD,
+                                                                                             DEFAULT_GIT_LOCK_SLOW_HOLDER_THRESHOLD);
+
+        final ConfigProperties.ConfigProperty lockTimeoutProp = systemConfig.get(GIT_LOCK_TIMEOUT,
+                                                                                 DEFAULT_GIT_LOCK_TIMEOUT);
+
+        final ConfigProperties.ConfigProperty discoveryEnabledProp = systemConfig.get(GIT_DISCOVERY_ENABLED,
+                                                                                      DEFAULT_GIT_DISCOVERY_ENABLED);
+
+        final ConfigProperties.ConfigProperty discoveryWarmUpProp = systemConfig.get(GIT_DISCOVERY_WARMUP,
+                                                                                     DEFAULT_GIT_DISCOVERY_WARMUP);
+
+        final ConfigProperties.ConfigProperty discoveryWarmUpThreadsProp = systemConfig.get(GIT_DISCOVERY_WARMUP_THREADS,
+                                                                                            DEFAULT_GIT_DISCOVERY_WARMUP_THREADS);
+
+        final ConfigProperties.ConfigProperty servicesAsyncStartupProp = systemConfig.get(GIT_SERVICES_ASYNC_STARTUP,
+                                                                                          DEFAULT_GIT_SERVICES_ASYNC_STARTUP);
+
+        final ConfigProperties.ConfigProperty packedGitLimitProp = systemConfig.get(JGIT_PACKED_GIT_LIMIT,
+                                                                                    DEFAULT_JGIT_PACKED_GIT_LIMIT);
+
+        final ConfigProperties.ConfigProperty packedGitWindowSizeProp = systemConfig.get(JGIT_PACKED_GIT_WINDOW_SIZE,
+                                                                                         DEFAULT_JGIT_PACKED_GIT_WINDOW_SIZE);
+
+        final ConfigProperties.ConfigProperty packedGitMMAPProp = systemConfig.get(JGIT_PACKED_GIT_MMAP,
+                                                                                   DEFAULT_JGIT_PACKED_GIT_MMAP);
+
+        final ConfigProperties.ConfigProperty packedGitOpenFilesProp = systemConfig.get(JGIT_PACKED_GIT_OPEN_FILES,
+                                                                                        DEFAULT_JGIT_PACKED_GIT_OPEN_FILES);
+
+        final ConfigProperties.ConfigProperty deltaBaseCacheLimitProp = systemConfig.get(JGIT_DELTA_BASE_CACHE_LIMIT,
+                                                                                         DEFAULT_JGIT_DELTA_BASE_CACHE_LIMIT);
+
+        final ConfigProperties.ConfigProperty watchQueueCapacityProp = systemConfig.get(GIT_WATCH_QUEUE_CAPACITY,
+                                                                                        DEFAULT_GIT_WATCH_QUEUE_CAPACITY);
+
+        final ConfigProperties.ConfigProperty eventsAsyncDispatchProp = systemConfig.get(GIT_EVENTS_ASYNC_DISPATCH,
+                                                                                         DEFAULT_GIT_EVENTS_ASYNC_DISPATCH);
+
+        final ConfigProperties.ConfigProperty eventsDispatchBufferSizeProp = systemConfig.get(GIT_EVENTS_DISPATCH_BUFFER_SIZE,
+                                                                                              DEFAULT_GIT_EVENTS_DISPATCH_BUFFER_SIZE);
+
+        final ConfigProperties.ConfigProperty eventsDispatchBatchSizeProp = systemConfig.get(GIT_EVENTS_DISPATCH_BATCH_SIZE,
+                                                                                             DEFAULT_GIT_EVENTS_DISPATCH_BATCH_SIZE);
+
+        final ConfigProperties.ConfigProperty eventsCoalesceWindowProp = systemConfig.get(GIT_EVENTS_COALESCE_WINDOW,
+                                                                                          DEFAULT_GIT_EVENTS_COALESCE_WINDOW);
+
+        final ConfigProperties.ConfigProperty clusterBatchWindowProp = systemConfig.get(GIT_CLUSTER_BATCH_WINDOW,
+                                                                                        DEFAULT_GIT_CLUSTER_BATCH_WINDOW);
+
+        final ConfigProperties.ConfigProperty clusterCompressionProp = systemConfig.get(GIT_CLUSTER_COMPRESSION,
+                                                                                        DEFAULT_GIT_CLUSTER_COMPRESSION);
+
+        final ConfigProperties.ConfigProperty clusterLocalEnabledProp = systemConfig.get(GIT_CLUSTER_LOCAL_ENABLED,
+                                                                                         DEFAULT_GIT_CLUSTER_LOCAL_ENABLED);
+
+        final ConfigProperties.ConfigProperty clusterLocalHostProp = systemConfig.get(GIT_CLUSTER_LOCAL_HOST,
+                                                                                      DEFAULT_GIT_CLUSTER_LOCAL_HOST);
+
+        final ConfigProperties.ConfigProperty clusterLocalPortProp = systemConfig.get(GIT_CLUSTER_LOCAL_PORT,
+                                                                                      DEFAULT_GIT_CLUSTER_LOCAL_PORT);
+
+        final ConfigProperties.ConfigProperty clusterLocalPeersProp = systemConfig.get(GIT_CLUSTER_LOCAL_PEERS,
+                                                                                       DEFAULT_GIT_CLUSTER_LOCAL_PEERS);
+
+        final ConfigProperties.ConfigProperty pushNotifyAggregateProp = systemConfig.get(GIT_PUSH_NOTIFY_AGGREGATE,
+                                                                                         DEFAULT_GIT_PUSH_NOTIFY_AGGREGATE);
+
+        final ConfigProperties.ConfigProperty eventsJournalEnabledProp = systemConfig.get(GIT_EVENTS_JOURNAL_ENABLED,
+                                                                                          DEFAULT_GIT_EVENTS_JOURNAL_ENABLED);
+
+        final ConfigProperties.ConfigProperty eventsJournalMaxSizeProp = systemConfig.get(GIT_EVENTS_JOURNAL_MAX_SIZE,
+                                                                                          DEFAULT_GIT_EVENTS_JOURNAL_MAX_SIZE);
+
+        final ConfigProperties.ConfigProperty eventsJournalSyncProp = systemConfig.get(GIT_EVENTS_JOURNAL_SYNC,
+                                                                                       DEFAULT_GIT_EVENTS_JOURNAL_SYNC);
+
+        final ConfigProperties.ConfigProperty hooksAsyncProp = systemConfig.get(GIT_HOOKS_ASYNC,
+                                                                                DEFAULT_GIT_HOOKS_ASYNC);
+
+        final ConfigProperties.ConfigProperty hooksThreadsProp = systemConfig.get(GIT_HOOKS_THREADS,
+                                                                                  DEFAULT_GIT_HOOKS_THREADS);
+
+        final ConfigProperties.ConfigProperty hooksMaxPendingProp = systemConfig.get(GIT_HOOKS_MAX_PENDING,
+                                                                                     DEFAULT_GIT_HOOKS_MAX_PENDING);
+
+        final ConfigProperties.ConfigProperty maintenanceEnabledProp = systemConfig.get(GIT_MAINTENANCE_ENABLED,
+                                                                                        DEFAULT_GIT_MAINTENANCE_ENABLED);
+
+        final ConfigProperties.ConfigProperty maintenanceIntervalProp = systemConfig.get(GIT_MAINTENANCE_INTERVAL,
+                                                                                         DEFAULT_GIT_MAINTENANCE_INTERVAL);
+
+        final ConfigProperties.ConfigProperty maintenanceLooseObjectsProp = systemConfig.get(GIT_MAINTENANCE_LOOSE_OBJECTS,
+                                                                                             DEFAULT_GIT_MAINTENANCE_LOOSE_OBJECTS);
+
+        final ConfigProperties.ConfigProperty maintenanceLooseRefsProp = systemConfig.get(GIT_MAINTENANCE_LOOSE_REFS,
+                                                                                          DEFAULT_GIT_MAINTENANCE_LOOSE_REFS);
+
+        final ConfigProperties.ConfigProperty maintenancePacksProp = systemConfig.get(GIT_MAINTENANCE_PACKS,
+                                                                                      DEFAULT_GIT_MAINTENANCE_PACKS);
+
+        final ConfigProperties.ConfigProperty maintenanceGcIntervalProp = systemConfig.get(GIT_MAINTENANCE_GC_INTERVAL,
+                                                                                           DEFAULT_GIT_MAINTENANCE_GC_INTERVAL);
+
+        final ConfigProperties.ConfigProperty maintenanceMaxBytesPerSecondProp = systemConfig.get(GIT_MAINTENANCE_MAX_BYTES_PER_SECOND,
+                                                                                                  DEFAULT_GIT_MAINTENANCE_MAX_BYTES_PER_SECOND);
+
+        final ConfigProperties.ConfigProperty maintenancePruneGraceProp = systemConfig.get(GIT_MAINTENANCE_PRUNE_GRACE,
+                                                                                           DEFAULT_GIT_MAINTENANCE_PRUNE_GRACE);
+
         final ConfigProperties.ConfigProperty jgitSshCiphers = systemConfig.get(GIT_SSH_CIPHERS, null);
         final ConfigProperties.ConfigProperty jgitSshMacs = systemConfig.get(GIT_SSH_MACS, null);
 
@@ -320,6 +614,10 @@ public class JGitFileSystemProviderConfiguration {
             jgitCacheOverflowCleanupSize = Integer.valueOf(DEFAULT_JGIT_CACHE_OVERFLOW_CLEANUP_SIZE);
         }
 
+        jgitCacheHeapBudget = Long.valueOf(jgitCacheHeapBudgetProp.getValue());
+
+        jgitCacheFileDescriptorsBudget = jgitCacheFileDescriptorsBudgetProp.getIntValue();
+
         jgitRemoveEldestEntryIterations = jgitRemoveEldestEntryIterationsProp.getIntValue();
         if (jgitRemoveEldestEntryIterations < 1) {
             jgitRemoveEldestEntryIterations = Integer.valueOf(DEFAULT_JGIT_REMOVE_ELDEST_ENTRY_ITERATIONS);
@@ -342,6 +640,71 @@ public class JGitFileSystemProviderConfiguration {
             jgitCacheEvictThresholdTimeUnit = DEFAULT_JGIT_CACHE_EVICT_THRESHOLD_TIME_UNIT;
         }
 
+        lockSingleProcess = lockSingleProcessProp.getBooleanValue();
+        optimisticCommit = optimisticCommitProp.getBooleanValue();
+        lockSlowHolderThresholdMillis = Long.valueOf(lockSlowHolderThresholdProp.getValue());
+        lockTimeoutMillis = Long.valueOf(lockTimeoutProp.getValue());
+        lockTimeoutMillisByOperation.clear();
+        for (final String operation : GIT_LOCK_TIMEOUT_OPERATIONS) {
+            final ConfigProperties.ConfigProperty operationTimeoutProp = systemConfig.get(GIT_LOCK_TIMEOUT + "." + operation,
+                                                                                          lockTimeoutProp.getValue());
+            lockTimeoutMillisByOperation.put(operation,
+                                             Long.valueOf(operationTimeoutProp.getValue()));
+        }
+
+        discoveryEnabled = discoveryEnabledProp.getBooleanValue();
+        discoveryWarmUp = discoveryWarmUpProp.getIntValue();
+        discoveryWarmUpThreads = Math.max(1,
+                                          discoveryWarmUpThreadsProp.getIntValue());
+
+        servicesAsyncStartup = servicesAsyncStartupProp.getBooleanValue();
+
+        packedGitLimit = Long.valueOf(packedGitLimitProp.getValue());
+        packedGitWindowSize = packedGitWindowSizeProp.getIntValue();
+        packedGitMMAP = packedGitMMAPProp.getBooleanValue();
+        packedGitOpenFiles = packedGitOpenFilesProp.getIntValue();
+        deltaBaseCacheLimit = deltaBaseCacheLimitProp.getIntValue();
+        windowCacheConfigured = !packedGitLimitProp.isDefault() ||
+                !packedGitWindowSizeProp.isDefault() ||
+                !packedGitMMAPProp.isDefault() ||
+                !packedGitOpenFilesProp.isDefault() ||
+                !deltaBaseCacheLimitProp.isDefault();
+
+        watchQueueCapacity = watchQueueCapacityProp.getIntValue();
+
+        eventsAsyncDispatch = eventsAsyncDispatchProp.getBooleanValue();
+        eventsDispatchBufferSize = eventsDispatchBufferSizeProp.getIntValue();
+        eventsDispatchBatchSize = eventsDispatchBatchSizeProp.getIntValue();
+
+        eventsCoalesceWindowMillis = Long.valueOf(eventsCoalesceWindowProp.getValue());
+
+        clusterBatchWindowMillis = Long.valueOf(clusterBatchWindowProp.getValue());
+        clusterCompression = clusterCompressionProp.getBooleanValue();
+
+        clusterLocalEnabled = clusterLocalEnabledProp.getBooleanValue();
+        clusterLocalHost = clusterLocalHostProp.getValue();
+        clusterLocalPort = clusterLocalPortProp.getIntValue();
+        clusterLocalPeers = clusterLocalPeersProp.getValue();
+
+        pushNotifyAggregate = pushNotifyAggregateProp.getBooleanValue();
+
+        eventsJournalEnabled = eventsJournalEnabledProp.getBooleanValue();
+        eventsJournalMaxSize = Long.valueOf(eventsJournalMaxSizeProp.getValue());
+        eventsJournalSync = eventsJournalSyncProp.getBooleanValue();
+
+        hooksAsync = hooksAsyncProp.getBooleanValue();
+        hooksThreads = hooksThreadsProp.getIntValue();
+        hooksMaxPending = hooksMaxPendingProp.getIntValue();
+
+        maintenanceEnabled = maintenanceEnabledProp.getBooleanValue();
+        maintenanceInterval = maintenanceIntervalProp.getIntValue();
+        maintenanceLooseObjects = maintenanceLooseObjectsProp.getIntValue();
+        maintenanceLooseRefs = maintenanceLooseRefsProp.getIntValue();
+        maintenancePacks = maintenancePacksProp.getIntValue();
+        maintenanceGcInterval = maintenanceGcIntervalProp.getIntValue();
+        maintenanceMaxBytesPerSecond = Long.valueOf(maintenanceMaxBytesPerSecondProp.getValue());
+        maintenancePruneGrace = maintenancePruneGraceProp.getIntValue();
+
         daemonEnabled = enabledProp.getBooleanValue();
         if (daemonEnabled) {
             daemonPort = portProp.getIntValue();
@@ -537,6 +900,14 @@ public class JGitFileSystemProviderConfiguration {
         return jgitCacheOverflowCleanupSize;
     }
 
+    public long getJgitCacheHeapBudget() {
+        return jgitCacheHeapBudget;
+    }
+
+    public int getJgitCacheFileDescriptorsBudget() {
+        return jgitCacheFileDescriptorsBudget;
+    }
+
     public int getJgitRemoveEldestEntryIterations() {
         return jgitRemoveEldestEntryIterations;
     }
@@ -549,6 +920,170 @@ public class JGitFileSystemProviderConfiguration {
         return jgitCacheEvictThresholdDuration;
     }
 
+    public boolean isLockSingleProcess() {
+        return lockSingleProcess;
+    }
+
+    public boolean isOptimisticCommit() {
+        return optimisticCommit;
+    }
+
+    public long getLockSlowHolderThresholdMillis() {
+        return lockSlowHolderThresholdMillis;
+    }
+
+    public long getLockTimeoutMillis(final String operation) {
+        return lockTimeoutMillisByOperation.getOrDefault(operation,
+                                                         lockTimeoutMillis);
+    }
+
+    public boolean isDiscoveryEnabled() {
+        return discoveryEnabled;
+    }
+
+    public int getDiscoveryWarmUp() {
+        return discoveryWarmUp;
+    }
+
+    public int getDiscoveryWarmUpThreads() {
+        return discoveryWarmUpThreads;
+    }
+
+    public boolean isServicesAsyncStartup() {
+        return servicesAsyncStartup;
+    }
+
+    public long getPackedGitLimit() {
+        return packedGitLimit;
+    }
+
+    public int getPackedGitWindowSize() {
+        return packedGitWindowSize;
+    }
+
+    public boolean isPackedGitMMAP() {
+        return packedGitMMAP;
+    }
+
+    public int getPackedGitOpenFiles() {
+        return packedGitOpenFiles;
+    }
+
+    public int getDeltaBaseCacheLimit() {
+        return deltaBaseCacheLimit;
+    }
+
+    /**
+     * @return true if any of the pack window or delta base cache keys is set
+     */
+    public boolean isWindowCacheConfigured() {
+        return windowCacheConfigured;
+    }
+
+    public int getWatchQueueCapacity() {
+        return watchQueueCapacity;
+    }
+
+    public boolean isEventsAsyncDispatch() {
+        return eventsAsyncDispatch;
+    }
+
+    public int getEventsDispatchBufferSize() {
+        return eventsDispatchBufferSize;
+    }
+
+    public int getEventsDispatchBatchSize() {
+        return eventsDispatchBatchSize;
+    }
+
+    public long getEventsCoalesceWindowMillis() {
+        return eventsCoalesceWindowMillis;
+    }
+
+    public long getClusterBatchWindowMillis() {
+        return clusterBatchWindowMillis;
+    }
+
+    public boolean isClusterCompression() {
+        return clusterCompression;
+    }
+
+    public boolean isClusterLocalEnabled() {
+        return clusterLocalEnabled;
+    }
+
+    public String getClusterLocalHost() {
+        return clusterLocalHost;
+    }
+
+    public int getClusterLocalPort() {
+        return clusterLocalPort;
+    }
+
+    public String getClusterLocalPeers() {
+        return clusterLocalPeers;
+    }
+
+    public boolean isPushNotifyAggregate() {
+        return pushNotifyAggregate;
+    }
+
+    public boolean isEventsJournalEnabled() {
+        return eventsJournalEnabled;
+    }
+
+    public long getEventsJournalMaxSize() {
+        return eventsJournalMaxSize;
+    }
+
+    public boolean isEventsJournalSync() {
+        return eventsJournalSync;
+    }
+
+    public boolean isHooksAsync() {
+        return hooksAsync;
+    }
+
+    public int getHooksThreads() {
+        return hooksThreads;
+    }
+
+    public int getHooksMaxPending() {
+        return hooksMaxPending;
+    }
+
+    public boolean isMaintenanceEnabled() {
+        return maintenanceEnabled;
+    }
+
+    public int getMaintenanceInterval() {
+        return maintenanceInterval;
+    }
+
+    public int getMaintenanceLooseObjects() {
+        return maintenanceLooseObjects;
+    }
+
+    public int getMaintenanceLooseRefs() {
+        return maintenanceLooseRefs;
+    }
+
+    public int getMaintenancePacks() {
+        return maintenancePacks;
+    }
+
+    public int getMaintenanceGcInterval() {
+        return maintenanceGcInterval;
+    }
+
+    public long getMaintenanceMaxBytesPerSecond() {
+        return maintenanceMaxBytesPerSecond;
+    }
+
+    public int getMaintenancePruneGrace() {
+        return maintenancePruneGrace;
+    }
+
     public String getGitSshCiphers() {
         return gitSshCiphers;
     }
@@ -26,12 +26,16 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.regex.PatternSyntaxException;
 
 import me.porcelli.nio.jgit.fs.FileSystemState;
+import me.porcelli.nio.jgit.fs.WatchFilter;
 import me.porcelli.nio.jgit.fs.options.CommentedOption;
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
@@ -42,6 +46,9 @@ import org.eclipse.jgit.transport.UploadPack;
 
 public class JGitFileSystemProxy extends JGitFileSystem {
 
+    //file systems leased by the current thread, by name, the proxies resolve to them until released
+    private static final ThreadLocal<Map<String, Pin>> PINNED = ThreadLocal.withInitial(HashMap::new);
+
     private String fsName;
     private Supplier<JGitFileSystem> cachedSupplier;
 
@@ -59,159 +66,291 @@ public class JGitFileSystemProxy extends JGitFileSystem {
 
     @Override
     public Git getGit() {
-        return cachedSupplier.get().getGit();
+        return resolve().getGit();
     }
 
     @Override
     public CredentialsProvider getCredential() {
-        return cachedSupplier.get().getCredential();
+        return resolve().getCredential();
     }
 
     @Override
     public void checkClosed() throws IllegalStateException {
-        cachedSupplier.get().checkClosed();
+        resolve().checkClosed();
     }
 
     @Override
     public void publishEvents(Path watchable,
                               List<WatchEvent<?>> elist) {
-        cachedSupplier.get().publishEvents(watchable,
-                                           elist);
+        resolve().publishEvents(watchable,
+                                elist);
     }
 
     @Override
     public boolean isOnBatch() {
-        return cachedSupplier.get().isOnBatch();
+        return resolve().isOnBatch();
     }
 
     @Override
     public void setState(String state) {
-        cachedSupplier.get().setState(state);
+        resolve().setState(state);
+    }
+
+    @Override
+    public Runnable beginUnlockedWrite() {
+        return resolve().beginUnlockedWrite();
     }
 
     @Override
     public CommitInfo buildCommitInfo(String defaultMessage,
                                       CommentedOption op) {
-        return cachedSupplier.get().buildCommitInfo(defaultMessage,
-                                                    op);
+        return resolve().buildCommitInfo(defaultMessage,
+                                         op);
     }
 
     @Override
     public void setBatchCommitInfo(String defaultMessage,
                                    CommentedOption op) {
-        cachedSupplier.get().setBatchCommitInfo(defaultMessage,
-                                                op);
+        resolve().setBatchCommitInfo(defaultMessage,
+                                     op);
     }
 
     @Override
     public void setHadCommitOnBatchState(Path path,
                                          boolean hadCommitOnBatchState) {
-        cachedSupplier.get().setHadCommitOnBatchState(path,
-                                                      hadCommitOnBatchState);
+        resolve().setHadCommitOnBatchState(path,
+                                           hadCommitOnBatchState);
     }
 
     @Override
     public void setHadCommitOnBatchState(boolean value) {
-        cachedSupplier.get().setHadCommitOnBatchState(value);
+        resolve().setHadCommitOnBatchState(value);
     }
 
     @Override
     public boolean isHadCommitOnBatchState(Path path) {
-        return cachedSupplier.get().isHadCommitOnBatchState(path);
+        return resolve().isHadCommitOnBatchState(path);
     }
 
     @Override
     public void setBatchCommitInfo(CommitInfo batchCommitInfo) {
-        cachedSupplier.get().setBatchCommitInfo(batchCommitInfo);
+        resolve().setBatchCommitInfo(batchCommitInfo);
     }
 
     @Override
     public CommitInfo getBatchCommitInfo() {
-        return cachedSupplier.get().getBatchCommitInfo();
+        return resolve().getBatchCommitInfo();
     }
 
     @Override
     public int incrementAndGetCommitCount() {
-        return cachedSupplier.get().incrementAndGetCommitCount();
+        return resolve().incrementAndGetCommitCount();
     }
 
     @Override
     public void resetCommitCount() {
-        cachedSupplier.get().resetCommitCount();
+        resolve().resetCommitCount();
     }
 
     @Override
     public int getNumberOfCommitsSinceLastGC() {
-        return cachedSupplier.get().getNumberOfCommitsSinceLastGC();
+        return resolve().getNumberOfCommitsSinceLastGC();
     }
 
     @Override
     public void lock() {
-        cachedSupplier.get().lock();
+        lock(null);
+    }
+
+    @Override
+    public void lock(String operation) {
+        final JGitFileSystem fs = pin();
+        try {
+            fs.lock(operation);
+        } catch (RuntimeException e) {
+            unpin();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean tryLock(String operation,
+                           long timeout,
+                           TimeUnit unit) {
+        final JGitFileSystem fs = pin();
+        boolean locked = false;
+        try {
+            locked = fs.tryLock(operation,
+                                timeout,
+                                unit);
+        } finally {
+            if (!locked) {
+                unpin();
+            }
+        }
+        return locked;
     }
 
     @Override
     public void unlock() {
-        cachedSupplier.get().unlock();
+        final Pin pin = PINNED.get().get(fsName);
+        if (pin == null) {
+            resolve().unlock();
+            return;
+        }
+        pin.fs.unlock();
+        unpin();
+    }
+
+    @Override
+    public FileSystemLease lease() {
+        pin();
+        return FileSystemLease.once(this::unpin);
+    }
+
+    @Override
+    public FileSystemLease retain() {
+        final Pin pin = PINNED.get().get(fsName);
+        if (pin != null) {
+            return pin.fs.retain();
+        }
+        final JGitFileSystem fs = leaseCached();
+        return FileSystemLease.once(fs::releaseLease);
+    }
+
+    @Override
+    public boolean tryAcquireLease() {
+        return resolve().tryAcquireLease();
+    }
+
+    @Override
+    public void acquireLease() {
+        resolve().acquireLease();
+    }
+
+    @Override
+    public void releaseLease() {
+        resolve().releaseLease();
+    }
+
+    /**
+     * @return the file system leased by the current thread, or else the cached one
+     */
+    private JGitFileSystem resolve() {
+        final Pin pin = PINNED.get().get(fsName);
+        return pin != null ? pin.fs : cachedSupplier.get();
+    }
+
+    /**
+     * Leases the file system for the current thread. An instance whose repository was closed
+     * meanwhile has been evicted, so its replacement is looked up.
+     */
+    private JGitFileSystem pin() {
+        final Map<String, Pin> pinned = PINNED.get();
+        final Pin pin = pinned.get(fsName);
+        if (pin != null) {
+            pin.count++;
+            return pin.fs;
+        }
+        final JGitFileSystem fs = leaseCached();
+        pinned.put(fsName,
+                   new Pin(fs));
+        return fs;
+    }
+
+    private JGitFileSystem leaseCached() {
+        JGitFileSystem previous = null;
+        while (true) {
+            final JGitFileSystem fs = cachedSupplier.get();
+            if (fs.tryAcquireLease()) {
+                return fs;
+            }
+            if (fs == previous) {
+                //still cached, its repository is reopened
+                fs.acquireLease();
+                return fs;
+            }
+            previous = fs;
+        }
+    }
+
+    private void unpin() {
+        final Map<String, Pin> pinned = PINNED.get();
+        final Pin pin = pinned.get(fsName);
+        if (pin == null) {
+            return;
+        }
+        if (--pin.count == 0) {
+            pinned.remove(fsName);
+            if (pinned.isEmpty()) {
+                PINNED.remove();
+            }
+            pin.fs.releaseLease();
+        }
     }
 
     @Override
     public void addPostponedWatchEvents(List<WatchEvent<?>> postponedWatchEvents) {
-        cachedSupplier.get().addPostponedWatchEvents(postponedWatchEvents);
+        resolve().addPostponedWatchEvents(postponedWatchEvents);
     }
 
     @Override
     public List<WatchEvent<?>> getPostponedWatchEvents() {
-        return cachedSupplier.get().getPostponedWatchEvents();
+        return resolve().getPostponedWatchEvents();
     }
 
     @Override
     public void clearPostponedWatchEvents() {
-        cachedSupplier.get().clearPostponedWatchEvents();
+        resolve().clearPostponedWatchEvents();
     }
 
     @Override
     public boolean hasPostponedEvents() {
-        return cachedSupplier.get().hasPostponedEvents();
+        return resolve().hasPostponedEvents();
+    }
+
+    @Override
+    public void evict() {
+        resolve().evict();
     }
 
     @Override
     public boolean hasBeenInUse() {
-        return cachedSupplier.get().hasBeenInUse();
+        return resolve().hasBeenInUse();
     }
 
     @Override
     public void notifyExternalUpdate() {
-        cachedSupplier.get().notifyExternalUpdate();
+        resolve().notifyExternalUpdate();
     }
 
     @Override
     public void notifyPostCommit(int exitCode) {
-        cachedSupplier.get().notifyPostCommit(exitCode);
+        resolve().notifyPostCommit(exitCode);
     }
 
     @Override
     public void checkBranchAccess(final ReceiveCommand command,
                                   final User user) {
-        cachedSupplier.get().checkBranchAccess(command,
-                                               user);
+        resolve().checkBranchAccess(command,
+                                    user);
     }
 
     @Override
     public void filterBranchAccess(final UploadPack uploadPack,
                                    final User user) {
-        cachedSupplier.get().filterBranchAccess(uploadPack,
-                                                user);
+        resolve().filterBranchAccess(uploadPack,
+                                     user);
     }
 
     @Override
     public FileSystemProvider provider() {
-        return cachedSupplier.get().provider();
+        return resolve().provider();
     }
 
     @Override
     public boolean isOpen() {
-        return cachedSupplier.get().isOpen();
+        return resolve().isOpen();
     }
 
     @Override
@@ -226,49 +365,59 @@ public class JGitFileSystemProxy extends JGitFileSystem {
 
     @Override
     public Iterable<Path> getRootDirectories() {
-        return cachedSupplier.get().getRootDirectories();
+        return resolve().getRootDirectories();
     }
 
     @Override
     public Iterable<FileStore> getFileStores() {
-        return cachedSupplier.get().getFileStores();
+        return resolve().getFileStores();
     }
 
     @Override
     public Set<String> supportedFileAttributeViews() {
-        return cachedSupplier.get().supportedFileAttributeViews();
+        return resolve().supportedFileAttributeViews();
     }
 
     @Override
     public Path getPath(String first,
                         String... more) throws InvalidPathException {
-        return cachedSupplier.get().getPath(first,
-                                            more);
+        return resolve().getPath(first,
+                                 more);
     }
 
     @Override
     public PathMatcher getPathMatcher(String syntaxAndPattern) throws IllegalArgumentException, PatternSyntaxException, UnsupportedOperationException {
-        return cachedSupplier.get().getPathMatcher(syntaxAndPattern);
+        return resolve().getPathMatcher(syntaxAndPattern);
     }
 
     @Override
     public UserPrincipalLookupService getUserPrincipalLookupService() throws UnsupportedOperationException {
-        return cachedSupplier.get().getUserPrincipalLookupService();
+        return resolve().getUserPrincipalLookupService();
     }
 
     @Override
     public WatchService newWatchService() throws UnsupportedOperationException, IOException {
-        return cachedSupplier.get().newWatchService();
+        return resolve().newWatchService();
+    }
+
+    @Override
+    public WatchService newWatchService(final WatchFilter filter) throws UnsupportedOperationException, IOException {
+        return resolve().newWatchService(filter);
+    }
+
+    @Override
+    public WatchService newWatchService(final long afterSequence) throws UnsupportedOperationException, IOException {
+        return resolve().newWatchService(afterSequence);
     }
 
     @Override
     public void close() throws IOException {
-        cachedSupplier.get().close();
+        resolve().close();
     }
 
     @Override
     public void dispose() throws IOException {
-        cachedSupplier.get().dispose();
+        resolve().dispose();
     }
 
     @Override
@@ -278,25 +427,35 @@ public class JGitFileSystemProxy extends JGitFileSystem {
 
     @Override
     public FileSystemState getState() {
-        return cachedSupplier.get().getState();
+        return resolve().getState();
     }
 
     public JGitFileSystem getRealJGitFileSystem() {
-        return cachedSupplier.get();
+        return resolve();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return cachedSupplier.get().equals(obj);
+        return resolve().equals(obj);
     }
 
     @Override
     public int hashCode() {
-        return cachedSupplier.get().hashCode();
+        return resolve().hashCode();
     }
 
     @Override
     public String toString() {
-        return cachedSupplier.get().toString();
+        return resolve().toString();
+    }
+
+    private static class Pin {
+
+        private final JGitFileSystem fs;
+        private int count = 1;
+
+        private Pin(JGitFileSystem fs) {
+            this.fs = fs;
+        }
     }
 }
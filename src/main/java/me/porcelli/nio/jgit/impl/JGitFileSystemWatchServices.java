@@ -23,66 +23,136 @@ import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.nio.file.Watchable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import me.porcelli.nio.jgit.fs.WatchFilter;
+
 public class JGitFileSystemWatchServices implements Serializable {
 
     private final Collection<JGitWatchService> watchServices = new CopyOnWriteArrayList<>();
 
+    //services watching everything, they get every event without going through the index
+    private final Collection<JGitWatchService> unfilteredWatchServices = new CopyOnWriteArrayList<>();
+
+    private final WatchSubscriptions filteredWatchServices = new WatchSubscriptions();
+
+    private final int queueCapacity;
+
     public JGitFileSystemWatchServices() {
+        this(JGitWatchService.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public JGitFileSystemWatchServices(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
     }
 
     public WatchService newWatchService(String fsName) {
+        return newWatchService(fsName,
+                               WatchFilter.ALL);
+    }
+
+    public WatchService newWatchService(String fsName,
+                                        WatchFilter filter) {
+        final JGitWatchService ws = new JGitWatchService(fsName,
+                                                         this::remove,
+                                                         queueCapacity);
+        watchServices.add(ws);
+        if (isUnfiltered(filter)) {
+            unfilteredWatchServices.add(ws);
+        } else {
+            filteredWatchServices.add(ws,
+                                      filter);
+        }
+        return ws;
+    }
+
+    /**
+     * Creates a watch service that first replays the journaled events the cursor reads.
+     */
+    WatchService newWatchService(String fsName,
+                                 JGitEventsJournal.Cursor backlog) {
         final JGitWatchService ws = new JGitWatchService(fsName,
-                                                         p -> watchServices.remove(p));
+                                                         this::remove,
+                                                         queueCapacity,
+                                                         backlog);
         watchServices.add(ws);
+        unfilteredWatchServices.add(ws);
         return ws;
     }
 
-    public synchronized void publishEvents(Path watchable,
-                                           List<WatchEvent<?>> elist) {
+    private static boolean isUnfiltered(WatchFilter filter) {
+        return filter.getBranch() == null && filter.getKinds().isEmpty() &&
+                (filter.getPathPrefix() == null || filter.getPathPrefix().replace("/",
+                                                                                  "").isEmpty());
+    }
+
+    private void remove(JGitWatchService ws) {
+        watchServices.remove(ws);
+        unfilteredWatchServices.remove(ws);
+        filteredWatchServices.remove(ws);
+    }
+
+    public void publishEvents(Path watchable,
+                              List<WatchEvent<?>> elist) {
+        publishEvents(watchable,
+                      elist,
+                      0);
+    }
+
+    void publishEvents(Path watchable,
+                       List<WatchEvent<?>> elist,
+                       long sequence) {
         if (watchServices.isEmpty()) {
             return;
         }
 
-        for (JGitWatchService ws : watchServices) {
-            ws.publish(new WatchKey() {
-
-                @Override
-                public boolean isValid() {
-                    return true;
-                }
-
-                @Override
-                public List<WatchEvent<?>> pollEvents() {
-                    return new CopyOnWriteArrayList<>(elist);
-                }
-
-                @Override
-                public boolean reset() {
-                    return !watchServices.isEmpty();
-                }
-
-                @Override
-                public void cancel() {
-                }
-
-                @Override
-                public Watchable watchable() {
-                    return watchable;
-                }
-            });
-            synchronized (ws) {
-                ws.notifyAll();
-            }
+        //keys are read only, so every watch service getting all the events shares the same key and event list
+        final List<WatchEvent<?>> events = Collections.unmodifiableList(new ArrayList<>(elist));
+        final WatchKey key = newKey(watchable,
+                                    events,
+                                    sequence);
+        for (JGitWatchService ws : unfilteredWatchServices) {
+            ws.publish(key);
         }
+
+        if (unfilteredWatchServices.size() == watchServices.size()) {
+            return;
+        }
+        filteredWatchServices.match(watchable,
+                                    events).forEach((ws, matched) -> {
+            if (matched.size() == events.size()) {
+                ws.publish(key);
+            } else {
+                ws.publish(newKey(watchable,
+                                  Collections.unmodifiableList(matched),
+                                  sequence));
+            }
+        });
+    }
+
+    private WatchKey newKey(Path watchable,
+                            List<WatchEvent<?>> events,
+                            long sequence) {
+        return new JGitWatchService.JGitWatchKey(watchable,
+                                                 events,
+                                                 sequence) {
+            @Override
+            public boolean reset() {
+                return !watchServices.isEmpty();
+            }
+        };
     }
 
     public void close() {
-        watchServices.forEach(ws -> ws.closeWithoutNotifyParent());
+        watchServices.forEach(ws -> {
+            ws.closeWithoutNotifyParent();
+            filteredWatchServices.remove(ws);
+        });
         watchServices.clear();
+        unfilteredWatchServices.clear();
     }
 }
@@ -18,6 +18,7 @@
 
 package me.porcelli.nio.jgit.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Path;
@@ -27,8 +28,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import me.porcelli.nio.jgit.cluster.ClusterMessageService;
+import me.porcelli.nio.jgit.cluster.LocalClusterMessageService;
+import me.porcelli.nio.jgit.fs.WatchFilter;
+import org.eclipse.jgit.lib.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,12 +45,87 @@ public class JGitFileSystemsEventsManager {
 
     private final ClusterMessageService clusterMessageService;
 
+    private final int watchQueueCapacity;
+
+    //null when events are published on the caller thread
+    private final JGitEventsDispatcher dispatcher;
+
+    //null when local events are published as they come
+    private JGitEventsCoalescer coalescer;
+
+    private final long clusterBatchWindowMillis;
+
+    private final boolean clusterCompression;
+
+    //null when events are not journaled, gives the directory of a file system's journal
+    private Function<String, File> journalDirs;
+
+    private long journalMaxSize;
+
+    private boolean journalSync;
+
+    private final Map<String, JGitEventsJournal> journals = new ConcurrentHashMap<>();
+
     JGitEventsBroadcast jGitEventsBroadcast;
 
     public JGitFileSystemsEventsManager() {
-        clusterMessageService = getClusterMessageService();
+        this(JGitWatchService.DEFAULT_QUEUE_CAPACITY,
+             null);
+    }
 
-        if (clusterMessageService.isSystemClustered()) {
+    public JGitFileSystemsEventsManager(final JGitFileSystemProviderConfiguration config) {
+        this(config.getWatchQueueCapacity(),
+             config.isEventsAsyncDispatch() ? new JGitEventsDispatcher(config.getEventsDispatchBufferSize(),
+                                                                       config.getEventsDispatchBatchSize()) : null,
+             config.getClusterBatchWindowMillis(),
+             config.isClusterCompression(),
+             config.isClusterLocalEnabled() ? new LocalClusterMessageService(config.getClusterLocalHost(),
+                                                                             config.getClusterLocalPort(),
+                                                                             LocalClusterMessageService.parsePeers(config.getClusterLocalPeers())) : null);
+        if (config.isEventsJournalEnabled()) {
+            setupJournal(fsName -> new File(config.getGitReposParentDir(),
+                                            fsName + Constants.DOT_GIT_EXT),
+                         config.getEventsJournalMaxSize(),
+                         config.isEventsJournalSync());
+        }
+        if (config.getEventsCoalesceWindowMillis() > 0) {
+            coalescer = new JGitEventsCoalescer(config.getEventsCoalesceWindowMillis(),
+                                                (fsName, watchable, events) -> dispatchEvents(fsName,
+                                                                                              watchable,
+                                                                                              events,
+                                                                                              true));
+        }
+    }
+
+    public JGitFileSystemsEventsManager(final int watchQueueCapacity) {
+        this(watchQueueCapacity,
+             null);
+    }
+
+    JGitFileSystemsEventsManager(final int watchQueueCapacity,
+                                 final JGitEventsDispatcher dispatcher) {
+        this(watchQueueCapacity,
+             dispatcher,
+             0,
+             false,
+             null);
+    }
+
+    /**
+     * @param clusterMessageService null to use {@link #getClusterMessageService()}
+     */
+    JGitFileSystemsEventsManager(final int watchQueueCapacity,
+                                 final JGitEventsDispatcher dispatcher,
+                                 final long clusterBatchWindowMillis,
+                                 final boolean clusterCompression,
+                                 final ClusterMessageService clusterMessageService) {
+        this.watchQueueCapacity = watchQueueCapacity;
+        this.dispatcher = dispatcher;
+        this.clusterBatchWindowMillis = clusterBatchWindowMillis;
+        this.clusterCompression = clusterCompression;
+        this.clusterMessageService = clusterMessageService != null ? clusterMessageService : getClusterMessageService();
+
+        if (this.clusterMessageService.isSystemClustered()) {
             setupJGitEventsBroadcast();
         }
     }
@@ -79,16 +159,65 @@ public class JGitFileSystemsEventsManager {
         };
     }
 
+    void setupJournal(final Function<String, File> journalDirs,
+                      final long journalMaxSize,
+                      final boolean journalSync) {
+        this.journalDirs = journalDirs;
+        this.journalMaxSize = journalMaxSize;
+        this.journalSync = journalSync;
+    }
+
+    private JGitEventsJournal getJournal(String fsName) {
+        return journals.computeIfAbsent(fsName,
+                                        name -> new JGitEventsJournal(name,
+                                                                      journalDirs.apply(name),
+                                                                      journalMaxSize,
+                                                                      journalSync));
+    }
+
     void setupJGitEventsBroadcast() {
+        //the sequence of received events is the one of the sender's journal, meaningless to watch
+        //services resuming from this node's journal, so they are published as not journaled
         jGitEventsBroadcast = new JGitEventsBroadcast(clusterMessageService,
                                                       w -> publishEvents(w.getFsName(),
                                                                          w.getWatchable(),
                                                                          w.getEvents(),
-                                                                         false));
+                                                                         false),
+                                                      clusterBatchWindowMillis,
+                                                      clusterCompression);
     }
 
     public WatchService newWatchService(String fsName)
             throws UnsupportedOperationException, IOException {
+        return newWatchService(fsName,
+                               WatchFilter.ALL);
+    }
+
+    public WatchService newWatchService(String fsName,
+                                        WatchFilter filter)
+            throws UnsupportedOperationException, IOException {
+        fsWatchServices.putIfAbsent(fsName,
+                                    createFSWatchServicesManager());
+
+        if (jGitEventsBroadcast != null) {
+            jGitEventsBroadcast.createWatchService(fsName);
+        }
+
+        return fsWatchServices.get(fsName).newWatchService(fsName,
+                                                           filter);
+    }
+
+    /**
+     * Creates a watch service that first gets the journaled events published after the given
+     * sequence, then the newly published ones.
+     * @throws UnsupportedOperationException when events are not journaled
+     */
+    public WatchService newWatchService(String fsName,
+                                        long afterSequence)
+            throws UnsupportedOperationException, IOException {
+        if (journalDirs == null) {
+            throw new UnsupportedOperationException("Events journal is not enabled");
+        }
         fsWatchServices.putIfAbsent(fsName,
                                     createFSWatchServicesManager());
 
@@ -96,11 +225,12 @@ public class JGitFileSystemsEventsManager {
             jGitEventsBroadcast.createWatchService(fsName);
         }
 
-        return fsWatchServices.get(fsName).newWatchService(fsName);
+        return fsWatchServices.get(fsName).newWatchService(fsName,
+                                                           getJournal(fsName).openCursor(afterSequence));
     }
 
     JGitFileSystemWatchServices createFSWatchServicesManager() {
-        return new JGitFileSystemWatchServices();
+        return new JGitFileSystemWatchServices(watchQueueCapacity);
     }
 
     public void publishEvents(String fsName,
@@ -118,6 +248,51 @@ public class JGitFileSystemsEventsManager {
                               List<WatchEvent<?>> elist,
                               boolean broadcastEvents) {
 
+        //local events are journaled even when nobody watches them yet
+        if (!fsWatchServices.containsKey(fsName) && !(broadcastEvents && journalDirs != null)) {
+            return;
+        }
+
+        //events received from the cluster were already coalesced by the node that produced them
+        if (coalescer != null && broadcastEvents) {
+            coalescer.add(fsName,
+                          watchable,
+                          elist);
+        } else {
+            dispatchEvents(fsName,
+                           watchable,
+                           elist,
+                           broadcastEvents);
+        }
+    }
+
+    private void dispatchEvents(String fsName,
+                                Path watchable,
+                                List<WatchEvent<?>> elist,
+                                boolean broadcastEvents) {
+
+        if (dispatcher == null) {
+            doPublishEvents(fsName,
+                            watchable,
+                            elist,
+                            broadcastEvents);
+        } else {
+            dispatcher.dispatch(() -> doPublishEvents(fsName,
+                                                      watchable,
+                                                      elist,
+                                                      broadcastEvents));
+        }
+    }
+
+    private void doPublishEvents(String fsName,
+                                 Path watchable,
+                                 List<WatchEvent<?>> elist,
+                                 boolean broadcastEvents) {
+        //journaled before being published, so watch services resuming from the journal don't miss them
+        final long journaled = broadcastEvents && journalDirs != null ? journal(fsName,
+                                                                                watchable,
+                                                                                elist) : 0;
+
         JGitFileSystemWatchServices watchService = fsWatchServices.get(fsName);
 
         if (watchService == null) {
@@ -125,12 +300,27 @@ public class JGitFileSystemsEventsManager {
         }
 
         watchService.publishEvents(watchable,
-                                   elist);
+                                   elist,
+                                   journaled);
 
         if (shouldIBroadcast(broadcastEvents)) {
             jGitEventsBroadcast.broadcast(fsName,
                                           watchable,
-                                          elist);
+                                          elist,
+                                          journaled);
+        }
+    }
+
+    private long journal(String fsName,
+                         Path watchable,
+                         List<WatchEvent<?>> elist) {
+        try {
+            return getJournal(fsName).append(watchable,
+                                             elist);
+        } catch (final Exception e) {
+            LOGGER.error("Can't journal events of [" + fsName + "]",
+                         e);
+            return 0;
         }
     }
 
@@ -140,6 +330,12 @@ public class JGitFileSystemsEventsManager {
 
     public void close(String name) {
 
+        if (coalescer != null) {
+            coalescer.flush(name);
+        }
+
+        journals.remove(name);
+
         JGitFileSystemWatchServices watchService = fsWatchServices.get(name);
 
         if (watchService != null) {
@@ -153,6 +349,14 @@ public class JGitFileSystemsEventsManager {
     }
 
     public void shutdown() {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+
         fsWatchServices.keySet().forEach(key -> this.close(key));
 
         if (jGitEventsBroadcast != null) {
@@ -160,6 +364,10 @@ public class JGitFileSystemsEventsManager {
         }
     }
 
+    JGitEventsDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
     JGitEventsBroadcast getjGitEventsBroadcast() {
         return jGitEventsBroadcast;
     }
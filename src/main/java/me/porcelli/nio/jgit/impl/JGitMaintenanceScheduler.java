@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.op.model.MaintenanceStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps repositories compact without a full garbage collection every few commits. Each round
+ * samples the repositories committed to since the previous round, most active first, and runs
+ * the cheapest tasks enough for what it finds: packing the loose refs, packing the loose objects
+ * into a small pack, merging small packs geometrically. A full garbage collection only runs for
+ * a repository whose last one is older than the GC interval; RefTree repositories, which garbage
+ * collection skips, rely on the other tasks and have their unreachable loose objects pruned before
+ * the loose objects are packed.
+ * <p>
+ * Rounds run on a single thread and pack writes are rate limited, so maintenance never takes
+ * more than one thread and the configured write rate from the commits. Every task holds the file
+ * system lock, like garbage collection does, except for the pack writes: packing and merging
+ * only hold it to delete what the new pack replaces, so the commits never wait on a throttled
+ * write.
+ */
+class JGitMaintenanceScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JGitMaintenanceScheduler.class);
+
+    static final int GEOMETRIC_FACTOR = 2;
+
+    private final JGitFileSystemProviderConfiguration config;
+    //gives the file system of a name, null once it's gone
+    private final Function<String, JGitFileSystem> fileSystems;
+    private final Map<String, Activity> activities = new ConcurrentHashMap<>();
+    private final Object roundLock = new Object();
+    private volatile ScheduledExecutorService scheduler;
+
+    JGitMaintenanceScheduler(final JGitFileSystemProviderConfiguration config,
+                             final Function<String, JGitFileSystem> fileSystems) {
+        this.config = config;
+        this.fileSystems = fileSystems;
+    }
+
+    /**
+     * Rounds are scheduled every maintenance interval from the first commit on, an interval of 0
+     * leaves them to {@link #runRound()}.
+     */
+    void recordCommit(final JGitFileSystem fs) {
+        activities.computeIfAbsent(fs.getName(),
+                                   name -> new Activity()).commits.incrementAndGet();
+        if (scheduler == null && config.getMaintenanceInterval() > 0) {
+            schedule();
+        }
+    }
+
+    private synchronized void schedule() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r,
+                                             "jgit-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runRound,
+                                         config.getMaintenanceInterval(),
+                                         config.getMaintenanceInterval(),
+                                         TimeUnit.SECONDS);
+    }
+
+    void forget(final String fsName) {
+        activities.remove(fsName);
+    }
+
+    void runRound() {
+        synchronized (roundLock) {
+            doRunRound();
+        }
+    }
+
+    private void doRunRound() {
+        final List<Map.Entry<String, Activity>> active = new ArrayList<>();
+        for (final Map.Entry<String, Activity> activity : activities.entrySet()) {
+            if (activity.getValue().commits.get() > 0) {
+                active.add(activity);
+            }
+        }
+        active.sort(Comparator.comparingLong((Map.Entry<String, Activity> activity) -> activity.getValue().commits.get()).reversed());
+        for (final Map.Entry<String, Activity> activity : active) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            //the file system may have been evicted or replaced since it was committed to
+            final JGitFileSystem fs = fileSystems.apply(activity.getKey());
+            if (fs == null || !fs.isOpen()) {
+                forget(activity.getKey());
+                continue;
+            }
+            try (final FileSystemLease lease = fs.lease()) {
+                maintain(fs,
+                         activity.getValue());
+            } catch (final Exception e) {
+                LOGGER.error("Maintenance of [" + activity.getKey() + "] failed",
+                             e);
+            }
+        }
+    }
+
+    private void maintain(final JGitFileSystem fs,
+                          final Activity activity) {
+        activity.commits.set(0);
+        final Git git = fs.getGit();
+        final MaintenanceStats stats = git.getMaintenanceStats();
+        LOGGER.debug("Maintenance of [{}]: {}",
+                     fs.getName(),
+                     stats);
+
+        final long now = System.currentTimeMillis();
+        if (!stats.isRefTree() && now - activity.lastGc >= TimeUnit.HOURS.toMillis(config.getMaintenanceGcInterval())) {
+            locked(fs,
+                   "gc",
+                   () -> {
+                       git.gc();
+                       return null;
+                   });
+            activity.lastGc = now;
+            return;
+        }
+
+        if (stats.getLooseRefs() > config.getMaintenanceLooseRefs()) {
+            locked(fs,
+                   "pack-refs",
+                   git::packRefs);
+        }
+        int packs = stats.getPacks();
+        if (stats.getLooseObjects() > config.getMaintenanceLooseObjects()) {
+            if (stats.isRefTree()) {
+                locked(fs,
+                       "prune",
+                       () -> git.pruneLooseObjects(TimeUnit.HOURS.toMillis(config.getMaintenancePruneGrace())));
+            }
+            if (git.packLooseObjects(config.getMaintenanceMaxBytesPerSecond(),
+                                     exclusively(fs,
+                                                 "pack-objects")) > 0) {
+                packs++;
+            }
+        }
+        if (packs > config.getMaintenancePacks()) {
+            git.mergePacks(GEOMETRIC_FACTOR,
+                           config.getMaintenanceMaxBytesPerSecond(),
+                           exclusively(fs,
+                                       "merge-packs"));
+        }
+    }
+
+    private static <T> T locked(final JGitFileSystem fs,
+                                final String operation,
+                                final Supplier<T> task) {
+        fs.lock(operation);
+        try {
+            return task.get();
+        } finally {
+            fs.unlock();
+        }
+    }
+
+    private static Consumer<Runnable> exclusively(final JGitFileSystem fs,
+                                                  final String operation) {
+        return task -> locked(fs,
+                              operation,
+                              () -> {
+                                  task.run();
+                                  return null;
+                              });
+    }
+
+    /**
+     * Stops the rounds, a running one is interrupted. They start again with the next commit.
+     */
+    synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private static class Activity {
+
+        private final AtomicLong commits = new AtomicLong();
+        //the first full garbage collection waits a whole interval
+        private volatile long lastGc = System.currentTimeMillis();
+    }
+}
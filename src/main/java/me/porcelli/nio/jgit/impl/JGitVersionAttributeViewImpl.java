@@ -50,9 +50,12 @@ public class JGitVersionAttributeViewImpl extends VersionAttributeViewImpl<JGitP
     @Override
     public VersionAttributes readAttributes() throws IOException {
         if (attrs == null) {
-            attrs = buildAttrs((JGitFileSystem) path.getFileSystem(),
-                               path.getRefTree(),
-                               path.getPath());
+            final JGitFileSystem fs = (JGitFileSystem) path.getFileSystem();
+            try (final FileSystemLease lease = fs.lease()) {
+                attrs = buildAttrs(fs,
+                                   path.getRefTree(),
+                                   path.getPath());
+            }
         }
         return attrs;
     }
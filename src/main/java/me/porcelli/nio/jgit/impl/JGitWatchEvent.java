@@ -66,6 +66,84 @@ public class JGitWatchEvent implements WatchEvent {
         this.newPath = newPath != null ? newPath.toUri() : null;
     }
 
+    JGitWatchEvent(String sessionId,
+                   String userName,
+                   String message,
+                   String changeType,
+                   URI oldPath,
+                   URI newPath) {
+
+        this.sessionId = sessionId;
+        this.userName = userName;
+        this.message = message;
+        this.changeType = changeType;
+        this.oldPath = oldPath;
+        this.newPath = newPath;
+    }
+
+    /**
+     * Merges this event with a later event for the same path: the result keeps the old path of
+     * this event and takes the new path and the session, user and message of the later one.
+     */
+    JGitWatchEvent coalesce(JGitWatchEvent later,
+                            DiffEntry.ChangeType changeType) {
+        return new JGitWatchEvent(later.sessionId,
+                                  later.userName,
+                                  later.message,
+                                  changeType.name(),
+                                  oldPath,
+                                  later.newPath);
+    }
+
+    DiffEntry.ChangeType getChangeType() {
+        return DiffEntry.ChangeType.valueOf(changeType);
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    String getUserName() {
+        return userName;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    URI getOldPathUri() {
+        return oldPath;
+    }
+
+    URI getNewPathUri() {
+        return newPath;
+    }
+
+    /**
+     * @return the path this event leaves behind, the old one for deletions
+     */
+    URI getPathUri() {
+        return newPath != null ? newPath : oldPath;
+    }
+
+    /**
+     * Path URIs have the branch and the file system name, e.g. <code>git://master@group/repo/dir/file</code>,
+     * so the URI path of a file system whose name has segments starts with them.
+     * @return the path of the URI in the named file system, e.g. <code>/dir/file</code>
+     */
+    static String pathInFileSystem(final URI uri,
+                                   final String fsName) {
+        final String rawPath = uri.getRawSchemeSpecificPart();
+        final int at = rawPath.indexOf('@');
+        final int start = at + 1;
+        if (at < 0 || fsName == null || !rawPath.startsWith(fsName,
+                                                            start)) {
+            return uri.getPath();
+        }
+        final String path = rawPath.substring(start + fsName.length());
+        return path.isEmpty() ? "/" : URI.create(path).getPath();
+    }
+
     @Override
     public WatchEvent.Kind kind() {
         DiffEntry.ChangeType changeType = DiffEntry.ChangeType.valueOf(this.changeType);
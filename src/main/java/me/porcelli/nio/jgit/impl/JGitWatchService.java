@@ -20,53 +20,188 @@ package me.porcelli.nio.jgit.impl;
 
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.file.Watchable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
+import me.porcelli.nio.jgit.fs.SequencedWatchKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watch service backed by a bounded queue of keys. When the consumer falls behind and the queue
+ * is full, new keys are dropped and the next retrieval returns a key holding a single
+ * {@link StandardWatchEventKinds#OVERFLOW} event, whose count is the number of dropped events.
+ * <p>
+ * A service resuming from a journal sequence first returns the journaled keys after it, then the
+ * published ones. Journaled keys published while it replays are skipped, it reads them from the
+ * journal instead.
+ */
 public class JGitWatchService implements WatchService {
 
-    private boolean wsClose = false;
+    private static final Logger LOGGER = LoggerFactory.getLogger(JGitWatchService.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    //wakes up consumers blocked on an empty queue when the service is closed
+    private static final WatchKey CLOSED = new JGitWatchKey(null,
+                                                            Collections.emptyList());
+
+    private volatile boolean wsClose = false;
 
-    private final Queue<WatchKey> events = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<WatchKey> events;
+    private final AtomicInteger overflowCount = new AtomicInteger();
+    private volatile Watchable overflowWatchable;
     private final String fsName;
     private Consumer<JGitWatchService> notifyClose;
 
+    //null once the service is replaying no more, guarded by this
+    private JGitEventsJournal.Cursor backlog;
+    private long replayedSequence;
+    private final boolean resumed;
+
     public JGitWatchService(String fsName,
                             Consumer<JGitWatchService> notifyClose) {
+        this(fsName,
+             notifyClose,
+             DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public JGitWatchService(String fsName,
+                            Consumer<JGitWatchService> notifyClose,
+                            int queueCapacity) {
+
+        this(fsName,
+             notifyClose,
+             queueCapacity,
+             null);
+    }
+
+    JGitWatchService(String fsName,
+                     Consumer<JGitWatchService> notifyClose,
+                     int queueCapacity,
+                     JGitEventsJournal.Cursor backlog) {
 
         this.fsName = fsName;
         this.notifyClose = notifyClose;
+        this.events = new LinkedBlockingQueue<>(queueCapacity);
+        this.backlog = backlog;
+        this.resumed = backlog != null;
+    }
+
+    String getFsName() {
+        return fsName;
     }
 
     @Override
     public WatchKey poll() throws ClosedWatchServiceException {
-        return events.poll();
+        checkOpen();
+        final WatchKey overflow = pollOverflow();
+        if (overflow != null) {
+            return overflow;
+        }
+        final WatchKey replayed = pollBacklog();
+        if (replayed != null) {
+            return replayed;
+        }
+        return checkClosed(events.poll());
     }
 
     @Override
     public WatchKey poll(long timeout,
                          TimeUnit unit) throws ClosedWatchServiceException, InterruptedException {
-        return events.poll();
+        checkOpen();
+        final WatchKey overflow = pollOverflow();
+        if (overflow != null) {
+            return overflow;
+        }
+        final WatchKey replayed = pollBacklog();
+        if (replayed != null) {
+            return replayed;
+        }
+        return checkClosed(events.poll(timeout,
+                                       unit));
     }
 
     @Override
-    public synchronized WatchKey take() throws ClosedWatchServiceException, InterruptedException {
-        while (true) {
-            if (wsClose) {
-                throw new ClosedWatchServiceException();
-            } else if (events.size() > 0) {
-                return events.poll();
-            } else {
-                try {
-                    this.wait();
-                } catch (final java.lang.InterruptedException e) {
+    public WatchKey take() throws ClosedWatchServiceException, InterruptedException {
+        checkOpen();
+        final WatchKey overflow = pollOverflow();
+        if (overflow != null) {
+            return overflow;
+        }
+        final WatchKey replayed = pollBacklog();
+        if (replayed != null) {
+            return replayed;
+        }
+        return checkClosed(events.take());
+    }
+
+    private void checkOpen() {
+        if (wsClose) {
+            throw new ClosedWatchServiceException();
+        }
+    }
+
+    private WatchKey checkClosed(final WatchKey key) {
+        if (key == CLOSED) {
+            events.offer(CLOSED);
+            throw new ClosedWatchServiceException();
+        }
+        return key;
+    }
+
+    private WatchKey pollOverflow() {
+        final int dropped = overflowCount.getAndSet(0);
+        if (dropped == 0) {
+            return null;
+        }
+        return new JGitWatchKey(overflowWatchable,
+                                Collections.singletonList(new OverflowEvent(dropped)));
+    }
+
+    private WatchKey pollBacklog() {
+        if (!resumed) {
+            return null;
+        }
+        synchronized (this) {
+            if (backlog == null) {
+                return null;
+            }
+            try {
+                final WatchKey key = backlog.next();
+                if (key != null) {
+                    replayedSequence = Math.max(replayedSequence,
+                                                ((SequencedWatchKey) key).sequence());
+                    return key;
                 }
+            } catch (final IOException e) {
+                LOGGER.error("Can't read the events journal of [" + fsName + "], resuming with the published events",
+                             e);
+                overflowCount.incrementAndGet();
             }
+            closeBacklog();
+            return null;
+        }
+    }
+
+    private void closeBacklog() {
+        try {
+            backlog.close();
+        } catch (final IOException e) {
+            LOGGER.debug("Can't close the events journal of [" + fsName + "]",
+                         e);
         }
+        backlog = null;
     }
 
     public boolean isClose() {
@@ -74,15 +209,22 @@ public class JGitWatchService implements WatchService {
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        wsClose = true;
-        notifyAll();
+    public void close() throws IOException {
+        closeWithoutNotifyParent();
         notifyClose.accept(this);
     }
 
-    synchronized void closeWithoutNotifyParent() {
+    void closeWithoutNotifyParent() {
         wsClose = true;
-        notifyAll();
+        if (resumed) {
+            synchronized (this) {
+                if (backlog != null) {
+                    closeBacklog();
+                }
+            }
+        }
+        events.clear();
+        events.offer(CLOSED);
     }
 
     @Override
@@ -93,6 +235,105 @@ public class JGitWatchService implements WatchService {
     }
 
     public void publish(WatchKey wk) {
-        events.add(wk);
+        if (wsClose) {
+            return;
+        }
+        if (resumed && isReplayed(wk)) {
+            return;
+        }
+        if (!events.offer(wk)) {
+            overflowWatchable = wk.watchable();
+            overflowCount.addAndGet(Math.max(1,
+                                             wk.pollEvents().size()));
+        }
+    }
+
+    private synchronized boolean isReplayed(WatchKey wk) {
+        final long sequence = wk instanceof SequencedWatchKey ? ((SequencedWatchKey) wk).sequence() : 0;
+        return sequence > 0 && (backlog != null || sequence <= replayedSequence);
+    }
+
+    int getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    static class JGitWatchKey implements SequencedWatchKey {
+
+        private final Watchable watchable;
+        private final List<WatchEvent<?>> events;
+        private final long sequence;
+
+        JGitWatchKey(final Watchable watchable,
+                     final List<WatchEvent<?>> events) {
+            this(watchable,
+                 events,
+                 0);
+        }
+
+        JGitWatchKey(final Watchable watchable,
+                     final List<WatchEvent<?>> events,
+                     final long sequence) {
+            this.watchable = watchable;
+            this.events = events;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long sequence() {
+            return sequence;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public List<WatchEvent<?>> pollEvents() {
+            return events;
+        }
+
+        @Override
+        public boolean reset() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public Watchable watchable() {
+            return watchable;
+        }
+    }
+
+    static class OverflowEvent implements WatchEvent<Object> {
+
+        private final int count;
+
+        OverflowEvent(final int count) {
+            this.count = count;
+        }
+
+        @Override
+        public Kind<Object> kind() {
+            return StandardWatchEventKinds.OVERFLOW;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public Object context() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "WatchEvent{kind=OVERFLOW, count=" + count + '}';
+        }
     }
-}
\ No newline at end of file
+}
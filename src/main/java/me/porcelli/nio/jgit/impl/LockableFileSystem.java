@@ -17,9 +17,23 @@
 
 package me.porcelli.nio.jgit.impl;
 
+import java.util.concurrent.TimeUnit;
+
 public interface LockableFileSystem {
 
     void lock();
 
+    /**
+     * Same as {@link #lock()}, naming the operation that holds the lock for diagnostics.
+     */
+    void lock(String operation);
+
+    /**
+     * @return true if the lock was acquired before the timeout elapsed
+     */
+    boolean tryLock(String operation,
+                    long timeout,
+                    TimeUnit unit);
+
     void unlock();
 }
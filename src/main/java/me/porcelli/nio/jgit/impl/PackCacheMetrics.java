@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+/**
+ * Point in time view of JGit's JVM wide pack window cache: the limits it was configured with
+ * and how much of them is currently in use.
+ */
+public class PackCacheMetrics {
+
+    private final long packedGitLimit;
+    private final int packedGitWindowSize;
+    private final boolean packedGitMMAP;
+    private final int packedGitOpenFilesLimit;
+    private final int deltaBaseCacheLimit;
+    private final int openFiles;
+    private final long openBytes;
+
+    public PackCacheMetrics(final long packedGitLimit,
+                            final int packedGitWindowSize,
+                            final boolean packedGitMMAP,
+                            final int packedGitOpenFilesLimit,
+                            final int deltaBaseCacheLimit,
+                            final int openFiles,
+                            final long openBytes) {
+        this.packedGitLimit = packedGitLimit;
+        this.packedGitWindowSize = packedGitWindowSize;
+        this.packedGitMMAP = packedGitMMAP;
+        this.packedGitOpenFilesLimit = packedGitOpenFilesLimit;
+        this.deltaBaseCacheLimit = deltaBaseCacheLimit;
+        this.openFiles = openFiles;
+        this.openBytes = openBytes;
+    }
+
+    public long getPackedGitLimit() {
+        return packedGitLimit;
+    }
+
+    public int getPackedGitWindowSize() {
+        return packedGitWindowSize;
+    }
+
+    public boolean isPackedGitMMAP() {
+        return packedGitMMAP;
+    }
+
+    public int getPackedGitOpenFilesLimit() {
+        return packedGitOpenFilesLimit;
+    }
+
+    public int getDeltaBaseCacheLimit() {
+        return deltaBaseCacheLimit;
+    }
+
+    /**
+     * @return pack files currently held open by the window cache
+     */
+    public int getOpenFiles() {
+        return openFiles;
+    }
+
+    /**
+     * @return bytes of pack data currently held by the window cache
+     */
+    public long getOpenBytes() {
+        return openBytes;
+    }
+
+    /**
+     * @return fraction of {@link #getPackedGitLimit()} in use; staying close to 1 means windows
+     * are being evicted and pack data re-read, so the limit is too small for the working set
+     */
+    public double getBytesUsage() {
+        return packedGitLimit <= 0 ? 0 : (double) openBytes / packedGitLimit;
+    }
+
+    /**
+     * @return fraction of {@link #getPackedGitOpenFilesLimit()} in use
+     */
+    public double getOpenFilesUsage() {
+        return packedGitOpenFilesLimit <= 0 ? 0 : (double) openFiles / packedGitOpenFilesLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "PackCacheMetrics{openFiles[" + openFiles + "/" + packedGitOpenFilesLimit + "], openBytes[" + openBytes + "/" + packedGitLimit + "]}";
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Cluster message carrying the events of one or more commits of a node, encoded by
+ * {@link WatchEventsCodec}. Written as a raw byte array, so Java serialization only adds the
+ * class descriptor on top of the payload.
+ */
+public class WatchEventsBatch implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String nodeId;
+    private boolean compressed;
+    private byte[] payload;
+
+    public WatchEventsBatch() {
+    }
+
+    WatchEventsBatch(final String nodeId,
+                     final boolean compressed,
+                     final byte[] payload) {
+        this.nodeId = nodeId;
+        this.compressed = compressed;
+        this.payload = payload;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    byte[] getPayload() {
+        return payload;
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        out.writeUTF(nodeId);
+        out.writeBoolean(compressed);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException {
+        nodeId = in.readUTF();
+        compressed = in.readBoolean();
+        payload = new byte[in.readInt()];
+        in.readFully(payload);
+    }
+}
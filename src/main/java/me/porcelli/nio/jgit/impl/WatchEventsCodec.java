@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+
+/**
+ * Binary encoding of {@link WatchEventsWrapper}s for the cluster bus. Every string (file system
+ * names, branch hosts, paths, session, user and message) is written once per batch and referred
+ * to by index afterwards, since events of the same commits repeat most of them. Event URIs are
+ * split in their scheme and host, shared by all the events of a branch, and their path.
+ * Only {@link JGitWatchEvent}s are encoded, other events are dropped.
+ */
+final class WatchEventsCodec {
+
+    private static final byte VERSION = 2;
+
+    //payloads smaller than this don't shrink enough to pay for the deflater
+    static final int COMPRESSION_THRESHOLD = 512;
+
+    //string references: null, a new string written inline, or 2 + index of an already written one
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+
+    private static final ChangeType[] CHANGE_TYPES = ChangeType.values();
+
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+
+    private WatchEventsCodec() {
+    }
+
+    static WatchEventsBatch encode(final String nodeId,
+                                   final List<WatchEventsWrapper> wrappers,
+                                   final boolean compress) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Writer writer = new Writer(new DataOutputStream(bytes));
+        writer.out.writeByte(VERSION);
+        writer.writeVarInt(wrappers.size());
+        for (final WatchEventsWrapper wrapper : wrappers) {
+            writer.writeString(wrapper.getFsName());
+            writer.writeUri(wrapper.getWatchableUri());
+            writer.writeVarLong(wrapper.getSequence());
+            final List<JGitWatchEvent> events = new ArrayList<>(wrapper.getEvents().size());
+            for (final WatchEvent<?> event : wrapper.getEvents()) {
+                if (event instanceof JGitWatchEvent) {
+                    events.add((JGitWatchEvent) event);
+                }
+            }
+            writer.writeVarInt(events.size());
+            for (final JGitWatchEvent event : events) {
+                writer.out.writeByte(event.getChangeType().ordinal());
+                writer.writeUri(event.getOldPathUri());
+                writer.writeUri(event.getNewPathUri());
+                writer.writeString(event.getSessionId());
+                writer.writeString(event.getUserName());
+                writer.writeString(event.getMessage());
+            }
+        }
+        writer.out.flush();
+
+        final byte[] raw = bytes.toByteArray();
+        if (!compress || raw.length < COMPRESSION_THRESHOLD) {
+            return new WatchEventsBatch(nodeId,
+                                        false,
+                                        raw);
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream out = new DeflaterOutputStream(compressed,
+                                                         deflater)) {
+            out.write(raw);
+        } finally {
+            deflater.end();
+        }
+        return new WatchEventsBatch(nodeId,
+                                    true,
+                                    compressed.toByteArray());
+    }
+
+    /**
+     * @throws IOException if the batch is malformed, e.g. sent by a node running another version
+     */
+    static List<WatchEventsWrapper> decode(final WatchEventsBatch batch) throws IOException {
+        InputStream bytes = new ByteArrayInputStream(batch.getPayload());
+        if (batch.isCompressed()) {
+            bytes = new InflaterInputStream(bytes);
+        }
+        try (DataInputStream in = new DataInputStream(bytes)) {
+            return decode(batch.getNodeId(),
+                          in);
+        } catch (final RuntimeException e) {
+            //e.g. negative counts or unparsable URIs
+            throw new IOException("Malformed watch events batch",
+                                  e);
+        }
+    }
+
+    private static List<WatchEventsWrapper> decode(final String nodeId,
+                                                   final DataInputStream in) throws IOException {
+        final Reader reader = new Reader(in);
+        final byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported watch events encoding version " + version);
+        }
+        final int wrapperCount = reader.readVarInt();
+        //counts are not trusted for sizing, a malformed one fails on the missing entries instead
+        final List<WatchEventsWrapper> wrappers = new ArrayList<>(Math.min(wrapperCount,
+                                                                           MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < wrapperCount; i++) {
+            final String fsName = reader.readString();
+            final URI watchable = reader.readUri();
+            final long sequence = reader.readVarLong();
+            final int eventCount = reader.readVarInt();
+            final List<WatchEvent<?>> events = new ArrayList<>(Math.min(eventCount,
+                                                                        MAX_INITIAL_CAPACITY));
+            for (int j = 0; j < eventCount; j++) {
+                final int changeTypeOrdinal = in.readUnsignedByte();
+                if (changeTypeOrdinal >= CHANGE_TYPES.length) {
+                    throw new IOException("Unknown change type " + changeTypeOrdinal);
+                }
+                final ChangeType changeType = CHANGE_TYPES[changeTypeOrdinal];
+                final URI oldPath = reader.readUri();
+                final URI newPath = reader.readUri();
+                final String sessionId = reader.readString();
+                final String userName = reader.readString();
+                final String message = reader.readString();
+                events.add(new JGitWatchEvent(sessionId,
+                                              userName,
+                                              message,
+                                              changeType.name(),
+                                              oldPath,
+                                              newPath));
+            }
+            wrappers.add(new WatchEventsWrapper(nodeId,
+                                                fsName,
+                                                watchable,
+                                                events,
+                                                sequence));
+        }
+        return wrappers;
+    }
+
+    private static class Writer {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        Writer(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        void writeString(final String value) throws IOException {
+            if (value == null) {
+                writeVarInt(NULL_STRING);
+                return;
+            }
+            final Integer index = dictionary.get(value);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+            writeVarInt(NEW_STRING);
+            //not writeUTF, commit messages can be longer than its 64KB limit
+            final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            out.write(utf8);
+            dictionary.put(value,
+                           dictionary.size());
+        }
+
+        void writeUri(final URI uri) throws IOException {
+            if (uri == null) {
+                writeString(null);
+                return;
+            }
+            writeString(uri.getScheme() + "://" + uri.getRawAuthority());
+            writeString(uri.getRawPath());
+        }
+    }
+
+    private static class Reader {
+
+        private final DataInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+
+        Reader(final DataInputStream in) {
+            this.in = in;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+
+        String readString() throws IOException {
+            final int reference = readVarInt();
+            if (reference == NULL_STRING) {
+                return null;
+            }
+            if (reference == NEW_STRING) {
+                final int length = readVarInt();
+                if (length < 0 || length > MAX_STRING_BYTES) {
+                    throw new IOException("Invalid string length " + length);
+                }
+                final byte[] utf8 = new byte[length];
+                in.readFully(utf8);
+                final String value = new String(utf8,
+                                                StandardCharsets.UTF_8);
+                dictionary.add(value);
+                return value;
+            }
+            if (reference < 2 || reference - 2 >= dictionary.size()) {
+                throw new IOException("Unknown string reference " + reference);
+            }
+            return dictionary.get(reference - 2);
+        }
+
+        URI readUri() throws IOException {
+            final String root = readString();
+            if (root == null) {
+                return null;
+            }
+            return URI.create(root + readString());
+        }
+    }
+}
@@ -32,16 +32,53 @@ public class WatchEventsWrapper implements Serializable {
     private final List<WatchEvent<?>> events;
     private final URI watchable;
     private final String fsName;
+    private final long sequence;
 
     public WatchEventsWrapper(String nodeId,
                               String fsName,
                               Path watchable,
                               List<WatchEvent<?>> events) {
+        this(nodeId,
+             fsName,
+             watchable,
+             events,
+             0);
+    }
+
+    WatchEventsWrapper(String nodeId,
+                       String fsName,
+                       Path watchable,
+                       List<WatchEvent<?>> events,
+                       long sequence) {
+        this(nodeId,
+             fsName,
+             watchable != null ? watchable.toUri() : null,
+             events,
+             sequence);
+    }
+
+    WatchEventsWrapper(String nodeId,
+                       String fsName,
+                       URI watchable,
+                       List<WatchEvent<?>> events) {
+        this(nodeId,
+             fsName,
+             watchable,
+             events,
+             0);
+    }
+
+    WatchEventsWrapper(String nodeId,
+                       String fsName,
+                       URI watchable,
+                       List<WatchEvent<?>> events,
+                       long sequence) {
 
         this.nodeId = nodeId;
         this.fsName = fsName;
         this.events = events;
-        this.watchable = watchable != null ? watchable.toUri() : null;
+        this.watchable = watchable;
+        this.sequence = sequence;
     }
 
     public String getFsName() {
@@ -56,6 +93,18 @@ public class WatchEventsWrapper implements Serializable {
         return events;
     }
 
+    URI getWatchableUri() {
+        return watchable;
+    }
+
+    /**
+     * @return the sequence the sending node's events journal gave the events, 0 when they were not
+     * journaled
+     */
+    long getSequence() {
+        return sequence;
+    }
+
     public Path getWatchable() {
         if (watchable == null) {
             return null;
@@ -78,6 +127,9 @@ public class WatchEventsWrapper implements Serializable {
 
         WatchEventsWrapper that = (WatchEventsWrapper) o;
 
+        if (sequence != that.sequence) {
+            return false;
+        }
         if (!Objects.equals(nodeId, that.nodeId)) {
             return false;
         }
@@ -96,6 +148,7 @@ public class WatchEventsWrapper implements Serializable {
         result = 31 * result + (events != null ? events.hashCode() : 0);
         result = 31 * result + (watchable != null ? watchable.hashCode() : 0);
         result = 31 * result + (fsName != null ? fsName.hashCode() : 0);
+        result = 31 * result + Long.hashCode(sequence);
         return result;
     }
 }
\ No newline at end of file
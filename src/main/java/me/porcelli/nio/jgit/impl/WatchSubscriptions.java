@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import me.porcelli.nio.jgit.fs.WatchFilter;
+
+/**
+ * Index of the watch services of a file system by branch and path prefix. Each branch, plus one
+ * entry for the services watching any branch, has a trie of path segments; a service is kept
+ * in the node of its path prefix, so matching an event only visits the nodes along its path.
+ */
+class WatchSubscriptions {
+
+    private static final String ANY_BRANCH = "";
+
+    private final Map<String, Node> branches = new ConcurrentHashMap<>();
+    private final Map<JGitWatchService, Node> registrations = new ConcurrentHashMap<>();
+    //the watch services are of a single file system, the event paths are matched inside it
+    private volatile String fsName;
+
+    void add(final JGitWatchService watchService,
+             final WatchFilter filter) {
+        fsName = watchService.getFsName();
+        final String branch = filter.getBranch() == null ? ANY_BRANCH : filter.getBranch();
+        Node node = branches.computeIfAbsent(branch,
+                                             b -> new Node());
+        for (final String segment : segments(filter.getPathPrefix())) {
+            node = node.children.computeIfAbsent(segment,
+                                                 s -> new Node());
+        }
+        node.subscriptions.add(new Subscription(watchService,
+                                                filter));
+        registrations.put(watchService,
+                          node);
+    }
+
+    void remove(final JGitWatchService watchService) {
+        final Node node = registrations.remove(watchService);
+        if (node != null) {
+            node.subscriptions.removeIf(s -> s.watchService == watchService);
+        }
+    }
+
+    /**
+     * @return the events each watch service has to receive, services with no matching events are left out
+     */
+    Map<JGitWatchService, List<WatchEvent<?>>> match(final Path watchable,
+                                                     final List<WatchEvent<?>> events) {
+        final List<Node> roots = new ArrayList<>(2);
+        addIfPresent(roots,
+                     ANY_BRANCH);
+        if (watchable instanceof JGitPathImpl) {
+            addIfPresent(roots,
+                         ((JGitPathImpl) watchable).getRefTree());
+        }
+
+        final Map<JGitWatchService, List<WatchEvent<?>>> result = new IdentityHashMap<>();
+        final List<Subscription> candidates = new ArrayList<>();
+        for (final WatchEvent<?> event : events) {
+            candidates.clear();
+            for (final Node root : roots) {
+                collect(root,
+                        event,
+                        candidates);
+            }
+            for (final Subscription subscription : candidates) {
+                if (!subscription.filter.matchesKind(event.kind())) {
+                    continue;
+                }
+                final List<WatchEvent<?>> matched = result.computeIfAbsent(subscription.watchService,
+                                                                           ws -> new ArrayList<>());
+                //a rename reaches a service through both of its paths
+                if (matched.isEmpty() || matched.get(matched.size() - 1) != event) {
+                    matched.add(event);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addIfPresent(final List<Node> roots,
+                              final String branch) {
+        final Node root = branches.get(branch);
+        if (root != null) {
+            roots.add(root);
+        }
+    }
+
+    private void collect(final Node root,
+                         final WatchEvent<?> event,
+                         final Collection<Subscription> candidates) {
+        if (!(event instanceof JGitWatchEvent)) {
+            //no path to match against, so every prefix matches
+            collectAll(root,
+                       candidates);
+            return;
+        }
+        final JGitWatchEvent jGitEvent = (JGitWatchEvent) event;
+        collectAlong(root,
+                     jGitEvent.getPathUri(),
+                     candidates);
+        if (jGitEvent.getOldPathUri() != null && !jGitEvent.getOldPathUri().equals(jGitEvent.getPathUri())) {
+            collectAlong(root,
+                         jGitEvent.getOldPathUri(),
+                         candidates);
+        }
+    }
+
+    private void collectAlong(Node node,
+                              final URI path,
+                              final Collection<Subscription> candidates) {
+        candidates.addAll(node.subscriptions);
+        if (path == null) {
+            return;
+        }
+        for (final String segment : segments(JGitWatchEvent.pathInFileSystem(path,
+                                                                              fsName))) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+            candidates.addAll(node.subscriptions);
+        }
+    }
+
+    private void collectAll(final Node node,
+                            final Collection<Subscription> candidates) {
+        candidates.addAll(node.subscriptions);
+        node.children.values().forEach(child -> collectAll(child,
+                                                           candidates));
+    }
+
+    private static List<String> segments(final String path) {
+        final List<String> segments = new ArrayList<>();
+        if (path == null) {
+            return segments;
+        }
+        for (final String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    private static class Subscription {
+
+        private final JGitWatchService watchService;
+        private final WatchFilter filter;
+
+        Subscription(final JGitWatchService watchService,
+                     final WatchFilter filter) {
+            this.watchService = watchService;
+            this.filter = filter;
+        }
+    }
+}
@@ -155,6 +155,15 @@ public class GitSSHService {
         }
 
         sshd.setKeyPairProvider(keyPairProvider);
+        //generates the host key on first boot off the startup and the first connection path
+        executorService.execute(() -> {
+            try {
+                keyPairProvider.loadKeys();
+            } catch (final Exception e) {
+                LOG.error("Failed to load SSH host key from " + certDir,
+                          e);
+            }
+        });
         sshd.setCommandFactory(command -> {
             if (command.startsWith("git-upload-pack")) {
                 return new GitUploadCommand(command,
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.hook;
+
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A commit made through a file system, given to {@link CommitListener}s.
+ */
+public class CommitEvent {
+
+    private final String fsName;
+    private final String branch;
+    private final ObjectId oldCommitId;
+    private final ObjectId newCommitId;
+    private final List<String> changedPaths;
+    private final String sessionId;
+    private final String userName;
+    private final String message;
+
+    public CommitEvent(final String fsName,
+                       final String branch,
+                       final ObjectId oldCommitId,
+                       final ObjectId newCommitId,
+                       final List<String> changedPaths,
+                       final String sessionId,
+                       final String userName,
+                       final String message) {
+        this.fsName = fsName;
+        this.branch = branch;
+        this.oldCommitId = oldCommitId;
+        this.newCommitId = newCommitId;
+        this.changedPaths = changedPaths;
+        this.sessionId = sessionId;
+        this.userName = userName;
+        this.message = message;
+    }
+
+    public String getFsName() {
+        return fsName;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return the commit the branch pointed to before, null if the commit created the branch
+     */
+    public ObjectId getOldCommitId() {
+        return oldCommitId;
+    }
+
+    public ObjectId getNewCommitId() {
+        return newCommitId;
+    }
+
+    /**
+     * @return the paths the commit added, modified or deleted, like {@code /dir/file.txt}; both
+     * paths of a rename are included
+     */
+    public List<String> getChangedPaths() {
+        return changedPaths;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "CommitEvent{" +
+                "fsName='" + fsName + '\'' +
+                ", branch='" + branch + '\'' +
+                ", oldCommitId=" + (oldCommitId != null ? oldCommitId.name() : null) +
+                ", newCommitId=" + newCommitId.name() +
+                ", changedPaths=" + changedPaths +
+                '}';
+    }
+}
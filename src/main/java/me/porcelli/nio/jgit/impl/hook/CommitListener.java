@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.hook;
+
+/**
+ * In-JVM alternative to the post-commit git hook: called for every commit made through the file
+ * systems of a provider, without spawning a process.
+ * <p>
+ * Listeners are registered on the provider, or through {@link java.util.ServiceLoader} by listing
+ * them in {@code META-INF/services/me.porcelli.nio.jgit.impl.hook.CommitListener}.
+ */
+@FunctionalInterface
+public interface CommitListener {
+
+    void onCommit(CommitEvent event);
+
+    /**
+     * @return true to be called on the post-commit hook threads, in commit order per file system,
+     * instead of on the committing thread once the file system is unlocked
+     */
+    default boolean isAsync() {
+        return false;
+    }
+}
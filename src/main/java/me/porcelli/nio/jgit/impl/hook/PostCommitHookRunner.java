@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.hook;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import org.eclipse.jgit.internal.storage.file.FileSnapshot;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.ProcessResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the post-commit git hook of repositories, and the asynchronous {@link CommitListener}s.
+ * Whether a repository has the hook is cached until its hooks directory changes, so commits of
+ * repositories without it don't look it up again.
+ * <p>
+ * When asynchronous, runs are queued per repository and executed in commit order on a fixed
+ * pool, different repositories in parallel. A queue only exists while it has runs. Callers only wait when the maximum number of pending
+ * runs is reached, so they should not hold the file system lock when asking for a run.
+ */
+public class PostCommitHookRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostCommitHookRunner.class);
+
+    private static final String POST_COMMIT = "post-commit";
+
+    private final Supplier<FS> fs;
+
+    //null when hooks run on the committing thread
+    private final ExecutorService executor;
+
+    private final Semaphore pendingRuns;
+
+    private final int maxPendingRuns;
+
+    //only changed within compute calls, which serialize the accesses to a repository's queue
+    final Map<String, Queue<Runnable>> repositoryQueues = new ConcurrentHashMap<>();
+
+    final Map<File, HookPresence> presence = new ConcurrentHashMap<>();
+
+    public PostCommitHookRunner(final Supplier<FS> fs) {
+        this(fs,
+             0,
+             0);
+    }
+
+    /**
+     * @param threads number of threads running hooks, 0 to run them on the committing thread
+     * @param maxPendingRuns number of runs that can wait for a thread before callers wait too
+     */
+    public PostCommitHookRunner(final Supplier<FS> fs,
+                                final int threads,
+                                final int maxPendingRuns) {
+        this.fs = fs;
+        this.maxPendingRuns = Math.max(1,
+                                       maxPendingRuns);
+        this.pendingRuns = new Semaphore(this.maxPendingRuns);
+        if (threads > 0) {
+            final AtomicInteger count = new AtomicInteger();
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads,
+                                                                   threads,
+                                                                   60,
+                                                                   TimeUnit.SECONDS,
+                                                                   new LinkedBlockingQueue<>(),
+                                                                   r -> {
+                                                                       final Thread thread = new Thread(r,
+                                                                                                        "jgit-post-commit-hook-" + count.incrementAndGet());
+                                                                       thread.setDaemon(true);
+                                                                       return thread;
+                                                                   });
+            //idle providers don't keep threads around
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Runs the post-commit hook of the repository, if it has one, and gives its exit code to
+     * the callback.
+     * @param name identifies the repository, its runs are executed in the order they're asked
+     */
+    public void run(final String name,
+                    final Repository repository,
+                    final IntConsumer onExit) {
+        run(name,
+            repository,
+            onExit,
+            () -> {
+            });
+    }
+
+    /**
+     * Like {@link #run(String, Repository, IntConsumer)}, and calls back once the repository is no
+     * longer used: right away when it has no hook, otherwise after the hook ran.
+     */
+    public void run(final String name,
+                    final Repository repository,
+                    final IntConsumer onExit,
+                    final Runnable onDone) {
+        if (!hasHook(repository)) {
+            onDone.run();
+            return;
+        }
+        submit(name,
+               () -> {
+                   try {
+                       execute(repository,
+                               onExit);
+                   } finally {
+                       onDone.run();
+                   }
+               });
+    }
+
+    /**
+     * Runs a task along with the post-commit hooks of the repository, after the runs and tasks
+     * asked before for it.
+     * @param name identifies the repository
+     */
+    public void submit(final String name,
+                       final Runnable run) {
+        if (executor == null) {
+            run.run();
+            return;
+        }
+        try {
+            pendingRuns.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.run();
+            return;
+        }
+        final boolean[] idle = new boolean[1];
+        repositoryQueues.compute(name,
+                                 (key, existing) -> {
+                                     final Queue<Runnable> runs = existing == null ? new ArrayDeque<>() : existing;
+                                     idle[0] = runs.isEmpty();
+                                     runs.add(run);
+                                     return runs;
+                                 });
+        //the queue is drained by a single task at a time, which keeps the repository's runs in order
+        if (idle[0]) {
+            executor.execute(() -> drain(name,
+                                         run));
+        }
+    }
+
+    private void drain(final String name,
+                       final Runnable first) {
+        Runnable next = first;
+        while (next != null) {
+            try {
+                next.run();
+            } catch (final RuntimeException e) {
+                //the following runs of the repository still go
+                LOGGER.error("Post-commit run of [" + name + "] failed",
+                             e);
+            }
+            next = removeHead(name);
+            //released once the run is off the queue, so an idle runner has no queue left
+            pendingRuns.release();
+        }
+    }
+
+    /**
+     * @return the following run of the repository, null when its queue is drained and removed
+     */
+    private Runnable removeHead(final String name) {
+        final Runnable[] following = new Runnable[1];
+        repositoryQueues.computeIfPresent(name,
+                                          (key, runs) -> {
+                                              runs.remove();
+                                              following[0] = runs.peek();
+                                              return runs.isEmpty() ? null : runs;
+                                          });
+        return following[0];
+    }
+
+    private void execute(final Repository repository,
+                         final IntConsumer onExit) {
+        try {
+            final ProcessResult result = fs.get().runHookIfPresent(repository,
+                                                                   POST_COMMIT,
+                                                                   new String[0]);
+            if (result.getStatus().equals(ProcessResult.Status.OK)) {
+                onExit.accept(result.getExitCode());
+            }
+        } catch (final Exception e) {
+            LOGGER.error("Failed to run the post-commit hook of [" + repository.getDirectory() + "]",
+                         e);
+        }
+    }
+
+    boolean hasHook(final Repository repository) {
+        final File hooksDir = new File(repository.getDirectory(),
+                                       Constants.HOOKS);
+        final HookPresence cached = presence.get(hooksDir);
+        if (cached != null && !cached.snapshot.isModified(hooksDir)) {
+            return cached.present;
+        }
+        //the snapshot is taken first, a change made while looking the hook up invalidates it
+        final FileSnapshot snapshot = FileSnapshot.saveNoConfig(hooksDir);
+        final boolean present = fs.get().findHook(repository,
+                                                  POST_COMMIT) != null;
+        presence.put(hooksDir,
+                     new HookPresence(snapshot,
+                                      present));
+        return present;
+    }
+
+    /**
+     * Drops what is cached about the repository, once its file system is removed.
+     */
+    public void forget(final Repository repository) {
+        presence.remove(new File(repository.getDirectory(),
+                                 Constants.HOOKS));
+    }
+
+    /**
+     * @return true if all the runs asked so far are done within the timeout
+     */
+    public boolean awaitIdle(final long timeout,
+                             final TimeUnit unit) throws InterruptedException {
+        if (!pendingRuns.tryAcquire(maxPendingRuns,
+                                    timeout,
+                                    unit)) {
+            return false;
+        }
+        pendingRuns.release(maxPendingRuns);
+        return true;
+    }
+
+    private static class HookPresence {
+
+        private final FileSnapshot snapshot;
+        private final boolean present;
+
+        private HookPresence(final FileSnapshot snapshot,
+                             final boolean present) {
+            this.snapshot = snapshot;
+            this.present = present;
+        }
+    }
+}
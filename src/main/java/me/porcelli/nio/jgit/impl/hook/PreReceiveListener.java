@@ -0,0 +1,31 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.hook;
+
+/**
+ * In-JVM alternative to the pre-receive git hook: called on the receiving thread for every ref a
+ * push updates, before it is updated, and may reject the update.
+ * <p>
+ * Listeners are registered on the provider, or through {@link java.util.ServiceLoader} by listing
+ * them in {@code META-INF/services/me.porcelli.nio.jgit.impl.hook.PreReceiveListener}.
+ */
+@FunctionalInterface
+public interface PreReceiveListener {
+
+    void onPreReceive(ReceiveEvent event);
+}
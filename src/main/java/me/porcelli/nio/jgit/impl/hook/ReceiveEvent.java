@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.hook;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * A ref update requested by a push, given to {@link PreReceiveListener}s before it is applied.
+ */
+public class ReceiveEvent {
+
+    private final String fsName;
+    private final ReceiveCommand command;
+    private final String userName;
+    private final Supplier<List<String>> changedPaths;
+    private List<String> paths;
+
+    public ReceiveEvent(final String fsName,
+                        final ReceiveCommand command,
+                        final String userName,
+                        final Supplier<List<String>> changedPaths) {
+        this.fsName = fsName;
+        this.command = command;
+        this.userName = userName;
+        this.changedPaths = changedPaths;
+    }
+
+    public String getFsName() {
+        return fsName;
+    }
+
+    /**
+     * @return the name of the updated branch, without its {@code refs/heads/} prefix
+     */
+    public String getBranch() {
+        return Repository.shortenRefName(command.getRefName());
+    }
+
+    public String getRefName() {
+        return command.getRefName();
+    }
+
+    /**
+     * @return the commit the ref points to, null if the push creates it
+     */
+    public ObjectId getOldCommitId() {
+        return command.getOldId().equals(ObjectId.zeroId()) ? null : command.getOldId();
+    }
+
+    /**
+     * @return the commit the ref is updated to, null if the push deletes it
+     */
+    public ObjectId getNewCommitId() {
+        return command.getNewId().equals(ObjectId.zeroId()) ? null : command.getNewId();
+    }
+
+    /**
+     * @return the paths that differ between the old and the new commit, like {@code /dir/file.txt};
+     * computed on the first call
+     */
+    public List<String> getChangedPaths() {
+        if (paths == null) {
+            paths = changedPaths.get();
+        }
+        return paths;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Rejects the update of this ref, the reason is sent back to the pushing client.
+     */
+    public void reject(final String reason) {
+        command.setResult(ReceiveCommand.Result.REJECTED_OTHER_REASON,
+                          reason);
+    }
+
+    public boolean isRejected() {
+        return command.getResult() != ReceiveCommand.Result.NOT_ATTEMPTED;
+    }
+}
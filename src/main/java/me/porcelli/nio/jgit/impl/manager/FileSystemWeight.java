@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.manager;
+
+import java.io.File;
+
+import me.porcelli.nio.jgit.impl.JGitFileSystem;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Estimated footprint of an instantiated file system, used to bound the file systems cache by
+ * heap and open file descriptors instead of by instance count.
+ * <p>
+ * Pack indexes are loaded in heap by JGit and each pack file keeps a descriptor open, so the
+ * estimate is based on the pack directory, the index and packed-refs files, plus a fixed
+ * overhead for the repository and file system. Cached trees are only approximated by that
+ * overhead: JGit keeps them in its window and delta base caches, which are shared by all the
+ * repositories and bounded on their own.
+ */
+public class FileSystemWeight {
+
+    public static final FileSystemWeight EMPTY = new FileSystemWeight(0,
+                                                                      0,
+                                                                      0);
+
+    static final long BASE_HEAP_OVERHEAD = 64 * 1024;
+
+    private final long heapBytes;
+    private final int openFileDescriptors;
+    private final int packFiles;
+
+    public FileSystemWeight(final long heapBytes,
+                            final int openFileDescriptors,
+                            final int packFiles) {
+        this.heapBytes = heapBytes;
+        this.openFileDescriptors = openFileDescriptors;
+        this.packFiles = packFiles;
+    }
+
+    public static FileSystemWeight of(final JGitFileSystem fs) {
+        if (fs == null || fs.getGit() == null) {
+            return EMPTY;
+        }
+        final Repository repository = fs.getGit().getRepository();
+        if (repository == null || repository.getDirectory() == null) {
+            return EMPTY;
+        }
+        return of(repository.getDirectory());
+    }
+
+    public static FileSystemWeight of(final File gitDir) {
+        long heapBytes = BASE_HEAP_OVERHEAD;
+        int packFiles = 0;
+
+        final File[] packDirFiles = new File(gitDir,
+                                             "objects/pack").listFiles();
+        if (packDirFiles != null) {
+            for (File file : packDirFiles) {
+                final String fileName = file.getName();
+                if (fileName.endsWith(".pack")) {
+                    packFiles++;
+                } else if (fileName.endsWith(".idx") || fileName.endsWith(".bitmap")) {
+                    heapBytes += file.length();
+                }
+            }
+        }
+        heapBytes += new File(gitDir,
+                              "index").length();
+        heapBytes += new File(gitDir,
+                              "packed-refs").length();
+
+        //pack files plus the fs lock channel
+        return new FileSystemWeight(heapBytes,
+                                    packFiles + 1,
+                                    packFiles);
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public int getOpenFileDescriptors() {
+        return openFileDescriptors;
+    }
+
+    public int getPackFiles() {
+        return packFiles;
+    }
+
+    @Override
+    public String toString() {
+        return "FileSystemWeight{heapBytes[" + heapBytes + "], openFileDescriptors[" + openFileDescriptors + "], packFiles[" + packFiles + "]}";
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.eclipse.jgit.lib.Constants.DOT_GIT_EXT;
+
+/**
+ * Scans the repositories container dir for bare repositories without opening them.
+ * <p>
+ * Only directory entries and a couple of timestamps per repository are read, so the cost is
+ * proportional to the number of entries, not to the repositories sizes.
+ */
+public class FileSystemsDiscovery {
+
+    private final File reposParentDir;
+
+    public FileSystemsDiscovery(final File reposParentDir) {
+        this.reposParentDir = reposParentDir;
+    }
+
+    /**
+     * @return the file system names of the repositories found, most recently used first
+     */
+    public List<DiscoveredFileSystem> scan() throws IOException {
+        final List<DiscoveredFileSystem> discovered = new ArrayList<>();
+        if (!reposParentDir.isDirectory()) {
+            return discovered;
+        }
+        final Path root = reposParentDir.toPath();
+        Files.walkFileTree(root,
+                           new SimpleFileVisitor<Path>() {
+                               @Override
+                               public FileVisitResult preVisitDirectory(final Path dir,
+                                                                        final BasicFileAttributes attrs) {
+                                   final String dirName = dir.getFileName().toString();
+                                   if (!dir.equals(root) && dirName.endsWith(DOT_GIT_EXT)) {
+                                       final File repoDir = dir.toFile();
+                                       if (new File(repoDir,
+                                                    "HEAD").isFile()) {
+                                           discovered.add(new DiscoveredFileSystem(toFileSystemName(root.relativize(dir)),
+                                                                                   lastUsed(repoDir)));
+                                       }
+                                       return FileVisitResult.SKIP_SUBTREE;
+                                   }
+                                   return FileVisitResult.CONTINUE;
+                               }
+
+                               @Override
+                               public FileVisitResult visitFileFailed(final Path file,
+                                                                      final IOException exc) {
+                                   return FileVisitResult.CONTINUE;
+                               }
+                           });
+        discovered.sort(Comparator.comparingLong(DiscoveredFileSystem::getLastUsed).reversed()
+                                .thenComparing(DiscoveredFileSystem::getName));
+        return discovered;
+    }
+
+    private static String toFileSystemName(final Path relativeRepoDir) {
+        final String repoName = relativeRepoDir.toString().replace('\\',
+                                                                   '/');
+        return repoName.substring(0,
+                                  repoName.length() - DOT_GIT_EXT.length());
+    }
+
+    //refs are rewritten on every update, the most recent of them tells the last write
+    private static long lastUsed(final File repoDir) {
+        return Math.max(repoDir.lastModified(),
+                        Math.max(new File(repoDir,
+                                          "refs/heads").lastModified(),
+                                 new File(repoDir,
+                                          "packed-refs").lastModified()));
+    }
+
+    public static class DiscoveredFileSystem {
+
+        private final String name;
+        private final long lastUsed;
+
+        DiscoveredFileSystem(final String name,
+                             final long lastUsed) {
+            this.name = name;
+            this.lastUsed = lastUsed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+    }
+}
@@ -21,6 +21,9 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import me.porcelli.nio.jgit.impl.JGitFileSystem;
@@ -35,11 +38,43 @@ public class JGitFileSystemsCache {
     final Map<String, Supplier<JGitFileSystem>> fileSystemsSuppliers = new ConcurrentHashMap<>();
 
     //limited amount of real instances of FS
-    final Map<String, Supplier<JGitFileSystem>> memoizedSuppliers;
+    final JGitFileSystemsCacheDataStructure memoizedSuppliers;
+
+    //closes evicted fs, so the thread adding a fs to the cache doesn't wait for it
+    private final ExecutorService evictionExecutor;
 
     public JGitFileSystemsCache(JGitFileSystemProviderConfiguration config) {
+        this(config,
+             FileSystemWeight::of);
+    }
 
-        memoizedSuppliers = JGitFileSystemsCacheDataStructure.create(config);
+    JGitFileSystemsCache(JGitFileSystemProviderConfiguration config,
+                         Function<JGitFileSystem, FileSystemWeight> weigher) {
+        this(config,
+             weigher,
+             JGitFileSystemsCacheDataStructure.daemonExecutor("jgit-fs-weigher"));
+    }
+
+    JGitFileSystemsCache(JGitFileSystemProviderConfiguration config,
+                         Function<JGitFileSystem, FileSystemWeight> weigher,
+                         Executor weighingExecutor) {
+
+        memoizedSuppliers = new JGitFileSystemsCacheDataStructure(config,
+                                                                  this::onEviction,
+                                                                  weigher,
+                                                                  weighingExecutor);
+        evictionExecutor = JGitFileSystemsCacheDataStructure.daemonExecutor("jgit-fs-eviction");
+    }
+
+    private void onEviction(Supplier<JGitFileSystem> evictedSupplier) {
+        if (evictedSupplier instanceof MemoizedFileSystemsSupplier) {
+            final MemoizedFileSystemsSupplier<JGitFileSystem> memoizedSupplier = (MemoizedFileSystemsSupplier<JGitFileSystem>) evictedSupplier;
+            memoizedSupplier.markEvicted();
+            final JGitFileSystem fs = memoizedSupplier.getIfPresent();
+            if (fs != null) {
+                evictionExecutor.execute(fs::evict);
+            }
+        }
     }
 
     public void addSupplier(String fsKey,
@@ -59,15 +94,24 @@ public class JGitFileSystemsCache {
 
     public JGitFileSystem get(String fsName) {
 
-        Supplier<JGitFileSystem> memoizedSupplier = memoizedSuppliers.get(fsName);
+        final Supplier<JGitFileSystem> memoizedSupplier = getMemoizedSupplier(fsName);
+        if (memoizedSupplier == null) {
+            return null;
+        }
+        return new JGitFileSystemProxy(fsName,
+                                       new EvictionAwareSupplier(fsName,
+                                                                 memoizedSupplier));
+    }
+
+    private Supplier<JGitFileSystem> getMemoizedSupplier(String fsName) {
+        final Supplier<JGitFileSystem> memoizedSupplier = memoizedSuppliers.get(fsName);
         if (memoizedSupplier != null) {
-            return new JGitFileSystemProxy(fsName,
-                                           memoizedSupplier);
-        } else if (fileSystemsSuppliers.get(fsName) != null) {
-            Supplier<JGitFileSystem> newMemoizedSupplier = createMemoizedSupplier(fsName,
-                                                                                  fileSystemsSuppliers.get(fsName));
-            return new JGitFileSystemProxy(fsName,
-                                           newMemoizedSupplier);
+            return memoizedSupplier;
+        }
+        final Supplier<JGitFileSystem> fsSupplier = fileSystemsSuppliers.get(fsName);
+        if (fsSupplier != null) {
+            return createMemoizedSupplier(fsName,
+                                          fsSupplier);
         }
         return null;
     }
@@ -75,9 +119,9 @@ public class JGitFileSystemsCache {
     private Supplier<JGitFileSystem> createMemoizedSupplier(String fsKey,
                                                             Supplier<JGitFileSystem> createFSSupplier) {
         Supplier<JGitFileSystem> memoizedFSSupplier = MemoizedFileSystemsSupplier.of(createFSSupplier);
-        memoizedSuppliers.putIfAbsent(fsKey,
-                                      memoizedFSSupplier);
-        return memoizedFSSupplier;
+        Supplier<JGitFileSystem> existing = memoizedSuppliers.putIfAbsent(fsKey,
+                                                                          memoizedFSSupplier);
+        return existing != null ? existing : memoizedFSSupplier;
     }
 
     public void clear() {
@@ -97,6 +141,35 @@ public class JGitFileSystemsCache {
         return new JGitFileSystemsCacheInfo();
     }
 
+    /**
+     * Keeps the memoized supplier a proxy was created with until it gets evicted, then resolves
+     * the current one, so an evicted fs is transparently re-opened.
+     */
+    private class EvictionAwareSupplier implements Supplier<JGitFileSystem> {
+
+        private final String fsName;
+        private volatile Supplier<JGitFileSystem> current;
+
+        EvictionAwareSupplier(String fsName,
+                              Supplier<JGitFileSystem> memoizedSupplier) {
+            this.fsName = fsName;
+            this.current = memoizedSupplier;
+        }
+
+        @Override
+        public JGitFileSystem get() {
+            Supplier<JGitFileSystem> supplier = current;
+            if (supplier instanceof MemoizedFileSystemsSupplier && ((MemoizedFileSystemsSupplier) supplier).isEvicted()) {
+                final Supplier<JGitFileSystem> resolved = getMemoizedSupplier(fsName);
+                if (resolved != null) {
+                    current = resolved;
+                    supplier = resolved;
+                }
+            }
+            return supplier.get();
+        }
+    }
+
     public class JGitFileSystemsCacheInfo {
 
         public int fileSystemsCacheSize() {
@@ -107,9 +180,21 @@ public class JGitFileSystemsCache {
             return memoizedSuppliers.keySet();
         }
 
+        public Map<String, FileSystemWeight> memoizedFileSystemsWeights() {
+            return memoizedSuppliers.getWeights();
+        }
+
+        public long heapWeight() {
+            return memoizedSuppliers.getTotalHeapBytes();
+        }
+
+        public long openFileDescriptorsWeight() {
+            return memoizedSuppliers.getTotalFileDescriptors();
+        }
+
         @Override
         public String toString() {
-            return "JGitFileSystemsCacheInfo{fileSystemsCacheSize[" + fileSystemsCacheSize() + "], memoizedFileSystemsCacheKeys[" + memoizedFileSystemsCacheKeys() + "]}";
+            return "JGitFileSystemsCacheInfo{fileSystemsCacheSize[" + fileSystemsCacheSize() + "], heapWeight[" + heapWeight() + "], openFileDescriptorsWeight[" + openFileDescriptorsWeight() + "], memoizedFileSystemsCacheKeys[" + memoizedFileSystemsCacheKeys() + "]}";
         }
     }
 }
@@ -15,72 +15,462 @@
  * limitations under the License.
  *
  */
-
 package me.porcelli.nio.jgit.impl.manager;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import me.porcelli.nio.jgit.impl.JGitFileSystem;
 import me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration;
 
-public class JGitFileSystemsCacheDataStructure {
+/**
+ * Bounded map of memoized file system suppliers.
+ * <p>
+ * Reads never block: entries live in a {@link ConcurrentHashMap} and accesses are recorded in a
+ * lossy striped buffer, replayed into the recency order and the frequency sketch by whichever
+ * thread holds the eviction lock. Writes take the eviction lock and evict, from the least
+ * recently used end, the least frequently used entries whose file system is not in use. Only
+ * file systems already instantiated can be in use, so eviction never creates one. Evicted entries
+ * are handed to the eviction listener once the eviction lock is released.
+ * <p>
+ * Besides the instance count, the cache is bounded by the estimated heap and open file
+ * descriptors of the instantiated file systems (see {@link FileSystemWeight}). Weights are
+ * requested when reads are replayed and refreshed at most every {@link #WEIGHT_REFRESH_MILLIS}.
+ * Weighing scans the repository directory, so it runs on the weighing executor without the
+ * eviction lock, and the weight is applied, evicting if over budget, once computed.
+ */
+public class JGitFileSystemsCacheDataStructure extends AbstractMap<String, Supplier<JGitFileSystem>> {
+
+    static final long WEIGHT_REFRESH_MILLIS = 30_000;
+
+    private final Map<String, Node> data = new ConcurrentHashMap<>();
+
+    //guarded by evictionLock, least recently used first
+    private final LinkedHashMap<String, Node> accessOrder = new LinkedHashMap<>(16,
+                                                                                0.75f,
+                                                                                true);
+    private final FrequencySketch sketch;
+    private final StripedReadBuffer<Node> readBuffer = new StripedReadBuffer<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final int maximumSize;
+    //amount of evictable entries, from the least recently used end, compared by frequency
+    private final int victimSampleSize;
+    //amount of entries in use that can be skipped looking for victims
+    private final int maxInUseSkips;
+    private final Consumer<Supplier<JGitFileSystem>> evictionListener;
+
+    private final long heapBudget;
+    private final long fileDescriptorsBudget;
+    private final Function<JGitFileSystem, FileSystemWeight> weigher;
+    private final Executor weighingExecutor;
+    //guarded by evictionLock for writes
+    private volatile long totalHeapBytes;
+    private volatile long totalFileDescriptors;
 
     public static Map<String, Supplier<JGitFileSystem>> create(JGitFileSystemProviderConfiguration config) {
+        return create(config,
+                      evicted -> {
+                      });
+    }
+
+    public static Map<String, Supplier<JGitFileSystem>> create(JGitFileSystemProviderConfiguration config,
+                                                               Consumer<Supplier<JGitFileSystem>> evictionListener) {
+        return new JGitFileSystemsCacheDataStructure(config,
+                                                     evictionListener,
+                                                     FileSystemWeight::of,
+                                                     daemonExecutor("jgit-fs-weigher"));
+    }
+
+    JGitFileSystemsCacheDataStructure(final JGitFileSystemProviderConfiguration config,
+                                      final Consumer<Supplier<JGitFileSystem>> evictionListener,
+                                      final Function<JGitFileSystem, FileSystemWeight> weigher,
+                                      final Executor weighingExecutor) {
+        this.evictionListener = evictionListener;
+        this.weigher = weigher;
+        this.weighingExecutor = weighingExecutor;
+        this.heapBudget = config.getJgitCacheHeapBudget();
+        this.fileDescriptorsBudget = config.getJgitCacheFileDescriptorsBudget();
+        this.maximumSize = config.getJgitFileSystemsInstancesCache();
+        this.victimSampleSize = Math.max(1,
+                                         config.getJgitCacheOverflowCleanupSize());
+        this.maxInUseSkips = Math.max(1,
+                                      config.getJgitRemoveEldestEntryIterations());
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public Supplier<JGitFileSystem> get(final Object key) {
+        final Node node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (readBuffer.offer(node)) {
+            tryDrain();
+        }
+        return node.value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public Supplier<JGitFileSystem> putIfAbsent(final String key,
+                                                final Supplier<JGitFileSystem> value) {
+        final Node node = new Node(key,
+                                   value);
+        final Node existing = data.putIfAbsent(key,
+                                               node);
+        if (existing != null) {
+            if (readBuffer.offer(existing)) {
+                tryDrain();
+            }
+            return existing.value;
+        }
+        afterWrite(node);
+        return null;
+    }
+
+    @Override
+    public Supplier<JGitFileSystem> put(final String key,
+                                        final Supplier<JGitFileSystem> value) {
+        final Node node = new Node(key,
+                                   value);
+        final Node previous = data.put(key,
+                                       node);
+        afterWrite(node);
+        return previous == null ? null : previous.value;
+    }
 
-        return Collections.synchronizedMap(new LinkedHashMap<String, Supplier<JGitFileSystem>>(config.getJgitFileSystemsInstancesCache() + 1,
-                                                                                               0.75f,
-                                                                                               true) {
+    @Override
+    public Supplier<JGitFileSystem> remove(final Object key) {
+        final Node node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        evictionLock.lock();
+        try {
+            accessOrder.remove(key,
+                               node);
+            updateTotals(node.weight,
+                         FileSystemWeight.EMPTY);
+        } finally {
+            evictionLock.unlock();
+        }
+        return node.value;
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            readBuffer.drainTo(node -> {
+            });
+            data.clear();
+            accessOrder.clear();
+            totalHeapBytes = 0;
+            totalFileDescriptors = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
-            //prevent infinite loop if all FS instances are in use
-            private Integer removeEldestEntryIterations = 0;
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(data.keySet());
+    }
 
+    @Override
+    public Set<Entry<String, Supplier<JGitFileSystem>>> entrySet() {
+        return new AbstractSet<Entry<String, Supplier<JGitFileSystem>>>() {
             @Override
-            public Supplier<JGitFileSystem> putIfAbsent(String key, Supplier<JGitFileSystem> value) {
-                Supplier<JGitFileSystem> jGitFileSystemSupplier = super.putIfAbsent(key, value);
-                if (size() > config.getJgitFileSystemsInstancesCache()) {
-                    fitListToCacheSize();
-                }
-                return jGitFileSystemSupplier;
-            }
-
-            private void fitListToCacheSize() {
-                List<String> itemsToRemove = new ArrayList<>();
-                int maxIterations = config.getJgitCacheOverflowCleanupSize();
-                Object[] entries = this.entrySet().toArray();
-                for (int i = this.size() - 1; (i >= 0 && (this.size() - i < maxIterations)); i--) {
-                    Map.Entry<String, Supplier<JGitFileSystem>> entry = (Map.Entry) entries[i];
-                    JGitFileSystem targetFS = (JGitFileSystem) ((MemoizedFileSystemsSupplier) entry.getValue()).get();
-                    if (!targetFS.hasBeenInUse()) {
-                        itemsToRemove.add(entry.getKey());
+            public Iterator<Entry<String, Supplier<JGitFileSystem>>> iterator() {
+                final Iterator<Node> nodes = data.values().iterator();
+                return new Iterator<Entry<String, Supplier<JGitFileSystem>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return nodes.hasNext();
                     }
-                }
-                itemsToRemove.forEach(item -> this.remove(item));
+
+                    @Override
+                    public Entry<String, Supplier<JGitFileSystem>> next() {
+                        final Node node = nodes.next();
+                        return new SimpleImmutableEntry<>(node.key,
+                                                          node.value);
+                    }
+                };
             }
 
             @Override
-            public boolean removeEldestEntry(Map.Entry eldest) {
-                if (removeEldestEntryIterations > config.getJgitRemoveEldestEntryIterations()) {
-                    removeEldestEntryIterations = 0;
-                    return false;
-                }
-                if (size() > config.getJgitFileSystemsInstancesCache()) {
-                    JGitFileSystem targetFS = (JGitFileSystem) ((MemoizedFileSystemsSupplier) eldest.getValue()).get();
-                    if (targetFS.hasBeenInUse()) {
-                        removeEldestEntryIterations++;
-                        this.remove(eldest.getKey());
-                        this.put((String) eldest.getKey(), (MemoizedFileSystemsSupplier) eldest.getValue());
-                        return false;
-                    } else {
-                        return true;
-                    }
+            public int size() {
+                return data.size();
+            }
+        };
+    }
+
+    /**
+     * @return estimated weight of each memoized fs, empty for the ones not instantiated yet
+     */
+    public Map<String, FileSystemWeight> getWeights() {
+        final Map<String, FileSystemWeight> weights = new TreeMap<>();
+        data.values().forEach(node -> weights.put(node.key,
+                                                  node.weight));
+        return weights;
+    }
+
+    public long getTotalHeapBytes() {
+        return totalHeapBytes;
+    }
+
+    public long getTotalFileDescriptors() {
+        return totalFileDescriptors;
+    }
+
+    /**
+     * @return a single daemon thread executor, whose thread goes away when idle
+     */
+    static ExecutorService daemonExecutor(final String threadName) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1,
+                                                                   1,
+                                                                   60,
+                                                                   TimeUnit.SECONDS,
+                                                                   new LinkedBlockingQueue<>(),
+                                                                   r -> {
+                                                                       final Thread thread = new Thread(r,
+                                                                                                        threadName);
+                                                                       thread.setDaemon(true);
+                                                                       return thread;
+                                                                   });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void afterWrite(final Node node) {
+        final List<Node> evicted = new ArrayList<>();
+        final List<Node> toWeigh = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            drainReadBuffer(toWeigh);
+            //a concurrent remove may have won the race
+            if (data.get(node.key) == node) {
+                final Node replaced = accessOrder.put(node.key,
+                                                      node);
+                if (replaced != null) {
+                    updateTotals(replaced.weight,
+                                 FileSystemWeight.EMPTY);
                 }
-                return false;
+                requestWeight(node,
+                              toWeigh);
+                sketch.increment(node.key);
+                evict(node,
+                      evicted);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        evicted.forEach(victim -> evictionListener.accept(victim.value));
+        toWeigh.forEach(this::weighAsync);
+    }
+
+    private void tryDrain() {
+        if (evictionLock.tryLock()) {
+            final List<Node> toWeigh = new ArrayList<>();
+            try {
+                drainReadBuffer(toWeigh);
+            } finally {
+                evictionLock.unlock();
+            }
+            toWeigh.forEach(this::weighAsync);
+        }
+    }
+
+    private void drainReadBuffer(final List<Node> toWeigh) {
+        readBuffer.drainTo(node -> {
+            if (accessOrder.get(node.key) == node) {
+                sketch.increment(node.key);
+                requestWeight(node,
+                              toWeigh);
             }
         });
     }
+
+    private void evict(final Node candidate,
+                       final List<Node> evicted) {
+        while (true) {
+            final boolean overCount = data.size() > maximumSize;
+            if (!overCount && !isOverWeightBudget()) {
+                return;
+            }
+            //over a weight budget only instantiated fs are worth evicting
+            final Node victim = selectVictim(candidate,
+                                             !overCount);
+            if (victim == null) {
+                //all the sampled fs are in use, cache can grow
+                return;
+            }
+            accessOrder.remove(victim.key);
+            updateTotals(victim.weight,
+                         FileSystemWeight.EMPTY);
+            if (data.remove(victim.key,
+                            victim)) {
+                evicted.add(victim);
+            }
+        }
+    }
+
+    private boolean isOverWeightBudget() {
+        return (heapBudget > 0 && totalHeapBytes > heapBudget) ||
+                (fileDescriptorsBudget > 0 && totalFileDescriptors > fileDescriptorsBudget);
+    }
+
+    /**
+     * Adds the node to the ones to weigh once the eviction lock is released, if its weight is
+     * missing or stale and not being computed already.
+     */
+    private void requestWeight(final Node node,
+                               final List<Node> toWeigh) {
+        if (node.weighing || (node.weighedAt != 0 && System.currentTimeMillis() - node.weighedAt < WEIGHT_REFRESH_MILLIS)) {
+            return;
+        }
+        if (getIfPresent(node) == null) {
+            //nothing open yet, weighed once instantiated
+            return;
+        }
+        node.weighing = true;
+        toWeigh.add(node);
+    }
+
+    private void weighAsync(final Node node) {
+        try {
+            weighingExecutor.execute(() -> weigh(node));
+        } catch (RuntimeException e) {
+            evictionLock.lock();
+            try {
+                node.weighing = false;
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void weigh(final Node node) {
+        final JGitFileSystem fs = getIfPresent(node);
+        FileSystemWeight weight = null;
+        if (fs != null) {
+            try {
+                weight = weigher.apply(fs);
+            } catch (RuntimeException e) {
+                //weighed again on a later access
+            }
+        }
+        final List<Node> evicted = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            node.weighing = false;
+            //a removed or replaced entry no longer counts in the totals
+            if (weight != null && accessOrder.get(node.key) == node) {
+                updateTotals(node.weight,
+                             weight);
+                node.weight = weight;
+                node.weighedAt = System.currentTimeMillis();
+                //over the instance count is up to the writes
+                if (isOverWeightBudget()) {
+                    evict(null,
+                          evicted);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        evicted.forEach(victim -> evictionListener.accept(victim.value));
+    }
+
+    private void updateTotals(final FileSystemWeight oldWeight,
+                              final FileSystemWeight newWeight) {
+        totalHeapBytes += newWeight.getHeapBytes() - oldWeight.getHeapBytes();
+        totalFileDescriptors += newWeight.getOpenFileDescriptors() - oldWeight.getOpenFileDescriptors();
+    }
+
+    private Node selectVictim(final Node candidate,
+                              final boolean weighedOnly) {
+        Node victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        int sampled = 0;
+        int inUseSkips = 0;
+        for (Node node : accessOrder.values()) {
+            if (node == candidate || (weighedOnly && node.weight == FileSystemWeight.EMPTY)) {
+                continue;
+            }
+            if (isInUse(node)) {
+                if (++inUseSkips > maxInUseSkips) {
+                    break;
+                }
+                continue;
+            }
+            final int frequency = sketch.frequency(node.key);
+            if (frequency < victimFrequency) {
+                victim = node;
+                victimFrequency = frequency;
+            }
+            if (++sampled >= victimSampleSize) {
+                break;
+            }
+        }
+        return victim;
+    }
+
+    private static boolean isInUse(final Node node) {
+        final JGitFileSystem fs = getIfPresent(node);
+        return fs != null && fs.hasBeenInUse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JGitFileSystem getIfPresent(final Node node) {
+        if (!(node.value instanceof MemoizedFileSystemsSupplier)) {
+            return null;
+        }
+        return ((MemoizedFileSystemsSupplier<JGitFileSystem>) node.value).getIfPresent();
+    }
+
+    private static final class Node {
+
+        final String key;
+        final Supplier<JGitFileSystem> value;
+        //guarded by evictionLock for writes
+        volatile FileSystemWeight weight = FileSystemWeight.EMPTY;
+        long weighedAt;
+        //guarded by evictionLock, a weight is being computed
+        boolean weighing;
+
+        Node(final String key,
+             final Supplier<JGitFileSystem> value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
 }
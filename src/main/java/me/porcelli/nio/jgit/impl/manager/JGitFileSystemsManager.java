@@ -23,10 +23,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import me.porcelli.nio.jgit.impl.FileSystemLockMetrics;
 import me.porcelli.nio.jgit.impl.JGitFileSystem;
 import me.porcelli.nio.jgit.impl.JGitFileSystemImpl;
 import me.porcelli.nio.jgit.impl.JGitFileSystemLock;
@@ -67,13 +69,34 @@ public class JGitFileSystemsManager {
                               Supplier<CredentialsProvider> credential,
                               Supplier<JGitFileSystemsEventsManager> fsManager,
                               Supplier<Map<FileSystemHooks, ?>> fsHooks) {
+        newFileSystem(fullHostNames,
+                      git,
+                      fsName,
+                      credential,
+                      fsManager,
+                      fsHooks,
+                      true);
+    }
+
+    /**
+     * Registers the file system supplier, the file system itself is created on first access.
+     * @param gcOnCreation whether the repository is garbage collected when the file system is created
+     */
+    public void newFileSystem(Supplier<Map<String, String>> fullHostNames,
+                              Supplier<Git> git,
+                              Supplier<String> fsName,
+                              Supplier<CredentialsProvider> credential,
+                              Supplier<JGitFileSystemsEventsManager> fsManager,
+                              Supplier<Map<FileSystemHooks, ?>> fsHooks,
+                              boolean gcOnCreation) {
 
         Supplier<JGitFileSystem> fsSupplier = createFileSystemSupplier(fullHostNames,
                                                                        git,
                                                                        fsName,
                                                                        credential,
                                                                        fsManager,
-                                                                       fsHooks);
+                                                                       fsHooks,
+                                                                       gcOnCreation);
 
         fsCache.addSupplier(fsName.get(),
                             fsSupplier);
@@ -111,14 +134,16 @@ public class JGitFileSystemsManager {
                                                               Supplier<String> fsName,
                                                               Supplier<CredentialsProvider> credential,
                                                               Supplier<JGitFileSystemsEventsManager> fsManager,
-                                                              Supplier<Map<FileSystemHooks, ?>> fsHooks) {
+                                                              Supplier<Map<FileSystemHooks, ?>> fsHooks,
+                                                              boolean gcOnCreation) {
 
         return () -> newFileSystem(fullHostNames.get(),
                                    git.get(),
                                    fsName.get(),
                                    credential.get(),
                                    fsManager.get(),
-                                   fsHooks.get());
+                                   fsHooks.get(),
+                                   gcOnCreation);
     }
 
     private JGitFileSystem newFileSystem(Map<String, String> fullHostNames,
@@ -126,7 +151,8 @@ public class JGitFileSystemsManager {
                                          String fsName,
                                          CredentialsProvider credential,
                                          JGitFileSystemsEventsManager fsEventsManager,
-                                         Map<FileSystemHooks, ?> fsHooks) {
+                                         Map<FileSystemHooks, ?> fsHooks,
+                                         boolean gcOnCreation) {
         fileSystemsLocks.putIfAbsent(fsName, createLock(git));
         final JGitFileSystem fs = new JGitFileSystemImpl(jGitFileSystemProvider,
                                                          fullHostNames,
@@ -137,20 +163,40 @@ public class JGitFileSystemsManager {
                                                          fsEventsManager,
                                                          fsHooks);
 
-        fs.getGit().gc();
+        if (gcOnCreation) {
+            fs.getGit().gc();
+        }
 
         return fs;
     }
 
     JGitFileSystemLock createLock(Git git) {
-        return new JGitFileSystemLock(git, config.getDefaultJgitCacheEvictThresholdTimeUnit(),
-                                      config.getJgitCacheEvictThresholdDuration());
+        final JGitFileSystemLock lock = new JGitFileSystemLock(git, config.getDefaultJgitCacheEvictThresholdTimeUnit(),
+                                                               config.getJgitCacheEvictThresholdDuration(),
+                                                               config.isLockSingleProcess());
+        lock.setSlowHolderThresholdMillis(config.getLockSlowHolderThresholdMillis());
+        return lock;
+    }
+
+    public Map<String, FileSystemLockMetrics> getLockMetrics() {
+        final Map<String, FileSystemLockMetrics> metrics = new TreeMap<>();
+        fileSystemsLocks.forEach((fsName, lock) -> metrics.put(fsName,
+                                                               lock.getMetrics()));
+        return metrics;
     }
 
     public void remove(String realFSKey) {
         fsCache.remove(realFSKey);
         fileSystemsRoot.remove(realFSKey);
         closedFileSystems.remove(realFSKey);
+        removeLock(realFSKey);
+    }
+
+    private void removeLock(String fsName) {
+        final JGitFileSystemLock lock = fileSystemsLocks.remove(fsName);
+        if (lock != null) {
+            lock.close();
+        }
     }
 
     public JGitFileSystem get(String fsName) {
@@ -161,6 +207,7 @@ public class JGitFileSystemsManager {
         fsCache.clear();
         closedFileSystems.clear();
         fileSystemsRoot.clear();
+        new ArrayList<>(fileSystemsLocks.keySet()).forEach(this::removeLock);
     }
 
     public boolean containsKey(String fsName) {
@@ -25,6 +25,7 @@ public class MemoizedFileSystemsSupplier<T> implements Supplier<T> {
 
     final Supplier<T> delegate;
     ConcurrentMap<Class<?>, T> map = new ConcurrentHashMap<>(1);
+    private volatile boolean evicted = false;
 
     private MemoizedFileSystemsSupplier(Supplier<T> delegate) {
         this.delegate = delegate;
@@ -38,6 +39,21 @@ public class MemoizedFileSystemsSupplier<T> implements Supplier<T> {
         return t;
     }
 
+    /**
+     * @return the memoized instance, or null if it was not created yet
+     */
+    public T getIfPresent() {
+        return this.map.get(MemoizedFileSystemsSupplier.class);
+    }
+
+    public void markEvicted() {
+        this.evicted = true;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
     public static <T> Supplier<T> of(Supplier<T> provider) {
         return new MemoizedFileSystemsSupplier<>(provider);
     }
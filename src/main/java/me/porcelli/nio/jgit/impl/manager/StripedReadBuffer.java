@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy, striped buffer used to record cache reads without taking a lock.
+ * <p>
+ * Each thread writes to a stripe selected by its id; a full or contended stripe simply drops the
+ * record. Draining must be serialized by the caller (the cache eviction lock).
+ */
+class StripedReadBuffer<E> {
+
+    static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+    private static final int MAX_STRIPES = 64;
+
+    private final Stripe<E>[] stripes;
+    private final int stripesMask;
+
+    @SuppressWarnings("unchecked")
+    StripedReadBuffer() {
+        final int ncpu = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while (count < ncpu && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripesMask = count - 1;
+    }
+
+    /**
+     * Records an element.
+     * @return true if the stripe is at least half full and should be drained
+     */
+    boolean offer(final E e) {
+        final long threadId = Thread.currentThread().getId();
+        final Stripe<E> stripe = stripes[(int) (threadId ^ (threadId >>> 32)) & stripesMask];
+        return stripe.offer(e);
+    }
+
+    void drainTo(final Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static final class Stripe<E> {
+
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        boolean offer(final E e) {
+            final long head = readCounter;
+            final long tail = writeCounter.get();
+            final long size = tail - head;
+            if (size >= STRIPE_SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail,
+                                           tail + 1)) {
+                buffer.lazySet((int) (tail & STRIPE_MASK),
+                               e);
+                return size + 1 >= STRIPE_SIZE / 2;
+            }
+            return false;
+        }
+
+        void drainTo(final Consumer<E> consumer) {
+            long head = readCounter;
+            final long tail = writeCounter.get();
+            while (head < tail) {
+                final int index = (int) (head & STRIPE_MASK);
+                final E e = buffer.get(index);
+                if (e == null) {
+                    //slot reserved but not yet published
+                    break;
+                }
+                buffer.lazySet(index,
+                               null);
+                consumer.accept(e);
+                head++;
+            }
+            readCounter = head;
+        }
+    }
+}
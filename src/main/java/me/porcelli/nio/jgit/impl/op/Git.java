@@ -25,6 +25,8 @@ import java.nio.file.NoSuchFileException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import me.porcelli.nio.jgit.fs.attribute.FileDiff;
 import me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration;
@@ -36,6 +38,8 @@ import me.porcelli.nio.jgit.impl.op.commands.SubdirectoryClone;
 import me.porcelli.nio.jgit.impl.op.model.CommitContent;
 import me.porcelli.nio.jgit.impl.op.model.CommitHistory;
 import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
+import me.porcelli.nio.jgit.impl.op.model.MaintenanceStats;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.PathInfo;
 import me.porcelli.nio.jgit.impl.op.model.TextualDiff;
 import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
@@ -224,6 +228,19 @@ public interface Git {
 
     void gc();
 
+    MaintenanceStats getMaintenanceStats();
+
+    int packLooseObjects(final long maxBytesPerSecond,
+                         final Consumer<Runnable> exclusively);
+
+    int packRefs();
+
+    int pruneLooseObjects(final long graceMillis);
+
+    int mergePacks(final int factor,
+                   final long maxBytesPerSecond,
+                   final Consumer<Runnable> exclusively);
+
     RevCommit getCommit(final String commitId);
 
     RevCommit getLastCommit(final String refName);
@@ -287,6 +304,9 @@ public interface Git {
     List<String> conflictBranchesChecker(final String branchA,
                                          final String branchB);
 
+    Map<String, List<String>> conflictBranchesMatrix(final String targetBranch,
+                                                     final List<String> sourceBranches);
+
     void squash(final String branch,
                 final String startCommit,
                 final String commitMessage);
@@ -297,6 +317,12 @@ public interface Git {
                    final ObjectId originId,
                    final CommitContent content);
 
+    Optional<RevCommit> commitAndGet(final String branchName,
+                                     final CommitInfo commitInfo,
+                                     final boolean amend,
+                                     final ObjectId originId,
+                                     final CommitContent content);
+
     List<DiffEntry> listDiffs(final String startCommitId,
                               final String endCommitId);
 
@@ -307,6 +333,12 @@ public interface Git {
                                      final String startCommitId,
                                      final String endCommitId);
 
+    Map<String, ObjectId> mapDiffObjectIds(final String startCommitId,
+                                           final String endCommitId);
+
+    ObjectIdCommitContent mapDiffCommitContent(final String startCommitId,
+                                               final String endCommitId);
+
     InputStream blobAsInputStream(final String treeRef,
                                   final String path) throws NoSuchFileException;
 
@@ -334,6 +366,10 @@ public interface Git {
     void refUpdate(final String branch,
                    final RevCommit commit) throws IOException, ConcurrentRefUpdateException;
 
+    void refUpdate(final String branch,
+                   final ObjectId expectedOldId,
+                   final RevCommit commit) throws IOException, ConcurrentRefUpdateException;
+
     KetchLeader getKetchLeader();
 
     boolean isKetchEnabled();
@@ -25,7 +25,9 @@ import java.nio.file.NoSuchFileException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import me.porcelli.nio.jgit.fs.attribute.FileDiff;
 import me.porcelli.nio.jgit.impl.JGitPathImpl;
@@ -33,7 +35,9 @@ import me.porcelli.nio.jgit.impl.config.ConfigProperties;
 import me.porcelli.nio.jgit.impl.op.commands.BlobAsInputStream;
 import me.porcelli.nio.jgit.impl.op.commands.CherryPick;
 import me.porcelli.nio.jgit.impl.op.commands.Commit;
+import me.porcelli.nio.jgit.impl.op.commands.ConflictBranchesCache;
 import me.porcelli.nio.jgit.impl.op.commands.ConflictBranchesChecker;
+import me.porcelli.nio.jgit.impl.op.commands.ConflictBranchesMatrix;
 import me.porcelli.nio.jgit.impl.op.commands.ConvertRefTree;
 import me.porcelli.nio.jgit.impl.op.commands.CreateBranch;
 import me.porcelli.nio.jgit.impl.op.commands.DeleteBranch;
@@ -52,12 +56,18 @@ import me.porcelli.nio.jgit.impl.op.commands.ListDiffs;
 import me.porcelli.nio.jgit.impl.op.commands.ListPathContent;
 import me.porcelli.nio.jgit.impl.op.commands.ListRefs;
 import me.porcelli.nio.jgit.impl.op.commands.MapDiffContent;
+import me.porcelli.nio.jgit.impl.op.commands.MapDiffObjectIds;
 import me.porcelli.nio.jgit.impl.op.commands.Merge;
+import me.porcelli.nio.jgit.impl.op.commands.MergePacks;
+import me.porcelli.nio.jgit.impl.op.commands.PackLooseObjects;
+import me.porcelli.nio.jgit.impl.op.commands.PackRefs;
+import me.porcelli.nio.jgit.impl.op.commands.PruneLooseObjects;
 import me.porcelli.nio.jgit.impl.op.commands.Push;
 import me.porcelli.nio.jgit.impl.op.commands.RefTreeUpdateCommand;
 import me.porcelli.nio.jgit.impl.op.commands.ResolveObjectIds;
 import me.porcelli.nio.jgit.impl.op.commands.ResolveRevCommit;
 import me.porcelli.nio.jgit.impl.op.commands.RevertMerge;
+import me.porcelli.nio.jgit.impl.op.commands.SampleMaintenanceStats;
 import me.porcelli.nio.jgit.impl.op.commands.SimpleRefUpdateCommand;
 import me.porcelli.nio.jgit.impl.op.commands.Squash;
 import me.porcelli.nio.jgit.impl.op.commands.SyncRemote;
@@ -66,6 +76,8 @@ import me.porcelli.nio.jgit.impl.op.commands.UpdateRemoteConfig;
 import me.porcelli.nio.jgit.impl.op.model.CommitContent;
 import me.porcelli.nio.jgit.impl.op.model.CommitHistory;
 import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
+import me.porcelli.nio.jgit.impl.op.model.MaintenanceStats;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.PathInfo;
 import me.porcelli.nio.jgit.impl.op.model.TextualDiff;
 import me.porcelli.nio.jgit.impl.util.ThrowableSupplier;
@@ -133,6 +145,7 @@ public class GitImpl implements Git {
     private org.eclipse.jgit.api.Git git;
     private KetchLeaderCache leaders;
     private final AtomicBoolean isHeadInitialized = new AtomicBoolean(false);
+    private final ConflictBranchesCache conflictBranchesCache = new ConflictBranchesCache();
 
     public GitImpl(final org.eclipse.jgit.api.Git git) {
         this(git,
@@ -184,6 +197,40 @@ public class GitImpl implements Git {
         new GarbageCollector(this).execute();
     }
 
+    @Override
+    public MaintenanceStats getMaintenanceStats() {
+        return new SampleMaintenanceStats(this).execute();
+    }
+
+    @Override
+    public int packLooseObjects(final long maxBytesPerSecond,
+                                final Consumer<Runnable> exclusively) {
+        return new PackLooseObjects(this,
+                                    maxBytesPerSecond,
+                                    exclusively).execute();
+    }
+
+    @Override
+    public int packRefs() {
+        return new PackRefs(this).execute();
+    }
+
+    @Override
+    public int pruneLooseObjects(final long graceMillis) {
+        return new PruneLooseObjects(this,
+                                     graceMillis).execute();
+    }
+
+    @Override
+    public int mergePacks(final int factor,
+                          final long maxBytesPerSecond,
+                          final Consumer<Runnable> exclusively) {
+        return new MergePacks(this,
+                              factor,
+                              maxBytesPerSecond,
+                              exclusively).execute();
+    }
+
     @Override
     public RevCommit getCommit(final String commitId) {
         return new GetCommit(this,
@@ -374,7 +421,17 @@ public class GitImpl implements Git {
                                                 final String branchB) {
         return new ConflictBranchesChecker(this,
                                            branchA,
-                                           branchB).execute();
+                                           branchB,
+                                           conflictBranchesCache).execute();
+    }
+
+    @Override
+    public Map<String, List<String>> conflictBranchesMatrix(final String targetBranch,
+                                                            final List<String> sourceBranches) {
+        return new ConflictBranchesMatrix(this,
+                                          targetBranch,
+                                          sourceBranches,
+                                          conflictBranchesCache).execute();
     }
 
     @Override
@@ -405,6 +462,20 @@ public class GitImpl implements Git {
                           content).execute();
     }
 
+    @Override
+    public Optional<RevCommit> commitAndGet(final String branchName,
+                                            final CommitInfo commitInfo,
+                                            final boolean amend,
+                                            final ObjectId originId,
+                                            final CommitContent content) {
+        return new Commit(this,
+                          branchName,
+                          commitInfo,
+                          amend,
+                          originId,
+                          content).executeAndGet();
+    }
+
     @Override
     public List<DiffEntry> listDiffs(final String startCommitId,
                                      final String endCommitId) {
@@ -430,6 +501,22 @@ public class GitImpl implements Git {
                                   endCommitId).execute();
     }
 
+    @Override
+    public Map<String, ObjectId> mapDiffObjectIds(final String startCommitId,
+                                                  final String endCommitId) {
+        return new MapDiffObjectIds(this,
+                                    startCommitId,
+                                    endCommitId).execute();
+    }
+
+    @Override
+    public ObjectIdCommitContent mapDiffCommitContent(final String startCommitId,
+                                                      final String endCommitId) {
+        return new MapDiffObjectIds(this,
+                                    startCommitId,
+                                    endCommitId).executeContent();
+    }
+
     @Override
     public InputStream blobAsInputStream(final String treeRef,
                                          final String path) throws NoSuchFileException {
@@ -518,13 +605,25 @@ public class GitImpl implements Git {
     public void refUpdate(final String branch,
                           final RevCommit commit)
             throws IOException, ConcurrentRefUpdateException {
+        refUpdate(branch,
+                  null,
+                  commit);
+    }
+
+    @Override
+    public void refUpdate(final String branch,
+                          final ObjectId expectedOldId,
+                          final RevCommit commit)
+            throws IOException, ConcurrentRefUpdateException {
         if (getRepository().getRefDatabase() instanceof RefTreeDatabase) {
             new RefTreeUpdateCommand(this,
                                      branch,
+                                     expectedOldId,
                                      commit).execute();
         } else {
             new SimpleRefUpdateCommand(this,
                                        branch,
+                                       expectedOldId,
                                        commit).execute();
         }
     }
@@ -551,6 +650,7 @@ public class GitImpl implements Git {
     @Override
     public void updateRepo(final Repository repo) {
         this.git = new org.eclipse.jgit.api.Git(repo);
+        conflictBranchesCache.clear();
     }
 
     @Override
@@ -55,6 +55,7 @@ public class CherryPick {
         }
 
         try {
+            RevCommit lastCommit = null;
             // loop through all refs to be cherry-picked
             for (final ObjectId src : commits) {
                 final RevCommit srcCommit = git.resolveRevCommit(src);
@@ -68,8 +69,14 @@ public class CherryPick {
                                     srcCommit.getParentCount())));
                 }
 
+                lastCommit = srcCommit;
+            }
+
+            // the branch moves once, and only if nobody moved it since it was read
+            if (lastCommit != null) {
                 git.refUpdate(targetBranch,
-                              srcCommit);
+                              headRef.getObjectId(),
+                              lastCommit);
             }
         } catch (final java.io.IOException e) {
             throw new IOException(new JGitInternalException(
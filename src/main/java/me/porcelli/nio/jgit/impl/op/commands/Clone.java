@@ -27,8 +27,8 @@ import java.util.Optional;
 
 import me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration;
 import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.util.WindowCacheUtil;
 import org.eclipse.jgit.internal.ketch.KetchLeaderCache;
-import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.util.FileUtils;
@@ -148,7 +148,7 @@ public class Clone {
         try {
             if (System.getProperty("os.name").toLowerCase().contains("windows")) {
                 //this operation forces a cache clean freeing any lock -> windows only issue!
-                new WindowCacheConfig().install();
+                WindowCacheUtil.flush();
             }
             FileUtils.delete(gitDir,
                              FileUtils.RECURSIVE | FileUtils.RETRY);
@@ -18,37 +18,50 @@
 package me.porcelli.nio.jgit.impl.op.commands;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.TimeZone;
+import java.util.TreeSet;
 
 import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.op.exceptions.ConcurrentRefUpdateException;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
 import me.porcelli.nio.jgit.impl.op.model.CommitContent;
 import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
 import me.porcelli.nio.jgit.impl.op.model.CopyCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.DefaultCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.MergeCommitContent;
+import me.porcelli.nio.jgit.impl.op.model.MergeObjectIdCommitContent;
+import me.porcelli.nio.jgit.impl.op.model.MergeTreeCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.MoveCommitContent;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.RevertCommitContent;
+import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.revwalk.RevCommit;
 
 import static java.util.Collections.reverse;
 
 public class Commit {
 
+    static final int MAX_REBASE_ATTEMPTS = 10;
+
     private final Git git;
     private final String branchName;
     private final CommitInfo commitInfo;
     private final boolean amend;
     private final ObjectId originId;
+    private final boolean fromBranchHead;
     private final CommitContent content;
 
     public Commit(final Git git,
@@ -84,6 +97,7 @@ public class Commit {
         this.commitInfo = commitInfo;
         this.amend = amend;
         this.content = content;
+        this.fromBranchHead = originId == null;
         try {
             if (originId == null) {
                 this.originId = git.getLastCommit(branchName);
@@ -96,7 +110,18 @@ public class Commit {
     }
 
     public boolean execute() {
-        boolean hadEffecitiveCommit = true;
+        return executeAndGet().isPresent();
+    }
+
+    /**
+     * Builds the new tree from a snapshot of the branch and publishes it with a
+     * compare-and-swap ref update against the head the commit was built on, so no lock
+     * is needed for correctness. If another writer moved the branch meanwhile and the
+     * two changes touch disjoint paths, the change is applied again on top of the new
+     * head; otherwise a {@link ConcurrentRefUpdateException} is thrown.
+     * @return the published commit, empty when the content did not change the tree
+     */
+    public Optional<RevCommit> executeAndGet() {
         final PersonIdent author = buildPersonIdent(git,
                                                     commitInfo.getName(),
                                                     commitInfo.getEmail(),
@@ -104,42 +129,24 @@ public class Commit {
                                                     commitInfo.getWhen());
 
         try (final ObjectInserter odi = git.getRepository().newObjectInserter()) {
-            final ObjectId headId = git.getRepository().resolve(branchName + "^{commit}");
-
-            final Optional<ObjectId> tree;
-            if (content instanceof DefaultCommitContent) {
-                tree = new CreateDefaultCommitTree(git,
-                                                   originId,
-                                                   odi,
-                                                   (DefaultCommitContent) content).execute();
-            } else if (content instanceof MoveCommitContent) {
-                tree = new CreateMoveCommitTree(git,
-                                                originId,
-                                                odi,
-                                                (MoveCommitContent) content).execute();
-            } else if (content instanceof CopyCommitContent) {
-                tree = new CreateCopyCommitTree(git,
-                                                originId,
-                                                odi,
-                                                (CopyCommitContent) content).execute();
-            } else if (content instanceof RevertCommitContent) {
-                tree = new CreateRevertCommitTree(git,
-                                                  originId,
-                                                  odi,
-                                                  (RevertCommitContent) content).execute();
-            } else {
-                tree = Optional.empty();
-            }
+            ObjectId headId = builtOnId();
+            ObjectId baseId = originId;
+
+            for (int attempt = 1; ; attempt++) {
+                final Optional<ObjectId> tree = buildTree(odi,
+                                                          baseId);
+                if (!tree.isPresent()) {
+                    return Optional.empty();
+                }
 
-            if (tree.isPresent()) {
                 final CommitBuilder commit = new CommitBuilder();
                 commit.setAuthor(author);
                 commit.setCommitter(author);
                 commit.setEncoding(StandardCharsets.UTF_8);
                 commit.setMessage(commitInfo.getMessage());
                 if (headId != null) {
-                    if (content instanceof MergeCommitContent) {
-                        commit.setParentIds(((MergeCommitContent) content).getParents());
+                    if (mergeParents() != null) {
+                        commit.setParentIds(mergeParents());
                     } else {
                         if (amend) {
                             final RevCommit previousCommit = git.resolveRevCommit(headId);
@@ -156,16 +163,168 @@ public class Commit {
                 final ObjectId commitId = odi.insert(commit);
                 odi.flush();
 
-                git.refUpdate(branchName,
-                              git.resolveRevCommit(commitId));
-            } else {
-                hadEffecitiveCommit = false;
+                final RevCommit revCommit = git.resolveRevCommit(commitId);
+                if (publish(headId,
+                            revCommit)) {
+                    return Optional.of(revCommit);
+                }
+
+                final ObjectId newHeadId = git.getRepository().resolve(branchName + "^{commit}");
+                if (attempt >= MAX_REBASE_ATTEMPTS || !canRebase(headId,
+                                                                 tree.get(),
+                                                                 newHeadId)) {
+                    throw new ConcurrentRefUpdateException(String.format("Branch <%s> was updated concurrently with overlapping changes",
+                                                                         branchName),
+                                                           null,
+                                                           RefUpdate.Result.LOCK_FAILURE);
+                }
+                headId = newHeadId;
+                baseId = newHeadId;
             }
+        } catch (final GitException e) {
+            throw e;
         } catch (final Throwable t) {
             t.printStackTrace();
             throw new RuntimeException(t);
         }
-        return hadEffecitiveCommit;
+    }
+
+    /**
+     * @return the branch head the commit is built on, and that the branch must still
+     * point to when it's published: the origin read from the branch, the first parent of
+     * a merge, or else the current head, which becomes the parent
+     */
+    private ObjectId builtOnId() throws IOException {
+        if (fromBranchHead) {
+            return originId;
+        }
+        final List<RevCommit> parents = mergeParents();
+        if (parents != null && !parents.isEmpty()) {
+            return parents.get(0);
+        }
+        return git.getRepository().resolve(branchName + "^{commit}");
+    }
+
+    private List<RevCommit> mergeParents() {
+        if (content instanceof MergeCommitContent) {
+            return ((MergeCommitContent) content).getParents();
+        } else if (content instanceof MergeObjectIdCommitContent) {
+            return ((MergeObjectIdCommitContent) content).getParents();
+        } else if (content instanceof MergeTreeCommitContent) {
+            return ((MergeTreeCommitContent) content).getParents();
+        }
+        return null;
+    }
+
+    /**
+     * Moves the branch from headId to the commit. A failed update is retried as long as
+     * the branch still points to headId, i.e. it was only locked by another writer.
+     * @return false if the branch moved meanwhile
+     */
+    private boolean publish(final ObjectId headId,
+                            final RevCommit commit) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                git.refUpdate(branchName,
+                              headId == null ? ObjectId.zeroId() : headId,
+                              commit);
+                return true;
+            } catch (final org.eclipse.jgit.api.errors.ConcurrentRefUpdateException e) {
+                final ObjectId currentHeadId = git.getRepository().resolve(branchName + "^{commit}");
+                if (attempt >= MAX_REBASE_ATTEMPTS || !Objects.equals(currentHeadId,
+                                                                      headId)) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private Optional<ObjectId> buildTree(final ObjectInserter odi,
+                                         final ObjectId baseId) {
+        if (content instanceof DefaultCommitContent) {
+            return new CreateDefaultCommitTree(git,
+                                               baseId,
+                                               odi,
+                                               (DefaultCommitContent) content).execute();
+        } else if (content instanceof MoveCommitContent) {
+            return new CreateMoveCommitTree(git,
+                                            baseId,
+                                            odi,
+                                            (MoveCommitContent) content).execute();
+        } else if (content instanceof CopyCommitContent) {
+            return new CreateCopyCommitTree(git,
+                                            baseId,
+                                            odi,
+                                            (CopyCommitContent) content).execute();
+        } else if (content instanceof RevertCommitContent) {
+            return new CreateRevertCommitTree(git,
+                                              baseId,
+                                              odi,
+                                              (RevertCommitContent) content).execute();
+        } else if (content instanceof ObjectIdCommitContent) {
+            return new CreateObjectIdCommitTree(git,
+                                                baseId,
+                                                odi,
+                                                (ObjectIdCommitContent) content).execute();
+        } else if (content instanceof MergeTreeCommitContent) {
+            return Optional.of(((MergeTreeCommitContent) content).getTreeId());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A change can be replayed on a new head only when it was built from the branch
+     * head, is a plain (non merge, non amend) commit and the paths it touches don't
+     * overlap with the ones changed by the concurrent writer.
+     */
+    private boolean canRebase(final ObjectId headId,
+                              final ObjectId newTreeId,
+                              final ObjectId newHeadId) throws IOException {
+        if (!fromBranchHead || amend || newHeadId == null ||
+                content instanceof MergeCommitContent ||
+                content instanceof MergeObjectIdCommitContent ||
+                content instanceof MergeTreeCommitContent) {
+            return false;
+        }
+        final ObjectId baseTree = headId == null ? null : git.resolveRevCommit(headId).getTree();
+        final TreeSet<String> theirPaths = changedPaths(baseTree,
+                                                        git.resolveRevCommit(newHeadId).getTree());
+        for (final String path : changedPaths(baseTree,
+                                              newTreeId)) {
+            if (theirPaths.contains(path) || !theirPaths.subSet(path + "/",
+                                                                path + "0").isEmpty()) {
+                return false;
+            }
+            for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/',
+                                                                      i + 1)) {
+                if (theirPaths.contains(path.substring(0,
+                                                       i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private TreeSet<String> changedPaths(final ObjectId fromTree,
+                                         final ObjectId toTree) {
+        final TreeSet<String> paths = new TreeSet<>();
+        for (final DiffEntry entry : git.listDiffs(fromTree,
+                                                   toTree)) {
+            if (!DiffEntry.DEV_NULL.equals(entry.getOldPath())) {
+                paths.add(entry.getOldPath());
+            }
+            if (!DiffEntry.DEV_NULL.equals(entry.getNewPath())) {
+                paths.add(entry.getNewPath());
+            }
+        }
+        return paths;
     }
 
     private PersonIdent buildPersonIdent(final Git git,
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/**
+ * Remembers the outcome of trial merges keyed by the (ours, theirs) commit ids, which also
+ * determine their merge base, so results can be found before the base is computed.
+ * As soon as any of the involved refs moves the key changes, so entries never need
+ * to be invalidated explicitly; the least recently used ones are dropped instead.
+ */
+public class ConflictBranchesCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private final Map<String, List<String>> results;
+
+    public ConflictBranchesCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public ConflictBranchesCache(final int maxEntries) {
+        this.results = Collections.synchronizedMap(new LinkedHashMap<String, List<String>>(16,
+                                                                                           0.75f,
+                                                                                           true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, List<String>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public List<String> get(final AnyObjectId ours,
+                            final AnyObjectId theirs) {
+        return results.get(key(ours,
+                               theirs));
+    }
+
+    public void put(final AnyObjectId ours,
+                    final AnyObjectId theirs,
+                    final List<String> conflicts) {
+        results.put(key(ours,
+                        theirs),
+                    Collections.unmodifiableList(conflicts));
+    }
+
+    public void clear() {
+        results.clear();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    private static String key(final AnyObjectId ours,
+                              final AnyObjectId theirs) {
+        return ours.name() + ":" + theirs.name();
+    }
+}
@@ -39,16 +39,28 @@ public class ConflictBranchesChecker {
     private final Git git;
     private final String branchA;
     private final String branchB;
+    private final ConflictBranchesCache cache;
 
     public ConflictBranchesChecker(final Git git,
                                    final String branchA,
                                    final String branchB) {
+        this(git,
+             branchA,
+             branchB,
+             null);
+    }
+
+    public ConflictBranchesChecker(final Git git,
+                                   final String branchA,
+                                   final String branchB,
+                                   final ConflictBranchesCache cache) {
         this.git = checkNotNull("git",
                                 git);
         this.branchA = checkNotEmpty("branchA",
                                      branchA);
         this.branchB = checkNotEmpty("branchB",
                                      branchB);
+        this.cache = cache;
     }
 
     public List<String> execute() {
@@ -58,35 +70,74 @@ public class ConflictBranchesChecker {
         BranchUtil.existsBranch(this.git,
                                 this.branchB);
 
-        List<String> result = new ArrayList<>();
+        final RevCommit commitA = git.getLastCommit(branchA);
+        final RevCommit commitB = git.getLastCommit(branchB);
 
         try {
-            final RevCommit commitA = git.getLastCommit(branchA);
-            final RevCommit commitB = git.getLastCommit(branchB);
-
-            final RevCommit commonAncestor = git.getCommonAncestorCommit(branchA,
-                                                                         branchB);
-
-            ThreeWayMerger merger = MergeStrategy.RECURSIVE.newMerger(git.getRepository(),
-                                                                      true);
-            merger.setBase(commonAncestor);
-
-            boolean canMerge = merger.merge(commitA,
-                                            commitB);
-
-            if (!canMerge) {
-                ResolveMerger resolveMerger = (ResolveMerger) merger;
-                Map<String, MergeResult<?>> mergeResults = resolveMerger.getMergeResults();
-                result.addAll(mergeResults.keySet()
-                                      .stream()
-                                      .sorted(String::compareToIgnoreCase)
-                                      .collect(Collectors.toList()));
-            }
+            return checkConflicts(git,
+                                  cache,
+                                  commitA,
+                                  commitB);
         } catch (IOException e) {
             throw new GitException(
                     String.format("Error when checking for conflicts between branches %s and %s: %s",
                                   this.branchA, this.branchB, e));
         }
+    }
+
+    private static List<String> checkConflicts(final Git git,
+                                               final ConflictBranchesCache cache,
+                                               final RevCommit commitA,
+                                               final RevCommit commitB) throws IOException {
+        if (cache != null) {
+            final List<String> cached = cache.get(commitA,
+                                                  commitB);
+            if (cached != null) {
+                return new ArrayList<>(cached);
+            }
+        }
+
+        final List<String> result = merge(git,
+                                          new GetCommonAncestorCommit(git,
+                                                                      commitA,
+                                                                      commitB).execute(),
+                                          commitA,
+                                          commitB);
+
+        if (cache != null) {
+            cache.put(commitA,
+                      commitB,
+                      result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs a trial merge of the two commits, without touching the cache.
+     * @return the conflicting paths, sorted
+     */
+    static List<String> merge(final Git git,
+                              final RevCommit commonAncestor,
+                              final RevCommit commitA,
+                              final RevCommit commitB) throws IOException {
+        final List<String> result = new ArrayList<>();
+
+        ThreeWayMerger merger = MergeStrategy.RECURSIVE.newMerger(git.getRepository(),
+                                                                  true);
+        merger.setBase(commonAncestor);
+
+        boolean canMerge = merger.merge(commitA,
+                                        commitB);
+
+        if (!canMerge) {
+            ResolveMerger resolveMerger = (ResolveMerger) merger;
+            Map<String, MergeResult<?>> mergeResults = resolveMerger.getMergeResults();
+            result.addAll(mergeResults.keySet()
+                                  .stream()
+                                  .sorted(String::compareToIgnoreCase)
+                                  .collect(Collectors.toList()));
+        }
 
         return result;
     }
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotEmpty;
+import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotNull;
+
+/**
+ * Checks a target branch against many source branches at once. The target head is
+ * resolved a single time, sources pointing to the same commit are merged only once,
+ * and cached results are used before anything else is computed.
+ * <p>
+ * The remaining sources are checked on a small pool shared by all the matrices. The paths changed on the
+ * target side are computed once per merge base and shared; a source whose changes don't
+ * overlap them merges cleanly without a trial merge. Each result is a sorted list of
+ * conflicting paths, empty when the source merges cleanly.
+ */
+public class ConflictBranchesMatrix {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    //trial merges block on repository I/O, so they don't run on the common pool
+    private static final ExecutorService EXECUTOR = executor();
+
+    private final Git git;
+    private final String targetBranch;
+    private final List<String> sourceBranches;
+    private final ConflictBranchesCache cache;
+
+    //paths changed on the target side, by merge base
+    private final Map<ObjectId, CompletableFuture<NavigableSet<String>>> targetChanges = new ConcurrentHashMap<>();
+
+    public ConflictBranchesMatrix(final Git git,
+                                  final String targetBranch,
+                                  final List<String> sourceBranches,
+                                  final ConflictBranchesCache cache) {
+        this.git = checkNotNull("git",
+                                git);
+        this.targetBranch = checkNotEmpty("targetBranch",
+                                          targetBranch);
+        this.sourceBranches = checkNotNull("sourceBranches",
+                                           sourceBranches);
+        this.cache = cache;
+    }
+
+    public Map<String, List<String>> execute() {
+        BranchUtil.existsBranch(this.git,
+                                this.targetBranch);
+        final RevCommit targetCommit = git.getLastCommit(targetBranch);
+
+        final Map<String, RevCommit> sourceCommits = new LinkedHashMap<>();
+        for (final String sourceBranch : sourceBranches) {
+            checkNotEmpty("sourceBranch",
+                          sourceBranch);
+            BranchUtil.existsBranch(this.git,
+                                    sourceBranch);
+            sourceCommits.put(sourceBranch,
+                              git.getLastCommit(sourceBranch));
+        }
+
+        final Map<RevCommit, List<String>> conflictsByCommit = new ConcurrentHashMap<>();
+        final List<RevCommit> pending = new ArrayList<>();
+        for (final RevCommit sourceCommit : sourceCommits.values()) {
+            if (conflictsByCommit.containsKey(sourceCommit) || pending.contains(sourceCommit)) {
+                continue;
+            }
+            final List<String> cached = cache == null ? null : cache.get(targetCommit,
+                                                                         sourceCommit);
+            if (cached != null) {
+                conflictsByCommit.put(sourceCommit,
+                                      new ArrayList<>(cached));
+            } else {
+                pending.add(sourceCommit);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            checkConflicts(targetCommit,
+                           pending,
+                           conflictsByCommit);
+        }
+
+        final Map<String, List<String>> result = new LinkedHashMap<>();
+        sourceCommits.forEach((sourceBranch, sourceCommit) -> result.put(sourceBranch,
+                                                                          conflictsByCommit.get(sourceCommit)));
+        return result;
+    }
+
+    private void checkConflicts(final RevCommit targetCommit,
+                                final List<RevCommit> sourceCommits,
+                                final Map<RevCommit, List<String>> conflictsByCommit) {
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (final RevCommit sourceCommit : sourceCommits) {
+                futures.add(EXECUTOR.submit(() -> conflictsByCommit.put(sourceCommit,
+                                                                        checkConflicts(targetCommit,
+                                                                                       sourceCommit))));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitException("Interrupted when checking for conflicts between branch " + this.targetBranch + " and branches " + this.sourceBranches,
+                                   e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof GitException) {
+                throw (GitException) e.getCause();
+            }
+            final Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw new GitException(
+                    String.format("Error when checking for conflicts between branch %s and branches %s: %s",
+                                  this.targetBranch, this.sourceBranches, cause));
+        } finally {
+            //a failed source makes the others pointless
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static ExecutorService executor() {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                                                                   threads,
+                                                                   60,
+                                                                   TimeUnit.SECONDS,
+                                                                   new LinkedBlockingQueue<>(),
+                                                                   r -> {
+                                                                       final Thread thread = new Thread(r,
+                                                                                                        "jgit-conflict-matrix-" + THREADS.incrementAndGet());
+                                                                       thread.setDaemon(true);
+                                                                       return thread;
+                                                                   });
+        //matrices aren't computed all the time, idle threads go away
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private List<String> checkConflicts(final RevCommit targetCommit,
+                                        final RevCommit sourceCommit) {
+        final RevCommit commonAncestor = new GetCommonAncestorCommit(git,
+                                                                     targetCommit,
+                                                                     sourceCommit).execute();
+        try {
+            final List<String> conflicts;
+            if (overlaps(targetChanges(commonAncestor,
+                                       targetCommit),
+                         changedPaths(commonAncestor,
+                                      sourceCommit))) {
+                conflicts = ConflictBranchesChecker.merge(git,
+                                                          commonAncestor,
+                                                          targetCommit,
+                                                          sourceCommit);
+            } else {
+                conflicts = new ArrayList<>();
+            }
+            if (cache != null) {
+                cache.put(targetCommit,
+                          sourceCommit,
+                          conflicts);
+            }
+            return conflicts;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private NavigableSet<String> targetChanges(final RevCommit commonAncestor,
+                                               final RevCommit targetCommit) throws IOException {
+        final ObjectId key = commonAncestor == null ? ObjectId.zeroId() : commonAncestor.getId();
+        final CompletableFuture<NavigableSet<String>> computing = new CompletableFuture<>();
+        final CompletableFuture<NavigableSet<String>> existing = targetChanges.putIfAbsent(key,
+                                                                                            computing);
+        if (existing == null) {
+            try {
+                computing.complete(changedPaths(commonAncestor,
+                                                targetCommit));
+            } catch (IOException | RuntimeException e) {
+                computing.completeExceptionally(e);
+                throw e;
+            }
+            return computing.join();
+        }
+        try {
+            return existing.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private NavigableSet<String> changedPaths(final RevCommit from,
+                                              final RevCommit to) throws IOException {
+        final NavigableSet<String> paths = new TreeSet<>();
+        try (final ObjectReader reader = git.getRepository().newObjectReader();
+             final TreeWalk treeWalk = new TreeWalk(reader)) {
+            if (from == null) {
+                treeWalk.addTree(new EmptyTreeIterator());
+            } else {
+                treeWalk.addTree(from.getTree());
+            }
+            treeWalk.addTree(to.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next()) {
+                paths.add(treeWalk.getPathString());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return true if a path changed on one side is also changed on the other, or is a
+     * directory of a path changed on the other
+     */
+    private static boolean overlaps(final NavigableSet<String> targetPaths,
+                                    final NavigableSet<String> sourcePaths) {
+        for (final String path : sourcePaths) {
+            if (targetPaths.contains(path)) {
+                return true;
+            }
+            final String below = targetPaths.ceiling(path + "/");
+            if (below != null && below.startsWith(path + "/")) {
+                return true;
+            }
+            for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/',
+                                                                    i + 1)) {
+                if (targetPaths.contains(path.substring(0,
+                                                        i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
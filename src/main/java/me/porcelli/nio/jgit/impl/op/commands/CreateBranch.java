@@ -18,6 +18,8 @@
 package me.porcelli.nio.jgit.impl.op.commands;
 
 import me.porcelli.nio.jgit.impl.op.GitImpl;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 
 public class CreateBranch {
 
@@ -35,7 +37,9 @@ public class CreateBranch {
 
     public void execute() {
         try {
+            final ObjectId targetId = git.getRepository().resolve(Constants.R_HEADS + target);
             git.refUpdate(target,
+                          targetId == null ? ObjectId.zeroId() : targetId,
                           git.resolveRevCommit(git.resolveObjectIds(source).get(0)));
         } catch (final Exception e) {
             throw new RuntimeException(e);
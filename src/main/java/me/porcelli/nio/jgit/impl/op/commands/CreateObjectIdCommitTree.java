@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+import static org.eclipse.jgit.lib.FileMode.REGULAR_FILE;
+
+/**
+ * Builds a tree on top of <code>headId</code> referencing blobs that already exist in the
+ * repository, in a single walk over the head tree and without inserting any object but the trees.
+ */
+public class CreateObjectIdCommitTree extends BaseCreateCommitTree<ObjectIdCommitContent> {
+
+    public CreateObjectIdCommitTree(final Git git,
+                                    final ObjectId headId,
+                                    final ObjectInserter inserter,
+                                    final ObjectIdCommitContent commitContent) {
+        super(git,
+              headId,
+              inserter,
+              commitContent);
+    }
+
+    public Optional<ObjectId> execute() {
+        final Map<String, ObjectId> paths = new HashMap<>(commitContent.getContent().size());
+        final Map<String, FileMode> modes = new HashMap<>(commitContent.getContent().size());
+        final Set<String> path2delete = new HashSet<>();
+
+        for (final Map.Entry<String, ObjectId> pathAndContent : commitContent.getContent().entrySet()) {
+            final String gPath = PathUtil.normalize(pathAndContent.getKey());
+            if (pathAndContent.getValue() == null) {
+                path2delete.add(gPath);
+            } else {
+                paths.put(gPath,
+                          pathAndContent.getValue());
+                final FileMode mode = commitContent.getModes().get(pathAndContent.getKey());
+                if (mode != null) {
+                    modes.put(gPath,
+                              mode);
+                }
+            }
+        }
+
+        final DirCacheEditor editor = DirCache.newInCore().editor();
+        final AtomicBoolean hasDeletes = new AtomicBoolean(false);
+
+        try {
+            iterateOverTreeWalk(git,
+                                headId,
+                                (walkPath, hTree) -> {
+                                    if (hTree.getEntryObjectId().equals(paths.get(walkPath))
+                                            && hTree.getEntryFileMode().equals(modes.getOrDefault(walkPath,
+                                                                                                  hTree.getEntryFileMode()))) {
+                                        paths.remove(walkPath);
+                                    } else if (paths.containsKey(walkPath)) {
+                                        //changed content keeps its mode unless a new one is given
+                                        modes.putIfAbsent(walkPath,
+                                                          hTree.getEntryFileMode());
+                                    }
+
+                                    if (isDeleted(path2delete,
+                                                  walkPath)) {
+                                        hasDeletes.set(true);
+                                    } else if (!paths.containsKey(walkPath)) {
+                                        addToTemporaryInCoreIndex(editor,
+                                                                  new DirCacheEntry(walkPath),
+                                                                  hTree.getEntryObjectId(),
+                                                                  hTree.getEntryFileMode());
+                                    }
+                                });
+
+            paths.forEach((key, value) -> addToTemporaryInCoreIndex(editor,
+                                                                    new DirCacheEntry(key),
+                                                                    value,
+                                                                    modes.getOrDefault(key,
+                                                                                       REGULAR_FILE)));
+
+            editor.finish();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        if (!hasDeletes.get() && paths.isEmpty()) {
+            editor.getDirCache().clear();
+            return Optional.empty();
+        }
+
+        return buildTree(editor);
+    }
+
+    /**
+     * A path is deleted when it, or any of its parent directories, was mapped to <code>null</code>.
+     */
+    private static boolean isDeleted(final Set<String> path2delete,
+                                     final String walkPath) {
+        if (path2delete.isEmpty()) {
+            return false;
+        }
+        if (path2delete.contains(walkPath)) {
+            return true;
+        }
+        int index = walkPath.lastIndexOf('/');
+        while (index > 0) {
+            if (path2delete.contains(walkPath.substring(0,
+                                                        index))) {
+                return true;
+            }
+            index = walkPath.lastIndexOf('/',
+                                         index - 1);
+        }
+        return false;
+    }
+}
@@ -18,22 +18,26 @@
 package me.porcelli.nio.jgit.impl.op.commands;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.io.OutputStream;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
-import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 
 import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotEmpty;
 import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotNull;
 
+/**
+ * Materializes the content changed between two commits into temporary files, which belong to
+ * the caller: {@link #release(Map)} deletes them once the diff is no longer needed. Prefer {@link MapDiffObjectIds} when the content is going to be committed back
+ * into the same repository, as it doesn't touch the disk at all.
+ */
 public class MapDiffContent {
 
     private final Git git;
@@ -59,40 +63,43 @@ public class MapDiffContent {
         BranchUtil.existsBranch(git,
                                 branch);
 
-        final RevCommit startCommit = git.getCommit(startCommitId);
-        final RevCommit endCommit = git.getCommit(endCommitId);
-
-        if (startCommit == null || endCommit == null) {
-            throw new GitException("Given commit ids cannot be found.");
-        }
-
-        Map<String, File> content = new HashMap<>();
-
-        final List<DiffEntry> diffs = git.listDiffs(startCommit.getTree(),
-                                                    endCommit.getTree());
-
-        diffs.forEach(entry -> {
-            if (entry.getChangeType() != DiffEntry.ChangeType.DELETE) {
-                try (final InputStream inputStream = git.blobAsInputStream(branch,
-                                                                           entry.getNewPath())) {
-                    final File file = File.createTempFile("gitz",
-                                                          "woot");
+        final Map<String, ObjectId> blobs = git.mapDiffObjectIds(startCommitId,
+                                                                 endCommitId);
 
-                    Files.copy(inputStream,
-                               file.toPath(),
-                               StandardCopyOption.REPLACE_EXISTING);
+        final Map<String, File> content = new HashMap<>(blobs.size());
 
-                    content.put(entry.getNewPath(),
-                                file);
-                } catch (IOException e) {
-                    throw new GitException("Unable to get content from diffs", e);
+        try (final ObjectReader reader = git.getRepository().newObjectReader()) {
+            for (final Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+                if (entry.getValue() == null) {
+                    content.put(entry.getKey(),
+                                null);
+                    continue;
+                }
+                final File file = File.createTempFile("gitz",
+                                                      "woot");
+                content.put(entry.getKey(),
+                            file);
+                try (final OutputStream out = new FileOutputStream(file)) {
+                    reader.open(entry.getValue(),
+                                Constants.OBJ_BLOB).copyTo(out);
                 }
-            } else {
-                content.put(entry.getOldPath(),
-                            null);
             }
-        });
+        } catch (IOException e) {
+            release(content);
+            throw new GitException("Unable to get content from diffs", e);
+        }
 
         return content;
     }
+
+    /**
+     * Deletes the temporary files of a diff mapped by this command.
+     */
+    public static void release(final Map<String, File> content) {
+        for (final File file : content.values()) {
+            if (file != null && !file.delete() && file.exists()) {
+                file.deleteOnExit();
+            }
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotEmpty;
+import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotNull;
+
+/**
+ * Maps every path changed between two commits to the blob id it has on the end commit,
+ * or to <code>null</code> when the path doesn't exist there anymore (deleted or renamed away),
+ * along with the file mode it has there. Nothing is read from the object database besides the two trees.
+ */
+public class MapDiffObjectIds {
+
+    private final Git git;
+    private final String startCommitId;
+    private final String endCommitId;
+
+    public MapDiffObjectIds(final Git git,
+                            final String startCommitId,
+                            final String endCommitId) {
+        this.git = checkNotNull("git",
+                                git);
+        this.startCommitId = checkNotEmpty("startCommitId",
+                                           startCommitId);
+        this.endCommitId = checkNotEmpty("endCommitId",
+                                         endCommitId);
+    }
+
+    public Map<String, ObjectId> execute() {
+        return executeContent().getContent();
+    }
+
+    public ObjectIdCommitContent executeContent() {
+        final RevCommit startCommit = git.getCommit(startCommitId);
+        final RevCommit endCommit = git.getCommit(endCommitId);
+
+        if (startCommit == null || endCommit == null) {
+            throw new GitException("Given commit ids cannot be found.");
+        }
+
+        final List<DiffEntry> diffs = git.listDiffs(startCommit.getTree(),
+                                                    endCommit.getTree());
+
+        final Map<String, ObjectId> content = new HashMap<>(diffs.size());
+        final Map<String, FileMode> modes = new HashMap<>(diffs.size());
+
+        diffs.forEach(entry -> {
+            switch (entry.getChangeType()) {
+                case DELETE:
+                    content.put(entry.getOldPath(),
+                                null);
+                    break;
+                case RENAME:
+                    content.putIfAbsent(entry.getOldPath(),
+                                        null);
+                    content.put(entry.getNewPath(),
+                                entry.getNewId().toObjectId());
+                    modes.put(entry.getNewPath(),
+                              entry.getNewMode());
+                    break;
+                default:
+                    content.put(entry.getNewPath(),
+                                entry.getNewId().toObjectId());
+                    modes.put(entry.getNewPath(),
+                              entry.getNewMode());
+            }
+        });
+
+        return new ObjectIdCommitContent(content,
+                                         modes);
+    }
+}
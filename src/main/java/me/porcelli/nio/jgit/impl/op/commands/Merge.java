@@ -17,21 +17,19 @@
 
 package me.porcelli.nio.jgit.impl.op.commands;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
-import me.porcelli.nio.jgit.impl.op.model.MergeCommitContent;
+import me.porcelli.nio.jgit.impl.op.model.MergeTreeCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.MessageCommitInfo;
-import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.merge.ThreeWayMerger;
@@ -47,7 +45,8 @@ import static me.porcelli.nio.jgit.impl.util.Preconditions.checkNotNull;
  * Branches needs to be part of the same repository, you cannot merge
  * branches from different repositories (or forks).
  * This command is based on Git Cherry Pick command for a simple fast forward merge,
- * otherwise it will create a merge commit.
+ * otherwise it runs a single in-core three way merge and commits its resulting tree
+ * as a merge commit.
  * It returns the list of commits involved in the merge operation.
  */
 public class Merge {
@@ -95,62 +94,53 @@ public class Merge {
         final RevCommit commonAncestor = git.getCommonAncestorCommit(sourceBranch,
                                                                      targetBranch);
 
-        canMerge(git.getRepository(),
-                 commonAncestor,
-                 lastSourceCommit,
-                 lastTargetCommit,
-                 sourceBranch,
-                 targetBranch);
+        if (lastSourceCommit.getTree().equals(lastTargetCommit.getTree()) ||
+                (commonAncestor != null && commonAncestor.getTree().equals(lastSourceCommit.getTree()))) {
+            return nothingToMerge();
+        }
 
-        return proceedMerge(commonAncestor,
-                            lastSourceCommit,
-                            lastTargetCommit);
-    }
+        if (!noFastForward && lastTargetCommit.equals(commonAncestor)) {
+            return doFastForward(commonAncestor,
+                                 lastSourceCommit);
+        }
 
-    private List<String> proceedMerge(final RevCommit commonAncestor,
-                                      final RevCommit lastSourceCommit,
-                                      final RevCommit lastTargetCommit) throws IOException {
-        final List<DiffEntry> diffBetweenCommits = git.listDiffs(commonAncestor.getName(),
-                                                                 lastSourceCommit.getName());
-
-        final List<DiffEntry> diffBetweenBranches = diffBetweenCommits.isEmpty() ?
-                Collections.emptyList() : git.listDiffs(git.getTreeFromRef(targetBranch),
-                                                        git.getTreeFromRef(sourceBranch));
-
-        if (diffBetweenBranches.isEmpty()) {
-            logger.info("There is nothing to merge from branch {} to {}",
-                        sourceBranch,
-                        targetBranch);
-            return Collections.emptyList();
+        final ObjectId mergedTree = merge(git.getRepository(),
+                                          commonAncestor,
+                                          lastSourceCommit,
+                                          lastTargetCommit);
+
+        if (mergedTree.equals(lastTargetCommit.getTree())) {
+            return nothingToMerge();
         }
 
-        final List<RevCommit> targetCommits = git.listCommits(commonAncestor,
-                                                              lastTargetCommit);
+        return doMerge(mergedTree,
+                       lastSourceCommit,
+                       lastTargetCommit);
+    }
 
-        return targetCommits.isEmpty() && !noFastForward ?
-                doFastForward(commonAncestor,
-                              lastSourceCommit) : doMerge(commonAncestor,
-                                                          lastSourceCommit,
-                                                          lastTargetCommit);
+    private List<String> nothingToMerge() {
+        logger.info("There is nothing to merge from branch {} to {}",
+                    sourceBranch,
+                    targetBranch);
+        return Collections.emptyList();
     }
 
-    private void canMerge(final Repository repo,
-                          final RevCommit commonAncestor,
-                          final RevCommit sourceCommitTree,
-                          final RevCommit targetCommitTree,
-                          final String sourceBranch,
-                          final String targetBranch) {
+    private ObjectId merge(final Repository repo,
+                           final RevCommit commonAncestor,
+                           final RevCommit sourceCommitTree,
+                           final RevCommit targetCommitTree) {
         try {
             ThreeWayMerger merger = MergeStrategy.RECURSIVE.newMerger(repo,
                                                                       true);
             merger.setBase(commonAncestor);
-            boolean canMerge = merger.merge(sourceCommitTree,
-                                            targetCommitTree);
+            boolean canMerge = merger.merge(targetCommitTree,
+                                            sourceCommitTree);
             if (!canMerge) {
                 throw new GitException(String.format("Cannot merge branches from <%s> to <%s>, merge conflicts",
                                                      sourceBranch,
                                                      targetBranch));
             }
+            return merger.getResultTreeId();
         } catch (IOException e) {
             throw new GitException(String.format("Cannot merge branches from <%s> to <%s>, merge conflicts",
                                                  sourceBranch,
@@ -182,14 +172,10 @@ public class Merge {
         return Arrays.asList(commitsIDs);
     }
 
-    private List<String> doMerge(final RevCommit commonAncestorCommit,
+    private List<String> doMerge(final ObjectId mergedTree,
                                  final RevCommit lastSourceCommit,
                                  final RevCommit lastTargetCommit) {
         try {
-            final Map<String, File> contents = git.mapDiffContent(sourceBranch,
-                                                                  commonAncestorCommit.getName(),
-                                                                  lastSourceCommit.getName());
-
             final List<RevCommit> parents = Stream.of(lastTargetCommit,
                                                       lastSourceCommit).collect(Collectors.toList());
 
@@ -197,8 +183,8 @@ public class Merge {
                                                  MessageCommitInfo.createMergeMessage(sourceBranch),
                                                  false,
                                                  lastTargetCommit,
-                                                 new MergeCommitContent(contents,
-                                                                        parents));
+                                                 new MergeTreeCommitContent(mergedTree,
+                                                                            parents));
             if (effective) {
                 return Collections.singletonList(git.getLastCommit(targetBranch).getName());
             }
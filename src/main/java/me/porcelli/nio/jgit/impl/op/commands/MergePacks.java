@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import me.porcelli.nio.jgit.impl.op.GitImpl;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Merges the small packs of a repository so the pack sizes, ordered by object count, form a
+ * geometric progression: each pack holds at least {@code factor} times the objects of the next
+ * smaller one. The packs breaking the progression are merged along with every smaller pack, so
+ * the large packs are only rewritten once enough small ones add up to their size.
+ * <p>
+ * The merged pack is written and opened without holding off the commits, only the deletion of
+ * the packs it replaces runs exclusively.
+ */
+public class MergePacks {
+
+    private final GitImpl git;
+    private final int factor;
+    private final long maxBytesPerSecond;
+    private final Consumer<Runnable> exclusively;
+
+    /**
+     * @param exclusively runs the given task while the repository isn't written to
+     */
+    public MergePacks(final GitImpl git,
+                      final int factor,
+                      final long maxBytesPerSecond,
+                      final Consumer<Runnable> exclusively) {
+        this.git = git;
+        this.factor = Math.max(2,
+                               factor);
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.exclusively = exclusively;
+    }
+
+    /**
+     * @return the number of packs merged, 0 if the packs already form a progression
+     */
+    public int execute() {
+        final Repository repo = git.getRepository();
+        if (!(repo.getObjectDatabase() instanceof ObjectDirectory)) {
+            return 0;
+        }
+        final ObjectDirectory odb = (ObjectDirectory) repo.getObjectDatabase();
+        try {
+            final List<PackFile> packs = new ArrayList<>(SampleMaintenanceStats.mergeablePacks(odb));
+            final List<Long> counts = new ArrayList<>(packs.size());
+            packs.sort(Comparator.comparingLong(MergePacks::objectCount));
+            for (final PackFile pack : packs) {
+                counts.add(objectCount(pack));
+            }
+            final int split = split(counts,
+                                    factor);
+            if (split < 2) {
+                return 0;
+            }
+            final List<PackFile> merged = packs.subList(0,
+                                                        split);
+            final PackFile result;
+            try (ObjectReader reader = repo.newObjectReader();
+                 RevWalk walk = new RevWalk(reader)) {
+                final Set<ObjectId> seen = new HashSet<>();
+                final List<RevObject> objects = new ArrayList<>();
+                for (final PackFile pack : merged) {
+                    for (final PackIndex.MutableEntry entry : pack) {
+                        final ObjectId id = entry.toObjectId();
+                        if (seen.add(id)) {
+                            try {
+                                objects.add(walk.parseAny(id));
+                            } catch (final MissingObjectException e) {
+                                //pack removed in the meantime
+                            }
+                        }
+                    }
+                }
+                result = PackUtil.writePack(repo,
+                                            reader,
+                                            objects.iterator(),
+                                            maxBytesPerSecond);
+            }
+            exclusively.accept(() -> {
+                for (final PackFile pack : merged) {
+                    //a pack already holding all the merged objects has the same name as the result
+                    if (!pack.getPackFile().equals(result.getPackFile())) {
+                        delete(pack);
+                    }
+                }
+                //forces a rescan of the pack directory, the deleted packs are dropped from the list
+                odb.close();
+            });
+            return merged.size();
+        } catch (final IOException e) {
+            throw new GitException("Error when trying to merge packs",
+                                   e);
+        }
+    }
+
+    /**
+     * @param counts object counts of the packs, ascending
+     * @return the number of smallest packs to merge
+     */
+    static int split(final List<Long> counts,
+                     final int factor) {
+        int split = 0;
+        for (int i = counts.size() - 1; i > 0; i--) {
+            if (counts.get(i) < factor * counts.get(i - 1)) {
+                split = i;
+                break;
+            }
+        }
+        if (split == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < split; i++) {
+            total += counts.get(i);
+        }
+        //the merged pack has to keep the progression with the packs above it
+        while (split < counts.size() && counts.get(split) < factor * total) {
+            total += counts.get(split);
+            split++;
+        }
+        return split;
+    }
+
+    private static long objectCount(final PackFile pack) {
+        try {
+            return pack.getIndex().getObjectCount();
+        } catch (final IOException e) {
+            throw new GitException("Error when trying to read the index of " + pack.getPackName(),
+                                   e);
+        }
+    }
+
+    private static void delete(final PackFile pack) {
+        pack.close();
+        final File packFile = pack.getPackFile();
+        final String base = packFile.getName().substring(0,
+                                                         packFile.getName().length() - ".pack".length());
+        //the index goes first, a pack without index is ignored
+        for (final String extension : new String[]{".idx", ".bitmap", ".pack"}) {
+            try {
+                Files.deleteIfExists(new File(packFile.getParentFile(),
+                                              base + extension).toPath());
+            } catch (final IOException e) {
+                throw new GitException("Error when trying to delete " + base + extension,
+                                       e);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import me.porcelli.nio.jgit.impl.op.GitImpl;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.reftree.RefTreeDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Packs all loose objects into a new pack and deletes the ones it holds. Unlike garbage
+ * collection it doesn't walk the refs, so its cost only depends on the number of loose objects.
+ * RefTree repositories are the exception: as garbage collection skips them, their unreachable
+ * objects are left loose for {@link PruneLooseObjects}.
+ * <p>
+ * The pack is written and opened without holding off the commits, only the deletion of the
+ * packed loose objects runs exclusively.
+ */
+public class PackLooseObjects {
+
+    private final GitImpl git;
+    private final long maxBytesPerSecond;
+    private final Consumer<Runnable> exclusively;
+
+    /**
+     * @param exclusively runs the given task while the repository isn't written to
+     */
+    public PackLooseObjects(final GitImpl git,
+                            final long maxBytesPerSecond,
+                            final Consumer<Runnable> exclusively) {
+        this.git = git;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.exclusively = exclusively;
+    }
+
+    /**
+     * @return the number of loose objects packed
+     */
+    public int execute() {
+        final Repository repo = git.getRepository();
+        if (!(repo.getObjectDatabase() instanceof ObjectDirectory)) {
+            return 0;
+        }
+        final ObjectDirectory odb = (ObjectDirectory) repo.getObjectDatabase();
+        final List<ObjectId> looseObjects = SampleMaintenanceStats.listLooseObjects(odb.getDirectory());
+        if (looseObjects.isEmpty()) {
+            return 0;
+        }
+        try (ObjectReader reader = repo.newObjectReader();
+             RevWalk walk = new RevWalk(reader)) {
+            if (repo.getRefDatabase() instanceof RefTreeDatabase) {
+                looseObjects.removeAll(PruneLooseObjects.unreachable(repo,
+                                                                     reader,
+                                                                     looseObjects));
+                if (looseObjects.isEmpty()) {
+                    return 0;
+                }
+            }
+            final List<RevObject> objects = new ArrayList<>(looseObjects.size());
+            for (final ObjectId id : looseObjects) {
+                try {
+                    objects.add(walk.parseAny(id));
+                } catch (final MissingObjectException e) {
+                    //deleted in the meantime
+                }
+            }
+            final PackFile pack = PackUtil.writePack(repo,
+                                                     reader,
+                                                     objects.iterator(),
+                                                     maxBytesPerSecond);
+            final List<RevObject> packed = new ArrayList<>(objects.size());
+            for (final RevObject object : objects) {
+                if (pack.hasObject(object)) {
+                    packed.add(object);
+                }
+            }
+            exclusively.accept(() -> {
+                //readers find the object in the pack once its loose copy is gone
+                for (final RevObject object : packed) {
+                    try {
+                        Files.deleteIfExists(odb.fileFor(object).toPath());
+                    } catch (final IOException e) {
+                        throw new GitException("Error when trying to delete the packed loose object " + object.name(),
+                                               e);
+                    }
+                }
+            });
+            return packed.size();
+        } catch (final IOException e) {
+            throw new GitException("Error when trying to pack loose objects",
+                                   e);
+        }
+    }
+}
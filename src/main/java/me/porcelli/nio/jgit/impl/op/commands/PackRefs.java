@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.porcelli.nio.jgit.impl.op.GitImpl;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import org.eclipse.jgit.internal.storage.file.RefDirectory;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+
+/**
+ * Moves the loose refs of a repository into its packed-refs file. RefTree repositories keep
+ * their refs in the tree already, their refs are left alone.
+ */
+public class PackRefs {
+
+    private final GitImpl git;
+
+    public PackRefs(final GitImpl git) {
+        this.git = git;
+    }
+
+    /**
+     * @return the number of refs packed
+     */
+    public int execute() {
+        final RefDatabase refDatabase = git.getRepository().getRefDatabase();
+        if (!(refDatabase instanceof RefDirectory)) {
+            return 0;
+        }
+        try {
+            final List<String> looseRefs = new ArrayList<>();
+            for (final Ref ref : refDatabase.getRefsByPrefix(RefDatabase.ALL)) {
+                if (!ref.isSymbolic() && ref.getStorage().isLoose()) {
+                    looseRefs.add(ref.getName());
+                }
+            }
+            if (!looseRefs.isEmpty()) {
+                ((RefDirectory) refDatabase).pack(looseRefs);
+            }
+            return looseRefs.size();
+        } catch (final IOException e) {
+            throw new GitException("Error when trying to pack refs",
+                                   e);
+        }
+    }
+}
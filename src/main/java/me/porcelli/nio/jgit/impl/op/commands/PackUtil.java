@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+public class PackUtil {
+
+    private PackUtil() {
+
+    }
+
+    /**
+     * Writes the objects into a new pack of the repository and opens it, so they can be read from
+     * it right away. The pack is written under a temporary name and renamed once complete, its
+     * index last, like garbage collection does.
+     * @param maxBytesPerSecond write rate limit, 0 or less for none
+     */
+    public static PackFile writePack(final Repository repo,
+                                     final ObjectReader reader,
+                                     final Iterator<RevObject> objects,
+                                     final long maxBytesPerSecond) throws IOException {
+        final ObjectDirectory odb = (ObjectDirectory) repo.getObjectDatabase();
+        final File packDir = odb.getPackDirectory();
+        Files.createDirectories(packDir.toPath());
+        final File tmpPack = File.createTempFile("maintenance_",
+                                                 ".pack_tmp",
+                                                 packDir);
+        final File tmpIdx = new File(packDir,
+                                     tmpPack.getName().replace(".pack_tmp",
+                                                               ".idx_tmp"));
+        try (PackWriter writer = new PackWriter(new PackConfig(repo),
+                                                reader)) {
+            writer.setDeltaBaseAsOffset(true);
+            writer.preparePack(objects);
+            try (FileOutputStream out = new FileOutputStream(tmpPack)) {
+                final OutputStream throttled = throttle(out,
+                                                        maxBytesPerSecond);
+                writer.writePack(NullProgressMonitor.INSTANCE,
+                                 NullProgressMonitor.INSTANCE,
+                                 throttled);
+                throttled.flush();
+                out.getChannel().force(true);
+            }
+            try (FileOutputStream out = new FileOutputStream(tmpIdx)) {
+                final OutputStream throttled = throttle(out,
+                                                        maxBytesPerSecond);
+                writer.writeIndex(throttled);
+                throttled.flush();
+                out.getChannel().force(true);
+            }
+            final String name = "pack-" + writer.computeName().name();
+            final File pack = new File(packDir,
+                                       name + ".pack");
+            final File idx = new File(packDir,
+                                      name + ".idx");
+            if (!pack.exists()) {
+                tmpPack.setReadOnly();
+                tmpIdx.setReadOnly();
+                Files.move(tmpPack.toPath(),
+                           pack.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tmpIdx.toPath(),
+                           idx.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+            return odb.openPack(pack);
+        } finally {
+            Files.deleteIfExists(tmpPack.toPath());
+            Files.deleteIfExists(tmpIdx.toPath());
+        }
+    }
+
+    private static OutputStream throttle(final OutputStream out,
+                                         final long maxBytesPerSecond) {
+        final OutputStream buffered = new BufferedOutputStream(out);
+        return maxBytesPerSecond > 0 ? new ThrottledOutputStream(buffered,
+                                                                 maxBytesPerSecond) : buffered;
+    }
+
+    /**
+     * Sleeps whenever the bytes written so far get ahead of the rate.
+     */
+    static class ThrottledOutputStream extends FilterOutputStream {
+
+        private final long maxBytesPerSecond;
+        private final long start = System.nanoTime();
+        private long written;
+
+        ThrottledOutputStream(final OutputStream out,
+                              final long maxBytesPerSecond) {
+            super(out);
+            this.maxBytesPerSecond = maxBytesPerSecond;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            written(1);
+        }
+
+        @Override
+        public void write(final byte[] b,
+                          final int off,
+                          final int len) throws IOException {
+            out.write(b,
+                      off,
+                      len);
+            written(len);
+        }
+
+        private void written(final int len) throws IOException {
+            written += len;
+            final long aheadNanos = (long) (written * 1e9 / maxBytesPerSecond) - (System.nanoTime() - start);
+            if (aheadNanos > TimeUnit.MILLISECONDS.toNanos(10)) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttling maintenance writes");
+                }
+            }
+        }
+    }
+}
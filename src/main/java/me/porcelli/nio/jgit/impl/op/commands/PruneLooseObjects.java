@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import me.porcelli.nio.jgit.impl.op.GitImpl;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.reftree.RefTreeDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+
+/**
+ * Deletes the loose objects of a RefTree repository that no ref reaches, once they are older
+ * than a grace period, so objects written by a commit that hasn't updated its ref yet are kept.
+ * Garbage collection prunes the other repositories.
+ */
+public class PruneLooseObjects {
+
+    private final GitImpl git;
+    private final long graceMillis;
+
+    public PruneLooseObjects(final GitImpl git,
+                             final long graceMillis) {
+        this.git = git;
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * @return the number of loose objects deleted
+     */
+    public int execute() {
+        final Repository repo = git.getRepository();
+        if (!(repo.getRefDatabase() instanceof RefTreeDatabase) || !(repo.getObjectDatabase() instanceof ObjectDirectory)) {
+            return 0;
+        }
+        final ObjectDirectory odb = (ObjectDirectory) repo.getObjectDatabase();
+        final long expired = System.currentTimeMillis() - graceMillis;
+        final List<ObjectId> candidates = new ArrayList<>();
+        for (final ObjectId id : SampleMaintenanceStats.listLooseObjects(odb.getDirectory())) {
+            if (odb.fileFor(id).lastModified() <= expired) {
+                candidates.add(id);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        try (ObjectReader reader = repo.newObjectReader()) {
+            int pruned = 0;
+            for (final ObjectId id : unreachable(repo,
+                                                 reader,
+                                                 candidates)) {
+                final File file = odb.fileFor(id);
+                //written again since it was listed, by a commit that may reference it
+                if (file.lastModified() <= expired && file.delete()) {
+                    pruned++;
+                }
+            }
+            if (pruned > 0) {
+                //like garbage collection, drops the cache that still tells the pruned objects are loose
+                odb.close();
+            }
+            return pruned;
+        } catch (final IOException e) {
+            throw new GitException("Error when trying to prune loose objects",
+                                   e);
+        }
+    }
+
+    /**
+     * Walks the objects reachable from the refs of the repository, including the bootstrap refs of
+     * RefTree repositories, until all the candidates are seen.
+     * @return the candidates the walk didn't reach
+     */
+    static Set<ObjectId> unreachable(final Repository repo,
+                                     final ObjectReader reader,
+                                     final Collection<ObjectId> candidates) throws IOException {
+        final Set<ObjectId> remaining = new HashSet<>(candidates);
+        try (ObjectWalk walk = new ObjectWalk(reader)) {
+            for (final ObjectId root : roots(repo)) {
+                try {
+                    walk.markStart(walk.parseAny(root));
+                } catch (final MissingObjectException e) {
+                    //a broken ref doesn't keep anything
+                }
+            }
+            RevCommit commit;
+            while ((commit = walk.next()) != null) {
+                if (remaining.remove(commit) && remaining.isEmpty()) {
+                    return remaining;
+                }
+            }
+            RevObject object;
+            while ((object = walk.nextObject()) != null) {
+                if (remaining.remove(object) && remaining.isEmpty()) {
+                    return remaining;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    private static List<ObjectId> roots(final Repository repo) throws IOException {
+        final RefDatabase refDatabase = repo.getRefDatabase();
+        final List<Ref> refs = new ArrayList<>(refDatabase.getRefsByPrefix(RefDatabase.ALL));
+        refs.addAll(refDatabase.getAdditionalRefs());
+        if (refDatabase instanceof RefTreeDatabase) {
+            refs.addAll(((RefTreeDatabase) refDatabase).getBootstrap().getRefsByPrefix(RefDatabase.ALL));
+        }
+        final List<ObjectId> roots = new ArrayList<>();
+        for (final Ref ref : refs) {
+            if (ref.getObjectId() != null) {
+                roots.add(ref.getObjectId());
+            }
+            if (ref.getPeeledObjectId() != null) {
+                roots.add(ref.getPeeledObjectId());
+            }
+        }
+        return roots;
+    }
+}
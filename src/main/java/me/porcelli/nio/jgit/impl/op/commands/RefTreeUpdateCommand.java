@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -50,6 +51,7 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.eclipse.jgit.internal.ketch.Proposal.State.QUEUED;
@@ -63,13 +65,31 @@ public class RefTreeUpdateCommand {
 
     private final Git git;
     private final String name;
+    private final ObjectId expectedOldId;
     private final RevCommit commit;
+    private Ref rejectedRef;
+    private RefUpdate.Result rejectedResult;
 
     public RefTreeUpdateCommand(final Git git,
                                 final String branchName,
                                 final RevCommit commit) {
+        this(git,
+             branchName,
+             null,
+             commit);
+    }
+
+    /**
+     * @param expectedOldId value the branch must still point to for the update to succeed,
+     * or null to update the branch unconditionally.
+     */
+    public RefTreeUpdateCommand(final Git git,
+                                final String branchName,
+                                final ObjectId expectedOldId,
+                                final RevCommit commit) {
         this.git = git;
         this.name = branchName;
+        this.expectedOldId = expectedOldId;
         this.commit = commit;
     }
 
@@ -77,6 +97,14 @@ public class RefTreeUpdateCommand {
         update(git.getRepository(),
                Constants.R_HEADS + name,
                commit);
+        if (rejectedResult != null) {
+            throw new ConcurrentRefUpdateException(MessageFormat.format(JGitText.get().updatingRefFailed,
+                                                                        Constants.R_HEADS + name,
+                                                                        commit.name(),
+                                                                        rejectedResult),
+                                                   rejectedRef,
+                                                   rejectedResult);
+        }
         //this `initialization` aims to be temporary
         // -> without this cgit can't find master when cloning repos
         if (name.equals(MASTER) && !git.isHEADInitialized()) {
@@ -125,6 +153,12 @@ public class RefTreeUpdateCommand {
                (reader, refTree) -> {
                    final Ref old = refTree.exactRef(reader,
                                                     _name);
+                   final ObjectId oldId = old == null || old.getObjectId() == null ? ObjectId.zeroId() : old.getObjectId();
+                   if (expectedOldId != null && !expectedOldId.equals(oldId)) {
+                       rejectedRef = old;
+                       rejectedResult = RefUpdate.Result.LOCK_FAILURE;
+                       return false;
+                   }
                    final List<Command> n = new ArrayList<>(1);
                    try (RevWalk rw = new RevWalk(_repo)) {
                        n.add(new Command(old,
@@ -147,10 +181,28 @@ public class RefTreeUpdateCommand {
                        throw new GitException("Error");
                        //log.error(msg, e);
                    }
-                   return refTree.apply(n);
+                   if (!refTree.apply(n)) {
+                       rejectedRef = old;
+                       rejectedResult = toRefUpdateResult(n.get(0).getResult());
+                       return false;
+                   }
+                   return true;
                });
     }
 
+    private static RefUpdate.Result toRefUpdateResult(final ReceiveCommand.Result result) {
+        switch (result) {
+            case LOCK_FAILURE:
+                return RefUpdate.Result.LOCK_FAILURE;
+            case REJECTED_NONFASTFORWARD:
+                return RefUpdate.Result.REJECTED;
+            case REJECTED_MISSING_OBJECT:
+                return RefUpdate.Result.REJECTED_MISSING_OBJECT;
+            default:
+                return RefUpdate.Result.REJECTED_OTHER_REASON;
+        }
+    }
+
     private void proposeKetch(final List<Command> n,
                               final RevCommit _commit) throws IOException, InterruptedException {
         final Proposal proposal = new Proposal(n)
@@ -17,15 +17,14 @@
 
 package me.porcelli.nio.jgit.impl.op.commands;
 
-import java.io.File;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import me.porcelli.nio.jgit.impl.op.Git;
-import me.porcelli.nio.jgit.impl.op.model.MergeCommitContent;
+import me.porcelli.nio.jgit.impl.op.model.MergeObjectIdCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.MessageCommitInfo;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
 import me.porcelli.nio.jgit.impl.op.model.RevertCommitContent;
 import org.eclipse.jgit.revwalk.RevCommit;
 
@@ -82,16 +81,15 @@ public class RevertMerge {
             final List<RevCommit> parents = Stream.of(lastSourceCommit,
                                                       newLastTargetCommit).collect(Collectors.toList());
 
-            final Map<String, File> contents = git.mapDiffContent(targetBranch,
-                                                                  lastTargetCommit.getName(),
-                                                                  newLastTargetCommit.getName());
+            final ObjectIdCommitContent contents = git.mapDiffCommitContent(lastTargetCommit.getName(),
+                                                                           newLastTargetCommit.getName());
 
             git.commit(sourceBranch,
                        MessageCommitInfo.createMergeMessage(targetBranch),
                        false,
                        lastSourceCommit,
-                       new MergeCommitContent(contents,
-                                              parents));
+                       new MergeObjectIdCommitContent(contents,
+                                                      parents));
 
             git.commit(sourceBranch,
                        MessageCommitInfo.createFixMergeReversionMessage(),
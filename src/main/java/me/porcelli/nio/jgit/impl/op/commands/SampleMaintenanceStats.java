@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.porcelli.nio.jgit.impl.op.GitImpl;
+import me.porcelli.nio.jgit.impl.op.model.MaintenanceStats;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.reftree.RefTreeDatabase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Samples the loose objects, packs and loose refs of a repository. Loose objects are counted
+ * directory by directory until enough of them are seen, the count of the directories listed so
+ * far is then extrapolated to the 256 of them. The loose refs of RefTree repositories are only
+ * its bootstrap transaction refs, which are not counted.
+ */
+public class SampleMaintenanceStats {
+
+    static final int LOOSE_OBJECTS_SAMPLE = 1024;
+
+    private static final int FAN_OUT = 256;
+
+    private final GitImpl git;
+
+    public SampleMaintenanceStats(final GitImpl git) {
+        this.git = git;
+    }
+
+    public MaintenanceStats execute() {
+        final Repository repo = git.getRepository();
+        final boolean refTree = repo.getRefDatabase() instanceof RefTreeDatabase;
+        if (!(repo.getObjectDatabase() instanceof ObjectDirectory)) {
+            return new MaintenanceStats(0,
+                                        0,
+                                        0,
+                                        refTree);
+        }
+        final ObjectDirectory odb = (ObjectDirectory) repo.getObjectDatabase();
+        return new MaintenanceStats(estimateLooseObjects(odb.getDirectory()),
+                                    mergeablePacks(odb).size(),
+                                    refTree ? 0 : countFiles(new File(repo.getDirectory(),
+                                                                      Constants.R_REFS)),
+                                    refTree);
+    }
+
+    static List<PackFile> mergeablePacks(final ObjectDirectory odb) {
+        final List<PackFile> packs = new ArrayList<>();
+        for (final PackFile pack : odb.getPacks()) {
+            if (!pack.shouldBeKept()) {
+                packs.add(pack);
+            }
+        }
+        return packs;
+    }
+
+    private static long estimateLooseObjects(final File objectsDir) {
+        long count = 0;
+        for (int i = 0; i < FAN_OUT; i++) {
+            final String[] names = new File(objectsDir,
+                                            String.format("%02x",
+                                                          i)).list();
+            if (names != null) {
+                for (final String name : names) {
+                    if (name.length() == Constants.OBJECT_ID_STRING_LENGTH - 2) {
+                        count++;
+                    }
+                }
+            }
+            if (count >= LOOSE_OBJECTS_SAMPLE) {
+                return count * FAN_OUT / (i + 1);
+            }
+        }
+        return count;
+    }
+
+    static List<ObjectId> listLooseObjects(final File objectsDir) {
+        final List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < FAN_OUT; i++) {
+            final String prefix = String.format("%02x",
+                                                i);
+            final String[] names = new File(objectsDir,
+                                            prefix).list();
+            if (names == null) {
+                continue;
+            }
+            for (final String name : names) {
+                if (ObjectId.isId(prefix + name)) {
+                    ids.add(ObjectId.fromString(prefix + name));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static int countFiles(final File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (final File file : files) {
+            count += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return count;
+    }
+}
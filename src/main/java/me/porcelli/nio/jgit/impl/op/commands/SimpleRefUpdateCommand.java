@@ -33,18 +33,34 @@ public class SimpleRefUpdateCommand {
 
     private final Git git;
     private final String name;
+    private final ObjectId expectedOldId;
     private final RevCommit commit;
 
     public SimpleRefUpdateCommand(final Git git,
                                   final String branchName,
                                   final RevCommit commit) {
+        this(git,
+             branchName,
+             null,
+             commit);
+    }
+
+    /**
+     * @param expectedOldId value the branch must still point to for the update to succeed,
+     * or null to compare against the current branch head.
+     */
+    public SimpleRefUpdateCommand(final Git git,
+                                  final String branchName,
+                                  final ObjectId expectedOldId,
+                                  final RevCommit commit) {
         this.git = git;
         this.name = branchName;
+        this.expectedOldId = expectedOldId;
         this.commit = commit;
     }
 
     public void execute() throws IOException, ConcurrentRefUpdateException {
-        final ObjectId headId = git.getLastCommit(Constants.R_HEADS + name);
+        final ObjectId headId = expectedOldId != null ? expectedOldId : git.getLastCommit(Constants.R_HEADS + name);
         final RefUpdate ru = git.getRepository().updateRef(Constants.R_HEADS + name);
         if (headId == null) {
             ru.setExpectedOldObjectId(ObjectId.zeroId());
@@ -80,6 +80,7 @@ public class Squash {
         try (final ObjectInserter odi = repo.newObjectInserter()) {
             final RevCommit squashedCommit = git.resolveRevCommit(odi.insert(commitBuilder));
             git.refUpdate(branch,
+                          latestCommit,
                           squashedCommit);
         } catch (ConcurrentRefUpdateException | IOException e) {
             throw new GitException("Error on executing squash.",
@@ -32,6 +32,7 @@ import java.util.Set;
 
 import me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration;
 import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.util.WindowCacheUtil;
 import org.eclipse.jgit.api.CreateBranchCommand.SetupUpstreamMode;
 import org.eclipse.jgit.api.RemoteRemoveCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -57,7 +58,6 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
-import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -374,7 +374,7 @@ public class SubdirectoryClone {
         try {
             if (System.getProperty("os.name").toLowerCase().contains("windows")) {
                 //this operation forces a cache clean freeing any lock -> windows only issue!
-                new WindowCacheConfig().install();
+                WindowCacheUtil.flush();
             }
             FileUtils.delete(gitDir,
                              FileUtils.RECURSIVE | FileUtils.RETRY);
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.model;
+
+/**
+ * What a repository's storage looks like, sampled to decide which maintenance it needs.
+ */
+public class MaintenanceStats {
+
+    private final long looseObjects;
+    private final int packs;
+    private final int looseRefs;
+    private final boolean refTree;
+
+    public MaintenanceStats(final long looseObjects,
+                            final int packs,
+                            final int looseRefs,
+                            final boolean refTree) {
+        this.looseObjects = looseObjects;
+        this.packs = packs;
+        this.looseRefs = looseRefs;
+        this.refTree = refTree;
+    }
+
+    /**
+     * @return the number of loose objects, estimated from a sample of the fan-out directories
+     * in large repositories
+     */
+    public long getLooseObjects() {
+        return looseObjects;
+    }
+
+    /**
+     * @return the number of packs that can be merged, packs with a .keep file are not counted
+     */
+    public int getPacks() {
+        return packs;
+    }
+
+    public int getLooseRefs() {
+        return looseRefs;
+    }
+
+    /**
+     * @return true if refs are stored in a RefTree, which full garbage collection doesn't support
+     */
+    public boolean isRefTree() {
+        return refTree;
+    }
+
+    @Override
+    public String toString() {
+        return "MaintenanceStats{" +
+                "looseObjects=" + looseObjects +
+                ", packs=" + packs +
+                ", looseRefs=" + looseRefs +
+                ", refTree=" + refTree +
+                '}';
+    }
+}
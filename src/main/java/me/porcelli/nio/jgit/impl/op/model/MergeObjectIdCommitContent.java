@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+public class MergeObjectIdCommitContent extends ObjectIdCommitContent {
+
+    private final List<RevCommit> parents;
+
+    public MergeObjectIdCommitContent(final Map<String, ObjectId> content,
+                                      final List<RevCommit> parents) {
+        super(content);
+
+        this.parents = parents;
+    }
+
+    public MergeObjectIdCommitContent(final ObjectIdCommitContent content,
+                                      final List<RevCommit> parents) {
+        super(content.getContent(),
+              content.getModes());
+
+        this.parents = parents;
+    }
+
+    public List<RevCommit> getParents() {
+        return parents;
+    }
+}
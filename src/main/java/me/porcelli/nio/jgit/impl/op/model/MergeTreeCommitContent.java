@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.model;
+
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+public class MergeTreeCommitContent implements CommitContent {
+
+    private final ObjectId treeId;
+    private final List<RevCommit> parents;
+
+    public MergeTreeCommitContent(final ObjectId treeId,
+                                  final List<RevCommit> parents) {
+        this.treeId = treeId;
+        this.parents = parents;
+    }
+
+    public ObjectId getTreeId() {
+        return treeId;
+    }
+
+    public List<RevCommit> getParents() {
+        return parents;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Commit content expressed as blob ids already present in the repository
+ * (path to blob id, <code>null</code> to delete the path), so no content
+ * needs to be materialized to be committed.
+ */
+public class ObjectIdCommitContent implements CommitContent {
+
+    private final Map<String, ObjectId> content;
+    private final Map<String, FileMode> modes;
+
+    public ObjectIdCommitContent(final Map<String, ObjectId> content) {
+        this(content,
+             Collections.emptyMap());
+    }
+
+    /**
+     * @param modes file mode of the paths, paths without one keep the mode they have on the head
+     * or become regular files
+     */
+    public ObjectIdCommitContent(final Map<String, ObjectId> content,
+                                 final Map<String, FileMode> modes) {
+        this.content = content;
+        this.modes = modes;
+    }
+
+    public Map<String, ObjectId> getContent() {
+        return content;
+    }
+
+    public Map<String, FileMode> getModes() {
+        return modes;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.util;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+
+/**
+ * Keeps track of the {@link WindowCacheConfig} installed in JGit's JVM wide pack window and
+ * delta base caches, so that flushing the caches (e.g. to release file handles before deleting
+ * a repository on Windows) doesn't silently revert them to JGit defaults.
+ */
+public final class WindowCacheUtil {
+
+    private static WindowCacheConfig installed = new WindowCacheConfig();
+
+    private WindowCacheUtil() {
+    }
+
+    public static synchronized void install(final WindowCacheConfig config) {
+        config.install();
+        installed = config;
+    }
+
+    /**
+     * Drops every cached pack window and closes the pack files, keeping the current configuration.
+     */
+    public static synchronized void flush() {
+        installed.install();
+    }
+
+    public static synchronized WindowCacheConfig getInstalled() {
+        return installed;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.cluster;
+
+import java.io.DataOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalClusterMessageServiceTest {
+
+    public static class Message implements Serializable {
+
+        private final int value;
+
+        public Message(final int value) {
+            this.value = value;
+        }
+    }
+
+    public static class Unexpected implements Serializable {
+
+    }
+
+    @Test
+    public void messagesReachPeersOnTheirChannel() throws Exception {
+        final LocalClusterMessageService node1 = new LocalClusterMessageService("127.0.0.1",
+                                                                                0,
+                                                                                Collections.emptyList());
+        final LocalClusterMessageService node2 = new LocalClusterMessageService("127.0.0.1",
+                                                                                0,
+                                                                                Collections.emptyList());
+        try {
+            node1.connect();
+            node2.connect();
+            node1.addPeer(new InetSocketAddress("127.0.0.1",
+                                                node2.getPort()));
+
+            final List<Integer> received = new CopyOnWriteArrayList<>();
+            final CountDownLatch latch = new CountDownLatch(100);
+            node2.createConsumer(ClusterMessageService.DestinationType.PubSub,
+                                 "channel",
+                                 Message.class,
+                                 m -> {
+                                     received.add(m.value);
+                                     latch.countDown();
+                                 });
+
+            node1.broadcast(ClusterMessageService.DestinationType.PubSub,
+                            "other",
+                            new Message(-1));
+            node1.broadcast(ClusterMessageService.DestinationType.PubSub,
+                            "channel",
+                            new Unexpected());
+            for (int i = 0; i < 100; i++) {
+                node1.broadcast(ClusterMessageService.DestinationType.PubSub,
+                                "channel",
+                                new Message(i));
+            }
+
+            assertThat(latch.await(10,
+                                   TimeUnit.SECONDS)).isTrue();
+            assertThat(received).hasSize(100);
+            assertThat(received.get(0)).isEqualTo(0);
+            assertThat(received.get(99)).isEqualTo(99);
+        } finally {
+            node1.close();
+            node2.close();
+        }
+    }
+
+    @Test
+    public void untrustedFramesAndClassesAreRejected() throws Exception {
+        final LocalClusterMessageService node1 = new LocalClusterMessageService("127.0.0.1",
+                                                                                0,
+                                                                                Collections.emptyList());
+        final LocalClusterMessageService node2 = new LocalClusterMessageService("127.0.0.1",
+                                                                                0,
+                                                                                Collections.emptyList());
+        try {
+            node1.connect();
+            node2.connect();
+            node1.addPeer(new InetSocketAddress("127.0.0.1",
+                                                node2.getPort()));
+
+            final List<Object> received = new CopyOnWriteArrayList<>();
+            final CountDownLatch latch = new CountDownLatch(1);
+            node2.createConsumer(ClusterMessageService.DestinationType.PubSub,
+                                 "any",
+                                 Serializable.class,
+                                 received::add);
+            node2.createConsumer(ClusterMessageService.DestinationType.PubSub,
+                                 "channel",
+                                 Message.class,
+                                 m -> latch.countDown());
+
+            for (final int length : new int[]{-1, LocalClusterMessageService.MAX_FRAME_BYTES + 1}) {
+                try (Socket socket = new Socket("127.0.0.1",
+                                                node2.getPort());
+                     DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+                    out.writeUTF("channel");
+                    out.writeInt(length);
+                    out.flush();
+                    //the receiving side drops the connection instead of allocating the frame
+                    assertThat(socket.getInputStream().read()).isEqualTo(-1);
+                }
+            }
+
+            //JDK classes are not deserialized unless a consumer asked for them
+            node1.broadcast(ClusterMessageService.DestinationType.PubSub,
+                            "any",
+                            new Date());
+            node1.broadcast(ClusterMessageService.DestinationType.PubSub,
+                            "channel",
+                            new Message(1));
+
+            assertThat(latch.await(10,
+                                   TimeUnit.SECONDS)).isTrue();
+            assertThat(received).isEmpty();
+        } finally {
+            node1.close();
+            node2.close();
+        }
+    }
+
+    @Test
+    public void parsePeers() {
+        assertThat(LocalClusterMessageService.parsePeers(" 127.0.0.1:9420, localhost:9421 ,"))
+                .containsExactly(new InetSocketAddress("127.0.0.1",
+                                                       9420),
+                                 new InetSocketAddress("localhost",
+                                                       9421));
+        assertThat(LocalClusterMessageService.parsePeers("")).isEmpty();
+    }
+}
@@ -38,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import me.porcelli.nio.jgit.impl.op.Git;
@@ -92,6 +93,7 @@ public abstract class AbstractTestInfra {
     @Before
     public void createGitFsProvider() throws IOException {
         provider = new JGitFileSystemProvider(getGitPreferences());
+        provider.servicesStarted().join();
     }
 
     /*
@@ -326,6 +328,13 @@ public abstract class AbstractTestInfra {
 
         assertThat(content).isNotNull().isEqualTo("my cool content");
 
+        try {
+            assertThat(provider.awaitPostCommitHooks(10,
+                                                     TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
         if (wasExecuted) {
             assertThat(hookExecuted.get()).isTrue();
         } else {
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.porcelli.nio.jgit.fs.options.CommentedOption;
+import org.eclipse.jgit.util.FileUtils;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_CLUSTER_LOCAL_ENABLED;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_CLUSTER_LOCAL_PEERS;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_CLUSTER_LOCAL_PORT;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_DAEMON_ENABLED;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_NIO_DIR;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_SSH_ENABLED;
+
+/**
+ * Measures how fast watch events travel between two providers clustered through
+ * {@link me.porcelli.nio.jgit.cluster.LocalClusterMessageService}: writer threads commit files on
+ * the first node, and the second one records when each event arrives. Commit messages carry the
+ * write time, both nodes share the JVM clock.
+ * <p>
+ * Not a unit test, run the main method with optional arguments: writer threads, commits per
+ * writer and extra provider properties as key=value (e.g. nio.git.cluster.batch.window=0).
+ */
+public class ClusterEventsBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        final int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int commitsPerWriter = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+        final Map<String, String> extraPrefs = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            final String[] keyValue = args[i].split("=",
+                                                    2);
+            extraPrefs.put(keyValue[0],
+                           keyValue[1]);
+        }
+
+        final int writerPort = AbstractTestInfra.findFreePort();
+        final int readerPort = AbstractTestInfra.findFreePort();
+        final File writerDir = Files.createTempDirectory("cluster-writer").toFile();
+        final File readerDir = Files.createTempDirectory("cluster-reader").toFile();
+        final JGitFileSystemProvider writer = new JGitFileSystemProvider(preferences(writerDir,
+                                                                                     writerPort,
+                                                                                     readerPort,
+                                                                                     extraPrefs));
+        final JGitFileSystemProvider reader = new JGitFileSystemProvider(preferences(readerDir,
+                                                                                     readerPort,
+                                                                                     writerPort,
+                                                                                     extraPrefs));
+        final ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            final URI fsUri = URI.create("git://benchmark-repo");
+            writer.newFileSystem(fsUri,
+                                 Collections.emptyMap());
+            writer.getFileSystem(fsUri).newWatchService();
+            final WatchService watchService = ((JGitFileSystem) reader.newFileSystem(fsUri,
+                                                                                     Collections.emptyMap())).newWatchService();
+
+            final int total = writers * commitsPerWriter;
+            final List<Long> latencies = Collections.synchronizedList(new ArrayList<>(total));
+            final CountDownLatch received = new CountDownLatch(total);
+            final AtomicLong lastReceived = new AtomicLong();
+            executor.execute(() -> {
+                try {
+                    while (received.getCount() > 0) {
+                        final WatchKey key = watchService.poll(30,
+                                                               TimeUnit.SECONDS);
+                        if (key == null) {
+                            return;
+                        }
+                        final long now = System.nanoTime();
+                        for (final WatchEvent<?> event : key.pollEvents()) {
+                            if (event instanceof JGitWatchEvent) {
+                                latencies.add(now - writeTime(((JGitWatchEvent) event).getMessage()));
+                                received.countDown();
+                            }
+                        }
+                        lastReceived.set(now);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            });
+
+            final long start = System.nanoTime();
+            for (int w = 0; w < writers; w++) {
+                final String branch = "writer" + w;
+                executor.execute(() -> {
+                    for (int i = 0; i < commitsPerWriter; i++) {
+                        final URI file = URI.create("git://" + branch + "@benchmark-repo/file" + i + ".txt");
+                        try (OutputStream out = writer.newOutputStream(writer.getPath(file),
+                                                                       new CommentedOption("benchmark",
+                                                                                           String.valueOf(System.nanoTime())))) {
+                            out.write(("content " + i).getBytes());
+                        } catch (final Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+
+            if (!received.await(5,
+                                TimeUnit.MINUTES)) {
+                System.out.println("Timed out, received " + (total - received.getCount()) + " of " + total + " events");
+            }
+            final double seconds = (lastReceived.get() - start) / 1_000_000_000d;
+
+            final List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            System.out.println(String.format("writers=%d commits=%d events=%d elapsed=%.2fs throughput=%.0f events/s",
+                                             writers,
+                                             total,
+                                             sorted.size(),
+                                             seconds,
+                                             sorted.size() / seconds));
+            System.out.println(String.format("latency ms p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+                                             percentile(sorted,
+                                                        0.50),
+                                             percentile(sorted,
+                                                        0.90),
+                                             percentile(sorted,
+                                                        0.99),
+                                             percentile(sorted,
+                                                        1.0)));
+        } finally {
+            executor.shutdownNow();
+            writer.shutdown();
+            reader.shutdown();
+            FileUtils.delete(writerDir,
+                             FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+            FileUtils.delete(readerDir,
+                             FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        }
+    }
+
+    private static Map<String, String> preferences(final File dir,
+                                                   final int port,
+                                                   final int peerPort,
+                                                   final Map<String, String> extraPrefs) {
+        final Map<String, String> prefs = new HashMap<>();
+        prefs.put(GIT_DAEMON_ENABLED,
+                  "false");
+        prefs.put(GIT_SSH_ENABLED,
+                  "false");
+        prefs.put(GIT_NIO_DIR,
+                  dir.getAbsolutePath());
+        prefs.put(GIT_CLUSTER_LOCAL_ENABLED,
+                  "true");
+        prefs.put(GIT_CLUSTER_LOCAL_PORT,
+                  String.valueOf(port));
+        prefs.put(GIT_CLUSTER_LOCAL_PEERS,
+                  "127.0.0.1:" + peerPort);
+        prefs.putAll(extraPrefs);
+        return prefs;
+    }
+
+    private static long writeTime(final String message) {
+        // commit messages are decorated with the changed paths, e.g. "123 {/file0.txt}"
+        final int end = message.indexOf(' ');
+        return Long.parseLong(end < 0 ? message : message.substring(0,
+                                                                    end));
+    }
+
+    private static double percentile(final List<Long> sorted,
+                                     final double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        final int index = (int) Math.min(sorted.size() - 1,
+                                         Math.ceil(percentile * sorted.size()) - 1);
+        return sorted.get(Math.max(0,
+                                   index)) / 1_000_000d;
+    }
+}
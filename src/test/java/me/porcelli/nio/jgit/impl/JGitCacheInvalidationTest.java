@@ -21,11 +21,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.FileSystem;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 
+import me.porcelli.nio.jgit.fs.FileSystemState;
 import me.porcelli.nio.jgit.impl.manager.JGitFileSystemsCache;
 import me.porcelli.nio.jgit.impl.manager.JGitFileSystemsManager;
 import me.porcelli.nio.jgit.impl.op.commands.Commit;
@@ -153,4 +155,32 @@ public class JGitCacheInvalidationTest extends AbstractTestInfra {
         // Unlock the lock so that cleanup can finish on Windows
         realInstanceFs1.unlock();
     }
+
+    @Test
+    public void fileSystemsOnBatchAreNotEvicted() throws Exception {
+        final JGitFileSystemProxy fs1 = (JGitFileSystemProxy) provider.newFileSystem(URI.create("git://batch-fs"),
+                                                                                     EMPTY_ENV);
+        final JGitFileSystemImpl realInstanceFs1 = (JGitFileSystemImpl) fs1.getRealJGitFileSystem();
+        final Path path = fs1.getPath("file.txt");
+        provider.setAttribute(path,
+                              FileSystemState.FILE_SYSTEM_STATE_ATTR,
+                              FileSystemState.BATCH);
+
+        //idle past the eviction threshold
+        Thread.sleep(10);
+        provider.newFileSystem(URI.create("git://batch-other-fs1"),
+                               EMPTY_ENV);
+        provider.newFileSystem(URI.create("git://batch-other-fs2"),
+                               EMPTY_ENV);
+        ((JGitFileSystemProxy) fsManager.get("batch-other-fs1")).getRealJGitFileSystem();
+        ((JGitFileSystemProxy) fsManager.get("batch-other-fs2")).getRealJGitFileSystem();
+
+        assertThat(fsCache.getCacheInfo().memoizedFileSystemsCacheKeys()).contains("batch-fs");
+        assertThat(fs1.getRealJGitFileSystem()).isSameAs(realInstanceFs1);
+        assertThat(realInstanceFs1.isOnBatch()).isTrue();
+
+        provider.setAttribute(path,
+                              FileSystemState.FILE_SYSTEM_STATE_ATTR,
+                              FileSystemState.NORMAL);
+    }
 }
@@ -20,6 +20,7 @@ package me.porcelli.nio.jgit.impl;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -112,6 +113,67 @@ public class JGitConflictBranchesCheckerTest extends AbstractTestInfra {
         assertThat(conflicts).isEmpty();
     }
 
+    @Test
+    public void testConflictMatrix() throws IOException {
+        new CreateBranch((GitImpl) git, MASTER_BRANCH, "feature1").execute();
+        new CreateBranch((GitImpl) git, MASTER_BRANCH, "feature2").execute();
+
+        commit(git, DEVELOP_BRANCH, "Updating files",
+               content(TXT_FILES.get(1), multiline(TXT_FILES.get(1), "Line1", "Line2ChangedDev", "Line3", "Line4")));
+
+        commit(git, "feature1", "Updating files",
+               content(TXT_FILES.get(2), multiline(TXT_FILES.get(2), "Line1", "Line2ChangedFeature", "Line3", "Line4")));
+
+        commit(git, MASTER_BRANCH, "Updating files",
+               content(TXT_FILES.get(1), multiline(TXT_FILES.get(1), "Line1", "Line2ChangedMaster", "Line3", "Line4")),
+               content(TXT_FILES.get(2), multiline(TXT_FILES.get(2), "Line1", "Line2ChangedMaster", "Line3", "Line4")));
+
+        Map<String, List<String>> matrix = git.conflictBranchesMatrix(MASTER_BRANCH,
+                                                                      Stream.of(DEVELOP_BRANCH, "feature1", "feature2")
+                                                                              .collect(Collectors.toList()));
+
+        assertThat(matrix).containsOnlyKeys(DEVELOP_BRANCH, "feature1", "feature2");
+        assertThat(matrix.get(DEVELOP_BRANCH)).containsExactly(TXT_FILES.get(1));
+        assertThat(matrix.get("feature1")).containsExactly(TXT_FILES.get(2));
+        assertThat(matrix.get("feature2")).isEmpty();
+
+        assertThat(git.conflictBranchesChecker(MASTER_BRANCH, DEVELOP_BRANCH)).containsExactly(TXT_FILES.get(1));
+    }
+
+    @Test
+    public void testConflictMatrixFollowsMovedRefs() throws IOException {
+        commit(git, MASTER_BRANCH, "Updating files",
+               content(TXT_FILES.get(1), multiline(TXT_FILES.get(1), "Line1", "Line2ChangedMaster", "Line3", "Line4")));
+
+        List<String> sources = Stream.of(DEVELOP_BRANCH).collect(Collectors.toList());
+
+        assertThat(git.conflictBranchesMatrix(MASTER_BRANCH, sources).get(DEVELOP_BRANCH)).isEmpty();
+
+        commit(git, DEVELOP_BRANCH, "Updating files",
+               content(TXT_FILES.get(1), multiline(TXT_FILES.get(1), "Line1", "Line2ChangedDev", "Line3", "Line4")));
+
+        assertThat(git.conflictBranchesMatrix(MASTER_BRANCH, sources).get(DEVELOP_BRANCH)).containsExactly(TXT_FILES.get(1));
+    }
+
+    @Test
+    public void testConflictMatrixMatchesCheckerForFileAndDirectory() throws IOException {
+        commit(git, MASTER_BRANCH, "Adding file",
+               content("docs", "file content"));
+
+        commit(git, DEVELOP_BRANCH, "Adding directory",
+               content("docs/readme.txt", "directory content"));
+
+        Map<String, List<String>> matrix = git.conflictBranchesMatrix(MASTER_BRANCH,
+                                                                      Stream.of(DEVELOP_BRANCH).collect(Collectors.toList()));
+
+        assertThat(matrix.get(DEVELOP_BRANCH)).isEqualTo(git.conflictBranchesChecker(MASTER_BRANCH, DEVELOP_BRANCH));
+    }
+
+    @Test(expected = GitException.class)
+    public void testConflictMatrixInvalidBranch() {
+        git.conflictBranchesMatrix(MASTER_BRANCH, Stream.of(DEVELOP_BRANCH, "invalid-branch").collect(Collectors.toList()));
+    }
+
     @Test(expected = GitException.class)
     public void testInvalidBranch() {
         git.conflictBranchesChecker(MASTER_BRANCH, "invalid-branch");
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import me.porcelli.nio.jgit.cluster.ClusterMessageService;
+import me.porcelli.nio.jgit.fs.SequencedWatchKey;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JGitEventsBroadcastTest {
+
+    @Test
+    public void codecRoundTrip() throws Exception {
+        final String longMessage = String.join("",
+                                               Collections.nCopies(70_000,
+                                                                   "m"));
+        final List<WatchEvent<?>> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(event(ChangeType.MODIFY,
+                             "/src/File" + i + ".java",
+                             "/src/File" + i + ".java",
+                             i == 0 ? longMessage : "bulk import"));
+        }
+        events.add(event(ChangeType.DELETE,
+                         "/old.txt",
+                         null,
+                         "bulk import"));
+
+        final WatchEventsBatch batch = WatchEventsCodec.encode("node",
+                                                               Collections.singletonList(new WatchEventsWrapper("node",
+                                                                                                                "space/repo",
+                                                                                                                URI.create("git://master@space/repo/"),
+                                                                                                                events,
+                                                                                                                42)),
+                                                               true);
+        assertThat(batch.isCompressed()).isTrue();
+
+        final List<WatchEventsWrapper> decoded = WatchEventsCodec.decode(serializeAndBack(batch));
+        assertThat(decoded).hasSize(1);
+        assertThat(decoded.get(0).getNodeId()).isEqualTo("node");
+        assertThat(decoded.get(0).getFsName()).isEqualTo("space/repo");
+        assertThat(decoded.get(0).getWatchableUri()).isEqualTo(URI.create("git://master@space/repo/"));
+        assertThat(decoded.get(0).getSequence()).isEqualTo(42);
+        assertThat(decoded.get(0).getEvents()).hasSize(101);
+        for (int i = 0; i < events.size(); i++) {
+            final JGitWatchEvent expected = (JGitWatchEvent) events.get(i);
+            final JGitWatchEvent actual = (JGitWatchEvent) decoded.get(0).getEvents().get(i);
+            assertThat(actual.toString()).isEqualTo(expected.toString());
+        }
+    }
+
+    @Test
+    public void malformedBatchesAreRejected() {
+        //version, one wrapper without fs name, watchable nor sequence, one event of an unknown change type
+        assertThatThrownBy(() -> WatchEventsCodec.decode(new WatchEventsBatch("node",
+                                                                              false,
+                                                                              new byte[]{2, 1, 0, 0, 0, 1, (byte) 200})))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("change type");
+        //a fs name referencing a string never written
+        assertThatThrownBy(() -> WatchEventsCodec.decode(new WatchEventsBatch("node",
+                                                                              false,
+                                                                              new byte[]{2, 1, 5})))
+                .isInstanceOf(IOException.class);
+        //a negative event count
+        assertThatThrownBy(() -> WatchEventsCodec.decode(new WatchEventsBatch("node",
+                                                                              false,
+                                                                              new byte[]{2, 1, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F})))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void eventsAreBatchedWithinTheWindow() throws Exception {
+        final InMemoryBus bus = new InMemoryBus();
+        final List<WatchEventsWrapper> received = new CopyOnWriteArrayList<>();
+        final JGitEventsBroadcast sender = new JGitEventsBroadcast(bus,
+                                                                   w -> {
+                                                                   },
+                                                                   60_000,
+                                                                   true);
+        final JGitEventsBroadcast receiver = new JGitEventsBroadcast(bus,
+                                                                     received::add,
+                                                                     60_000,
+                                                                     true);
+        sender.createWatchService("repo");
+        receiver.createWatchService("repo");
+
+        for (int i = 0; i < 3; i++) {
+            sender.broadcast("repo",
+                             null,
+                             Collections.singletonList(event(ChangeType.ADD,
+                                                             null,
+                                                             "/file" + i,
+                                                             "commit " + i)));
+        }
+        assertThat(bus.messages).isEmpty();
+
+        sender.flush(JGitEventsBroadcast.DEFAULT_TOPIC);
+
+        assertThat(bus.messages).hasSize(1);
+        assertThat(received).hasSize(3);
+        assertThat(received.get(2).getEvents().get(0).toString()).contains("commit 2");
+    }
+
+    @Test
+    public void receivedEventsReachResumedWatchServices() throws Exception {
+        final InMemoryBus bus = new InMemoryBus();
+        final File senderDir = AbstractTestInfra.createTempDirectory();
+        final File receiverDir = AbstractTestInfra.createTempDirectory();
+        try {
+            final JGitFileSystemsEventsManager sender = new JGitFileSystemsEventsManager(10,
+                                                                                         null,
+                                                                                         0,
+                                                                                         false,
+                                                                                         bus);
+            sender.setupJournal(name -> senderDir,
+                                Long.MAX_VALUE,
+                                false);
+            final JGitFileSystemsEventsManager receiver = new JGitFileSystemsEventsManager(10,
+                                                                                           null,
+                                                                                           0,
+                                                                                           false,
+                                                                                           bus);
+            receiver.setupJournal(name -> receiverDir,
+                                  Long.MAX_VALUE,
+                                  false);
+            sender.newWatchService("repo");
+            final WatchService resumed = receiver.newWatchService("repo",
+                                                                  0);
+
+            //journaled by the sender while the receiver's service still has its backlog open
+            sender.publishEvents("repo",
+                                 null,
+                                 Collections.singletonList(event(ChangeType.ADD,
+                                                                 null,
+                                                                 "/file",
+                                                                 "remote")));
+
+            final WatchKey key = resumed.poll();
+            assertThat(key).isNotNull();
+            assertThat(((SequencedWatchKey) key).sequence()).isZero();
+            assertThat(key.pollEvents().get(0).toString()).contains("remote");
+        } finally {
+            FileUtils.delete(senderDir,
+                             FileUtils.RECURSIVE);
+            FileUtils.delete(receiverDir,
+                             FileUtils.RECURSIVE);
+        }
+    }
+
+    private WatchEventsBatch serializeAndBack(final WatchEventsBatch batch) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(batch);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (WatchEventsBatch) in.readObject();
+        }
+    }
+
+    private JGitWatchEvent event(final ChangeType changeType,
+                                 final String oldPath,
+                                 final String newPath,
+                                 final String message) {
+        return new JGitWatchEvent("session",
+                                  "user",
+                                  message,
+                                  changeType.name(),
+                                  path(oldPath),
+                                  path(newPath));
+    }
+
+    private Path path(final String path) {
+        if (path == null) {
+            return null;
+        }
+        final Path mock = mock(Path.class);
+        when(mock.toUri()).thenReturn(URI.create("git://master@space/repo" + path));
+        return mock;
+    }
+
+    private static class InMemoryBus implements ClusterMessageService {
+
+        private final List<Serializable> messages = new CopyOnWriteArrayList<>();
+        private final List<Consumer<WatchEventsBatch>> consumers = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> void createConsumer(final DestinationType type,
+                                       final String channel,
+                                       final Class<T> clazz,
+                                       final Consumer<T> listener) {
+            consumers.add((Consumer<WatchEventsBatch>) listener);
+        }
+
+        @Override
+        public void broadcast(final DestinationType type,
+                              final String channel,
+                              final Serializable object) {
+            messages.add(object);
+            consumers.forEach(c -> c.accept((WatchEventsBatch) object));
+        }
+
+        @Override
+        public boolean isSystemClustered() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
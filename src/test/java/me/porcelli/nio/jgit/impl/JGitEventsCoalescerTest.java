@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JGitEventsCoalescerTest {
+
+    private final Path root = mock(Path.class);
+    private final List<List<WatchEvent<?>>> published = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void successiveEventsForAPathAreMerged() {
+        final JGitEventsCoalescer coalescer = new JGitEventsCoalescer(60_000,
+                                                                      (fsName, watchable, events) -> published.add(events));
+        try {
+            coalescer.add("fs",
+                          root,
+                          Arrays.asList(event(ChangeType.ADD,
+                                              null,
+                                              "/a.txt",
+                                              "first"),
+                                        event(ChangeType.MODIFY,
+                                              "/b.txt",
+                                              "/b.txt",
+                                              "first")));
+            coalescer.add("fs",
+                          root,
+                          Arrays.asList(event(ChangeType.MODIFY,
+                                              "/a.txt",
+                                              "/a.txt",
+                                              "second"),
+                                        event(ChangeType.ADD,
+                                              null,
+                                              "/c.txt",
+                                              "second")));
+            coalescer.add("fs",
+                          root,
+                          Arrays.asList(event(ChangeType.MODIFY,
+                                              "/a.txt",
+                                              "/a.txt",
+                                              "third"),
+                                        event(ChangeType.DELETE,
+                                              "/b.txt",
+                                              null,
+                                              "third"),
+                                        event(ChangeType.DELETE,
+                                              "/c.txt",
+                                              null,
+                                              "third")));
+            assertThat(published).isEmpty();
+
+            coalescer.flush("fs");
+
+            assertThat(published).hasSize(1);
+            final List<JGitWatchEvent> events = published.get(0).stream()
+                    .map(JGitWatchEvent.class::cast)
+                    .collect(Collectors.toList());
+            assertThat(events).hasSize(2);
+            assertThat(events.get(0).getChangeType()).isEqualTo(ChangeType.ADD);
+            assertThat(events.get(0).getPathUri()).isEqualTo(uri("/a.txt"));
+            assertThat(events.get(0).toString()).contains("message='third'");
+            assertThat(events.get(1).getChangeType()).isEqualTo(ChangeType.DELETE);
+            assertThat(events.get(1).getPathUri()).isEqualTo(uri("/b.txt"));
+        } finally {
+            coalescer.shutdown();
+        }
+    }
+
+    @Test
+    public void mergeRules() {
+        assertThat(JGitEventsCoalescer.cancels(ChangeType.ADD,
+                                               ChangeType.DELETE)).isTrue();
+        assertThat(JGitEventsCoalescer.cancels(ChangeType.MODIFY,
+                                               ChangeType.DELETE)).isFalse();
+        assertThat(JGitEventsCoalescer.merge(ChangeType.ADD,
+                                             ChangeType.MODIFY)).isEqualTo(ChangeType.ADD);
+        assertThat(JGitEventsCoalescer.merge(ChangeType.RENAME,
+                                             ChangeType.MODIFY)).isEqualTo(ChangeType.RENAME);
+        assertThat(JGitEventsCoalescer.merge(ChangeType.DELETE,
+                                             ChangeType.ADD)).isEqualTo(ChangeType.MODIFY);
+        assertThat(JGitEventsCoalescer.merge(ChangeType.MODIFY,
+                                             ChangeType.DELETE)).isEqualTo(ChangeType.DELETE);
+        assertThat(JGitEventsCoalescer.merge(ChangeType.MODIFY,
+                                             ChangeType.RENAME)).isNull();
+    }
+
+    @Test
+    public void windowIsPublishedAfterMaxLatency() throws Exception {
+        final CountDownLatch publishedLatch = new CountDownLatch(1);
+        final JGitEventsCoalescer coalescer = new JGitEventsCoalescer(100,
+                                                                      (fsName, watchable, events) -> {
+                                                                          published.add(events);
+                                                                          publishedLatch.countDown();
+                                                                      });
+        try {
+            final long start = System.nanoTime();
+            coalescer.add("fs",
+                          root,
+                          Collections.singletonList(event(ChangeType.ADD,
+                                                          null,
+                                                          "/a.txt",
+                                                          "first")));
+            coalescer.add("fs",
+                          root,
+                          Collections.singletonList(event(ChangeType.MODIFY,
+                                                          "/a.txt",
+                                                          "/a.txt",
+                                                          "second")));
+
+            assertThat(publishedLatch.await(10,
+                                            TimeUnit.SECONDS)).isTrue();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(90);
+            assertThat(published).hasSize(1);
+            assertThat(published.get(0)).hasSize(1);
+        } finally {
+            coalescer.shutdown();
+        }
+    }
+
+    private JGitWatchEvent event(final ChangeType changeType,
+                                 final String oldPath,
+                                 final String newPath,
+                                 final String message) {
+        return new JGitWatchEvent("session",
+                                  "user",
+                                  message,
+                                  changeType.name(),
+                                  path(oldPath),
+                                  path(newPath));
+    }
+
+    private Path path(final String path) {
+        if (path == null) {
+            return null;
+        }
+        final Path mock = mock(Path.class);
+        when(mock.toUri()).thenReturn(uri(path));
+        return mock;
+    }
+
+    private URI uri(final String path) {
+        return URI.create("git://master@fs" + path);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class JGitEventsDispatcherTest {
+
+    @Test
+    public void tasksRunInOrderOffTheCallerThread() throws Exception {
+        final JGitEventsDispatcher dispatcher = new JGitEventsDispatcher(4,
+                                                                         3);
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        try {
+            for (int i = 0; i < 100; i++) {
+                final int value = i;
+                dispatcher.dispatch(() -> {
+                    threads.add(Thread.currentThread());
+                    executed.add(value);
+                });
+            }
+            assertThat(dispatcher.awaitDispatched(10,
+                                                  TimeUnit.SECONDS)).isTrue();
+
+            assertThat(executed).isEqualTo(IntStream.range(0,
+                                                           100).boxed().collect(Collectors.toList()));
+            assertThat(threads).doesNotContain(Thread.currentThread());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownRunsPendingTasksAndRestarts() throws Exception {
+        final JGitEventsDispatcher dispatcher = new JGitEventsDispatcher(16,
+                                                                         4);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.dispatch(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        dispatcher.dispatch(() -> executed.add(1));
+        dispatcher.dispatch(() -> {
+            throw new IllegalStateException("failing watcher");
+        });
+        dispatcher.dispatch(() -> executed.add(2));
+        release.countDown();
+
+        dispatcher.shutdown();
+        assertThat(executed).containsExactly(1,
+                                             2);
+
+        dispatcher.dispatch(() -> executed.add(3));
+        assertThat(dispatcher.awaitDispatched(10,
+                                              TimeUnit.SECONDS)).isTrue();
+        dispatcher.shutdown();
+        assertThat(executed).containsExactly(1,
+                                             2,
+                                             3);
+    }
+
+    @Test
+    public void tasksLeftByAStoppedWorkerStillRunInOrder() throws Exception {
+        final JGitEventsDispatcher dispatcher = new JGitEventsDispatcher(1,
+                                                                         1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        try {
+            dispatcher.dispatch(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                //the worker stops on its next take
+                Thread.currentThread().interrupt();
+            });
+            //fills the buffer while the worker is busy
+            dispatcher.dispatch(() -> executed.add(1));
+            release.countDown();
+
+            dispatcher.dispatch(() -> executed.add(2));
+            assertThat(dispatcher.awaitDispatched(10,
+                                                  TimeUnit.SECONDS)).isTrue();
+            assertThat(executed).containsExactly(1,
+                                                 2);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void watchServicesShareImmutableEvents() throws Exception {
+        final JGitEventsDispatcher dispatcher = new JGitEventsDispatcher(16,
+                                                                         4);
+        final JGitFileSystemsEventsManager manager = new JGitFileSystemsEventsManager(16,
+                                                                                      dispatcher);
+        try {
+            final WatchService ws1 = manager.newWatchService("fs");
+            final WatchService ws2 = manager.newWatchService("fs");
+
+            manager.publishEvents("fs",
+                                  mock(Path.class),
+                                  Arrays.asList(mock(WatchEvent.class),
+                                                mock(WatchEvent.class)));
+
+            final WatchKey key1 = ws1.poll(10,
+                                           TimeUnit.SECONDS);
+            final WatchKey key2 = ws2.poll(10,
+                                           TimeUnit.SECONDS);
+            assertThat(key1.pollEvents()).hasSize(2);
+            assertThat(key2.pollEvents()).isSameAs(key1.pollEvents());
+            assertThatThrownBy(() -> key1.pollEvents().clear()).isInstanceOf(UnsupportedOperationException.class);
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
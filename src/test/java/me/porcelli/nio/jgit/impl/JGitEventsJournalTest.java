@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import me.porcelli.nio.jgit.fs.SequencedWatchKey;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitEventsJournalTest {
+
+    private File dir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = AbstractTestInfra.createTempDirectory();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.delete(dir,
+                         FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+    }
+
+    @Test
+    public void cursorResumesAfterTheGivenSequence() throws Exception {
+        final JGitEventsJournal journal = new JGitEventsJournal("repo",
+                                                                dir,
+                                                                Long.MAX_VALUE,
+                                                                false);
+        for (int i = 1; i <= 5; i++) {
+            assertThat(journal.append(null,
+                                      events("/file" + i))).isEqualTo(i);
+        }
+
+        try (JGitEventsJournal.Cursor cursor = journal.openCursor(3)) {
+            assertKey(cursor.next(),
+                      4,
+                      "/file4");
+            assertKey(cursor.next(),
+                      5,
+                      "/file5");
+            assertThat(cursor.next()).isNull();
+
+            //the cursor follows the journal as it grows
+            journal.append(null,
+                           events("/file6"));
+            assertKey(cursor.next(),
+                      6,
+                      "/file6");
+            assertThat(cursor.next()).isNull();
+        }
+    }
+
+    @Test
+    public void sequencesContinueAcrossRestarts() throws Exception {
+        new JGitEventsJournal("repo",
+                              dir,
+                              Long.MAX_VALUE,
+                              false).append(null,
+                                            events("/file1"));
+
+        final JGitEventsJournal restarted = new JGitEventsJournal("repo",
+                                                                  dir,
+                                                                  Long.MAX_VALUE,
+                                                                  true);
+        assertThat(restarted.append(null,
+                                    events("/file2"))).isEqualTo(2);
+
+        //without the sequence file the journal itself tells the last sequence
+        new File(dir,
+                 JGitEventsJournal.JOURNAL_FILE_NAME + ".seq").delete();
+        assertThat(new JGitEventsJournal("repo",
+                                         dir,
+                                         Long.MAX_VALUE,
+                                         false).append(null,
+                                                       events("/file3"))).isEqualTo(3);
+    }
+
+    @Test
+    public void journalsOfTheSameDirectoryAppendConcurrently() throws Exception {
+        //like two providers of one JVM sharing the repositories directory
+        final JGitEventsJournal first = new JGitEventsJournal("repo",
+                                                              dir,
+                                                              Long.MAX_VALUE,
+                                                              false);
+        final JGitEventsJournal second = new JGitEventsJournal("repo",
+                                                               dir,
+                                                               Long.MAX_VALUE,
+                                                               false);
+        final Set<Long> sequences = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> appends = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final JGitEventsJournal journal = i % 2 == 0 ? first : second;
+                appends.add(executor.submit(() -> {
+                    for (int j = 0; j < 25; j++) {
+                        sequences.add(journal.append(null,
+                                                     events("/file")));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> append : appends) {
+                append.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(sequences).hasSize(100).doesNotContain(0L);
+    }
+
+    @Test
+    public void appendLocksOfDroppedJournalsAreReleased() throws Exception {
+        final File dropped = new File(dir,
+                                      "dropped");
+        new JGitEventsJournal("dropped",
+                              dropped,
+                              Long.MAX_VALUE,
+                              false).append(null,
+                                            events("/file"));
+        final Path droppedKey = new File(dropped,
+                                         JGitEventsJournal.JOURNAL_FILE_NAME + ".seq").toPath().toAbsolutePath().normalize();
+        synchronized (JGitEventsJournal.APPEND_LOCKS) {
+            assertThat(JGitEventsJournal.APPEND_LOCKS).containsKey(droppedKey);
+        }
+
+        for (int i = 0; i < 10 && isAppendLockReferenced(droppedKey); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        //entries are purged when journals are created
+        new JGitEventsJournal("repo",
+                              dir,
+                              Long.MAX_VALUE,
+                              false);
+
+        synchronized (JGitEventsJournal.APPEND_LOCKS) {
+            assertThat(JGitEventsJournal.APPEND_LOCKS).doesNotContainKey(droppedKey);
+        }
+    }
+
+    private static boolean isAppendLockReferenced(final Path key) {
+        synchronized (JGitEventsJournal.APPEND_LOCKS) {
+            final WeakReference<Object> reference = JGitEventsJournal.APPEND_LOCKS.get(key);
+            return reference != null && reference.get() != null;
+        }
+    }
+
+    @Test
+    public void rolledOverEventsAreReportedAsOverflow() throws Exception {
+        //every record rolls the journal over, only the last one is kept
+        final JGitEventsJournal journal = new JGitEventsJournal("repo",
+                                                                dir,
+                                                                1,
+                                                                false);
+        for (int i = 1; i <= 6; i++) {
+            journal.append(null,
+                           events("/file" + i));
+        }
+
+        try (JGitEventsJournal.Cursor cursor = journal.openCursor(1)) {
+            final WatchKey overflow = cursor.next();
+            assertThat(overflow.pollEvents()).hasSize(1);
+            assertThat(overflow.pollEvents().get(0).kind()).isEqualTo(StandardWatchEventKinds.OVERFLOW);
+            assertThat(overflow.pollEvents().get(0).count()).isEqualTo(4);
+            assertKey(cursor.next(),
+                      6,
+                      "/file6");
+            assertThat(cursor.next()).isNull();
+
+            //the cursor moves on to the new journal once the previous segment is read
+            journal.append(null,
+                           events("/file7"));
+            assertKey(cursor.next(),
+                      7,
+                      "/file7");
+            assertThat(cursor.next()).isNull();
+        }
+    }
+
+    @Test
+    public void incompleteRecordIsDroppedOnAppend() throws Exception {
+        new JGitEventsJournal("repo",
+                              dir,
+                              Long.MAX_VALUE,
+                              false).append(null,
+                                            events("/file1"));
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir,
+                                                                   JGitEventsJournal.JOURNAL_FILE_NAME),
+                                                          "rw")) {
+            file.seek(file.length());
+            file.write(new byte[]{0, 0, 0});
+        }
+
+        final JGitEventsJournal journal = new JGitEventsJournal("repo",
+                                                                dir,
+                                                                Long.MAX_VALUE,
+                                                                false);
+        journal.append(null,
+                       events("/file2"));
+
+        try (JGitEventsJournal.Cursor cursor = journal.openCursor(0)) {
+            assertKey(cursor.next(),
+                      1,
+                      "/file1");
+            assertKey(cursor.next(),
+                      2,
+                      "/file2");
+            assertThat(cursor.next()).isNull();
+        }
+    }
+
+    private void assertKey(final WatchKey key,
+                           final long sequence,
+                           final String path) {
+        assertThat(key).isInstanceOf(SequencedWatchKey.class);
+        assertThat(((SequencedWatchKey) key).sequence()).isEqualTo(sequence);
+        assertThat(key.pollEvents()).hasSize(1);
+        assertThat(((JGitWatchEvent) key.pollEvents().get(0)).getPathUri().getPath()).isEqualTo(path);
+    }
+
+    private List<WatchEvent<?>> events(final String path) {
+        return Collections.singletonList(new JGitWatchEvent("session",
+                                                            "user",
+                                                            "message",
+                                                            ChangeType.ADD.name(),
+                                                            null,
+                                                            URI.create("git://master@repo" + path)));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_DISCOVERY_ENABLED;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_DISCOVERY_WARMUP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemDiscoveryTest extends AbstractTestInfra {
+
+    @Test
+    public void testDiscoverFileSystems() throws Exception {
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put("init",
+                Boolean.TRUE);
+        }};
+        final List<String> fsNames = Arrays.asList("repo1",
+                                                   "group/repo2",
+                                                   "repo3");
+        long lastUsed = 1_000_000_000_000L;
+        for (final String fsName : fsNames) {
+            provider.newFileSystem(URI.create("git://" + fsName),
+                                   env);
+            setLastUsed(fsName,
+                        lastUsed);
+            lastUsed += 60_000;
+        }
+
+        final Map<String, String> gitPrefs = getGitPreferences();
+        gitPrefs.put(GIT_DISCOVERY_ENABLED,
+                     "true");
+        gitPrefs.put(GIT_DISCOVERY_WARMUP,
+                     "1");
+        final JGitFileSystemProvider discoveringProvider = new JGitFileSystemProvider(gitPrefs);
+        try {
+            //the most recently used repository is warmed up in background
+            waitForLock(discoveringProvider,
+                        "repo3");
+            assertThat(discoveringProvider.getLockMetrics()).doesNotContainKeys("repo1",
+                                                                                 "group/repo2");
+
+            //all of them are registered
+            assertThat(discoveringProvider.discoverFileSystems()).isEmpty();
+            final Path readme = discoveringProvider.getPath(URI.create("git://master@group/repo2/readme.md"));
+            assertThat(discoveringProvider.readAttributes(readme,
+                                                          "size")).isNotEmpty();
+        } finally {
+            discoveringProvider.shutdown();
+        }
+    }
+
+    @Test
+    public void testDiscoveryOrderAndWarmUp() throws Exception {
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put("init",
+                Boolean.TRUE);
+        }};
+        provider.newFileSystem(URI.create("git://older"),
+                               env);
+        setLastUsed("older",
+                    1_000_000_000_000L);
+        provider.newFileSystem(URI.create("git://newer"),
+                               env);
+        setLastUsed("newer",
+                    2_000_000_000_000L);
+
+        final JGitFileSystemProvider discoveringProvider = new JGitFileSystemProvider(getGitPreferences());
+        try {
+            final List<String> discovered = discoveringProvider.discoverFileSystems();
+            assertThat(discovered).containsExactly("newer",
+                                                   "older");
+            assertThat(discoveringProvider.getLockMetrics()).isEmpty();
+
+            discoveringProvider.warmUpFileSystems(discovered).get(30,
+                                                                  TimeUnit.SECONDS);
+            assertThat(discoveringProvider.getLockMetrics()).containsKeys("newer",
+                                                                          "older");
+        } finally {
+            discoveringProvider.shutdown();
+        }
+    }
+
+    private void setLastUsed(final String fsName,
+                             final long lastUsed) {
+        final File repoDir = new File(provider.getGitRepoContainerDir(),
+                                      fsName + ".git");
+        for (final File file : Arrays.asList(repoDir,
+                                             new File(repoDir,
+                                                      "refs/heads"),
+                                             new File(repoDir,
+                                                      "packed-refs"))) {
+            if (file.exists()) {
+                assertThat(file.setLastModified(lastUsed)).isTrue();
+            }
+        }
+    }
+
+    private void waitForLock(final JGitFileSystemProvider provider,
+                             final String fsName) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30_000;
+        while (!provider.getLockMetrics().containsKey(fsName) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(provider.getLockMetrics()).containsKey(fsName);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.porcelli.nio.jgit.fs.SequencedWatchKey;
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_EVENTS_JOURNAL_ENABLED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemEventsJournalTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(GIT_EVENTS_JOURNAL_ENABLED,
+                     "true");
+        return gitPrefs;
+    }
+
+    @Test
+    public void watchServicesResumeFromTheJournal() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://journal-repo"),
+                                                                          EMPTY_ENV);
+
+        //nobody watches yet, the events only go to the journal
+        write("git://master@journal-repo/file1.txt");
+        write("git://master@journal-repo/file2.txt");
+        write("git://master@journal-repo/file3.txt");
+        provider.fsEventsManager.getDispatcher().awaitDispatched(10,
+                                                                 TimeUnit.SECONDS);
+
+        final WatchService fromStart = fs.newWatchService(0);
+        assertKey(fromStart.poll(),
+                  "/file1.txt");
+        assertKey(fromStart.poll(),
+                  "/file2.txt");
+        final long handled = assertKey(fromStart.poll(),
+                                       "/file3.txt");
+        assertThat(fromStart.poll()).isNull();
+        fromStart.close();
+
+        write("git://master@journal-repo/file4.txt");
+        provider.fsEventsManager.getDispatcher().awaitDispatched(10,
+                                                                 TimeUnit.SECONDS);
+
+        final WatchService resumed = fs.newWatchService(handled);
+        assertThat(assertKey(resumed.poll(),
+                             "/file4.txt")).isEqualTo(handled + 1);
+
+        //once caught up, the published keys follow, each one once
+        write("git://master@journal-repo/file5.txt");
+        assertThat(assertKey(resumed.poll(10,
+                                          TimeUnit.SECONDS),
+                             "/file5.txt")).isEqualTo(handled + 2);
+        assertThat(resumed.poll(200,
+                                TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private void write(final String uri) throws IOException {
+        try (OutputStream out = provider.newOutputStream(provider.getPath(URI.create(uri)))) {
+            out.write(uri.getBytes());
+        }
+    }
+
+    private long assertKey(final WatchKey key,
+                           final String path) {
+        assertThat(key).isInstanceOf(SequencedWatchKey.class);
+        assertThat(key.pollEvents()).hasSize(1);
+        assertThat(((JGitWatchEvent) key.pollEvents().get(0)).getPathUri().getPath()).isEqualTo(path);
+        return ((SequencedWatchKey) key).sequence();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import me.porcelli.nio.jgit.fs.FileSystemState;
+import me.porcelli.nio.jgit.impl.hook.CommitEvent;
+import me.porcelli.nio.jgit.impl.hook.CommitListener;
+import me.porcelli.nio.jgit.impl.op.commands.Commit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemImplProviderCommitListenerTest extends AbstractTestInfra {
+
+    @Test
+    public void testSyncListenerReceivesTheCommit() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://commit-listener-repo"),
+                                                                          EMPTY_ENV);
+        write("git://commit-listener-repo/file1.txt",
+              "content");
+        final ObjectId oldCommit = fs.getGit().getLastCommit("master");
+
+        final List<CommitEvent> events = new CopyOnWriteArrayList<>();
+        final CommitListener listener = events::add;
+        provider.addCommitListener(listener);
+        write("git://commit-listener-repo/dir/file2.txt",
+              "content");
+        provider.removeCommitListener(listener);
+        write("git://commit-listener-repo/file3.txt",
+              "content");
+
+        assertThat(events).hasSize(1);
+        final CommitEvent event = events.get(0);
+        assertThat(event.getFsName()).isEqualTo("commit-listener-repo");
+        assertThat(event.getBranch()).isEqualTo("master");
+        assertThat(event.getOldCommitId()).isEqualTo(oldCommit);
+        assertThat(event.getNewCommitId()).isNotEqualTo(oldCommit);
+        assertThat(event.getChangedPaths()).containsExactly("/dir/file2.txt");
+    }
+
+    @Test
+    public void testAsyncListenerReceivesCommitsInOrder() throws Exception {
+        provider.newFileSystem(URI.create("git://async-listener-repo"),
+                               EMPTY_ENV);
+        final List<CommitEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch received = new CountDownLatch(3);
+        final Thread committer = Thread.currentThread();
+        provider.addCommitListener(new CommitListener() {
+            @Override
+            public void onCommit(final CommitEvent event) {
+                assertThat(Thread.currentThread()).isNotSameAs(committer);
+                events.add(event);
+                received.countDown();
+            }
+
+            @Override
+            public boolean isAsync() {
+                return true;
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            write("git://async-listener-repo/file" + i + ".txt",
+                  "content");
+        }
+
+        assertThat(received.await(10,
+                                  TimeUnit.SECONDS)).isTrue();
+        assertThat(events.get(0).getOldCommitId()).isNull();
+        assertThat(events.get(1).getOldCommitId()).isEqualTo(events.get(0).getNewCommitId());
+        assertThat(events.get(2).getOldCommitId()).isEqualTo(events.get(1).getNewCommitId());
+        assertThat(events.get(2).getChangedPaths()).containsExactly("/file2.txt");
+    }
+
+    @Test
+    public void testFailingListenerDoesNotFailTheCommit() throws Exception {
+        provider.newFileSystem(URI.create("git://failing-listener-repo"),
+                               EMPTY_ENV);
+        final List<CommitEvent> events = new CopyOnWriteArrayList<>();
+        provider.addCommitListener(event -> {
+            throw new IllegalStateException("failing listener");
+        });
+        provider.addCommitListener(events::add);
+
+        write("git://failing-listener-repo/file.txt",
+              "content");
+
+        assertThat(events).hasSize(1);
+    }
+
+    @Test
+    public void testPreReceiveListenerRejectsTheUpdate() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://pre-receive-listener-repo"),
+                                                                          EMPTY_ENV);
+        new Commit(fs.getGit(),
+                   "master",
+                   "user1",
+                   "user1@example.com",
+                   "initial",
+                   null,
+                   null,
+                   false,
+                   new HashMap<String, File>() {{
+                       put("protected/file.txt",
+                           tempFile("initial"));
+                   }}).execute();
+        final ObjectId oldTip = fs.getGit().getLastCommit("master");
+        new Commit(fs.getGit(),
+                   "master",
+                   "user1",
+                   "user1@example.com",
+                   "update",
+                   null,
+                   null,
+                   false,
+                   new HashMap<String, File>() {{
+                       put("protected/file.txt",
+                           tempFile("update"));
+                   }}).execute();
+        final ObjectId newTip = fs.getGit().getLastCommit("master");
+
+        provider.addPreReceiveListener(event -> {
+            assertThat(event.getBranch()).isEqualTo("master");
+            if (event.getChangedPaths().stream().anyMatch(p -> p.startsWith("/protected/"))) {
+                event.reject("protected path");
+            }
+        });
+
+        final ReceivePack receivePack = provider.getReceivePack("test",
+                                                                null,
+                                                                fs.getGit().getRepository());
+        final ReceiveCommand command = new ReceiveCommand(oldTip,
+                                                          newTip,
+                                                          "refs/heads/master");
+        receivePack.getPreReceiveHook().onPreReceive(receivePack,
+                                                     Collections.singletonList(command));
+
+        assertThat(command.getResult()).isEqualTo(ReceiveCommand.Result.REJECTED_OTHER_REASON);
+        assertThat(command.getMessage()).isEqualTo("protected path");
+    }
+
+    @Test
+    public void testFailingPreReceiveListenerRejectsTheUpdateAndUnlocks() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://failing-pre-receive-repo"),
+                                                                          EMPTY_ENV);
+        write("git://failing-pre-receive-repo/file1.txt",
+              "content");
+        final ObjectId oldTip = fs.getGit().getLastCommit("master");
+        write("git://failing-pre-receive-repo/file2.txt",
+              "content");
+        final ObjectId newTip = fs.getGit().getLastCommit("master");
+
+        provider.addPreReceiveListener(event -> {
+            throw new IllegalStateException("failing listener");
+        });
+
+        final ReceivePack receivePack = provider.getReceivePack("test",
+                                                                null,
+                                                                fs.getGit().getRepository());
+        final ReceiveCommand command = new ReceiveCommand(oldTip,
+                                                          newTip,
+                                                          "refs/heads/master");
+        receivePack.getPreReceiveHook().onPreReceive(receivePack,
+                                                     Collections.singletonList(command));
+
+        assertThat(command.getResult()).isEqualTo(ReceiveCommand.Result.REJECTED_OTHER_REASON);
+        //the lock is not left to the post-receive hook, other threads can write
+        CompletableFuture.runAsync(() -> {
+            try {
+                write("git://failing-pre-receive-repo/file3.txt",
+                      "content");
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).get(10,
+               TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBatchIsNotifiedOnceItEnds() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://space/batch-listener-repo"),
+                                                                          EMPTY_ENV);
+        write("git://space/batch-listener-repo/file1.txt",
+              "content");
+        final ObjectId oldCommit = fs.getGit().getLastCommit("master");
+
+        final List<CommitEvent> events = new CopyOnWriteArrayList<>();
+        provider.addCommitListener(events::add);
+        final Path root = provider.getPath(URI.create("git://master@space/batch-listener-repo/"));
+        provider.setAttribute(root,
+                              FileSystemState.FILE_SYSTEM_STATE_ATTR,
+                              FileSystemState.BATCH);
+        write("git://master@space/batch-listener-repo/file2.txt",
+              "content");
+        write("git://master@space/batch-listener-repo/dir/file3.txt",
+              "content");
+        assertThat(events).isEmpty();
+        provider.setAttribute(root,
+                              FileSystemState.FILE_SYSTEM_STATE_ATTR,
+                              FileSystemState.NORMAL);
+
+        assertThat(events).hasSize(1);
+        final CommitEvent event = events.get(0);
+        assertThat(event.getFsName()).isEqualTo("space/batch-listener-repo");
+        assertThat(event.getOldCommitId()).isEqualTo(oldCommit);
+        assertThat(event.getNewCommitId()).isEqualTo(fs.getGit().getLastCommit("master"));
+        //paths are relative to the file system, whose name has several segments
+        assertThat(event.getChangedPaths()).containsExactlyInAnyOrder("/file2.txt",
+                                                                      "/dir/file3.txt");
+
+        write("git://master@space/batch-listener-repo/file4.txt",
+              "content");
+        assertThat(events).hasSize(2);
+        assertThat(events.get(1).getChangedPaths()).containsExactly("/file4.txt");
+    }
+
+    private void write(final String uri,
+                       final String content) throws IOException {
+        final Path path = provider.getPath(URI.create(uri));
+        try (OutputStream out = provider.newOutputStream(path)) {
+            out.write(content.getBytes());
+        }
+    }
+}
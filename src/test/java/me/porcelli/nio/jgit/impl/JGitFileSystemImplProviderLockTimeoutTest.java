@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_LOCK_TIMEOUT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JGitFileSystemImplProviderLockTimeoutTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(GIT_LOCK_TIMEOUT + ".commit",
+                     "100");
+        return gitPrefs;
+    }
+
+    @Test
+    public void testCommitFailsFastWhenLockIsBusy() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://lock-timeout-test-repo"),
+                                                                          EMPTY_ENV);
+        final Path path = provider.getPath(URI.create("git://master@lock-timeout-test-repo/myfile.txt"));
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread holder = new Thread(() -> {
+            fs.lock("gc");
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                fs.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        try {
+            assertThatThrownBy(() -> write(path,
+                                           "content"))
+                    .isInstanceOf(FileSystemLockTimeoutException.class)
+                    .hasMessageContaining("commit");
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        write(path,
+              "content");
+        assertThat(provider.getLockMetrics().get("lock-timeout-test-repo").getHolderThread()).isNull();
+    }
+
+    private void write(final Path path,
+                       final String content) throws IOException {
+        try (final OutputStream out = provider.newOutputStream(path)) {
+            out.write(content.getBytes());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import me.porcelli.nio.jgit.impl.op.model.MaintenanceStats;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_MAINTENANCE_ENABLED;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_MAINTENANCE_INTERVAL;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_MAINTENANCE_LOOSE_OBJECTS;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_MAINTENANCE_LOOSE_REFS;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_MAINTENANCE_PACKS;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_MAINTENANCE_PRUNE_GRACE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemImplProviderMaintenanceTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(GIT_MAINTENANCE_ENABLED,
+                     "true");
+        //rounds are run by the tests
+        gitPrefs.put(GIT_MAINTENANCE_INTERVAL,
+                     "0");
+        gitPrefs.put(GIT_MAINTENANCE_LOOSE_OBJECTS,
+                     "0");
+        gitPrefs.put(GIT_MAINTENANCE_LOOSE_REFS,
+                     "0");
+        gitPrefs.put(GIT_MAINTENANCE_PACKS,
+                     "1");
+        gitPrefs.put(GIT_MAINTENANCE_PRUNE_GRACE,
+                     "0");
+        return gitPrefs;
+    }
+
+    @Test
+    public void testLooseObjectsAndRefsArePacked() throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://maintenance-repo"),
+                                                                          EMPTY_ENV);
+        for (int i = 0; i < 3; i++) {
+            write("git://maintenance-repo/file" + i + ".txt",
+                  "content " + i);
+        }
+        write("git://develop@maintenance-repo/develop.txt",
+              "develop");
+        assertThat(fs.getNumberOfCommitsSinceLastGC()).isEqualTo(0);
+        assertThat(fs.getGit().getMaintenanceStats().getLooseObjects()).isGreaterThan(0);
+
+        provider.runMaintenance();
+
+        final MaintenanceStats stats = fs.getGit().getMaintenanceStats();
+        assertThat(stats.getLooseObjects()).isEqualTo(0);
+        assertThat(stats.getLooseRefs()).isEqualTo(0);
+        assertThat(stats.getPacks()).isEqualTo(1);
+        assertThat(read("git://maintenance-repo/file1.txt")).isEqualTo("content 1");
+        assertThat(read("git://develop@maintenance-repo/develop.txt")).isEqualTo("develop");
+
+        write("git://maintenance-repo/file1.txt",
+              "changed");
+        assertThat(read("git://maintenance-repo/file1.txt")).isEqualTo("changed");
+    }
+
+    @Test
+    public void testSmallPacksAreMerged() throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://merge-packs-repo"),
+                                                                          EMPTY_ENV);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 3; i++) {
+                write("git://merge-packs-repo/file" + round + "-" + i + ".txt",
+                      "content " + round + "-" + i);
+            }
+            provider.runMaintenance();
+        }
+
+        final MaintenanceStats stats = fs.getGit().getMaintenanceStats();
+        assertThat(stats.getLooseObjects()).isEqualTo(0);
+        assertThat(stats.getPacks()).isEqualTo(1);
+        assertThat(read("git://merge-packs-repo/file0-0.txt")).isEqualTo("content 0-0");
+        assertThat(read("git://merge-packs-repo/file1-2.txt")).isEqualTo("content 1-2");
+    }
+
+    @Test
+    public void testOnlyDeletionsRunExclusively() throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://exclusive-repo"),
+                                                                          EMPTY_ENV);
+        write("git://exclusive-repo/file.txt",
+              "content");
+        final long looseObjects = fs.getGit().getMaintenanceStats().getLooseObjects();
+        final List<MaintenanceStats> exclusiveStats = new ArrayList<>();
+
+        final int packed = fs.getGit().packLooseObjects(0,
+                                                        task -> {
+                                                            //the pack is already written and the loose objects still there
+                                                            exclusiveStats.add(fs.getGit().getMaintenanceStats());
+                                                            task.run();
+                                                        });
+
+        assertThat((long) packed).isEqualTo(looseObjects);
+        assertThat(exclusiveStats).hasSize(1);
+        assertThat(exclusiveStats.get(0).getPacks()).isEqualTo(1);
+        assertThat(exclusiveStats.get(0).getLooseObjects()).isEqualTo(looseObjects);
+        assertThat(fs.getGit().getMaintenanceStats().getLooseObjects()).isEqualTo(0);
+        assertThat(read("git://exclusive-repo/file.txt")).isEqualTo("content");
+    }
+
+    @Test
+    public void testRefTreeRepositoryIsMaintained() throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://reftree-maintenance-repo"),
+                                                                          EMPTY_ENV);
+        write("git://reftree-maintenance-repo/file.txt",
+              "content");
+        fs.getGit().convertRefTree();
+        //convertRefTree writes the extension under the key older JGit versions read
+        final StoredConfig config = fs.getGit().getRepository().getConfig();
+        config.setString("extensions",
+                         null,
+                         "refStorage",
+                         "reftree");
+        config.save();
+        fs.getGit().updateRepo(new FileRepositoryBuilder()
+                                       .setGitDir(fs.getGit().getRepository().getDirectory())
+                                       .build());
+        write("git://reftree-maintenance-repo/other.txt",
+              "other");
+        //garbage collection doesn't prune RefTree repositories, maintenance does
+        final ObjectId unreachable;
+        try (ObjectInserter inserter = fs.getGit().getRepository().newObjectInserter()) {
+            unreachable = inserter.insert(Constants.OBJ_BLOB,
+                                          "unreachable".getBytes(StandardCharsets.UTF_8));
+            inserter.flush();
+        }
+        final MaintenanceStats before = fs.getGit().getMaintenanceStats();
+        assertThat(before.isRefTree()).isTrue();
+        assertThat(before.getLooseObjects()).isGreaterThan(0);
+
+        provider.runMaintenance();
+
+        assertThat(fs.getGit().getMaintenanceStats().getLooseObjects()).isEqualTo(0);
+        assertThat(fs.getGit().getRepository().getObjectDatabase().has(unreachable)).isFalse();
+        assertThat(read("git://reftree-maintenance-repo/file.txt")).isEqualTo("content");
+        assertThat(read("git://reftree-maintenance-repo/other.txt")).isEqualTo("other");
+    }
+
+    private void write(final String uri,
+                       final String content) throws IOException {
+        final Path path = provider.getPath(URI.create(uri));
+        try (OutputStream out = provider.newOutputStream(path)) {
+            out.write(content.getBytes());
+        }
+    }
+
+    private String read(final String uri) throws IOException {
+        try (InputStream in = provider.newInputStream(provider.getPath(URI.create(uri)))) {
+            return IOUtils.toString(in,
+                                    StandardCharsets.UTF_8);
+        }
+    }
+}
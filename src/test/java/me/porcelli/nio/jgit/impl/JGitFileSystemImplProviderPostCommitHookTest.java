@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import me.porcelli.nio.jgit.impl.hook.FileSystemHookExecutionContext;
 import me.porcelli.nio.jgit.impl.hook.FileSystemHooks;
@@ -47,6 +48,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -87,8 +89,10 @@ public class JGitFileSystemImplProviderPostCommitHookTest extends AbstractTestIn
     }
 
     @Test
-    public void testPostCommitWithoutHook() throws IOException {
+    public void testPostCommitWithoutHook() throws Exception {
         commitFile();
+        assertThat(provider.awaitPostCommitHooks(10,
+                                                 TimeUnit.SECONDS)).isTrue();
 
         verify(postCommitHook, never()).execute(any());
     }
@@ -116,7 +120,8 @@ public class JGitFileSystemImplProviderPostCommitHookTest extends AbstractTestIn
 
         commitFile();
 
-        verify(postCommitHook).execute(contextCaptor.capture());
+        verify(postCommitHook,
+               timeout(10_000)).execute(contextCaptor.capture());
 
         FileSystemHookExecutionContext context = contextCaptor.getValue();
 
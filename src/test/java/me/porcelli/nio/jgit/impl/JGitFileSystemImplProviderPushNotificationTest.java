@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import me.porcelli.nio.jgit.impl.op.commands.Commit;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_PUSH_NOTIFY_AGGREGATE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemImplProviderPushNotificationTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(GIT_PUSH_NOTIFY_AGGREGATE,
+                     "true");
+        return gitPrefs;
+    }
+
+    @Test
+    public void testPushIsNotifiedWithOneDiffPerRef() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://push-notification-repo"),
+                                                                          EMPTY_ENV);
+        commit(fs,
+               "initial",
+               "existing.txt");
+        final ObjectId oldTip = fs.getGit().getLastCommit("master");
+
+        final WatchService watchService = fs.newWatchService();
+
+        final ReceivePack receivePack = provider.getReceivePack("test",
+                                                                null,
+                                                                fs.getGit().getRepository());
+        // what the push stores: three commits on top of the old tip
+        commit(fs,
+               "first",
+               "file1.txt");
+        commit(fs,
+               "second",
+               "file2.txt");
+        commit(fs,
+               "third",
+               "file3.txt");
+        final ObjectId newTip = fs.getGit().getLastCommit("master");
+        final List<ReceiveCommand> commands = Collections.singletonList(new ReceiveCommand(oldTip,
+                                                                                           newTip,
+                                                                                           "refs/heads/master"));
+        receivePack.getPreReceiveHook().onPreReceive(receivePack,
+                                                     commands);
+        receivePack.getPostReceiveHook().onPostReceive(receivePack,
+                                                       commands);
+        // a later commit isn't part of what was pushed
+        commit(fs,
+               "later",
+               "file4.txt");
+
+        provider.pushNotified(fs.getName()).get(10,
+                                                TimeUnit.SECONDS);
+
+        final WatchKey key = watchService.poll(10,
+                                               TimeUnit.SECONDS);
+        assertThat(key).isNotNull();
+        final List<WatchEvent<?>> events = key.pollEvents();
+        assertThat(events).hasSize(3);
+        for (final WatchEvent<?> event : events) {
+            final JGitWatchEvent watchEvent = (JGitWatchEvent) event;
+            assertThat(watchEvent.getChangeType()).isEqualTo(DiffEntry.ChangeType.ADD);
+            assertThat(watchEvent.getSessionId()).isEqualTo("<test>");
+            assertThat(watchEvent.getMessage()).isEqualTo("third");
+        }
+        assertThat(watchService.poll(200,
+                                     TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private void commit(final JGitFileSystem fs,
+                        final String message,
+                        final String path) throws IOException {
+        new Commit(fs.getGit(),
+                   "master",
+                   "user1",
+                   "user1@example.com",
+                   message,
+                   null,
+                   null,
+                   false,
+                   new HashMap<String, File>() {{
+                       put(path,
+                           tempFile(message));
+                   }}).execute();
+    }
+}
@@ -684,6 +684,24 @@ public class JGitFileSystemImplProviderTest extends AbstractTestInfra {
         provider.newInputStream(path);
     }
 
+    @Test
+    public void testLockMetrics() throws IOException {
+        final URI newRepo = URI.create("git://lock-metrics-test-repo");
+        provider.newFileSystem(newRepo,
+                               EMPTY_ENV);
+
+        final Path path = provider.getPath(URI.create("git://master@lock-metrics-test-repo/myfile.txt"));
+        try (final OutputStream outStream = provider.newOutputStream(path)) {
+            outStream.write("my cool content".getBytes());
+        }
+
+        final FileSystemLockMetrics metrics = provider.getLockMetrics().get("lock-metrics-test-repo");
+        assertThat(metrics).isNotNull();
+        assertThat(metrics.getHolderThread()).isNull();
+        assertThat(metrics.getHoldTimes().getCount()).isGreaterThanOrEqualTo(1);
+        assertThat(metrics.getWaitTimes().getCount()).isEqualTo(metrics.getHoldTimes().getCount());
+    }
+
     @Test
     public void testNewOutputStream() throws Exception {
         final File parentFolder = createTempDirectory();
@@ -2246,4 +2264,31 @@ public class JGitFileSystemImplProviderTest extends AbstractTestInfra {
         }
         return commits;
     }
+
+    @Test
+    public void deletingTheLastFileSystemOfADirectoryKeepsItsLock() throws IOException {
+        //without lock files the directory is left empty and deleted along with the file system
+        provider.shutdown();
+        final Map<String, String> gitPrefs = getGitPreferences();
+        gitPrefs.put(JGitFileSystemProviderConfiguration.GIT_LOCK_SINGLE_PROCESS,
+                     "true");
+        provider = new JGitFileSystemProvider(gitPrefs);
+        provider.servicesStarted().join();
+
+        final FileSystem fs = provider.newFileSystem(URI.create("git://lock-space/deleted-repo"),
+                                                     EMPTY_ENV);
+        //the repository is created once the file system is first used
+        ((JGitFileSystemProxy) fs).getRealJGitFileSystem();
+        final File parentDir = new File(provider.getGitRepoContainerDir(),
+                                        "lock-space");
+        final FileSystemLock parentLock = FileSystemLockManager.getInstance().fileSystemsLocks.get(parentDir.getAbsolutePath());
+        assertThat(parentLock).isNotNull();
+
+        provider.delete(fs.getPath(""));
+
+        assertThat(parentDir).doesNotExist();
+        //threads queued on the lock and the ones coming later share the same instance
+        assertThat(FileSystemLockManager.getInstance().fileSystemsLocks.get(parentDir.getAbsolutePath())).isSameAs(parentLock);
+        assertThat(parentLock.lock.isLocked()).isFalse();
+    }
 }
@@ -21,7 +21,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileStore;
 import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.GitImpl;
@@ -32,7 +34,11 @@ import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -492,4 +498,261 @@ public class JGitFileSystemImplTest extends AbstractTestInfra {
         verify(lockSpy,
                times(1)).physicalUnLockOnFS();
     }
+
+    @Test
+    public void lockReusableAfterCloseTest() throws IOException, GitAPIException {
+
+        final Git git = setupGit();
+        JGitFileSystemLock lockSpy = spy(createFSLock(git));
+
+        lockSpy.lock();
+        lockSpy.unlock();
+        lockSpy.lock();
+        lockSpy.unlock();
+        lockSpy.close();
+        lockSpy.lock();
+        lockSpy.unlock();
+
+        verify(lockSpy,
+               times(3)).physicalLockOnFS();
+        verify(lockSpy,
+               times(3)).physicalUnLockOnFS();
+        assertThat(lockSpy.lock.isLocked()).isFalse();
+    }
+
+    @Test
+    public void singleProcessLockTest() throws IOException, GitAPIException {
+
+        final Git git = setupGit();
+        JGitFileSystemLock lockSpy = spy(new JGitFileSystemLock(git,
+                                                                TimeUnit.MILLISECONDS,
+                                                                30_000L,
+                                                                true));
+
+        lockSpy.lock();
+        lockSpy.lock();
+        assertThat(lockSpy.lock.getHoldCount()).isEqualTo(2);
+        lockSpy.unlock();
+        lockSpy.unlock();
+
+        verify(lockSpy,
+               never()).physicalLockOnFS();
+        verify(lockSpy,
+               never()).physicalUnLockOnFS();
+        assertThat(lockSpy.lock.isLocked()).isFalse();
+    }
+
+    @Test
+    public void lockMetricsTest() throws IOException, GitAPIException {
+
+        final Git git = setupGit();
+        JGitFileSystemLock lock = createFSLock(git);
+
+        assertThat(lock.getMetrics().getHolderThread()).isNull();
+
+        lock.lock("commit");
+        lock.lock("nested");
+
+        FileSystemLockMetrics metrics = lock.getMetrics();
+        assertThat(metrics.getHolderThread()).isEqualTo(Thread.currentThread().getName());
+        assertThat(metrics.getHolderOperation()).isEqualTo("commit");
+        assertThat(metrics.getQueueLength()).isZero();
+
+        lock.unlock();
+        assertThat(lock.getMetrics().getHolderOperation()).isEqualTo("commit");
+        lock.unlock();
+
+        metrics = lock.getMetrics();
+        assertThat(metrics.getHolderThread()).isNull();
+        assertThat(metrics.getHolderOperation()).isNull();
+        assertThat(metrics.getWaitTimes().getCount()).isEqualTo(1);
+        assertThat(metrics.getHoldTimes().getCount()).isEqualTo(1);
+        assertThat(metrics.getHoldTimes().getBucketCounts()).hasSize(LockTimeHistogram.getBucketBoundsMillis().length + 1);
+
+        lock.lock("later");
+        lock.unlock();
+        assertThat(metrics.getHoldTimes().getCount()).isEqualTo(1);
+        assertThat(lock.getMetrics().getHoldTimes().getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void tryLockInterruptedTest() throws Exception {
+
+        final Git git = setupGit();
+        JGitFileSystemLock lock = createFSLock(git);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> lock.tryLock("commit",
+                                                  50,
+                                                  TimeUnit.MILLISECONDS))
+                    .isInstanceOf(FileSystemLockInterruptedException.class);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+        assertThat(lock.lock.isLocked()).isFalse();
+    }
+
+    @Test
+    public void tryLockReleasedWhenPhysicalLockFailsTest() throws Exception {
+
+        final Git git = setupGit();
+        JGitFileSystemLock lockSpy = spy(createFSLock(git));
+        doThrow(new RuntimeException("lock file failure")).when(lockSpy).physicalTryLockOnFS(anyLong());
+
+        assertThatThrownBy(() -> lockSpy.tryLock("commit",
+                                                 50,
+                                                 TimeUnit.MILLISECONDS))
+                .hasMessage("lock file failure");
+        assertThat(lockSpy.lock.isLocked()).isFalse();
+    }
+
+    @Test
+    public void tryLockTimeoutTest() throws Exception {
+
+        final Git git = setupGit();
+        JGitFileSystemLock lock = createFSLock(git);
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread holder = new Thread(() -> {
+            lock.lock("holder");
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        assertThat(lock.tryLock("commit",
+                                50,
+                                TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(lock.getMetrics().getHolderOperation()).isEqualTo("holder");
+
+        release.countDown();
+        holder.join();
+
+        assertThat(lock.tryLock("commit",
+                                50,
+                                TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(lock.getMetrics().getHolderOperation()).isEqualTo("commit");
+        lock.unlock();
+        assertThat(lock.lock.isLocked()).isFalse();
+    }
+
+    @Test
+    public void evictReleasesResourcesOnceUnlockedTest() throws Exception {
+        final JGitFileSystemProvider fsProvider = mock(JGitFileSystemProvider.class);
+
+        final Git git = setupGit();
+        final JGitFileSystemLock lock = createFSLock(git);
+        final JGitFileSystemImpl fileSystem = new JGitFileSystemImpl(fsProvider,
+                                                                     null,
+                                                                     git,
+                                                                     lock,
+                                                                     "my-repo",
+                                                                     CredentialsProvider.getDefault(),
+                                                                     null,
+                                                                     null);
+
+        fileSystem.lock("commit");
+        fileSystem.evict();
+
+        //in-flight operation, nothing released yet
+        assertThat(fileSystem.hasReleasedResources()).isFalse();
+
+        fileSystem.unlock();
+        assertThat(fileSystem.hasReleasedResources()).isTrue();
+        assertThat(fileSystem.isOpen()).isTrue();
+
+        //the lock is shared with the instance that replaces the evicted one
+        lock.lock();
+        assertThat(lock.lock.isLocked()).isTrue();
+        lock.unlock();
+    }
+
+    @Test
+    public void evictKeepsLeasedRepositoryOpenTest() throws Exception {
+        final JGitFileSystemProvider fsProvider = mock(JGitFileSystemProvider.class);
+
+        final Git git = setupGit();
+        final JGitFileSystemImpl fileSystem = new JGitFileSystemImpl(fsProvider,
+                                                                     null,
+                                                                     git,
+                                                                     createFSLock(git),
+                                                                     "my-repo",
+                                                                     CredentialsProvider.getDefault(),
+                                                                     null,
+                                                                     null);
+
+        final FileSystemLease read = fileSystem.lease();
+        final FileSystemLease stream = fileSystem.retain();
+        fileSystem.evict();
+
+        //unlocked readers still use the repository
+        read.close();
+        read.close();
+        assertThat(fileSystem.hasReleasedResources()).isFalse();
+
+        stream.close();
+        assertThat(fileSystem.hasReleasedResources()).isTrue();
+        //proxies look the replacing instance up instead
+        assertThat(fileSystem.tryAcquireLease()).isFalse();
+
+        //still usable when held directly, released again with the last lease
+        try (final FileSystemLease lease = fileSystem.lease()) {
+            assertThat(fileSystem.hasReleasedResources()).isFalse();
+        }
+        assertThat(fileSystem.hasReleasedResources()).isTrue();
+    }
+
+    @Test
+    public void proxyLeasesTheLiveInstanceTest() throws Exception {
+        final JGitFileSystemProvider fsProvider = mock(JGitFileSystemProvider.class);
+
+        final Git git = setupGit();
+        final JGitFileSystemLock lock = createFSLock(git);
+        final JGitFileSystemImpl evicted = new JGitFileSystemImpl(fsProvider,
+                                                                  null,
+                                                                  git,
+                                                                  lock,
+                                                                  "my-repo",
+                                                                  CredentialsProvider.getDefault(),
+                                                                  null,
+                                                                  null);
+        final JGitFileSystemImpl live = new JGitFileSystemImpl(fsProvider,
+                                                               null,
+                                                               git,
+                                                               lock,
+                                                               "my-repo",
+                                                               CredentialsProvider.getDefault(),
+                                                               null,
+                                                               null);
+        final AtomicReference<JGitFileSystem> cached = new AtomicReference<>(evicted);
+        final JGitFileSystemProxy proxy = new JGitFileSystemProxy("my-repo",
+                                                                  cached::get);
+
+        try (final FileSystemLease lease = proxy.lease()) {
+            //the leased instance is used until released, even once replaced in the cache
+            cached.set(live);
+            evicted.evict();
+            assertThat(proxy.getRealJGitFileSystem()).isSameAs(evicted);
+            assertThat(evicted.hasReleasedResources()).isFalse();
+        }
+        assertThat(evicted.hasReleasedResources()).isTrue();
+
+        //a stale cached instance is skipped for its replacement
+        final AtomicReference<JGitFileSystem> lookups = new AtomicReference<>();
+        final JGitFileSystemProxy staleProxy = new JGitFileSystemProxy("my-repo",
+                                                                       () -> lookups.getAndSet(live) == null ? evicted : live);
+        try (final FileSystemLease lease = staleProxy.lease()) {
+            assertThat(staleProxy.getRealJGitFileSystem()).isSameAs(live);
+        }
+        assertThat(live.hasReleasedResources()).isFalse();
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_CLUSTER_LOCAL_ENABLED;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_CLUSTER_LOCAL_PEERS;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_CLUSTER_LOCAL_PORT;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_NIO_DIR;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemLocalClusterTest extends AbstractTestInfra {
+
+    private final int nodePort = findFreePort();
+    private final int peerPort = findFreePort();
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        return clusterPreferences(nodePort,
+                                  peerPort);
+    }
+
+    private Map<String, String> clusterPreferences(final int port,
+                                                   final int peer) {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(GIT_CLUSTER_LOCAL_ENABLED,
+                     "true");
+        gitPrefs.put(GIT_CLUSTER_LOCAL_PORT,
+                     String.valueOf(port));
+        gitPrefs.put(GIT_CLUSTER_LOCAL_PEERS,
+                     "127.0.0.1:" + peer);
+        return gitPrefs;
+    }
+
+    @Test
+    public void testEventsReachThePeerNode() throws Exception {
+        final Map<String, String> peerPrefs = clusterPreferences(peerPort,
+                                                                 nodePort);
+        peerPrefs.put(GIT_NIO_DIR,
+                      createTempDirectory().getAbsolutePath());
+        final JGitFileSystemProvider peer = new JGitFileSystemProvider(peerPrefs);
+        try {
+            provider.newFileSystem(URI.create("git://cluster-repo"),
+                                   EMPTY_ENV);
+            final JGitFileSystem peerFs = (JGitFileSystem) peer.newFileSystem(URI.create("git://cluster-repo"),
+                                                                              EMPTY_ENV);
+            final WatchService peerWatchService = peerFs.newWatchService();
+            //the local node needs a watch service too, so its events manager tracks the file system
+            provider.getFileSystem(URI.create("git://cluster-repo")).newWatchService();
+
+            try (OutputStream out = provider.newOutputStream(provider.getPath(URI.create("git://master@cluster-repo/file.txt")))) {
+                out.write("content".getBytes());
+            }
+
+            final WatchKey key = peerWatchService.poll(10,
+                                                       TimeUnit.SECONDS);
+            assertThat(key).isNotNull();
+            assertThat(key.pollEvents()).hasSize(1);
+            assertThat(((JGitWatchEvent) key.pollEvents().get(0)).getPathUri().getPath()).isEqualTo("/file.txt");
+        } finally {
+            peer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import me.porcelli.nio.jgit.impl.config.ConfigProperties;
+import me.porcelli.nio.jgit.impl.util.WindowCacheUtil;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.JGIT_DELTA_BASE_CACHE_LIMIT;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.JGIT_PACKED_GIT_LIMIT;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.JGIT_PACKED_GIT_OPEN_FILES;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.JGIT_PACKED_GIT_WINDOW_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemProviderPackCacheTest extends AbstractTestInfra {
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(JGIT_PACKED_GIT_LIMIT,
+                     String.valueOf(32 * 1024 * 1024));
+        gitPrefs.put(JGIT_PACKED_GIT_WINDOW_SIZE,
+                     String.valueOf(16 * 1024));
+        gitPrefs.put(JGIT_PACKED_GIT_OPEN_FILES,
+                     "256");
+        gitPrefs.put(JGIT_DELTA_BASE_CACHE_LIMIT,
+                     String.valueOf(4 * 1024 * 1024));
+        return gitPrefs;
+    }
+
+    @Test
+    public void testPackCacheIsLeftAloneUnlessConfigured() {
+        final JGitFileSystemProviderConfiguration configured = new JGitFileSystemProviderConfiguration();
+        configured.load(new ConfigProperties(getGitPreferences()));
+        assertThat(configured.isWindowCacheConfigured()).isTrue();
+
+        final JGitFileSystemProviderConfiguration defaults = new JGitFileSystemProviderConfiguration();
+        defaults.load(new ConfigProperties(super.getGitPreferences()));
+        assertThat(defaults.isWindowCacheConfigured()).isFalse();
+    }
+
+    @After
+    public void restoreDefaults() {
+        WindowCacheUtil.install(new WindowCacheConfig());
+    }
+
+    @Test
+    public void testPackCacheIsConfiguredAndReported() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://pack-cache-test-repo"),
+                                                                          EMPTY_ENV);
+        final Path path = provider.getPath(URI.create("git://master@pack-cache-test-repo/myfile.txt"));
+        try (OutputStream out = provider.newOutputStream(path)) {
+            out.write("content".getBytes());
+        }
+        fs.getGit().gc();
+
+        try (InputStream in = provider.newInputStream(path)) {
+            assertThat(IOUtils.toString(in,
+                                        StandardCharsets.UTF_8)).isEqualTo("content");
+        }
+
+        final PackCacheMetrics metrics = provider.getPackCacheMetrics();
+        assertThat(metrics.getPackedGitLimit()).isEqualTo(32 * 1024 * 1024);
+        assertThat(metrics.getPackedGitWindowSize()).isEqualTo(16 * 1024);
+        assertThat(metrics.getPackedGitOpenFilesLimit()).isEqualTo(256);
+        assertThat(metrics.getDeltaBaseCacheLimit()).isEqualTo(4 * 1024 * 1024);
+        assertThat(metrics.isPackedGitMMAP()).isFalse();
+        assertThat(metrics.getOpenFiles()).isGreaterThan(0);
+        assertThat(metrics.getOpenBytes()).isGreaterThan(0);
+        assertThat(metrics.getBytesUsage()).isBetween(0d,
+                                                      1d);
+    }
+}
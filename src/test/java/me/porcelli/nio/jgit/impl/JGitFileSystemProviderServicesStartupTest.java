@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import me.porcelli.nio.jgit.impl.config.ConfigProperties;
+import me.porcelli.nio.jgit.security.AuthenticationService;
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_SERVICES_ASYNC_STARTUP;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_SSH_ENABLED;
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_SSH_PORT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class JGitFileSystemProviderServicesStartupTest extends AbstractTestInfra {
+
+    @Test
+    public void testServicesStartInBackground() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        //keeps the executor busy, so the services can't start until released
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+
+        final JGitFileSystemProvider sshProvider = new JGitFileSystemProvider(new ConfigProperties(sshPreferences(true)),
+                                                                              executor);
+        try {
+            assertThat(sshProvider.servicesStarted().isDone()).isFalse();
+
+            //set before the SSH service exists
+            final AuthenticationService authenticator = mock(AuthenticationService.class);
+            sshProvider.setJAASAuthenticator(authenticator);
+
+            release.countDown();
+            sshProvider.servicesStarted().get(30,
+                                              TimeUnit.SECONDS);
+
+            assertThat(sshProvider.getGitSSHService().isRunning()).isTrue();
+            assertThat(sshProvider.getGitSSHService().getUserPassAuthenticator()).isSameAs(authenticator);
+        } finally {
+            release.countDown();
+            sshProvider.shutdown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSynchronousServicesStartup() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final JGitFileSystemProvider sshProvider = new JGitFileSystemProvider(new ConfigProperties(sshPreferences(false)),
+                                                                              executor);
+        try {
+            assertThat(sshProvider.servicesStarted().isDone()).isTrue();
+            assertThat(sshProvider.getGitSSHService().isRunning()).isTrue();
+        } finally {
+            sshProvider.shutdown();
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, String> sshPreferences(final boolean asyncStartup) {
+        final Map<String, String> gitPrefs = getGitPreferences();
+        gitPrefs.put(GIT_SSH_ENABLED,
+                     "true");
+        gitPrefs.put(GIT_SSH_PORT,
+                     String.valueOf(findFreePort()));
+        gitPrefs.put(GIT_SERVICES_ASYNC_STARTUP,
+                     String.valueOf(asyncStartup));
+        return gitPrefs;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import me.porcelli.nio.jgit.fs.WatchFilter;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitFileSystemWatchFilterTest extends AbstractTestInfra {
+
+    @Test
+    public void testEventsAreDeliveredToMatchingWatchServicesOnly() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://watch-filter-repo"),
+                                                                          EMPTY_ENV);
+
+        final WatchService all = fs.newWatchService();
+        final WatchService masterSrc = fs.newWatchService(new WatchFilter("master",
+                                                                          "/src"));
+        final WatchService anyBranchDocsCreated = fs.newWatchService(new WatchFilter(null,
+                                                                                     "/docs",
+                                                                                     StandardWatchEventKinds.ENTRY_CREATE));
+
+        write("git://master@watch-filter-repo/src/Main.java",
+              "one");
+        write("git://master@watch-filter-repo/srcs/Other.java",
+              "one");
+        write("git://master@watch-filter-repo/docs/readme.txt",
+              "one");
+        write("git://master@watch-filter-repo/docs/readme.txt",
+              "two");
+        write("git://dev@watch-filter-repo/src/Main.java",
+              "dev");
+
+        final List<String> allPaths = drain(all,
+                                            5);
+        assertThat(allPaths).containsExactly("/src/Main.java",
+                                             "/srcs/Other.java",
+                                             "/docs/readme.txt",
+                                             "/docs/readme.txt",
+                                             "/src/Main.java");
+
+        //every delivery is done once the unfiltered service got the last key
+        assertThat(drain(masterSrc,
+                         1)).containsExactly("/src/Main.java");
+        assertThat(masterSrc.poll()).isNull();
+        assertThat(drain(anyBranchDocsCreated,
+                         1)).containsExactly("/docs/readme.txt");
+        assertThat(anyBranchDocsCreated.poll()).isNull();
+    }
+
+    @Test
+    public void testPathPrefixesMatchInsideNestedFileSystemNames() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem(URI.create("git://group/watch-filter-repo"),
+                                                                          EMPTY_ENV);
+
+        final WatchService all = fs.newWatchService();
+        final WatchService masterSrc = fs.newWatchService(new WatchFilter("master",
+                                                                          "/src"));
+
+        write("git://master@group/watch-filter-repo/docs/readme.txt",
+              "one");
+        write("git://master@group/watch-filter-repo/src/Main.java",
+              "one");
+
+        assertThat(drain(all,
+                         2)).hasSize(2);
+        final WatchKey key = masterSrc.poll(10,
+                                            TimeUnit.SECONDS);
+        assertThat(key).isNotNull();
+        assertThat(key.pollEvents())
+                .extracting(event -> JGitWatchEvent.pathInFileSystem(((JGitWatchEvent) event).getPathUri(),
+                                                                     fs.getName()))
+                .containsExactly("/src/Main.java");
+        assertThat(masterSrc.poll()).isNull();
+    }
+
+    private void write(final String uri,
+                       final String content) throws IOException {
+        try (OutputStream out = provider.newOutputStream(provider.getPath(URI.create(uri)))) {
+            out.write(content.getBytes());
+        }
+    }
+
+    private List<String> drain(final WatchService watchService,
+                               final int keys) throws InterruptedException {
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            final WatchKey key = watchService.poll(10,
+                                                   TimeUnit.SECONDS);
+            assertThat(key).isNotNull();
+            paths.addAll(key.pollEvents().stream()
+                                 .map(event -> ((JGitWatchEvent) event).getPathUri().getPath())
+                                 .collect(Collectors.toList()));
+        }
+        return paths;
+    }
+}
@@ -28,11 +28,18 @@ import java.util.stream.Stream;
 import me.porcelli.nio.jgit.impl.op.Git;
 import me.porcelli.nio.jgit.impl.op.commands.Commit;
 import me.porcelli.nio.jgit.impl.op.commands.CreateRepository;
+import me.porcelli.nio.jgit.impl.op.commands.MapDiffContent;
 import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
+import me.porcelli.nio.jgit.impl.op.model.ObjectIdCommitContent;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.junit.Before;
 import org.junit.Test;
 
+import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class JGitMapDiffContentTest extends AbstractTestInfra {
@@ -81,6 +88,9 @@ public class JGitMapDiffContentTest extends AbstractTestInfra {
 
         assertThat(contents).isNotEmpty();
         assertThat(contents).hasSize(1);
+
+        MapDiffContent.release(contents);
+        assertThat(contents.values()).allMatch(file -> !file.exists());
     }
 
     @Test
@@ -182,4 +192,100 @@ public class JGitMapDiffContentTest extends AbstractTestInfra {
                            "invalid-commit-id",
                            git.getLastCommit(git.getRef(MASTER_BRANCH)).getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testObjectIdsPointToEndCommitBlobs() throws IOException {
+        final RevCommit startCommit = git.getLastCommit(MASTER_BRANCH);
+
+        commit(git, MASTER_BRANCH, "Updating a file",
+               content(TXT_FILES.get(0), "update 1"));
+
+        new Commit(git, MASTER_BRANCH, "name", "name@example.com", "Removing file",
+                   null, null, false,
+                   new HashMap<String, File>() {{
+                       put(TXT_FILES.get(1), null);
+                   }}).execute();
+
+        final RevCommit endCommit = git.getLastCommit(MASTER_BRANCH);
+
+        commit(git, MASTER_BRANCH, "Updating a file",
+               content(TXT_FILES.get(0), "update 2"));
+
+        final Map<String, ObjectId> ids = git.mapDiffObjectIds(startCommit.getName(),
+                                                               endCommit.getName());
+
+        assertThat(ids).hasSize(2);
+        assertThat(ids).containsEntry(TXT_FILES.get(1), null);
+        assertThat(ids.get(TXT_FILES.get(0))).isEqualTo(git.getPathInfo(endCommit.getName(),
+                                                                        TXT_FILES.get(0)).getObjectId());
+    }
+
+    @Test
+    public void testApplyObjectIdsOnAnotherBranch() throws Exception {
+        branch(git, MASTER_BRANCH, "develop");
+        final RevCommit startCommit = git.getLastCommit(MASTER_BRANCH);
+
+        commit(git, MASTER_BRANCH, "Adding files into master",
+               content(TXT_FILES.get(3), multiline(TXT_FILES.get(3), COMMON_TXT_LINES)));
+
+        new Commit(git, MASTER_BRANCH, "name", "name@example.com", "Removing file",
+                   null, null, false,
+                   new HashMap<String, File>() {{
+                       put(TXT_FILES.get(2), null);
+                   }}).execute();
+
+        final Map<String, ObjectId> ids = git.mapDiffObjectIds(startCommit.getName(),
+                                                               git.getLastCommit(MASTER_BRANCH).getName());
+
+        final boolean effective = git.commit("develop",
+                                             new CommitInfo(null, "name", "name@example.com", "replay", null, null),
+                                             false,
+                                             null,
+                                             new ObjectIdCommitContent(ids));
+
+        assertThat(effective).isTrue();
+        assertThat(git.getTreeFromRef("develop")).isEqualTo(git.getTreeFromRef(MASTER_BRANCH));
+
+        final boolean again = git.commit("develop",
+                                         new CommitInfo(null, "name", "name@example.com", "replay", null, null),
+                                         false,
+                                         null,
+                                         new ObjectIdCommitContent(ids));
+
+        assertThat(again).isFalse();
+    }
+
+    @Test
+    public void testApplyObjectIdsKeepsFileModes() throws Exception {
+        branch(git, MASTER_BRANCH, "develop");
+        final RevCommit startCommit = git.getLastCommit(MASTER_BRANCH);
+        final ObjectId blob = git.getPathInfo(MASTER_BRANCH,
+                                              TXT_FILES.get(0)).getObjectId();
+
+        git.commit(MASTER_BRANCH,
+                   new CommitInfo(null, "name", "name@example.com", "executable", null, null),
+                   false,
+                   null,
+                   new ObjectIdCommitContent(singletonMap("run.sh", blob),
+                                             singletonMap("run.sh", FileMode.EXECUTABLE_FILE)));
+        assertThat(fileMode(MASTER_BRANCH, "run.sh")).isEqualTo(FileMode.EXECUTABLE_FILE);
+
+        git.commit("develop",
+                   new CommitInfo(null, "name", "name@example.com", "replay", null, null),
+                   false,
+                   null,
+                   git.mapDiffCommitContent(startCommit.getName(),
+                                            git.getLastCommit(MASTER_BRANCH).getName()));
+
+        assertThat(fileMode("develop", "run.sh")).isEqualTo(FileMode.EXECUTABLE_FILE);
+    }
+
+    private FileMode fileMode(final String branch,
+                              final String path) throws IOException {
+        try (TreeWalk walk = TreeWalk.forPath(git.getRepository(),
+                                              path,
+                                              git.getLastCommit(branch).getTree())) {
+            return walk.getFileMode(0);
+        }
+    }
+}
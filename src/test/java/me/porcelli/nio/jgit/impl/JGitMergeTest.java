@@ -31,10 +31,16 @@ import me.porcelli.nio.jgit.impl.op.commands.GetTreeFromRef;
 import me.porcelli.nio.jgit.impl.op.commands.ListDiffs;
 import me.porcelli.nio.jgit.impl.op.commands.Merge;
 import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class JGitMergeTest extends AbstractTestInfra {
 
@@ -266,6 +272,129 @@ public class JGitMergeTest extends AbstractTestInfra {
         assertThat(commitIds).isEmpty();
     }
 
+    @Test
+    public void testMergeChangesAlreadyInTarget() throws IOException {
+        final File parentFolder = createTempDirectory();
+
+        final File gitSource = new File(parentFolder,
+                                        SOURCE_GIT + ".git");
+        final Git origin = new CreateRepository(gitSource).execute().get();
+
+        commit(origin,
+               "master",
+               "master-1",
+               content("file1.txt",
+                       "temp1"));
+
+        new CreateBranch((GitImpl) origin,
+                         "master",
+                         "develop").execute();
+
+        commit(origin,
+               "develop",
+               "develop-1",
+               content("file2.txt",
+                       "temp2"));
+
+        commit(origin,
+               "master",
+               "master-2",
+               content("file2.txt",
+                       "temp2"),
+               content("file3.txt",
+                       "temp3"));
+
+        final String lastMasterCommit = origin.getLastCommit("master").getName();
+
+        List<String> commitIds = new Merge(origin,
+                                           "develop",
+                                           "master").execute();
+
+        assertThat(commitIds).isEmpty();
+        assertThat(origin.getLastCommit("master").getName()).isEqualTo(lastMasterCommit);
+    }
+
+    @Test
+    public void testRefUpdateRejectsStaleExpectedId() throws Exception {
+        final File parentFolder = createTempDirectory();
+
+        final File gitSource = new File(parentFolder,
+                                        SOURCE_GIT + ".git");
+        final Git origin = new CreateRepository(gitSource).execute().get();
+
+        commit(origin,
+               "master",
+               "master-1",
+               content("file1.txt",
+                       "temp1"));
+        final RevCommit firstCommit = origin.getLastCommit("master");
+
+        commit(origin,
+               "master",
+               "master-2",
+               content("file2.txt",
+                       "temp2"));
+        final RevCommit secondCommit = origin.getLastCommit("master");
+
+        assertThatThrownBy(() -> origin.refUpdate("master",
+                                                  firstCommit,
+                                                  firstCommit))
+                .isInstanceOf(ConcurrentRefUpdateException.class);
+        assertThat(origin.getLastCommit("master")).isEqualTo(secondCommit);
+
+        origin.refUpdate("master",
+                         secondCommit,
+                         firstCommit);
+        assertThat(origin.getLastCommit("master")).isEqualTo(firstCommit);
+    }
+
+    @Test
+    public void testRefTreeRefUpdateReportsRejectedRef() throws Exception {
+        final File parentFolder = createTempDirectory();
+
+        final File gitSource = new File(parentFolder,
+                                        SOURCE_GIT + ".git");
+        final Git origin = new CreateRepository(gitSource).execute().get();
+
+        commit(origin,
+               "master",
+               "master-1",
+               content("file1.txt",
+                       "temp1"));
+        final RevCommit firstCommit = origin.getLastCommit("master");
+
+        origin.convertRefTree();
+        final StoredConfig config = origin.getRepository().getConfig();
+        config.setString("extensions",
+                         null,
+                         "refStorage",
+                         "reftree");
+        config.save();
+        origin.updateRepo(new FileRepositoryBuilder()
+                                  .setGitDir(gitSource)
+                                  .build());
+
+        commit(origin,
+               "master",
+               "master-2",
+               content("file2.txt",
+                       "temp2"));
+        final RevCommit secondCommit = origin.getLastCommit("master");
+
+        assertThatThrownBy(() -> origin.refUpdate("master",
+                                                  firstCommit,
+                                                  firstCommit))
+                .isInstanceOf(ConcurrentRefUpdateException.class)
+                .hasMessageContaining("refs/heads/master")
+                .satisfies(e -> {
+                    final ConcurrentRefUpdateException ex = (ConcurrentRefUpdateException) e;
+                    assertThat(ex.getResult()).isEqualTo(RefUpdate.Result.LOCK_FAILURE);
+                    assertThat(ex.getRef().getName()).isEqualTo("refs/heads/master");
+                    assertThat(ex.getRef().getObjectId()).isEqualTo(secondCommit);
+                });
+        assertThat(origin.getLastCommit("master")).isEqualTo(secondCommit);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testParametersNotNull() throws IOException {
 
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import me.porcelli.nio.jgit.impl.op.Git;
+import me.porcelli.nio.jgit.impl.op.GitImpl;
+import me.porcelli.nio.jgit.impl.op.commands.Commit;
+import me.porcelli.nio.jgit.impl.op.commands.CreateRepository;
+import me.porcelli.nio.jgit.impl.op.commands.Squash;
+import me.porcelli.nio.jgit.impl.op.exceptions.ConcurrentRefUpdateException;
+import me.porcelli.nio.jgit.impl.op.exceptions.GitException;
+import me.porcelli.nio.jgit.impl.op.model.CommitInfo;
+import me.porcelli.nio.jgit.impl.op.model.DefaultCommitContent;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static me.porcelli.nio.jgit.impl.JGitFileSystemProviderConfiguration.GIT_COMMIT_OPTIMISTIC;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+public class JGitOptimisticCommitTest extends AbstractTestInfra {
+
+    private Git git;
+
+    @Before
+    public void setup() throws IOException {
+        final File parentFolder = createTempDirectory();
+        git = new CreateRepository(new File(parentFolder,
+                                            "source/source.git")).execute().get();
+
+        commit(git,
+               "master",
+               "initial",
+               content("dir/file1.txt",
+                       "content1"),
+               content("file2.txt",
+                       "content2"));
+    }
+
+    @Test
+    public void testRebaseOnConcurrentNonOverlappingCommit() throws Exception {
+        final Git racingGit = racingGit("file3.txt");
+
+        final boolean hasCommit = newCommit(racingGit,
+                                            "dir/file1.txt",
+                                            "changed1").execute();
+
+        assertThat(hasCommit).isTrue();
+
+        final RevCommit head = git.getLastCommit("master");
+        assertThat(head.getFullMessage()).isEqualTo("optimistic");
+        assertThat(git.getCommit(head.getParent(0).getName()).getFullMessage()).isEqualTo("concurrent");
+        assertThat(git.getPathInfo("master",
+                                   "dir/file1.txt").getObjectId()).isNotNull();
+        assertThat(git.getPathInfo("master",
+                                   "file3.txt").getObjectId()).isNotNull();
+        assertThat(IOUtils.toString(git.blobAsInputStream("master",
+                                                          "dir/file1.txt"),
+                                    StandardCharsets.UTF_8)).isEqualTo("changed1");
+    }
+
+    @Test
+    public void testConflictOnConcurrentOverlappingCommit() throws Exception {
+        final Git racingGit = racingGit("dir/file1.txt");
+
+        assertThatThrownBy(() -> newCommit(racingGit,
+                                           "dir/file1.txt",
+                                           "changed1").execute())
+                .isInstanceOf(ConcurrentRefUpdateException.class);
+
+        assertThat(git.getLastCommit("master").getFullMessage()).isEqualTo("concurrent");
+    }
+
+    @Test
+    public void testPublishesAgainstTheHeadItWasBuiltOn() throws Exception {
+        final Commit overlapping = newCommit(git,
+                                             "dir/file1.txt",
+                                             "changed1");
+        final Commit disjoint = newCommit(git,
+                                          "file4.txt",
+                                          "content4");
+
+        commit(git,
+               "master",
+               "concurrent",
+               content("dir/file1.txt",
+                       "concurrent"));
+
+        assertThatThrownBy(overlapping::execute)
+                .isInstanceOf(ConcurrentRefUpdateException.class);
+        assertThat(git.getLastCommit("master").getFullMessage()).isEqualTo("concurrent");
+
+        assertThat(disjoint.execute()).isTrue();
+        final RevCommit head = git.getLastCommit("master");
+        assertThat(git.getCommit(head.getParent(0).getName()).getFullMessage()).isEqualTo("concurrent");
+        assertThat(IOUtils.toString(git.blobAsInputStream("master",
+                                                          "dir/file1.txt"),
+                                    StandardCharsets.UTF_8)).isEqualTo("concurrent");
+    }
+
+    @Test
+    public void testSquashDoesNotOverwriteConcurrentCommit() throws Exception {
+        final String startCommit = git.getLastCommit("master").getName();
+        final Git racingGit = racingGit("file3.txt");
+
+        assertThatThrownBy(() -> new Squash((GitImpl) racingGit,
+                                            "master",
+                                            startCommit,
+                                            "squashed").execute())
+                .isInstanceOf(GitException.class);
+
+        assertThat(git.getLastCommit("master").getFullMessage()).isEqualTo("concurrent");
+    }
+
+    @Test
+    public void testConcurrentProviderWritesWithoutLock() throws Exception {
+        final URI newRepo = URI.create("git://optimistic-test-repo");
+        provider.newFileSystem(newRepo,
+                               EMPTY_ENV);
+
+        final int writers = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                final Path path = provider.getPath(URI.create("git://master@optimistic-test-repo/writer" + i + ".txt"));
+                final String content = "content" + i;
+                results.add(executor.submit(() -> {
+                    try (final OutputStream out = provider.newOutputStream(path)) {
+                        out.write(content.getBytes());
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < writers; i++) {
+            final Path path = provider.getPath(URI.create("git://master@optimistic-test-repo/writer" + i + ".txt"));
+            assertThat(IOUtils.toString(provider.newInputStream(path),
+                                        StandardCharsets.UTF_8)).isEqualTo("content" + i);
+        }
+    }
+
+    @Override
+    public Map<String, String> getGitPreferences() {
+        final Map<String, String> gitPrefs = super.getGitPreferences();
+        gitPrefs.put(GIT_COMMIT_OPTIMISTIC,
+                     "true");
+        return gitPrefs;
+    }
+
+    /**
+     * Returns a Git whose first ref update is preceded by a commit of another writer
+     * on the given path, so the update loses the race.
+     */
+    private Git racingGit(final String concurrentPath) throws Exception {
+        final Git racingGit = spy(git);
+        final boolean[] raced = {false};
+        doAnswer(invocation -> {
+            if (!raced[0]) {
+                raced[0] = true;
+                commit(git,
+                       "master",
+                       "concurrent",
+                       content(concurrentPath,
+                               "concurrent"));
+            }
+            return invocation.callRealMethod();
+        }).when(racingGit).refUpdate(anyString(),
+                                     any(ObjectId.class),
+                                     any(RevCommit.class));
+        return racingGit;
+    }
+
+    private Commit newCommit(final Git git,
+                             final String path,
+                             final String content) {
+        return new Commit(git,
+                          "master",
+                          new CommitInfo(null,
+                                         "name",
+                                         "name@example.com",
+                                         "optimistic",
+                                         null,
+                                         null),
+                          false,
+                          null,
+                          new DefaultCommitContent(new HashMap<String, File>() {{
+                              put(path,
+                                  tmpFile(content));
+                          }}));
+    }
+}
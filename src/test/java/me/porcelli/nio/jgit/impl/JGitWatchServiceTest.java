@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class JGitWatchServiceTest {
+
+    @Test
+    public void pollWaitsForTimeout() throws Exception {
+        final JGitWatchService ws = new JGitWatchService("fs",
+                                                         w -> {
+                                                         });
+
+        final long start = System.nanoTime();
+        assertThat(ws.poll(200,
+                           TimeUnit.MILLISECONDS)).isNull();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(150);
+
+        final WatchKey key = key(1);
+        CompletableFuture.runAsync(() -> {
+            sleep(100);
+            ws.publish(key);
+        });
+        assertThat(ws.poll(10,
+                           TimeUnit.SECONDS)).isSameAs(key);
+    }
+
+    @Test
+    public void fullQueueEmitsOverflow() throws Exception {
+        final JGitWatchService ws = new JGitWatchService("fs",
+                                                         w -> {
+                                                         },
+                                                         2);
+        final WatchKey first = key(1);
+        final WatchKey second = key(1);
+        ws.publish(first);
+        ws.publish(second);
+        ws.publish(key(3));
+        ws.publish(key(2));
+
+        final WatchKey overflow = ws.take();
+        assertThat(overflow.pollEvents()).hasSize(1);
+        final WatchEvent<?> event = overflow.pollEvents().get(0);
+        assertThat(event.kind()).isEqualTo(StandardWatchEventKinds.OVERFLOW);
+        assertThat(event.count()).isEqualTo(5);
+
+        assertThat(ws.take()).isSameAs(first);
+        assertThat(ws.take()).isSameAs(second);
+        assertThat(ws.poll()).isNull();
+    }
+
+    @Test
+    public void closeWakesUpBlockedConsumers() throws Exception {
+        final JGitWatchService ws = new JGitWatchService("fs",
+                                                         w -> {
+                                                         });
+        final CompletableFuture<WatchKey> taken = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ws.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        sleep(100);
+        ws.close();
+
+        assertThatThrownBy(() -> taken.get(10,
+                                           TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ClosedWatchServiceException.class);
+        assertThatThrownBy(ws::poll).isInstanceOf(ClosedWatchServiceException.class);
+    }
+
+    private WatchKey key(final int events) {
+        return new JGitWatchService.JGitWatchKey(null,
+                                                 Collections.nCopies(events,
+                                                                     mock(WatchEvent.class)));
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
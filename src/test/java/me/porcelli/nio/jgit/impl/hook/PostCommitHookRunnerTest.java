@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.hook;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FS_POSIX;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.ProcessResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostCommitHookRunnerTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private File dir;
+    private Repository repoA;
+    private Repository repoB;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("hooks").toFile();
+        repoA = createRepository("a");
+        repoB = createRepository("b");
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        repoA.close();
+        repoB.close();
+        FileUtils.delete(dir,
+                         FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+    }
+
+    @Test
+    public void runsOfARepositoryKeepTheirOrder() throws Exception {
+        final PostCommitHookRunner runner = new PostCommitHookRunner(() -> new FS_POSIX() {
+            @Override
+            public File findHook(final Repository repository,
+                                 final String hookName) {
+                return new File(hookName);
+            }
+
+            @Override
+            public ProcessResult runHookIfPresent(final Repository repository,
+                                                  final String hookName,
+                                                  final String[] args) {
+                if (repository == repoA) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new ProcessResult(0,
+                                         ProcessResult.Status.OK);
+            }
+        },
+                                                                     4,
+                                                                     8);
+        final List<Integer> runsA = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> runsB = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 20; i++) {
+            final int run = i;
+            runner.run("a",
+                       repoA,
+                       exitCode -> runsA.add(run));
+            runner.run("b",
+                       repoB,
+                       exitCode -> runsB.add(run));
+        }
+
+        assertThat(runner.awaitIdle(10,
+                                    TimeUnit.SECONDS)).isTrue();
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(i);
+        }
+        assertThat(runsA).isEqualTo(expected);
+        assertThat(runsB).isEqualTo(expected);
+        //drained queues are dropped
+        assertThat(runner.repositoryQueues).isEmpty();
+    }
+
+    @Test
+    public void hookPresenceIsCachedUntilTheHooksDirectoryChanges() throws Exception {
+        final PostCommitHookRunner runner = new PostCommitHookRunner(() -> new FS_POSIX() {
+            @Override
+            public File findHook(final Repository repository,
+                                 final String hookName) {
+                lookups.incrementAndGet();
+                return super.findHook(repository,
+                                      hookName);
+            }
+        });
+        final File hooksDir = new File(repoA.getDirectory(),
+                                       Constants.HOOKS);
+        assertThat(hooksDir.mkdirs() || hooksDir.isDirectory()).isTrue();
+        //old enough for its snapshot not to be racily clean
+        assertThat(hooksDir.setLastModified(System.currentTimeMillis() - 10_000)).isTrue();
+
+        assertThat(runner.hasHook(repoA)).isFalse();
+        assertThat(runner.hasHook(repoA)).isFalse();
+        assertThat(lookups.get()).isEqualTo(1);
+
+        final File hook = new File(hooksDir,
+                                   "post-commit");
+        assertThat(hook.createNewFile()).isTrue();
+        assertThat(hook.setExecutable(true)).isTrue();
+
+        assertThat(runner.hasHook(repoA)).isTrue();
+        assertThat(lookups.get()).isEqualTo(2);
+
+        runner.forget(repoA);
+        assertThat(runner.presence).isEmpty();
+    }
+
+    private Repository createRepository(final String name) throws IOException {
+        final Repository repository = new FileRepositoryBuilder().setGitDir(new File(dir,
+                                                                                     name + Constants.DOT_GIT_EXT)).build();
+        repository.create(true);
+        return repository;
+    }
+}
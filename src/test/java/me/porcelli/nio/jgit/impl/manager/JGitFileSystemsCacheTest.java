@@ -18,7 +18,13 @@
 package me.porcelli.nio.jgit.impl.manager;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -39,9 +45,12 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -190,6 +199,7 @@ public class JGitFileSystemsCacheTest extends AbstractTestInfra {
         Supplier<JGitFileSystem> fsSupplier1 = getSupplierSpy(fs1);
         cache.addSupplier("fs1",
                           fsSupplier1);
+        instantiate("fs1");
 
         JGitFileSystem fs2 = mock(JGitFileSystem.class);
         Supplier<JGitFileSystem> fsSupplier2 = getSupplierSpy(fs2);
@@ -220,24 +230,28 @@ public class JGitFileSystemsCacheTest extends AbstractTestInfra {
         Supplier<JGitFileSystem> fsSupplier1 = getSupplierSpy(fs1);
         cache.addSupplier("fs1",
                           fsSupplier1);
+        instantiate("fs1");
 
         JGitFileSystem fs2 = mock(JGitFileSystem.class);
         Supplier<JGitFileSystem> fs2Supplier = getSupplierSpy(fs2);
         when(fs2.hasBeenInUse()).thenReturn(true);
         cache.addSupplier("fs2",
                           fs2Supplier);
+        instantiate("fs2");
 
         JGitFileSystem fs3 = mock(JGitFileSystem.class);
         Supplier<JGitFileSystem> fs3Supplier = getSupplierSpy(fs3);
         when(fs3.hasBeenInUse()).thenReturn(true);
         cache.addSupplier("fs3",
                           fs3Supplier);
+        instantiate("fs3");
 
         JGitFileSystem fs4 = mock(JGitFileSystem.class);
         Supplier<JGitFileSystem> fs4Supplier = getSupplierSpy(fs4);
         when(fs4.hasBeenInUse()).thenReturn(true);
         cache.addSupplier("fs4",
                           fs3Supplier);
+        instantiate("fs4");
 
         //> cache because all fs are in use
         assertTrue(cache.memoizedSuppliers.containsKey("fs1"));
@@ -292,6 +306,7 @@ public class JGitFileSystemsCacheTest extends AbstractTestInfra {
         Supplier<JGitFileSystem> fs1Supplier = getSupplierSpy(fs1);
         cache.addSupplier("fs1",
                           fs1Supplier);
+        instantiate("fs1");
 
         fs1.lock();
         fs1.lock();
@@ -313,6 +328,209 @@ public class JGitFileSystemsCacheTest extends AbstractTestInfra {
         assertTrue(cache.memoizedSuppliers.containsKey("fs1"));
     }
 
+    @Test
+    public void evictionNeverCreatesFileSystems() {
+
+        JGitFileSystemProviderConfiguration config = setupConfigMock();
+        cache = new JGitFileSystemsCache(config);
+
+        JGitFileSystem fs1 = mock(JGitFileSystem.class);
+        Supplier<JGitFileSystem> fs1Supplier = getSupplierSpy(fs1);
+        cache.addSupplier("fs1",
+                          fs1Supplier);
+        cache.addSupplier("fs2",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+        cache.addSupplier("fs3",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+
+        assertFalse(cache.memoizedSuppliers.containsKey("fs1"));
+        verify(fs1Supplier,
+               never()).get();
+    }
+
+    @Test
+    public void frequentlyUsedFSSurviveEviction() {
+
+        JGitFileSystemProviderConfiguration config = setupConfigMock();
+        cache = new JGitFileSystemsCache(config);
+
+        cache.addSupplier("fs1",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+        for (int i = 0; i < 5; i++) {
+            cache.get("fs1");
+        }
+        cache.addSupplier("fs2",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+        cache.get("fs2");
+
+        //fs1 is the least recently used, but fs2 is the least frequently used
+        cache.addSupplier("fs3",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+
+        assertTrue(cache.memoizedSuppliers.containsKey("fs1"));
+        assertTrue(cache.memoizedSuppliers.containsKey("fs3"));
+        assertFalse(cache.memoizedSuppliers.containsKey("fs2"));
+    }
+
+    @Test
+    public void evictedFileSystemsAreReleasedAndReopened() {
+
+        JGitFileSystemProviderConfiguration config = setupConfigMock();
+        cache = new JGitFileSystemsCache(config);
+
+        JGitFileSystem fs1 = mock(JGitFileSystem.class);
+        Supplier<JGitFileSystem> fs1Supplier = getSupplierSpy(fs1);
+        cache.addSupplier("fs1",
+                          fs1Supplier);
+        JGitFileSystemProxy fs1Proxy = (JGitFileSystemProxy) cache.get("fs1");
+        fs1Proxy.getRealJGitFileSystem();
+
+        cache.addSupplier("fs2",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+        cache.get("fs2");
+        cache.addSupplier("fs3",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+
+        assertFalse(cache.memoizedSuppliers.containsKey("fs1"));
+        verify(fs1,
+               timeout(5000)).evict();
+
+        //the proxy obtained before eviction transparently re-opens the fs
+        assertEquals(fs1,
+                     fs1Proxy.getRealJGitFileSystem());
+        verify(fs1Supplier,
+               times(2)).get();
+        assertTrue(cache.memoizedSuppliers.containsKey("fs1"));
+    }
+
+    @Test
+    public void fileDescriptorsBudgetTest() {
+        when(config.getJgitFileSystemsInstancesCache()).thenReturn(10);
+        when(config.getJgitCacheOverflowCleanupSize()).thenReturn(10);
+        when(config.getJgitRemoveEldestEntryIterations()).thenReturn(10);
+        when(config.getJgitCacheFileDescriptorsBudget()).thenReturn(5);
+        //weighs on the thread releasing the eviction lock
+        cache = new JGitFileSystemsCache(config,
+                                         fs -> new FileSystemWeight(1024,
+                                                                    2,
+                                                                    1),
+                                         Runnable::run);
+
+        for (String fsName : Arrays.asList("fs1", "fs2", "fs3")) {
+            cache.addSupplier(fsName,
+                              getSupplierSpy(mock(JGitFileSystem.class)));
+            instantiate(fsName);
+        }
+        //replays the reads, weighing the instantiated fs
+        cache.addSupplier("fs4",
+                          getSupplierSpy(mock(JGitFileSystem.class)));
+
+        //three instances weigh six descriptors, the eldest one goes away
+        assertFalse(cache.memoizedSuppliers.containsKey("fs1"));
+        assertTrue(cache.memoizedSuppliers.containsKey("fs2"));
+        assertTrue(cache.memoizedSuppliers.containsKey("fs3"));
+        //not instantiated, weighs nothing
+        assertTrue(cache.memoizedSuppliers.containsKey("fs4"));
+
+        JGitFileSystemsCache.JGitFileSystemsCacheInfo cacheInfo = cache.getCacheInfo();
+        assertEquals(4,
+                     cacheInfo.openFileDescriptorsWeight());
+        assertEquals(2048,
+                     cacheInfo.heapWeight());
+        assertEquals(2,
+                     cacheInfo.memoizedFileSystemsWeights().get("fs2").getOpenFileDescriptors());
+        assertEquals(FileSystemWeight.EMPTY,
+                     cacheInfo.memoizedFileSystemsWeights().get("fs4"));
+    }
+
+    @Test
+    public void weighsOffTheCallingThreadTest() throws Exception {
+        when(config.getJgitFileSystemsInstancesCache()).thenReturn(10);
+        when(config.getJgitCacheOverflowCleanupSize()).thenReturn(10);
+        when(config.getJgitRemoveEldestEntryIterations()).thenReturn(10);
+        when(config.getJgitCacheFileDescriptorsBudget()).thenReturn(5);
+        final List<Thread> weighingThreads = new CopyOnWriteArrayList<>();
+        final ExecutorService weighingExecutor = Executors.newSingleThreadExecutor();
+        try {
+            cache = new JGitFileSystemsCache(config,
+                                             fs -> {
+                                                 weighingThreads.add(Thread.currentThread());
+                                                 return new FileSystemWeight(1024,
+                                                                             2,
+                                                                             1);
+                                             },
+                                             weighingExecutor);
+
+            for (String fsName : Arrays.asList("fs1", "fs2", "fs3", "fs4")) {
+                cache.addSupplier(fsName,
+                                  getSupplierSpy(mock(JGitFileSystem.class)));
+                instantiate(fsName);
+            }
+            weighingExecutor.submit(() -> {
+            }).get(5,
+                   TimeUnit.SECONDS);
+
+            assertFalse(weighingThreads.isEmpty());
+            assertFalse(weighingThreads.contains(Thread.currentThread()));
+            //weights applied once computed still bound the cache
+            assertTrue(cache.getCacheInfo().openFileDescriptorsWeight() <= 5);
+        } finally {
+            weighingExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void repositoryWeightTest() throws IOException, GitAPIException {
+        final Git git = setupGit();
+        git.gc();
+
+        final FileSystemWeight weight = FileSystemWeight.of(git.getRepository().getDirectory());
+
+        assertTrue(weight.getPackFiles() > 0);
+        assertEquals(weight.getPackFiles() + 1,
+                     weight.getOpenFileDescriptors());
+        assertTrue(weight.getHeapBytes() > FileSystemWeight.BASE_HEAP_OVERHEAD);
+    }
+
+    @Test
+    public void concurrentReadsAndWritesTest() throws Exception {
+
+        JGitFileSystemProviderConfiguration config = setupConfigMock();
+        cache = new JGitFileSystemsCache(config);
+
+        final int fsCount = 20;
+        for (int i = 0; i < fsCount; i++) {
+            cache.addSupplier("fs" + i,
+                              getSupplierSpy(mock(JGitFileSystem.class)));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    final String fsName = "fs" + ((seed + i) % fsCount);
+                    assertNotNull(((JGitFileSystemProxy) cache.get(fsName)).getRealJGitFileSystem());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30,
+                       TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(fsCount,
+                     cache.fileSystemsSuppliers.size());
+        assertTrue(cache.memoizedSuppliers.size() <= 2);
+    }
+
+    //only instantiated fs can be in use, eviction never creates them
+    private void instantiate(String fsName) {
+        ((JGitFileSystemProxy) cache.get(fsName)).getRealJGitFileSystem();
+    }
+
     private void setupCacheToTestOrder(JGitFileSystemProviderConfiguration config, String... fsNames) {
         cache = new JGitFileSystemsCache(config);
 
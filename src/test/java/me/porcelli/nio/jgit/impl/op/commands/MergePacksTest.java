@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.porcelli.nio.jgit.impl.op.commands;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MergePacksTest {
+
+    @Test
+    public void progressionIsKept() {
+        assertEquals(0,
+                     MergePacks.split(Arrays.asList(10L,
+                                                    25L,
+                                                    100L),
+                                      2));
+        assertEquals(0,
+                     MergePacks.split(Arrays.asList(100L),
+                                      2));
+    }
+
+    @Test
+    public void packsBreakingTheProgressionAreMergedWithTheSmallerOnes() {
+        //40 < 2 * 30 breaks it, the 100 objects of the packs up to 40 then take the 100 pack too
+        assertEquals(5,
+                     MergePacks.split(Arrays.asList(10L,
+                                                    20L,
+                                                    30L,
+                                                    40L,
+                                                    100L,
+                                                    1000L),
+                                      2));
+    }
+
+    @Test
+    public void largePacksAreLeftAlone() {
+        assertEquals(3,
+                     MergePacks.split(Arrays.asList(5L,
+                                                    5L,
+                                                    5L,
+                                                    1000L),
+                                      2));
+    }
+}